@@ -0,0 +1,23 @@
+package de.fdpg.sq2pathling;
+
+/**
+ * A snapshot of the statistics of a {@link LruCache}.
+ *
+ * @param hits      the number of lookups which found an entry
+ * @param misses    the number of lookups which found no entry
+ * @param evictions the number of entries evicted because the cache was full
+ * @param size      the current number of entries
+ * @param weight    the current total weight of all entries
+ */
+public record CacheStats(long hits, long misses, long evictions, int size, long weight) {
+
+  /**
+   * Returns the ratio of lookups which found an entry.
+   *
+   * @return the hit rate between {@code 0} and {@code 1} or {@code 0} if there was no lookup yet
+   */
+  public double hitRate() {
+    var lookups = hits + misses;
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+}
@@ -0,0 +1,110 @@
+package de.fdpg.sq2pathling;
+
+import static java.util.Objects.requireNonNull;
+
+import de.fdpg.sq2pathling.model.pathling.Parameters;
+import de.fdpg.sq2pathling.model.structured_query.QueryFingerprint;
+import de.fdpg.sq2pathling.model.structured_query.StructuredQuery;
+import de.fdpg.sq2pathling.model.structured_query.TranslationException;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * A {@link Translator} caching its translations by the {@link QueryFingerprint fingerprint} of the
+ * Structured Queries.
+ * <p>
+ * Queries differing only in the order of their criteria or in the displays of their term codes
+ * share a single cache entry. The cached {@link Parameters} are the ones of the first query
+ * translated, so their filters may list the criteria in a different order than the query given.
+ * Entries are keyed by the version of the mappings and the output options of the translator as
+ * well, so that translators with other mappings or options can {@link #withTranslator(Translator)
+ * share} the cache without seeing each other's entries. Age criteria are translated relative to
+ * the current date, so entries are keyed by the date, too.
+ * <p>
+ * The cache holds entries up to a total weight, the number of characters of all parameters, and
+ * evicts the least recently used entries first. Failed translations aren't cached.
+ * <p>
+ * Instances are thread-safe. Concurrent translations of the same query may both miss the cache.
+ */
+public final class CachingTranslator {
+
+  /**
+   * The weight of a cache entry apart from the characters of its parameters.
+   */
+  private static final int ENTRY_WEIGHT = 128;
+
+  private final Translator translator;
+  private final LruCache<Key, Parameters> cache;
+
+  private CachingTranslator(Translator translator, LruCache<Key, Parameters> cache) {
+    this.translator = requireNonNull(translator);
+    this.cache = cache;
+  }
+
+  /**
+   * Returns a caching translator translating with {@code translator}.
+   *
+   * @param translator the translator to translate queries not cached yet
+   * @param maxWeight  the maximum total number of characters of all cached parameters
+   * @return the caching translator
+   * @throws IllegalArgumentException if {@code maxWeight} is negative
+   */
+  public static CachingTranslator of(Translator translator, long maxWeight) {
+    return new CachingTranslator(translator, LruCache.of(maxWeight, CachingTranslator::weight));
+  }
+
+  /**
+   * Returns a caching translator translating with {@code translator} and sharing the cache of this
+   * caching translator.
+   * <p>
+   * This is useful after reloading the mappings. Entries of older mappings are no longer hit and
+   * get evicted over time.
+   *
+   * @param translator the translator to translate queries not cached yet
+   * @return the caching translator
+   */
+  public CachingTranslator withTranslator(Translator translator) {
+    return new CachingTranslator(translator, cache);
+  }
+
+  /**
+   * Translates the given {@code structuredQuery} into a pathling aggregate {@link Parameters} or
+   * returns the cached parameters of an equivalent query.
+   *
+   * @param structuredQuery the Structured Query to translate
+   * @return the translated pathling aggregate {@link Parameters}
+   * @throws TranslationException if the given {@code structuredQuery} can't be translated into a
+   *                              pathling aggregate {@link Parameters}
+   */
+  public Parameters toPathling(StructuredQuery structuredQuery) {
+    var fingerprint = QueryFingerprint.of(structuredQuery);
+    if (fingerprint.isEmpty()) {
+      return translator.toPathling(structuredQuery);
+    }
+    var key = new Key(translator.mappingVersion(), translator.outputOptions(), LocalDate.now(),
+        fingerprint.get());
+    return cache.computeIfAbsent(key, k -> translator.toPathling(structuredQuery));
+  }
+
+  /**
+   * Returns the hit, miss and eviction statistics of the cache.
+   *
+   * @return the statistics of the cache
+   */
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  private static long weight(Parameters parameters) {
+    long weight = ENTRY_WEIGHT;
+    for (var parameter : parameters.parameter()) {
+      weight += parameter.name().length() + parameter.valueString().length();
+    }
+    return weight;
+  }
+
+  private record Key(long mappingVersion, List<Boolean> outputOptions, LocalDate date,
+                     String fingerprint) {
+
+  }
+}
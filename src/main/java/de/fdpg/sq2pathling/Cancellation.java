@@ -0,0 +1,62 @@
+package de.fdpg.sq2pathling;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Cooperative cancellation of work running on the current thread.
+ * <p>
+ * Work started with {@link #run(BooleanSupplier, Supplier) run} calls {@link #checkpoint()} at
+ * points where it can stop, like between criteria and between the term codes of an expansion.
+ * Once the work is cancelled, the next checkpoint throws a {@link CancellationException}, so that
+ * abandoned translations stop using CPU. Outside of {@code run}, checkpoints do nothing.
+ */
+public final class Cancellation {
+
+  private static final ThreadLocal<BooleanSupplier> CANCELLED = new ThreadLocal<>();
+
+  private Cancellation() {
+  }
+
+  /**
+   * Runs {@code task} on the current thread, which is cancelled once {@code cancelled} returns
+   * {@code true}.
+   *
+   * @param cancelled returns whether the task is cancelled, called at each checkpoint
+   * @param task      the task to run
+   * @param <T>       the type of the result of {@code task}
+   * @return the result of {@code task}
+   * @throws CancellationException if {@code task} reached a checkpoint after being cancelled
+   */
+  public static <T> T run(BooleanSupplier cancelled, Supplier<T> task) {
+    requireNonNull(cancelled);
+    var outer = CANCELLED.get();
+    CANCELLED.set(outer == null ? cancelled
+        : () -> outer.getAsBoolean() || cancelled.getAsBoolean());
+    try {
+      return task.get();
+    } finally {
+      if (outer == null) {
+        CANCELLED.remove();
+      } else {
+        CANCELLED.set(outer);
+      }
+    }
+  }
+
+  /**
+   * Throws a {@link CancellationException} if the work running on the current thread is
+   * cancelled.
+   *
+   * @throws CancellationException if the work running on the current thread is cancelled
+   */
+  public static void checkpoint() {
+    var cancelled = CANCELLED.get();
+    if (cancelled != null && cancelled.getAsBoolean()) {
+      throw new CancellationException("translation cancelled");
+    }
+  }
+}
@@ -0,0 +1,205 @@
+package de.fdpg.sq2pathling;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * A bounded cache evicting the least recently used entries once the total weight of its entries
+ * exceeds a maximum.
+ * <p>
+ * Instances are thread-safe. Lookups read a {@link ConcurrentHashMap} without locking and only
+ * record the access in a fixed-size buffer. Writes take a lock, replay the recorded accesses into
+ * the recency order and evict. If lookups outpace writes, the buffer drops accesses, so the order
+ * of entries read very frequently may be slightly stale. Values are computed outside of the lock,
+ * so concurrent misses on the same key may compute the value more than once.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public final class LruCache<K, V> {
+
+  /**
+   * The number of accesses recorded between two drains of the read buffer. Must be a power of
+   * two.
+   */
+  private static final int READ_BUFFER_SIZE = 128;
+
+  private final long maxWeight;
+  private final ToLongFunction<? super V> weigher;
+  private final ConcurrentHashMap<K, Entry<K, V>> entries = new ConcurrentHashMap<>();
+  private final AtomicLong weight = new AtomicLong();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  private final AtomicReferenceArray<Entry<K, V>> readBuffer =
+      new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+  private final AtomicLong readBufferWrites = new AtomicLong();
+  private volatile long readBufferReads;
+
+  /**
+   * Guards {@link #recency} and all writes to {@link #entries}.
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+  private final LinkedHashMap<K, Entry<K, V>> recency = new LinkedHashMap<>(16, 0.75f, true);
+
+  private LruCache(long maxWeight, ToLongFunction<? super V> weigher) {
+    if (maxWeight < 0) {
+      throw new IllegalArgumentException("negative maximum weight: " + maxWeight);
+    }
+    this.maxWeight = maxWeight;
+    this.weigher = requireNonNull(weigher);
+  }
+
+  /**
+   * Returns a cache holding at most {@code maxSize} entries.
+   *
+   * @param maxSize the maximum number of entries
+   * @return the cache
+   */
+  public static <K, V> LruCache<K, V> of(int maxSize) {
+    return new LruCache<>(maxSize, value -> 1);
+  }
+
+  /**
+   * Returns a cache holding entries up to a total weight of {@code maxWeight}.
+   * <p>
+   * Entries which alone weigh more than {@code maxWeight} are not cached at all.
+   *
+   * @param maxWeight the maximum total weight of all entries
+   * @param weigher   calculates the weight of a value
+   * @return the cache
+   */
+  public static <K, V> LruCache<K, V> of(long maxWeight, ToLongFunction<? super V> weigher) {
+    return new LruCache<>(maxWeight, weigher);
+  }
+
+  /**
+   * Returns the value cached under {@code key}.
+   *
+   * @param key the key of the value
+   * @return the value or {@code null} if there is none
+   */
+  public V get(K key) {
+    var entry = entries.get(key);
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    recordAccess(entry);
+    return entry.value;
+  }
+
+  /**
+   * Caches {@code value} under {@code key}, evicting the least recently used entries if
+   * necessary.
+   *
+   * @param key   the key of the value
+   * @param value the value to cache
+   */
+  public void put(K key, V value) {
+    var valueWeight = weigher.applyAsLong(requireNonNull(value));
+    if (valueWeight > maxWeight) {
+      return;
+    }
+    var entry = new Entry<>(requireNonNull(key), value, valueWeight);
+    lock.lock();
+    try {
+      drainReadBuffer();
+      var previous = entries.put(key, entry);
+      recency.put(key, entry);
+      weight.addAndGet(previous == null ? valueWeight : valueWeight - previous.weight);
+      var iterator = recency.values().iterator();
+      while (weight.get() > maxWeight) {
+        var eldest = iterator.next();
+        iterator.remove();
+        entries.remove(eldest.key);
+        weight.addAndGet(-eldest.weight);
+        evictions.increment();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the value cached under {@code key} or computes and caches it.
+   *
+   * @param key    the key of the value
+   * @param loader computes the value if it is not cached
+   * @return the cached or computed value
+   */
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+    var value = get(key);
+    if (value == null) {
+      value = loader.apply(key);
+      put(key, value);
+    }
+    return value;
+  }
+
+  /**
+   * Removes all entries. The statistics are kept.
+   */
+  public void clear() {
+    lock.lock();
+    try {
+      drainReadBuffer();
+      entries.clear();
+      recency.clear();
+      weight.set(0);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public CacheStats stats() {
+    return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), entries.size(),
+        weight.get());
+  }
+
+  /**
+   * Records an access to {@code entry}, overwriting the oldest recorded access if the buffer is
+   * full, and drains the buffer if it is half full and no write is in progress.
+   */
+  private void recordAccess(Entry<K, V> entry) {
+    var index = readBufferWrites.getAndIncrement();
+    readBuffer.lazySet((int) index & (READ_BUFFER_SIZE - 1), entry);
+    if (index - readBufferReads >= READ_BUFFER_SIZE / 2 && lock.tryLock()) {
+      try {
+        drainReadBuffer();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Moves the entries of all recorded accesses to the end of the recency order. Must hold the
+   * lock.
+   */
+  private void drainReadBuffer() {
+    var writes = readBufferWrites.get();
+    for (var index = Math.max(readBufferReads, writes - READ_BUFFER_SIZE); index < writes;
+        index++) {
+      var entry = readBuffer.getAndSet((int) index & (READ_BUFFER_SIZE - 1), null);
+      // entries evicted in the meantime aren't found, so they stay evicted
+      if (entry != null) {
+        recency.get(entry.key);
+      }
+    }
+    readBufferReads = writes;
+  }
+
+  private record Entry<K, V>(K key, V value, long weight) {
+  }
+}
@@ -0,0 +1,308 @@
+package de.fdpg.sq2pathling;
+
+import static java.util.Objects.requireNonNull;
+
+import de.fdpg.sq2pathling.model.MappingContext;
+import de.fdpg.sq2pathling.model.MappingLoader;
+import de.fdpg.sq2pathling.model.structured_query.StructuredQuery;
+import de.fdpg.sq2pathling.model.structured_query.TranslationException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.zip.ZipFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the current {@link MappingContext} and allows to replace it without interrupting running
+ * translations.
+ * <p>
+ * A new mapping context is built in the background by {@link #reload(Callable) reload} and
+ * published with a single atomic swap. Each translation {@link #acquire() pins} the version
+ * current at its start and keeps using it until it is done, even if a newer version is published
+ * in between. A replaced version is released as soon as the last translation using it finishes.
+ * <p>
+ * Versions are ordered by the time their reload or publication started, not by the time they
+ * finish loading. A slow reload never replaces a version that was started after it.
+ * <p>
+ * Instances are thread-safe.
+ */
+public final class MappingRegistry {
+
+  private static final Logger logger = LoggerFactory.getLogger(MappingRegistry.class);
+
+  private final AtomicReference<Version> current;
+  private final AtomicLong sequence = new AtomicLong();
+  private final Executor executor;
+  private final Consumer<MappingContext> onRelease;
+  private final UnaryOperator<Translator> translatorOptions;
+
+  private MappingRegistry(MappingContext initial, Executor executor,
+      Consumer<MappingContext> onRelease, UnaryOperator<Translator> translatorOptions) {
+    this.executor = requireNonNull(executor);
+    this.onRelease = requireNonNull(onRelease);
+    this.translatorOptions = requireNonNull(translatorOptions);
+    this.current = new AtomicReference<>(new Version(initial, 0));
+  }
+
+  /**
+   * Returns a registry starting with {@code initial} and building new versions on the common
+   * fork-join pool.
+   *
+   * @param initial the initial mapping context
+   * @return the registry
+   */
+  public static MappingRegistry of(MappingContext initial) {
+    return of(initial, UnaryOperator.identity());
+  }
+
+  /**
+   * Returns a registry starting with {@code initial} and building new versions on the common
+   * fork-join pool.
+   * <p>
+   * The translator of each version is configured by {@code translatorOptions}, for example
+   * {@code translator -> translator.withCompactOutput(true)}.
+   *
+   * @param initial           the initial mapping context
+   * @param translatorOptions sets the options of the translator of each version
+   * @return the registry
+   */
+  public static MappingRegistry of(MappingContext initial,
+      UnaryOperator<Translator> translatorOptions) {
+    return new MappingRegistry(initial, ForkJoinPool.commonPool(), mappingContext -> {
+    }, translatorOptions);
+  }
+
+  /**
+   * Returns a registry starting with {@code initial}.
+   *
+   * @param initial   the initial mapping context
+   * @param executor  the executor to build new versions on
+   * @param onRelease called with each replaced mapping context once no translation uses it anymore
+   * @return the registry
+   */
+  public static MappingRegistry of(MappingContext initial, Executor executor,
+      Consumer<MappingContext> onRelease) {
+    return of(initial, executor, onRelease, UnaryOperator.identity());
+  }
+
+  /**
+   * Returns a registry starting with {@code initial}.
+   *
+   * @param initial           the initial mapping context
+   * @param executor          the executor to build new versions on
+   * @param onRelease         called with each replaced mapping context once no translation uses
+   *                          it anymore
+   * @param translatorOptions sets the options of the translator of each version
+   * @return the registry
+   */
+  public static MappingRegistry of(MappingContext initial, Executor executor,
+      Consumer<MappingContext> onRelease, UnaryOperator<Translator> translatorOptions) {
+    return new MappingRegistry(initial, executor, onRelease, translatorOptions);
+  }
+
+  /**
+   * Returns the version of the current mapping context.
+   *
+   * @return the current version
+   */
+  public long currentVersion() {
+    return current.get().mappingContext.version();
+  }
+
+  /**
+   * Pins the current version until the returned lease is closed.
+   *
+   * @return the lease of the current version
+   */
+  public Lease acquire() {
+    while (true) {
+      var version = current.get();
+      if (version.tryRetain()) {
+        return new Lease(version);
+      }
+    }
+  }
+
+  /**
+   * Translates {@code structuredQuery} with the current version.
+   *
+   * @param structuredQuery the Structured Query to translate
+   * @return the translated parameters together with the version used
+   * @throws TranslationException if the given {@code structuredQuery} can't be translated
+   */
+  public VersionedParameters translate(StructuredQuery structuredQuery) {
+    try (var lease = acquire()) {
+      return new VersionedParameters(lease.version(),
+          lease.translator().toPathling(structuredQuery));
+    }
+  }
+
+  /**
+   * Makes {@code mappingContext} the current version.
+   * <p>
+   * Translations already running keep their version. The replaced version is released once they
+   * are done.
+   *
+   * @param mappingContext the new mapping context
+   */
+  public void publish(MappingContext mappingContext) {
+    publish(mappingContext, sequence.incrementAndGet());
+  }
+
+  /**
+   * Makes {@code mappingContext} the current version unless a version started after
+   * {@code startSequence} is already current, in which case {@code mappingContext} is released
+   * right away.
+   *
+   * @return {@code true} if {@code mappingContext} was published
+   */
+  private boolean publish(MappingContext mappingContext, long startSequence) {
+    var next = new Version(mappingContext, startSequence);
+    while (true) {
+      var previous = current.get();
+      if (previous.startSequence > startSequence) {
+        logger.info("Discarded mappings version {} superseded by version {}",
+            mappingContext.version(), previous.mappingContext.version());
+        next.release();
+        return false;
+      }
+      if (current.compareAndSet(previous, next)) {
+        logger.info("Published mappings version {} replacing version {}",
+            mappingContext.version(), previous.mappingContext.version());
+        previous.release();
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Builds a new mapping context with {@code loader} in the background and
+   * {@link #publish(MappingContext) publishes} it.
+   * <p>
+   * If a reload or publication started after this one is already current when the loader
+   * finishes, the new mapping context is discarded and handed to {@code onRelease} instead.
+   *
+   * @param loader builds the new mapping context
+   * @return a future completing with the current version after the new one was published or
+   * discarded, or exceptionally if the loader failed, in which case the current version stays in
+   * place
+   */
+  public CompletableFuture<Long> reload(Callable<MappingContext> loader) {
+    requireNonNull(loader);
+    var startSequence = sequence.incrementAndGet();
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return loader.call();
+      } catch (Exception e) {
+        throw new CompletionException(e);
+      }
+    }, executor).thenApply(mappingContext -> publish(mappingContext, startSequence)
+        ? mappingContext.version() : currentVersion());
+  }
+
+  /**
+   * Loads the {@code mapping.zip} at {@code mappingZip} in the background and
+   * {@link #publish(MappingContext) publishes} it.
+   *
+   * @param mappingZip the path of the zip file containing the mappings and the concept tree
+   * @return a future completing with the current version after the new one was published or
+   * discarded
+   */
+  public CompletableFuture<Long> reload(Path mappingZip) {
+    return reload(() -> {
+      try (var zipFile = new ZipFile(mappingZip.toFile())) {
+        return MappingLoader.load(zipFile);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  /**
+   * A mapping context together with its translator, the sequence number of the reload or
+   * publication it was started by and the number of its users. The registry itself counts as a user
+   * as long as the version is current.
+   */
+  private final class Version {
+
+    private final MappingContext mappingContext;
+    private final Translator translator;
+    private final long startSequence;
+    private final AtomicInteger users = new AtomicInteger(1);
+
+    private Version(MappingContext mappingContext, long startSequence) {
+      this.mappingContext = requireNonNull(mappingContext);
+      this.translator = requireNonNull(translatorOptions.apply(Translator.of(mappingContext)));
+      this.startSequence = startSequence;
+    }
+
+    /**
+     * Adds a user unless the version was already released.
+     */
+    private boolean tryRetain() {
+      while (true) {
+        var count = users.get();
+        if (count == 0) {
+          return false;
+        }
+        if (users.compareAndSet(count, count + 1)) {
+          return true;
+        }
+      }
+    }
+
+    private void release() {
+      if (users.decrementAndGet() == 0) {
+        logger.info("Released mappings version {}", mappingContext.version());
+        onRelease.accept(mappingContext);
+      }
+    }
+  }
+
+  /**
+   * Pins a version of the mappings until it is closed.
+   */
+  public static final class Lease implements AutoCloseable {
+
+    private final MappingRegistry.Version version;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private Lease(MappingRegistry.Version version) {
+      this.version = version;
+    }
+
+    public long version() {
+      return version.mappingContext.version();
+    }
+
+    public MappingContext mappingContext() {
+      return version.mappingContext;
+    }
+
+    public Translator translator() {
+      return version.translator;
+    }
+
+    /**
+     * Releases the pinned version. Further calls have no effect.
+     */
+    @Override
+    public void close() {
+      if (closed.compareAndSet(false, true)) {
+        version.release();
+      }
+    }
+  }
+}
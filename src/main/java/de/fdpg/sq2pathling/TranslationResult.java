@@ -0,0 +1,76 @@
+package de.fdpg.sq2pathling;
+
+import static java.util.Objects.requireNonNull;
+
+import de.fdpg.sq2pathling.model.pathling.Parameters;
+import de.fdpg.sq2pathling.model.structured_query.StructuredQuery;
+import de.fdpg.sq2pathling.model.structured_query.TranslationException;
+
+/**
+ * The result of translating a single query of a batch: either the translated parameters or the
+ * failure.
+ * <p>
+ * Failures are usually {@link TranslationException TranslationExceptions}. Other runtime exceptions
+ * thrown while translating a query are kept as well, so that a single query can't fail the whole
+ * batch.
+ *
+ * @param structuredQuery the translated Structured Query
+ * @param parameters      the translated pathling aggregate parameters or {@code null} if the
+ *                        translation failed
+ * @param failure         the reason the translation failed or {@code null} if it succeeded
+ */
+public record TranslationResult(StructuredQuery structuredQuery, Parameters parameters,
+                                RuntimeException failure) {
+
+  public TranslationResult {
+    requireNonNull(structuredQuery);
+    if ((parameters == null) == (failure == null)) {
+      throw new IllegalArgumentException("exactly one of parameters and failure is required");
+    }
+  }
+
+  /**
+   * Returns the result of a successful translation.
+   *
+   * @param structuredQuery the translated Structured Query
+   * @param parameters      the translated pathling aggregate parameters
+   * @return the result
+   */
+  public static TranslationResult success(StructuredQuery structuredQuery, Parameters parameters) {
+    return new TranslationResult(structuredQuery, requireNonNull(parameters), null);
+  }
+
+  /**
+   * Returns the result of a failed translation.
+   *
+   * @param structuredQuery the Structured Query which couldn't be translated
+   * @param failure         the reason the translation failed
+   * @return the result
+   */
+  public static TranslationResult failure(StructuredQuery structuredQuery,
+      RuntimeException failure) {
+    return new TranslationResult(structuredQuery, null, requireNonNull(failure));
+  }
+
+  /**
+   * Returns {@code true} if the translation succeeded.
+   *
+   * @return whether the translation succeeded
+   */
+  public boolean isSuccess() {
+    return failure == null;
+  }
+
+  /**
+   * Returns the translated parameters or throws the failure.
+   *
+   * @return the translated pathling aggregate parameters
+   * @throws RuntimeException the failure if the translation failed
+   */
+  public Parameters orElseThrow() {
+    if (failure != null) {
+      throw failure;
+    }
+    return parameters;
+  }
+}
@@ -1,17 +1,42 @@
 package de.fdpg.sq2pathling;
 
+import static java.util.Objects.requireNonNull;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
 import de.fdpg.sq2pathling.model.MappingContext;
 import de.fdpg.sq2pathling.model.fhirpath.AndExpression;
 import de.fdpg.sq2pathling.model.fhirpath.BooleanExpression;
+import de.fdpg.sq2pathling.model.fhirpath.CommonSubexpressions;
+import de.fdpg.sq2pathling.model.fhirpath.ExpressionOptimizer;
+import de.fdpg.sq2pathling.model.fhirpath.ExpressionPrinter;
 import de.fdpg.sq2pathling.model.fhirpath.FunctionInvocation;
 import de.fdpg.sq2pathling.model.fhirpath.InvocationExpression;
 import de.fdpg.sq2pathling.model.fhirpath.OrExpression;
+import de.fdpg.sq2pathling.model.fhirpath.PrintCache;
+import de.fdpg.sq2pathling.model.fhirpath.ReverseResolveMerger;
 import de.fdpg.sq2pathling.model.pathling.Parameter;
 import de.fdpg.sq2pathling.model.pathling.Parameters;
 import de.fdpg.sq2pathling.model.structured_query.Criterion;
 import de.fdpg.sq2pathling.model.structured_query.StructuredQuery;
+import de.fdpg.sq2pathling.model.structured_query.StructuredQueryNormalizer;
 import de.fdpg.sq2pathling.model.structured_query.TranslationException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * The translator from Structured Query to a Pathling Request
@@ -26,13 +51,35 @@ import java.util.List;
  */
 public class Translator {
 
+  private static final Logger logger = LoggerFactory.getLogger(Translator.class);
+
   private final MappingContext mappingContext;
+  private final boolean optimize;
+  private final boolean mergeReverseResolves;
+  private final boolean compact;
+  private final PrintCache printCache;
+  private final boolean normalize;
+  private final boolean eliminateCommonSubexpressions;
+  private final boolean cacheCriteria;
+
+  private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+      .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+      .build();
 
   private static Parameter AGGREGATION_PARAMETER = Parameter.of("aggregation",
       FunctionInvocation.count().print(PrintContext.ZERO));
 
-  private Translator(MappingContext mappingContext) {
+  private Translator(MappingContext mappingContext, boolean optimize,
+      boolean mergeReverseResolves, boolean compact, PrintCache printCache,
+      boolean normalize, boolean eliminateCommonSubexpressions, boolean cacheCriteria) {
     this.mappingContext = mappingContext;
+    this.optimize = optimize;
+    this.mergeReverseResolves = mergeReverseResolves;
+    this.compact = compact;
+    this.printCache = printCache;
+    this.normalize = normalize;
+    this.eliminateCommonSubexpressions = eliminateCommonSubexpressions;
+    this.cacheCriteria = cacheCriteria;
   }
 
   /**
@@ -41,7 +88,7 @@ public class Translator {
    * @return a translator without any mappings
    */
   public static Translator of() {
-    return new Translator(MappingContext.of());
+    return new Translator(MappingContext.of(), false, false, false, null, false, false, false);
   }
 
   /**
@@ -50,17 +97,129 @@ public class Translator {
    * @return a translator with mappings defined in {@code mappingContext}
    */
   public static Translator of(MappingContext mappingContext) {
-    return new Translator(mappingContext);
+    return new Translator(mappingContext, false, false, false, null, false, false, false);
+  }
+
+  /**
+   * Returns a translator which {@link ExpressionOptimizer optimizes} the filter expressions before
+   * printing them if {@code optimize} is {@code true}.
+   * <p>
+   * Optimization is off by default, so the filters keep the structure of the Structured Query.
+   *
+   * @param optimize whether to optimize the filter expressions
+   * @return a translator with the same mappings
+   */
+  public Translator withOptimization(boolean optimize) {
+    return new Translator(mappingContext, optimize, mergeReverseResolves, compact, printCache,
+        normalize, eliminateCommonSubexpressions, cacheCriteria);
+  }
+
+  /**
+   * Returns a translator which {@link ReverseResolveMerger merges} the reverse joins of ORed
+   * criteria and expanded term codes per resource type if {@code mergeReverseResolves} is
+   * {@code true}.
+   * <p>
+   * Merging is off by default. With merging, a concept expanding to hundreds of term codes results
+   * in a single join per resource type instead of one join per term code.
+   *
+   * @param mergeReverseResolves whether to merge reverse joins
+   * @return a translator with the same mappings
+   */
+  public Translator withMergedReverseResolves(boolean mergeReverseResolves) {
+    return new Translator(mappingContext, optimize, mergeReverseResolves, compact, printCache,
+        normalize, eliminateCommonSubexpressions, cacheCriteria);
+  }
+
+  /**
+   * Returns a translator which prints the filters {@link ExpressionPrinter#compact() compact} if
+   * {@code compact} is {@code true}.
+   * <p>
+   * Compact output is off by default. The default output breaks lines after each {@code and} and
+   * {@code or}, which is easier to read while debugging.
+   *
+   * @param compact whether to print the filters without line breaks and unneeded whitespace
+   * @return a translator with the same mappings
+   */
+  public Translator withCompactOutput(boolean compact) {
+    return new Translator(mappingContext, optimize, mergeReverseResolves, compact, printCache,
+        normalize, eliminateCommonSubexpressions, cacheCriteria);
+  }
+
+  /**
+   * Returns a translator which memoizes printed subtrees of the filters in {@code printCache}.
+   * <p>
+   * Memoization is off by default. The cache is shared by all translations of the returned
+   * translator, so fragments repeated across criteria and queries are printed only once. Its
+   * {@link PrintCache#stats() hit rate} shows whether memoization pays off.
+   *
+   * @param printCache the cache of printed subtrees or {@code null} to turn memoization off
+   * @return a translator with the same mappings
+   */
+  public Translator withPrintCache(PrintCache printCache) {
+    return new Translator(mappingContext, optimize, mergeReverseResolves, compact, printCache,
+        normalize, eliminateCommonSubexpressions, cacheCriteria);
+  }
+
+  /**
+   * Returns a translator which {@link StructuredQueryNormalizer normalizes} the Structured Queries
+   * before translating them if {@code normalize} is {@code true}.
+   * <p>
+   * Normalization is off by default. With normalization, queries differing only in the order of
+   * their criteria or in duplicate criteria and clauses are translated into the same filters, so
+   * that caches of the filters or of their results are hit.
+   *
+   * @param normalize whether to normalize the Structured Queries
+   * @return a translator with the same mappings
+   */
+  public Translator withNormalization(boolean normalize) {
+    return new Translator(mappingContext, optimize, mergeReverseResolves, compact, printCache,
+        normalize, eliminateCommonSubexpressions, cacheCriteria);
   }
 
-  private static List<Parameter> inclusionOnlyFilters(BooleanExpression inclusionExpr) {
-    return List.of(AGGREGATION_PARAMETER, Parameter.of("filter", PrintContext.ZERO.print(inclusionExpr)));
+  /**
+   * Returns a translator which {@link CommonSubexpressions shares} a single instance of equal
+   * subtrees of the filter expressions if {@code eliminateCommonSubexpressions} is {@code true}.
+   * <p>
+   * Elimination is off by default. It doesn't change the output, but saves memory for filters
+   * repeating large subtrees, for example criteria used in several clauses. It costs hashing every
+   * subtree of the filters on each translation.
+   *
+   * @param eliminateCommonSubexpressions whether to share equal subtrees of the filters
+   * @return a translator with the same mappings
+   */
+  public Translator withCommonSubexpressionElimination(boolean eliminateCommonSubexpressions) {
+    return new Translator(mappingContext, optimize, mergeReverseResolves, compact, printCache,
+        normalize, eliminateCommonSubexpressions, cacheCriteria);
+  }
+
+  /**
+   * Returns a translator which translates criteria through the {@link MappingContext#translate
+   * criterion cache} of its mapping context if {@code cacheCriteria} is {@code true}.
+   * <p>
+   * Caching is off by default. With caching, criteria repeated within a query or across queries,
+   * like the unchanged criteria of an edited query, are translated only once per day. Its
+   * {@link MappingContext#criterionCacheStats() hit rate} shows whether caching pays off.
+   *
+   * @param cacheCriteria whether to cache translated criteria
+   * @return a translator with the same mappings
+   */
+  public Translator withCriterionCache(boolean cacheCriteria) {
+    return new Translator(mappingContext, optimize, mergeReverseResolves, compact, printCache,
+        normalize, eliminateCommonSubexpressions, cacheCriteria);
   }
 
-  private static List<Parameter> filters(BooleanExpression inclusionExpr,
-      BooleanExpression exclusionExpr) {
-      return List.of(AGGREGATION_PARAMETER, Parameter.of("filter", PrintContext.ZERO.print(inclusionExpr)),
-          Parameter.of("filter", PrintContext.ZERO.print(InvocationExpression.of(exclusionExpr, FunctionInvocation.not()))));
+  /**
+   * Returns the version of the mappings this translator uses.
+   */
+  long mappingVersion() {
+    return mappingContext.version();
+  }
+
+  /**
+   * Returns the options which change the output of this translator, apart from its mappings.
+   */
+  List<Boolean> outputOptions() {
+    return List.of(optimize, mergeReverseResolves, compact, normalize);
   }
 
   /**
@@ -72,47 +231,272 @@ public class Translator {
    *                              pathling aggregate {@link Parameters}
    */
   public Parameters toPathling(StructuredQuery structuredQuery) {
-    BooleanExpression inclusionExpr = inclusionExpr(structuredQuery.inclusionCriteria());
-    BooleanExpression exclusionExpr = exclusionExpr(structuredQuery.exclusionCriteria());
+    var printer = printer();
+    var filters = filterExprs(structuredQuery).stream()
+        .map(filter -> Parameter.of("filter", printer.print(filter)));
+    return Parameters.of(Stream.concat(Stream.of(AGGREGATION_PARAMETER), filters).toList());
+  }
+
+  /**
+   * Translates the given {@code structuredQuery} asynchronously on a new virtual thread.
+   * <p>
+   * On Java versions without virtual threads, the {@link ForkJoinPool#commonPool() common pool} is
+   * used instead, so a burst of translations queues up instead of starting a thread each.
+   *
+   * @param structuredQuery the Structured Query to translate
+   * @return a future of the translated pathling aggregate {@link Parameters}
+   * @see #toPathlingAsync(StructuredQuery, Executor)
+   */
+  public CompletableFuture<Parameters> toPathlingAsync(StructuredQuery structuredQuery) {
+    return toPathlingAsync(structuredQuery, DefaultExecutor.INSTANCE);
+  }
+
+  /**
+   * Translates the given {@code structuredQuery} asynchronously on {@code executor}.
+   * <p>
+   * The translation stops at the next {@link Cancellation#checkpoint() checkpoint} once the
+   * returned future is completed by anyone else, for example by
+   * {@link CompletableFuture#cancel(boolean) cancel} or
+   * {@link CompletableFuture#orTimeout(long, java.util.concurrent.TimeUnit) orTimeout}.
+   * Checkpoints are between criteria and between the term codes of expansions. A translation
+   * which fails completes the future exceptionally with a {@link TranslationException}.
+   *
+   * @param structuredQuery the Structured Query to translate
+   * @param executor        the executor to run the translation on
+   * @return a future of the translated pathling aggregate {@link Parameters}
+   */
+  public CompletableFuture<Parameters> toPathlingAsync(StructuredQuery structuredQuery,
+      Executor executor) {
+    requireNonNull(structuredQuery);
+    var future = new CompletableFuture<Parameters>();
+    try {
+      executor.execute(() -> {
+        if (future.isDone()) {
+          return;
+        }
+        try {
+          future.complete(Cancellation.run(future::isDone, () -> toPathling(structuredQuery)));
+        } catch (Throwable e) {
+          future.completeExceptionally(e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  /**
+   * Translates all {@code structuredQueries} in parallel on {@code executor}.
+   * <p>
+   * Each query is translated in its own task, sharing the mappings of this translator. A query
+   * which can't be translated results in a {@link TranslationResult#failure(StructuredQuery,
+   * RuntimeException) failure} without affecting the other queries. This method blocks until all
+   * queries are translated.
+   *
+   * @param structuredQueries the Structured Queries to translate
+   * @param executor          the executor to run the translations on
+   * @return the results in the iteration order of {@code structuredQueries}
+   * @throws java.util.concurrent.RejectedExecutionException if {@code executor} rejects a task
+   */
+  public List<TranslationResult> toPathlingAll(Collection<StructuredQuery> structuredQueries,
+      Executor executor) {
+    requireNonNull(executor);
+    var queries = List.copyOf(structuredQueries);
+    var results = new TranslationResult[queries.size()];
+    var tasks = new CompletableFuture<?>[queries.size()];
+    for (int i = 0; i < tasks.length; i++) {
+      var index = i;
+      tasks[i] = CompletableFuture.runAsync(() -> results[index] = translate(queries.get(index)),
+          executor);
+    }
+    CompletableFuture.allOf(tasks).join();
+    return List.of(results);
+  }
+
+  private TranslationResult translate(StructuredQuery structuredQuery) {
+    try {
+      return TranslationResult.success(structuredQuery, toPathling(structuredQuery));
+    } catch (RuntimeException e) {
+      return TranslationResult.failure(structuredQuery, e);
+    }
+  }
+
+  /**
+   * Translates the given {@code structuredQuery} and writes the resulting pathling aggregate
+   * {@link Parameters} as JSON to {@code out}.
+   * <p>
+   * The JSON is the same as the one of the {@link Parameters} returned by
+   * {@link #toPathling(StructuredQuery) toPathling}, but the filters are printed directly into
+   * {@code out} while writing, so that they are never held in memory as a whole. Nothing is written
+   * if the translation fails. {@code out} is flushed but not closed.
+   *
+   * @param structuredQuery the Structured Query to translate
+   * @param out             the stream to write the UTF-8 encoded JSON to
+   * @throws TranslationException if the given {@code structuredQuery} can't be translated into a
+   *                              pathling aggregate {@link Parameters}
+   * @throws IOException          if writing to {@code out} fails
+   */
+  public void writePathlingJson(StructuredQuery structuredQuery, OutputStream out)
+      throws IOException {
+    var filters = filterExprs(structuredQuery);
+    try (var generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+      writePathlingJson(printer(), filters, generator);
+    }
+  }
+
+  /**
+   * Translates the given {@code structuredQuery} and writes the resulting pathling aggregate
+   * {@link Parameters} as JSON to {@code writer}.
+   * <p>
+   * Like {@link #writePathlingJson(StructuredQuery, OutputStream)} but writing characters.
+   * {@code writer} is flushed but not closed.
+   *
+   * @param structuredQuery the Structured Query to translate
+   * @param writer          the writer to write the JSON to
+   * @throws TranslationException if the given {@code structuredQuery} can't be translated into a
+   *                              pathling aggregate {@link Parameters}
+   * @throws IOException          if writing to {@code writer} fails
+   */
+  public void writePathlingJson(StructuredQuery structuredQuery, Writer writer)
+      throws IOException {
+    var filters = filterExprs(structuredQuery);
+    try (var generator = JSON_FACTORY.createGenerator(writer)) {
+      writePathlingJson(printer(), filters, generator);
+    }
+  }
+
+  /**
+   * Writes the {@link Parameters} with {@code filters} in the same form Jackson serializes them.
+   */
+  private static void writePathlingJson(ExpressionPrinter printer, List<BooleanExpression> filters,
+      JsonGenerator generator) throws IOException {
+    generator.writeStartObject();
+    generator.writeArrayFieldStart("parameter");
+    writeParameter(generator, AGGREGATION_PARAMETER.name(), AGGREGATION_PARAMETER.valueString());
+    for (var filter : filters) {
+      generator.writeStartObject();
+      generator.writeStringField("name", "filter");
+      generator.writeFieldName("valueString");
+      generator.writeString(printer.reader(filter), -1);
+      generator.writeEndObject();
+    }
+    generator.writeEndArray();
+    generator.writeStringField("resourceType", "Parameters");
+    generator.writeEndObject();
+  }
+
+  private static void writeParameter(JsonGenerator generator, String name, String valueString)
+      throws IOException {
+    generator.writeStartObject();
+    generator.writeStringField("name", name);
+    generator.writeStringField("valueString", valueString);
+    generator.writeEndObject();
+  }
+
+  private ExpressionPrinter printer() {
+    if (printCache == null) {
+      return compact ? ExpressionPrinter.compact() : ExpressionPrinter.of();
+    }
+    return compact ? ExpressionPrinter.compact(printCache) : ExpressionPrinter.of(printCache);
+  }
+
+  /**
+   * Translates {@code structuredQuery} into the expressions of its filters: the inclusion filter
+   * and, if there are exclusion criteria, the negated exclusion filter.
+   */
+  private List<BooleanExpression> filterExprs(StructuredQuery structuredQuery) {
+    if (normalize) {
+      structuredQuery = StructuredQueryNormalizer.normalize(structuredQuery);
+    }
+    Function<Criterion, BooleanExpression> translate = criterion -> {
+      Cancellation.checkpoint();
+      return cacheCriteria ? mappingContext.translate(criterion)
+          : criterion.toFhirPathFilter(mappingContext);
+    };
+    BooleanExpression inclusionExpr = inclusionExpr(structuredQuery.inclusionCriteria(), translate);
+    BooleanExpression exclusionExpr = exclusionExpr(structuredQuery.exclusionCriteria(), translate);
+    if (optimize) {
+      inclusionExpr = ExpressionOptimizer.optimize(inclusionExpr);
+      exclusionExpr = ExpressionOptimizer.optimize(exclusionExpr);
+    }
+    if (mergeReverseResolves) {
+      inclusionExpr = ReverseResolveMerger.merge(inclusionExpr);
+      exclusionExpr = ReverseResolveMerger.merge(exclusionExpr);
+    }
 
     if (inclusionExpr == null) {
       throw new IllegalStateException("Inclusion criteria lead to empty inclusion expression.");
     }
+    if (eliminateCommonSubexpressions) {
+      var subexpressions = CommonSubexpressions.of();
+      inclusionExpr = subexpressions.eliminate(inclusionExpr);
+      exclusionExpr = subexpressions.eliminate(exclusionExpr);
+      logger.debug("Collapsed {} duplicate subexpressions", subexpressions.duplicates());
+    }
 
     //TODO: This should be done with exlucsionExpr instead of the content of the exclusionCriteria in the StructuredQuery
-    var filters = structuredQuery.exclusionCriteria().get(0).isEmpty()
-        ? inclusionOnlyFilters(inclusionExpr)
-        : filters(inclusionExpr, exclusionExpr);
-    return Parameters.of(filters);
+    return structuredQuery.exclusionCriteria().get(0).isEmpty()
+        ? List.of(inclusionExpr)
+        : List.of(inclusionExpr, InvocationExpression.of(exclusionExpr, FunctionInvocation.not()));
   }
 
   /**
    * Builds the inclusion expression as conjunctive normal form (CNF) of {@code criteria}.
    *
-   * @param criteria a list of lists of {@link Criterion} representing a CNF
+   * @param criteria  a list of lists of {@link Criterion} representing a CNF
+   * @param translate translates a single {@link Criterion}
    * @return a {@link BooleanExpression} of the boolean inclusion expression
    */
-  private BooleanExpression inclusionExpr(List<List<Criterion>> criteria) {
-    return criteria.stream().map(this::orExpr).reduce(BooleanExpression.TRUE, AndExpression::of);
+  private static BooleanExpression inclusionExpr(List<List<Criterion>> criteria,
+      Function<Criterion, BooleanExpression> translate) {
+    return criteria.stream().map(clause -> orExpr(clause, translate))
+        .collect(AndExpression.collector());
   }
 
-  private BooleanExpression orExpr(List<Criterion> criteria) {
-    return criteria.stream().map(c -> c.toFhirPathFilter(mappingContext))
-        .reduce(BooleanExpression.FALSE, OrExpression::of);
+  private static BooleanExpression orExpr(List<Criterion> criteria,
+      Function<Criterion, BooleanExpression> translate) {
+    return criteria.stream().map(translate).collect(OrExpression.collector());
   }
 
   /**
    * Builds the exclusion expression as disjunctive normal form (DNF) of {@code criteria}.
    *
-   * @param criteria a list of lists of {@link Criterion} representing a DNF
+   * @param criteria  a list of lists of {@link Criterion} representing a DNF
+   * @param translate translates a single {@link Criterion}
    * @return a {@link BooleanExpression} of the boolean exclusion expression
    */
-  private BooleanExpression exclusionExpr(List<List<Criterion>> criteria) {
-    return criteria.stream().map(this::andExpr).reduce(BooleanExpression.FALSE, OrExpression::of);
+  private static BooleanExpression exclusionExpr(List<List<Criterion>> criteria,
+      Function<Criterion, BooleanExpression> translate) {
+    return criteria.stream().map(clause -> andExpr(clause, translate))
+        .collect(OrExpression.collector());
   }
 
-  private BooleanExpression andExpr(List<Criterion> criteria) {
-    return criteria.stream().map(c -> c.toFhirPathFilter(mappingContext))
-        .reduce(BooleanExpression.TRUE, AndExpression::of);
+  private static BooleanExpression andExpr(List<Criterion> criteria,
+      Function<Criterion, BooleanExpression> translate) {
+    return criteria.stream().map(translate).collect(AndExpression.collector());
+  }
+
+  /**
+   * Holds the default executor of {@link #toPathlingAsync(StructuredQuery) toPathlingAsync},
+   * created on first use.
+   */
+  private static final class DefaultExecutor {
+
+    private static final Executor INSTANCE = create();
+
+    /**
+     * Returns a virtual-thread-per-task executor if the Java version supports it, looked up
+     * reflectively because the code is compiled for Java 17.
+     */
+    private static Executor create() {
+      try {
+        return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+            .invoke(null);
+      } catch (ReflectiveOperationException e) {
+        logger.debug("Virtual threads aren't available, translating on the common pool.");
+        return ForkJoinPool.commonPool();
+      }
+    }
   }
 }
@@ -0,0 +1,19 @@
+package de.fdpg.sq2pathling;
+
+import static java.util.Objects.requireNonNull;
+
+import de.fdpg.sq2pathling.model.pathling.Parameters;
+
+/**
+ * The result of a translation together with the version of the mappings used.
+ *
+ * @param mappingVersion the {@link de.fdpg.sq2pathling.model.MappingContext#version() version} of
+ *                       the mapping context the translation was done with
+ * @param parameters     the translated pathling aggregate parameters
+ */
+public record VersionedParameters(long mappingVersion, Parameters parameters) {
+
+  public VersionedParameters {
+    requireNonNull(parameters);
+  }
+}
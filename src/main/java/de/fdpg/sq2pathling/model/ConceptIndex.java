@@ -0,0 +1,309 @@
+package de.fdpg.sq2pathling.model;
+
+import static java.util.Objects.requireNonNull;
+
+import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * An index over a tree of {@link TermCodeNode concepts} answering expansions without walking the
+ * tree.
+ * <p>
+ * All nodes are stored in pre-order in one array, so the subtree of each node is the contiguous
+ * slice from the node itself up to the end position of its subtree. Each term code is mapped to
+ * the sorted positions of its nodes. Positions inside the subtree of another node with the same
+ * term code are left out, because {@link TermCodeNode#expand(ContextualTermCode)} doesn't look into
+ * subtrees it already matched.
+ * <p>
+ * The position of a node and the end of its subtree form a nested interval, so a node is a
+ * descendant of another node exactly if its position lies inside the interval of the other node.
+ * Together with the parent of each node, this answers subsumption questions without walking the
+ * tree. The ancestors of each node at all distances that are a power of two find the lowest common
+ * ancestor in logarithmic time in the depth of the tree.
+ */
+public final class ConceptIndex {
+
+  private final ContextualTermCode[] preOrder;
+  private final int[] subtreeEnds;
+  private final int[] parents;
+  private final int[] depths;
+  private final int[][] jumps;
+  private final Map<ContextualTermCode, int[]> positions;
+  private final Map<ContextualTermCode, int[]> nestedPositions;
+
+  private ConceptIndex(ContextualTermCode[] preOrder, int[] subtreeEnds, int[] parents,
+      int[] depths, Map<ContextualTermCode, int[]> positions,
+      Map<ContextualTermCode, int[]> nestedPositions) {
+    this.preOrder = preOrder;
+    this.subtreeEnds = subtreeEnds;
+    this.parents = parents;
+    this.depths = depths;
+    this.jumps = jumps(parents, depths);
+    this.positions = positions;
+    this.nestedPositions = nestedPositions;
+  }
+
+  /**
+   * Builds the index of the tree below {@code root}.
+   *
+   * @param root the root node of the tree
+   * @return the index
+   */
+  public static ConceptIndex of(TermCodeNode root) {
+    var nodes = new ArrayDeque<TermCodeNode>();
+    var preOrder = new ArrayDeque<TermCodeNode>();
+    nodes.push(requireNonNull(root));
+    while (!nodes.isEmpty()) {
+      var node = nodes.pop();
+      preOrder.add(node);
+      for (int i = node.children().size() - 1; i >= 0; i--) {
+        nodes.push(node.children().get(i));
+      }
+    }
+
+    var termCodes = new ContextualTermCode[preOrder.size()];
+    var childCounts = new int[termCodes.length];
+    var i = 0;
+    for (var node : preOrder) {
+      termCodes[i] = node.contextualTermCode();
+      childCounts[i++] = node.children().size();
+    }
+    return of(termCodes, childCounts);
+  }
+
+  /**
+   * Builds the index of a tree given in pre-order.
+   *
+   * @param preOrder    the term codes of all nodes in pre-order
+   * @param childCounts the number of children of each node
+   * @return the index
+   */
+  static ConceptIndex of(ContextualTermCode[] preOrder, int[] childCounts) {
+    // going backwards, the subtrees of all children are already known
+    var subtreeEnds = new int[preOrder.length];
+    for (int i = preOrder.length - 1; i >= 0; i--) {
+      var end = i + 1;
+      for (int j = 0; j < childCounts[i]; j++) {
+        end = subtreeEnds[end];
+      }
+      subtreeEnds[i] = end;
+    }
+
+    // parents come before their children, so their depth is already known
+    var parents = new int[preOrder.length];
+    var depths = new int[preOrder.length];
+    if (preOrder.length > 0) {
+      parents[0] = -1;
+    }
+    for (int i = 0; i < preOrder.length; i++) {
+      var child = i + 1;
+      for (int j = 0; j < childCounts[i]; j++) {
+        parents[child] = i;
+        depths[child] = depths[i] + 1;
+        child = subtreeEnds[child];
+      }
+    }
+
+    var positions = new HashMap<ContextualTermCode, int[]>(preOrder.length * 4 / 3 + 1);
+    var nestedPositions = new HashMap<ContextualTermCode, int[]>();
+    for (int i = 0; i < preOrder.length; i++) {
+      var position = i;
+      positions.merge(preOrder[i], new int[]{i}, (existing, ignored) -> {
+        // kept positions are disjoint, so only the last one can contain this position
+        if (subtreeEnds[existing[existing.length - 1]] > position) {
+          nestedPositions.merge(preOrder[position], new int[]{position}, ConceptIndex::append);
+          return existing;
+        }
+        var merged = Arrays.copyOf(existing, existing.length + 1);
+        merged[existing.length] = position;
+        return merged;
+      });
+    }
+    return new ConceptIndex(preOrder, subtreeEnds, parents, depths, positions, nestedPositions);
+  }
+
+  private static int[] append(int[] positions, int[] position) {
+    var appended = Arrays.copyOf(positions, positions.length + 1);
+    appended[positions.length] = position[0];
+    return appended;
+  }
+
+  /**
+   * Expands {@code termCode} into itself and all its descendants in pre-order. Term codes appearing
+   * at several positions in the tree are expanded at each of them.
+   * <p>
+   * The result is the same as that of {@link TermCodeNode#expand(ContextualTermCode)} on the root
+   * node, but only takes time proportional to its size.
+   *
+   * @param termCode the term code to expand
+   * @return the expanded term codes or an empty stream if the term code isn't in the tree
+   */
+  public Stream<ContextualTermCode> expand(ContextualTermCode termCode) {
+    var nodePositions = positions.get(requireNonNull(termCode));
+    if (nodePositions == null) {
+      return Stream.of();
+    }
+    if (nodePositions.length == 1) {
+      return subtree(nodePositions[0]);
+    }
+    return Arrays.stream(nodePositions).boxed().flatMap(this::subtree);
+  }
+
+  /**
+   * Tests whether a node of {@code termCode} lies below a node of {@code ancestor}.
+   * <p>
+   * Takes logarithmic time in the number of positions of {@code ancestor}, which is usually one.
+   *
+   * @param termCode the term code to test
+   * @param ancestor the potential ancestor
+   * @return {@code true} if {@code termCode} is a proper descendant of {@code ancestor}
+   */
+  public boolean isDescendantOf(ContextualTermCode termCode, ContextualTermCode ancestor) {
+    var ancestorPositions = positions.get(requireNonNull(ancestor));
+    if (ancestorPositions == null) {
+      return false;
+    }
+    for (var position : allPositions(requireNonNull(termCode))) {
+      // the kept positions of the ancestor are disjoint, so only the preceding one can contain it
+      var index = Arrays.binarySearch(ancestorPositions, position);
+      var preceding = (index < 0 ? -index - 1 : index) - 1;
+      if (preceding >= 0 && contains(ancestorPositions[preceding], position)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the term code of the deepest node which is an ancestor of or the same as a node of
+   * {@code a} and a node of {@code b}.
+   * <p>
+   * Takes logarithmic time in the depth of the tree for term codes appearing only once.
+   *
+   * @param a the first term code
+   * @param b the second term code
+   * @return the lowest common ancestor or {@link Optional#empty() nothing} if one of the term codes
+   * isn't in the tree
+   */
+  public Optional<ContextualTermCode> lowestCommonAncestor(ContextualTermCode a,
+      ContextualTermCode b) {
+    var lowest = -1;
+    for (var positionA : allPositions(requireNonNull(a))) {
+      for (var positionB : allPositions(requireNonNull(b))) {
+        var ancestor = lowestCommonAncestor(positionA, positionB);
+        if (lowest == -1 || depths[ancestor] > depths[lowest]) {
+          lowest = ancestor;
+        }
+      }
+    }
+    return lowest == -1 ? Optional.empty() : Optional.of(preOrder[lowest]);
+  }
+
+  private int lowestCommonAncestor(int a, int b) {
+    if (contains(a, b)) {
+      return a;
+    }
+    // climb to the highest ancestor of a not containing b, whose parent is the lowest common one
+    for (int level = jumps.length - 1; level >= 0; level--) {
+      var ancestor = jumps[level][a];
+      if (ancestor != -1 && !contains(ancestor, b)) {
+        a = ancestor;
+      }
+    }
+    return parents[a];
+  }
+
+  /**
+   * Returns the ancestors of all nodes at the distances 1, 2, 4 and so on up to the depth of the
+   * tree, or -1 if there is none.
+   */
+  private static int[][] jumps(int[] parents, int[] depths) {
+    var maxDepth = Arrays.stream(depths).max().orElse(0);
+    var jumps = new int[Math.max(1, 32 - Integer.numberOfLeadingZeros(maxDepth))][];
+    jumps[0] = parents;
+    for (int level = 1; level < jumps.length; level++) {
+      var previous = jumps[level - 1];
+      var current = new int[parents.length];
+      for (int i = 0; i < parents.length; i++) {
+        current[i] = previous[i] == -1 ? -1 : previous[previous[i]];
+      }
+      jumps[level] = current;
+    }
+    return jumps;
+  }
+
+  /**
+   * Returns the term codes of all proper ancestors of the nodes of {@code termCode}, nearest first.
+   *
+   * @param termCode the term code whose ancestors to return
+   * @return the distinct ancestors or an empty list if the term code isn't in the tree
+   */
+  public List<ContextualTermCode> ancestors(ContextualTermCode termCode) {
+    var ancestors = new LinkedHashSet<ContextualTermCode>();
+    for (var position : allPositions(requireNonNull(termCode))) {
+      for (var ancestor = parents[position]; ancestor != -1; ancestor = parents[ancestor]) {
+        ancestors.add(preOrder[ancestor]);
+      }
+    }
+    return List.copyOf(ancestors);
+  }
+
+  /**
+   * Rebuilds the tree this index was built from.
+   * <p>
+   * The index doesn't keep the tree, so each call builds new nodes. The term codes are the ones of
+   * the original tree and the children are in their original order.
+   *
+   * @return the root node of the tree
+   */
+  public TermCodeNode toTree() {
+    // going backwards, the nodes of all children are already built
+    var nodes = new TermCodeNode[preOrder.length];
+    var children = new ArrayList<TermCodeNode>();
+    for (int i = preOrder.length - 1; i >= 0; i--) {
+      for (int child = i + 1; child < subtreeEnds[i]; child = subtreeEnds[child]) {
+        children.add(nodes[child]);
+        nodes[child] = null;
+      }
+      nodes[i] = new TermCodeNode(preOrder[i], children);
+      children.clear();
+    }
+    return nodes[0];
+  }
+
+  private int[] allPositions(ContextualTermCode termCode) {
+    var kept = positions.getOrDefault(termCode, new int[0]);
+    var nested = nestedPositions.get(termCode);
+    if (nested == null) {
+      return kept;
+    }
+    var all = Arrays.copyOf(kept, kept.length + nested.length);
+    System.arraycopy(nested, 0, all, kept.length, nested.length);
+    return all;
+  }
+
+  private boolean contains(int ancestor, int position) {
+    return ancestor <= position && position < subtreeEnds[ancestor];
+  }
+
+  private Stream<ContextualTermCode> subtree(int position) {
+    return Arrays.stream(preOrder, position, subtreeEnds[position]);
+  }
+
+  /**
+   * Returns the number of nodes in the tree.
+   *
+   * @return the number of nodes
+   */
+  public int size() {
+    return preOrder.length;
+  }
+}
@@ -0,0 +1,183 @@
+package de.fdpg.sq2pathling.model;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Finds the boundaries of JSON values in UTF-8 encoded bytes without parsing them.
+ * <p>
+ * Only strings and nesting are tracked, so finding boundaries is a lot faster than parsing. The
+ * JSON is assumed to be well-formed. Malformed JSON is either detected here or by the parser of
+ * the parts later.
+ */
+final class JsonSplitter {
+
+  private final byte[] json;
+
+  private JsonSplitter(byte[] json) {
+    this.json = json;
+  }
+
+  static JsonSplitter of(byte[] json) {
+    return new JsonSplitter(json);
+  }
+
+  /**
+   * Returns the position of the first value at or after {@code position}.
+   *
+   * @param position the position to start at
+   * @return the position of the value
+   * @throws IOException if there is only whitespace
+   */
+  int valueStart(int position) throws IOException {
+    var start = skipWhitespace(position);
+    if (start == json.length) {
+      throw new IOException("Unexpected end of JSON input.");
+    }
+    return start;
+  }
+
+  /**
+   * Returns the position after the end of the value starting at {@code start}.
+   *
+   * @param start the position of the first byte of the value
+   * @return the position after the last byte of the value
+   * @throws IOException if the value doesn't end
+   */
+  int valueEnd(int start) throws IOException {
+    return switch (json[start]) {
+      case '"' -> stringEnd(start);
+      case '{', '[' -> containerEnd(start);
+      default -> {
+        var position = start;
+        while (position < json.length && !isDelimiter(json[position])) {
+          position++;
+        }
+        yield position;
+      }
+    };
+  }
+
+  /**
+   * Returns the start and end positions of all elements of the array starting at
+   * {@code arrayStart}, alternating start and end, followed by the position after the end of the
+   * array itself.
+   * <p>
+   * The array is scanned only once, so there is no need to call {@link #valueEnd(int)} on it.
+   *
+   * @param arrayStart the position of the {@code [} of the array
+   * @return the start and end positions of the elements and the end of the array
+   * @throws IOException if {@code arrayStart} isn't the start of an array or the array doesn't end
+   */
+  int[] elements(int arrayStart) throws IOException {
+    expect(arrayStart, '[');
+    var bounds = new int[16];
+    var size = 0;
+    var position = valueStart(arrayStart + 1);
+    if (json[position] == ']') {
+      return new int[]{position + 1};
+    }
+    while (true) {
+      var end = valueEnd(position);
+      if (size + 3 > bounds.length) {
+        bounds = Arrays.copyOf(bounds, bounds.length * 2);
+      }
+      bounds[size++] = position;
+      bounds[size++] = end;
+      position = valueStart(end);
+      if (json[position] == ']') {
+        bounds[size++] = position + 1;
+        return Arrays.copyOf(bounds, size);
+      }
+      expect(position, ',');
+      position = valueStart(position + 1);
+    }
+  }
+
+  /**
+   * Returns the start position of the value of the field {@code name} of the object starting at
+   * {@code objectStart}.
+   *
+   * @param objectStart the position of the <code>{</code> of the object
+   * @param name        the name of the field
+   * @return the position of the value or {@code -1} if the object has no such field
+   * @throws IOException if {@code objectStart} isn't the start of an object or the object doesn't
+   *                     end
+   */
+  int fieldValue(int objectStart, String name) throws IOException {
+    expect(objectStart, '{');
+    var nameBytes = ('"' + name + '"').getBytes(UTF_8);
+    var position = valueStart(objectStart + 1);
+    if (json[position] == '}') {
+      return -1;
+    }
+    while (true) {
+      expect(position, '"');
+      var nameEnd = stringEnd(position);
+      var colon = valueStart(nameEnd);
+      expect(colon, ':');
+      var valueStart = valueStart(colon + 1);
+      if (Arrays.equals(json, position, nameEnd, nameBytes, 0, nameBytes.length)) {
+        return valueStart;
+      }
+      position = valueStart(valueEnd(valueStart));
+      if (json[position] == '}') {
+        return -1;
+      }
+      expect(position, ',');
+      position = valueStart(position + 1);
+    }
+  }
+
+  private int stringEnd(int start) throws IOException {
+    for (int i = start + 1; i < json.length; i++) {
+      if (json[i] == '\\') {
+        i++;
+      } else if (json[i] == '"') {
+        return i + 1;
+      }
+    }
+    throw new IOException("Unterminated JSON string at position %d.".formatted(start));
+  }
+
+  private int containerEnd(int start) throws IOException {
+    var depth = 0;
+    for (int i = start; i < json.length; i++) {
+      switch (json[i]) {
+        case '"' -> i = stringEnd(i) - 1;
+        case '{', '[' -> depth++;
+        case '}', ']' -> {
+          if (--depth == 0) {
+            return i + 1;
+          }
+        }
+        default -> {
+        }
+      }
+    }
+    throw new IOException("Unterminated JSON value at position %d.".formatted(start));
+  }
+
+  private int skipWhitespace(int position) {
+    while (position < json.length && isWhitespace(json[position])) {
+      position++;
+    }
+    return position;
+  }
+
+  private void expect(int position, char expected) throws IOException {
+    if (position >= json.length || json[position] != expected) {
+      throw new IOException("Expected `%s` at position %d.".formatted(expected, position));
+    }
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+  }
+
+  private static boolean isDelimiter(byte b) {
+    return b == ',' || b == '}' || b == ']' || b == ':' || isWhitespace(b);
+  }
+}
@@ -0,0 +1,40 @@
+package de.fdpg.sq2pathling.model;
+
+import static java.util.Objects.requireNonNull;
+
+import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * A {@link MappingStore} holding all mappings in an unmodifiable map.
+ */
+final class MapMappingStore implements MappingStore {
+
+  private final Map<ContextualTermCode, Mapping> mappings;
+
+  MapMappingStore(Map<ContextualTermCode, Mapping> mappings) {
+    this.mappings = requireNonNull(mappings);
+  }
+
+  @Override
+  public Optional<Mapping> find(ContextualTermCode key) {
+    return Optional.ofNullable(mappings.get(requireNonNull(key)));
+  }
+
+  @Override
+  public boolean contains(ContextualTermCode key) {
+    return mappings.containsKey(requireNonNull(key));
+  }
+
+  @Override
+  public int size() {
+    return mappings.size();
+  }
+
+  @Override
+  public Stream<Mapping> mappings() {
+    return mappings.values().stream();
+  }
+}
@@ -0,0 +1,336 @@
+package de.fdpg.sq2pathling.model;
+
+import static de.fdpg.sq2pathling.model.MappingSnapshot.CODING_MODIFIER;
+import static de.fdpg.sq2pathling.model.MappingSnapshot.FOOTER_SIZE;
+import static de.fdpg.sq2pathling.model.MappingSnapshot.MAGIC;
+import static de.fdpg.sq2pathling.model.MappingSnapshot.NULL;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import de.fdpg.sq2pathling.LruCache;
+import de.fdpg.sq2pathling.model.MappingSnapshot.StringModifier;
+import de.fdpg.sq2pathling.model.common.TermCode;
+import de.fdpg.sq2pathling.model.structured_query.CodingModifier;
+import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
+import de.fdpg.sq2pathling.model.structured_query.Modifier;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A {@link MappingStore} over a memory-mapped {@link MappingSnapshot}.
+ * <p>
+ * Only the hash index of the snapshot is consulted on lookups. A {@link Mapping} is decoded from
+ * the mapped file the first time it is found and kept in a small LRU cache afterwards. So the heap
+ * holds only the mappings actually used, while the file itself lives in the page cache of the
+ * operating system, which is shared between all processes mapping the same snapshot.
+ * <p>
+ * The mapped file stays valid until the store becomes unreachable. Snapshots should therefore be
+ * replaced by moving a new file into place and never be modified in place.
+ */
+public final class MappedMappingStore implements MappingStore {
+
+  /**
+   * The default number of decoded mappings to cache.
+   */
+  public static final int DEFAULT_CACHE_SIZE = 4096;
+
+  private static final int TERM_CODE_SIZE = 3 * Integer.BYTES;
+  private static final int SLOT_SIZE = 2 * Integer.BYTES;
+
+  private final ByteBuffer buffer;
+  private final int termCodesOffset;
+  private final int treeOffset;
+  private final int stringOffsetsOffset;
+  private final int mappingCount;
+  private final int slotsOffset;
+  private final int slotMask;
+  private final LruCache<ContextualTermCode, Mapping> cache;
+
+  private MappedMappingStore(ByteBuffer buffer, int cacheSize) {
+    this.buffer = buffer;
+    var footer = buffer.limit() - FOOTER_SIZE;
+    termCodesOffset = buffer.getInt(footer);
+    treeOffset = buffer.getInt(footer + 4);
+    var indexOffset = buffer.getInt(footer + 8);
+    stringOffsetsOffset = buffer.getInt(footer + 12);
+    mappingCount = buffer.getInt(indexOffset);
+    slotMask = buffer.getInt(indexOffset + 4) - 1;
+    slotsOffset = indexOffset + 8;
+    cache = LruCache.of(cacheSize);
+  }
+
+  /**
+   * Maps the snapshot at {@code snapshot} into memory using the
+   * {@link #DEFAULT_CACHE_SIZE default cache size}.
+   *
+   * @param snapshot            the path of the snapshot file
+   * @param expectedFingerprint the fingerprint of the mappings the snapshot has to be created from
+   * @return the mapping store
+   * @throws StaleSnapshotException if the snapshot has another format version or fingerprint
+   * @throws IOException            if the snapshot can't be read
+   */
+  public static MappedMappingStore open(Path snapshot, long expectedFingerprint)
+      throws IOException {
+    return open(snapshot, expectedFingerprint, DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * Maps the snapshot at {@code snapshot} into memory.
+   *
+   * @param snapshot            the path of the snapshot file
+   * @param expectedFingerprint the fingerprint of the mappings the snapshot has to be created from
+   * @param cacheSize           the number of decoded mappings to cache
+   * @return the mapping store
+   * @throws StaleSnapshotException if the snapshot has another format version or fingerprint
+   * @throws IOException            if the snapshot can't be read
+   */
+  public static MappedMappingStore open(Path snapshot, long expectedFingerprint, int cacheSize)
+      throws IOException {
+    ByteBuffer buffer;
+    try (var channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Mapping snapshot `%s` is too large.".formatted(snapshot));
+      }
+      buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (buffer.limit() < 16 + FOOTER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a mapping snapshot.");
+    }
+    var formatVersion = buffer.getInt(4);
+    if (formatVersion != MappingSnapshot.FORMAT_VERSION) {
+      throw new StaleSnapshotException("Format version %d differs from current version %d."
+          .formatted(formatVersion, MappingSnapshot.FORMAT_VERSION));
+    }
+    var fingerprint = buffer.getLong(8);
+    if (fingerprint != expectedFingerprint) {
+      throw new StaleSnapshotException("Fingerprint %016x differs from expected fingerprint %016x."
+          .formatted(fingerprint, expectedFingerprint));
+    }
+    if (buffer.getInt(buffer.limit() - Integer.BYTES) != MAGIC) {
+      throw new IOException("Truncated mapping snapshot.");
+    }
+    return new MappedMappingStore(buffer, cacheSize);
+  }
+
+  @Override
+  public Optional<Mapping> find(ContextualTermCode key) {
+    var mapping = cache.get(requireNonNull(key));
+    if (mapping == null) {
+      var offset = mappingOffset(key);
+      if (offset == NULL) {
+        return Optional.empty();
+      }
+      mapping = mapping(offset);
+      cache.put(key, mapping);
+    }
+    return Optional.of(mapping);
+  }
+
+  @Override
+  public boolean contains(ContextualTermCode key) {
+    return mappingOffset(requireNonNull(key)) != NULL;
+  }
+
+  @Override
+  public int size() {
+    return mappingCount;
+  }
+
+  @Override
+  public Stream<Mapping> mappings() {
+    return IntStream.rangeClosed(0, slotMask)
+        .map(slot -> buffer.getInt(slotsOffset + slot * SLOT_SIZE + 4))
+        .filter(offset -> offset != NULL)
+        .mapToObj(this::mapping);
+  }
+
+  /**
+   * Decodes the concept tree of the snapshot.
+   *
+   * @return the concept tree or {@code null} if the snapshot has none
+   */
+  public TermCodeNode conceptTree() {
+    var nodeCount = buffer.getInt(treeOffset);
+    var termCodes = new TermCode[buffer.getInt(termCodesOffset - Integer.BYTES)];
+    var nodeTermCodes = new ContextualTermCode[nodeCount];
+    var childCounts = new int[nodeCount];
+    var position = treeOffset + 4;
+    for (int i = 0; i < nodeCount; i++) {
+      nodeTermCodes[i] = ContextualTermCode.of(termCode(termCodes, buffer.getInt(position)),
+          termCode(termCodes, buffer.getInt(position + 4)));
+      childCounts[i] = buffer.getInt(position + 8);
+      position += 12;
+    }
+    return MappingSnapshot.conceptTree(nodeTermCodes, childCounts);
+  }
+
+  private TermCode termCode(TermCode[] termCodes, int id) {
+    if (id == NULL) {
+      return null;
+    }
+    var termCode = termCodes[id];
+    if (termCode == null) {
+      termCode = termCodes[id] = termCode(id);
+    }
+    return termCode;
+  }
+
+  private int mappingOffset(ContextualTermCode key) {
+    var hash = MappingSnapshot.keyHash(key);
+    var slot = hash & slotMask;
+    while (true) {
+      var position = slotsOffset + slot * SLOT_SIZE;
+      var offset = buffer.getInt(position + 4);
+      if (offset == NULL || buffer.getInt(position) == hash && keyEquals(offset, key)) {
+        return offset;
+      }
+      slot = (slot + 1) & slotMask;
+    }
+  }
+
+  private boolean keyEquals(int offset, ContextualTermCode key) {
+    return termCodeEquals(buffer.getInt(offset), key.context())
+        && termCodeEquals(buffer.getInt(offset + 4), key.termCode());
+  }
+
+  private boolean termCodeEquals(int id, TermCode termCode) {
+    if (id == NULL || termCode == null) {
+      return id == NULL && termCode == null;
+    }
+    var position = termCodesOffset + id * TERM_CODE_SIZE;
+    return stringEquals(buffer.getInt(position + 4), termCode.code())
+        && stringEquals(buffer.getInt(position), termCode.system());
+  }
+
+  /**
+   * Compares the UTF-8 bytes of the string with {@code id} to {@code string} without decoding
+   * them, so that lookups don't allocate. Unpaired surrogates are compared as {@code ?}, like
+   * {@link String#getBytes(java.nio.charset.Charset)} encodes them.
+   */
+  private boolean stringEquals(int id, String string) {
+    var position = buffer.getInt(stringOffsetsOffset + id * Integer.BYTES);
+    var end = position + Integer.BYTES + buffer.getInt(position);
+    position += Integer.BYTES;
+    for (int i = 0; i < string.length(); i++) {
+      int codePoint = string.charAt(i);
+      if (Character.isSurrogate((char) codePoint)) {
+        if (Character.isHighSurrogate((char) codePoint) && i + 1 < string.length()
+            && Character.isLowSurrogate(string.charAt(i + 1))) {
+          codePoint = Character.toCodePoint((char) codePoint, string.charAt(++i));
+        } else {
+          codePoint = '?';
+        }
+      }
+      var length = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+      if (end - position < length || buffer.get(position) != leadByte(codePoint, length)) {
+        return false;
+      }
+      for (int j = 1; j < length; j++) {
+        var continuation = (byte) (0x80 | (codePoint >> (6 * (length - 1 - j))) & 0x3F);
+        if (buffer.get(position + j) != continuation) {
+          return false;
+        }
+      }
+      position += length;
+    }
+    return position == end;
+  }
+
+  private static byte leadByte(int codePoint, int length) {
+    return (byte) switch (length) {
+      case 1 -> codePoint;
+      case 2 -> 0xC0 | codePoint >> 6;
+      case 3 -> 0xE0 | codePoint >> 12;
+      default -> 0xF0 | codePoint >> 18;
+    };
+  }
+
+  private TermCode termCode(int id) {
+    if (id == NULL) {
+      return null;
+    }
+    var position = termCodesOffset + id * TERM_CODE_SIZE;
+    return TermCode.of(string(buffer.getInt(position)), string(buffer.getInt(position + 4)),
+        string(buffer.getInt(position + 8)));
+  }
+
+  private String string(int id) {
+    if (id == NULL) {
+      return null;
+    }
+    var position = buffer.getInt(stringOffsetsOffset + id * Integer.BYTES);
+    var bytes = new byte[buffer.getInt(position)];
+    buffer.get(position + 4, bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  private Mapping mapping(int offset) {
+    var record = new Record(offset);
+    var key = ContextualTermCode.of(termCode(record.next()), termCode(record.next()));
+    var resourceType = string(record.next());
+    var termCodePath = string(record.next());
+    var valueFhirPath = string(record.next());
+    var valueType = string(record.next());
+    var timeRestrictionPath = string(record.next());
+    var fixedCriteria = new ArrayList<Modifier>();
+    for (int i = record.next(); i > 0; i--) {
+      fixedCriteria.add(modifier(record));
+    }
+    var attributeMappings = new ArrayList<AttributeMapping>();
+    for (int i = record.next(); i > 0; i--) {
+      attributeMappings.add(AttributeMapping.of(string(record.next()), termCode(record.next()),
+          string(record.next())));
+    }
+    return new Mapping(key, resourceType, termCodePath, valueFhirPath, valueType, fixedCriteria,
+        attributeMappings, timeRestrictionPath);
+  }
+
+  private Modifier modifier(Record record) {
+    var type = buffer.get(record.position++);
+    var path = string(record.next());
+    var count = record.next();
+    if (type == CODING_MODIFIER) {
+      var concepts = new TermCode[count];
+      for (int i = 0; i < count; i++) {
+        concepts[i] = termCode(record.next());
+      }
+      return CodingModifier.of(path, concepts);
+    }
+    var values = new ArrayList<String>(count);
+    for (int i = 0; i < count; i++) {
+      values.add(string(record.next()));
+    }
+    try {
+      return new StringModifier(type, path, values).toModifier();
+    } catch (IllegalArgumentException e) {
+      throw new IllegalStateException("Corrupt mapping snapshot: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * The read position inside a mapping record. Only absolute reads are used on the shared buffer,
+   * so decoding is thread-safe.
+   */
+  private final class Record {
+
+    private int position;
+
+    private Record(int position) {
+      this.position = position;
+    }
+
+    private int next() {
+      var value = buffer.getInt(position);
+      position += Integer.BYTES;
+      return value;
+    }
+  }
+}
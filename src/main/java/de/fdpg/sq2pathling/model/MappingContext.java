@@ -2,14 +2,23 @@ package de.fdpg.sq2pathling.model;
 
 import static java.util.Objects.requireNonNull;
 
+import de.fdpg.sq2pathling.CacheStats;
+import de.fdpg.sq2pathling.LruCache;
 import de.fdpg.sq2pathling.model.common.TermCode;
+import de.fdpg.sq2pathling.model.common.TermCodePool;
+import de.fdpg.sq2pathling.model.fhirpath.BooleanExpression;
+import de.fdpg.sq2pathling.model.fhirpath.Expression;
 import de.fdpg.sq2pathling.model.structured_query.Concept;
 import de.fdpg.sq2pathling.model.structured_query.ContextualConcept;
 import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
+import de.fdpg.sq2pathling.model.structured_query.Criterion;
 import de.fdpg.sq2pathling.model.structured_query.TranslationException;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -20,12 +29,38 @@ import java.util.stream.Stream;
  */
 public class MappingContext {
 
-  private final Map<ContextualTermCode, Mapping> mappings;
-  private final TermCodeNode conceptTree;
+  /**
+   * The maximum total number of term codes held by the expansion cache of each mapping context.
+   */
+  public static final long EXPANSION_CACHE_WEIGHT = 1 << 18;
+
+  /**
+   * The maximum total number of expression nodes held by the criterion cache of each mapping
+   * context.
+   */
+  public static final long CRITERION_CACHE_WEIGHT = 1 << 18;
 
-  private MappingContext(Map<ContextualTermCode, Mapping> mappings, TermCodeNode conceptTree) {
-    this.mappings = mappings;
-    this.conceptTree = conceptTree;
+  private static final AtomicLong VERSIONS = new AtomicLong();
+
+  private final long version;
+  private final MappingStore mappings;
+  private final ConceptIndex conceptIndex;
+  private final UnaryOperator<ContextualTermCode> canonicalizer;
+  private final LruCache<ContextualConcept, List<ContextualTermCode>> expansions;
+  private final LruCache<CriterionKey, BooleanExpression> translations;
+
+  MappingContext(MappingStore mappings, TermCodeNode conceptTree) {
+    this(mappings, conceptTree, TermCodePool.of());
+  }
+
+  private MappingContext(MappingStore mappings, TermCodeNode conceptTree,
+      TermCodePool termCodePool) {
+    this.version = VERSIONS.incrementAndGet();
+    this.mappings = requireNonNull(mappings);
+    this.conceptIndex = conceptTree == null ? null : ConceptIndex.of(conceptTree);
+    this.canonicalizer = termCodePool.canonicalizer();
+    this.expansions = LruCache.of(EXPANSION_CACHE_WEIGHT, codes -> codes.size() + 1);
+    this.translations = LruCache.of(CRITERION_CACHE_WEIGHT, Expression::size);
   }
 
   /**
@@ -34,7 +69,7 @@ public class MappingContext {
    * @return the mapping context
    */
   public static MappingContext of() {
-    return new MappingContext(Map.of(), null);
+    return new MappingContext(new MapMappingStore(Map.of()), null);
   }
 
   /**
@@ -45,7 +80,120 @@ public class MappingContext {
    * @return the mapping context
    */
   public static MappingContext of(Map<ContextualTermCode, Mapping> mappings, TermCodeNode conceptTree) {
-    return new MappingContext(Map.copyOf(mappings), conceptTree);
+    return new MappingContext(MappingStore.of(mappings), conceptTree);
+  }
+
+  /**
+   * Returns a mapping context.
+   *
+   * @param mappings    the store of the mappings
+   * @param conceptTree a tree of concepts to expand (can be null)
+   * @return the mapping context
+   */
+  public static MappingContext of(MappingStore mappings, TermCodeNode conceptTree) {
+    return new MappingContext(mappings, conceptTree);
+  }
+
+  /**
+   * Returns a mapping context taking ownership of {@code mappings} without copying them.
+   *
+   * @param mappings    the unmodifiable mappings keyed by their term code
+   * @param conceptTree a tree of concepts to expand (can be null)
+   * @return the mapping context
+   */
+  static MappingContext ofOwned(Map<ContextualTermCode, Mapping> mappings, TermCodeNode conceptTree) {
+    return ofOwned(mappings, conceptTree, TermCodePool.of());
+  }
+
+  /**
+   * Returns a mapping context taking ownership of {@code mappings} and of the pool their term codes
+   * were interned in.
+   * <p>
+   * The term codes of expanded concepts are canonicalized against {@code termCodePool}, so that
+   * lookups of them in the mappings and the concept tree are identity checks. The mapping context
+   * keeps only the {@link TermCodePool#canonicalizer() canonicalizer} of the pool, so nothing may be
+   * interned into the pool afterwards.
+   *
+   * @param mappings     the unmodifiable mappings keyed by their term code
+   * @param conceptTree  a tree of concepts to expand (can be null)
+   * @param termCodePool the pool the term codes of the mappings and the concept tree are interned in
+   * @return the mapping context
+   */
+  static MappingContext ofOwned(Map<ContextualTermCode, Mapping> mappings, TermCodeNode conceptTree,
+      TermCodePool termCodePool) {
+    return new MappingContext(new MapMappingStore(mappings), conceptTree, termCodePool);
+  }
+
+  /**
+   * Returns the version of this mapping context.
+   * <p>
+   * Versions are unique within the running process and increase with every mapping context
+   * created.
+   *
+   * @return the version
+   */
+  public long version() {
+    return version;
+  }
+
+  MappingStore mappings() {
+    return mappings;
+  }
+
+  /**
+   * Returns the concept tree of this mapping context.
+   * <p>
+   * Only the {@link ConceptIndex index} of the tree is kept, so the tree is rebuilt from it on each
+   * call.
+   */
+  TermCodeNode conceptTree() {
+    return conceptIndex == null ? null : conceptIndex.toTree();
+  }
+
+  /**
+   * Returns the statistics of the cache of concept expansions.
+   * <p>
+   * Each mapping context has its own cache, so a new version of the mappings always starts with an
+   * empty cache.
+   *
+   * @return the cache statistics
+   */
+  public CacheStats expansionCacheStats() {
+    return expansions.stats();
+  }
+
+  /**
+   * Returns the statistics of the cache of translated criteria.
+   * <p>
+   * Each mapping context has its own cache, so a new version of the mappings always starts with an
+   * empty cache.
+   *
+   * @return the cache statistics
+   */
+  public CacheStats criterionCacheStats() {
+    return translations.stats();
+  }
+
+  /**
+   * Translates {@code criterion} into a FHIR Path filter expression using this mapping context.
+   * <p>
+   * Translators use this method only if {@link de.fdpg.sq2pathling.Translator#withCriterionCache
+   * criterion caching} is on.
+   * <p>
+   * Translations are cached by the value of the criterion, so criteria repeated within a query or
+   * across queries, like the unchanged criteria of an edited query, are translated only once. Age
+   * criteria are translated relative to the current date, so translations are cached per date.
+   * The cache is bounded by the total size of the cached expressions, so a few criteria expanding
+   * into huge expressions can't pin more memory than many small ones. Failed translations aren't
+   * cached.
+   *
+   * @param criterion the criterion to translate
+   * @return the filter expression
+   * @throws TranslationException if {@code criterion} can't be translated
+   */
+  public BooleanExpression translate(Criterion criterion) {
+    return translations.computeIfAbsent(new CriterionKey(requireNonNull(criterion),
+        LocalDate.now()), key -> criterion.toFhirPathFilter(this));
   }
 
   /**
@@ -55,27 +203,76 @@ public class MappingContext {
    * @return either the Mapping or {@code Optional#empty() nothing}
    */
   public Optional<Mapping> findMapping(ContextualTermCode key) {
-    return Optional.ofNullable(mappings.get(requireNonNull(key)));
+    return mappings.find(requireNonNull(key));
   }
 
   /**
    * Expands {@code concept} into a stream of {@link TermCode TermCodes}.
+   * <p>
+   * Expansions are cached, so expanding the same concept again doesn't walk the concept tree.
    *
    * @param concept the concept to expand
    * @return the stream of TermCodes
    */
   public Stream<ContextualTermCode> expandConcept(ContextualConcept concept) {
-    List<ContextualTermCode> expandedCodes = conceptTree == null ? List.of() : expandCodes(concept);
-    List<ContextualTermCode> concepts = expandedCodes.isEmpty() ? concept.contextualTermCodes() : expandedCodes;
-    List<ContextualTermCode> filtered = concepts.stream()
-        .filter(mappings::containsKey).toList();
+    List<ContextualTermCode> filtered = expansions.computeIfAbsent(requireNonNull(concept),
+        this::expandAndFilter);
     if (filtered.isEmpty()) {
       throw new TranslationException("Failed to expand the concept " + concept + ".");
     }
     return filtered.stream();
   }
 
+  private List<ContextualTermCode> expandAndFilter(ContextualConcept concept) {
+    List<ContextualTermCode> expandedCodes = conceptIndex == null ? List.of() : expandCodes(concept);
+    List<ContextualTermCode> concepts = expandedCodes.isEmpty() ? contextualTermCodes(concept) : expandedCodes;
+    return concepts.stream().filter(mappings::contains).toList();
+  }
+
+  /**
+   * Tests whether {@code termCode} lies below {@code ancestor} in the concept tree.
+   *
+   * @param termCode the term code to test
+   * @param ancestor the potential ancestor
+   * @return {@code true} if {@code termCode} is a proper descendant of {@code ancestor}
+   */
+  public boolean isDescendantOf(ContextualTermCode termCode, ContextualTermCode ancestor) {
+    return conceptIndex != null && conceptIndex.isDescendantOf(termCode, ancestor);
+  }
+
+  /**
+   * Returns the lowest common ancestor of {@code a} and {@code b} in the concept tree. If one of the
+   * term codes is an ancestor of the other, it is the result itself.
+   *
+   * @param a the first term code
+   * @param b the second term code
+   * @return the lowest common ancestor or {@link Optional#empty() nothing} if one of the term codes
+   * isn't in the concept tree
+   */
+  public Optional<ContextualTermCode> lowestCommonAncestor(ContextualTermCode a,
+      ContextualTermCode b) {
+    return conceptIndex == null ? Optional.empty() : conceptIndex.lowestCommonAncestor(a, b);
+  }
+
+  /**
+   * Returns all ancestors of {@code termCode} in the concept tree, nearest first.
+   *
+   * @param termCode the term code whose ancestors to return
+   * @return the ancestors or an empty list if the term code isn't in the concept tree
+   */
+  public List<ContextualTermCode> ancestors(ContextualTermCode termCode) {
+    return conceptIndex == null ? List.of() : conceptIndex.ancestors(termCode);
+  }
+
   private List<ContextualTermCode> expandCodes(ContextualConcept concept) {
-    return concept.contextualTermCodes().stream().flatMap(conceptTree::expand).toList();
+    return contextualTermCodes(concept).stream().flatMap(conceptIndex::expand).toList();
+  }
+
+  private List<ContextualTermCode> contextualTermCodes(ContextualConcept concept) {
+    return concept.contextualTermCodes().stream().map(canonicalizer).toList();
+  }
+
+  private record CriterionKey(Criterion criterion, LocalDate date) {
+
   }
 }
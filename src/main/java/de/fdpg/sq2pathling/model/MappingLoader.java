@@ -0,0 +1,452 @@
+package de.fdpg.sq2pathling.model;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.fdpg.sq2pathling.model.common.TermCode;
+import de.fdpg.sq2pathling.model.common.TermCodePool;
+import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
+import de.fdpg.sq2pathling.model.structured_query.Modifier;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the mappings of a {@code mapping_pathling.json} file.
+ * <p>
+ * The file is read token by token, building the {@link Mapping mappings} directly from the JSON
+ * tokens without materializing the whole array or intermediate JSON trees first. All strings and
+ * term codes are interned in a {@link TermCodePool pool} of their own for each load, which is handed
+ * over to the resulting {@link MappingContext} and released together with it.
+ */
+public final class MappingLoader {
+
+  /**
+   * The name of the mapping file entry in a {@code mapping.zip}.
+   */
+  public static final String MAPPING_ENTRY = "mapping/mapping_pathling.json";
+
+  /**
+   * The name of the concept tree file entry in a {@code mapping.zip}.
+   */
+  public static final String CONCEPT_TREE_ENTRY = "mapping/mapping_tree.json";
+
+  private static final Logger logger = LoggerFactory.getLogger(MappingLoader.class);
+
+  /**
+   * Used for the concept tree and as codec for the rare {@code fixedCriteria}.
+   */
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private MappingLoader() {
+  }
+
+  /**
+   * Reads all mappings of a {@code mapping_pathling.json} file.
+   *
+   * @param in the input stream of the JSON array of mappings
+   * @return an unmodifiable map of the mappings keyed by their contextual term code
+   * @throws IOException if the input can't be read or isn't a valid mapping file
+   */
+  public static Map<ContextualTermCode, Mapping> readMappings(InputStream in) throws IOException {
+    return readMappings(in, TermCodePool.of());
+  }
+
+  private static Map<ContextualTermCode, Mapping> readMappings(InputStream in, TermCodePool pool)
+      throws IOException {
+    var start = System.nanoTime();
+    var mappings = new HashMap<ContextualTermCode, Mapping>();
+    try (var parser = MAPPER.getFactory().createParser(in)) {
+      readMappings(parser, mappings, pool);
+    }
+    logger.info("Loaded {} mappings in {} ms", mappings.size(),
+        (System.nanoTime() - start) / 1_000_000);
+    return Collections.unmodifiableMap(mappings);
+  }
+
+  /**
+   * Reads the mappings of a {@code mapping_pathling.json} file into a {@link MappingContext}.
+   * <p>
+   * The mappings are handed over to the mapping context without copying them again.
+   *
+   * @param in          the input stream of the JSON array of mappings
+   * @param conceptTree a tree of concepts to expand (can be null)
+   * @return the mapping context
+   * @throws IOException if the input can't be read or isn't a valid mapping file
+   */
+  public static MappingContext load(InputStream in, TermCodeNode conceptTree) throws IOException {
+    return load(in, conceptTree, TermCodePool.of());
+  }
+
+  private static MappingContext load(InputStream in, TermCodeNode conceptTree, TermCodePool pool)
+      throws IOException {
+    return MappingContext.ofOwned(readMappings(in, pool), conceptTree, pool);
+  }
+
+  /**
+   * Reads the mappings and the concept tree of a {@code mapping.zip} into a
+   * {@link MappingContext}.
+   *
+   * @param zipFile the zip file containing the {@link #MAPPING_ENTRY mappings} and the
+   *                {@link #CONCEPT_TREE_ENTRY concept tree}
+   * @return the mapping context
+   * @throws IOException if one of the entries can't be read or is invalid
+   */
+  public static MappingContext load(ZipFile zipFile) throws IOException {
+    var termCodePool = TermCodePool.of();
+    TermCodeNode conceptTree;
+    try (var in = zipFile.getInputStream(entry(zipFile, CONCEPT_TREE_ENTRY))) {
+      conceptTree = readConceptTree(in, termCodePool);
+    }
+    try (var in = zipFile.getInputStream(entry(zipFile, MAPPING_ENTRY))) {
+      return load(in, conceptTree, termCodePool);
+    }
+  }
+
+  /**
+   * Reads the mappings and the concept tree of a {@code mapping.zip} into a {@link MappingContext}
+   * using all threads of the common fork-join pool.
+   *
+   * @param zipFile the zip file containing the {@link #MAPPING_ENTRY mappings} and the
+   *                {@link #CONCEPT_TREE_ENTRY concept tree}
+   * @return the mapping context
+   * @throws IOException if one of the entries can't be read or is invalid
+   * @see #loadParallel(ZipFile, ForkJoinPool)
+   */
+  public static MappingContext loadParallel(ZipFile zipFile) throws IOException {
+    return loadParallel(zipFile, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Reads the mappings and the concept tree of a {@code mapping.zip} into a {@link MappingContext}
+   * using all threads of {@code pool}.
+   * <p>
+   * Both entries are decompressed at the same time. The JSON of each entry is split into parts by
+   * {@link JsonSplitter} first. The mapping array is split into chunks of consecutive mappings and
+   * the concept tree into large subtrees. All parts are parsed independently and merged afterwards.
+   * The result is the same as that of {@link #load(ZipFile)}.
+   *
+   * @param zipFile the zip file containing the {@link #MAPPING_ENTRY mappings} and the
+   *                {@link #CONCEPT_TREE_ENTRY concept tree}
+   * @param pool    the pool to use
+   * @return the mapping context
+   * @throws IOException if one of the entries can't be read or is invalid
+   */
+  public static MappingContext loadParallel(ZipFile zipFile, ForkJoinPool pool)
+      throws IOException {
+    var start = System.nanoTime();
+    var mappingEntry = entry(zipFile, MAPPING_ENTRY);
+    var conceptTreeEntry = entry(zipFile, CONCEPT_TREE_ENTRY);
+    var chunkCount = pool.getParallelism() * 4;
+    var termCodePool = TermCodePool.of();
+    var mappingsTask = task(() -> readMappings(readAllBytes(zipFile, mappingEntry), chunkCount,
+        termCodePool));
+    var conceptTreeTask = task(() -> readConceptTree(readAllBytes(zipFile, conceptTreeEntry),
+        chunkCount, termCodePool));
+    var mappingContext = invoke(pool, task(() -> {
+      ForkJoinTask.invokeAll(mappingsTask, conceptTreeTask);
+      return MappingContext.ofOwned(mappingsTask.join(), conceptTreeTask.join(), termCodePool);
+    }));
+    logger.info("Loaded mappings and concept tree in parallel in {} ms",
+        (System.nanoTime() - start) / 1_000_000);
+    return mappingContext;
+  }
+
+  /**
+   * Reads the mappings of a {@code mapping_pathling.json} file in chunks. Has to be called inside
+   * a fork-join pool.
+   */
+  static Map<ContextualTermCode, Mapping> readMappings(byte[] json, int chunkCount,
+      TermCodePool pool) throws IOException {
+    var splitter = JsonSplitter.of(json);
+    var elements = splitter.elements(splitter.valueStart(0));
+    var chunkSize = json.length / Math.max(1, chunkCount) + 1;
+    var chunks = new ArrayList<ForkJoinTask<Map<ContextualTermCode, Mapping>>>();
+    var elementCount = elements.length / 2;
+    for (int i = 0; i < elementCount * 2; ) {
+      var chunkStart = elements[i];
+      var j = i + 1;
+      while (j + 2 < elementCount * 2 && elements[j] - chunkStart < chunkSize) {
+        j += 2;
+      }
+      var chunkEnd = elements[j];
+      chunks.add(task(() -> {
+        var mappings = new HashMap<ContextualTermCode, Mapping>();
+        try (var parser = MAPPER.getFactory().createParser(
+            concat(bytes("["), slice(json, chunkStart, chunkEnd), bytes("]")))) {
+          readMappings(parser, mappings, pool);
+        }
+        return mappings;
+      }));
+      i = j + 1;
+    }
+    ForkJoinTask.invokeAll(chunks);
+
+    var mappings = new HashMap<ContextualTermCode, Mapping>(elementCount * 4 / 3 + 1);
+    for (var chunk : chunks) {
+      for (var mapping : chunk.join().values()) {
+        if (mappings.putIfAbsent(mapping.key(), mapping) != null) {
+          throw new IllegalStateException("Duplicate mapping key " + mapping.key());
+        }
+      }
+    }
+    return Collections.unmodifiableMap(mappings);
+  }
+
+  /**
+   * Reads the concept tree of a {@code mapping_tree.json} file, splitting subtrees larger than
+   * {@code 1 / chunkCount} of the whole tree into separate tasks. Has to be called inside a
+   * fork-join pool.
+   */
+  static TermCodeNode readConceptTree(byte[] json, int chunkCount, TermCodePool pool)
+      throws IOException {
+    var splitter = JsonSplitter.of(json);
+    // trailing whitespace doesn't matter to the parser, so the root node can end at the input end
+    return readNode(json, splitter, splitter.valueStart(0), json.length,
+        json.length / Math.max(1, chunkCount) + 1, pool);
+  }
+
+  private static TermCodeNode readNode(byte[] json, JsonSplitter splitter, int start, int end,
+      int chunkSize, TermCodePool pool) throws IOException {
+    var childrenStart = end - start < chunkSize ? -1 : splitter.fieldValue(start, "children");
+    if (childrenStart == -1 || json[childrenStart] != '[') {
+      return readConceptTree(slice(json, start, end), pool);
+    }
+    var elements = splitter.elements(childrenStart);
+    var childrenEnd = elements[elements.length - 1];
+    var children = new ArrayList<ForkJoinTask<TermCodeNode>>(elements.length / 2);
+    for (int i = 0; i + 1 < elements.length; i += 2) {
+      var childStart = elements[i];
+      var childEnd = elements[i + 1];
+      children.add(task(() -> readNode(json, splitter, childStart, childEnd, chunkSize,
+          pool)));
+    }
+    ForkJoinTask.invokeAll(children);
+
+    var node = readConceptTree(concat(slice(json, start, childrenStart), bytes("[]"),
+        slice(json, childrenEnd, end)), pool);
+    return new TermCodeNode(node.contextualTermCode(),
+        children.stream().map(ForkJoinTask::join).toList());
+  }
+
+  private static byte[] readAllBytes(ZipFile zipFile, ZipEntry entry) throws IOException {
+    try (var in = zipFile.getInputStream(entry)) {
+      return entry.getSize() >= 0 && entry.getSize() < Integer.MAX_VALUE
+          ? in.readNBytes((int) entry.getSize()) : in.readAllBytes();
+    }
+  }
+
+  private static InputStream slice(byte[] bytes, int start, int end) {
+    return new ByteArrayInputStream(bytes, start, end - start);
+  }
+
+  private static InputStream bytes(String s) {
+    return new ByteArrayInputStream(s.getBytes(UTF_8));
+  }
+
+  private static InputStream concat(InputStream... parts) {
+    return new SequenceInputStream(Collections.enumeration(List.of(parts)));
+  }
+
+  private static <T> ForkJoinTask<T> task(IoCallable<T> callable) {
+    return ForkJoinTask.adapt(() -> {
+      try {
+        return callable.call();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  private static <T> T invoke(ForkJoinPool pool, ForkJoinTask<T> task) throws IOException {
+    try {
+      return pool.invoke(task);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  @FunctionalInterface
+  private interface IoCallable<T> {
+
+    T call() throws IOException;
+  }
+
+  /**
+   * Reads the concept tree of a {@code mapping_tree.json} file.
+   *
+   * @param in the input stream of the JSON object of the root node
+   * @return the root node of the concept tree
+   * @throws IOException if the input can't be read or isn't a valid concept tree
+   */
+  public static TermCodeNode readConceptTree(InputStream in) throws IOException {
+    return readConceptTree(in, TermCodePool.of());
+  }
+
+  private static TermCodeNode readConceptTree(InputStream in, TermCodePool pool)
+      throws IOException {
+    try (var parser = MAPPER.getFactory().createParser(in)) {
+      expect(parser.nextToken(), JsonToken.START_OBJECT, parser);
+      return readNode(parser, pool);
+    }
+  }
+
+  static ZipEntry entry(ZipFile zipFile, String name) throws IOException {
+    var entry = zipFile.getEntry(name);
+    if (entry == null) {
+      throw new IOException("Missing entry `%s` in `%s`.".formatted(name, zipFile.getName()));
+    }
+    return entry;
+  }
+
+  private static void readMappings(JsonParser parser, Map<ContextualTermCode, Mapping> mappings,
+      TermCodePool pool) throws IOException {
+    expect(parser.nextToken(), JsonToken.START_ARRAY, parser);
+    JsonToken token;
+    while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+      var mapping = readMapping(parser, pool);
+      if (mappings.putIfAbsent(mapping.key(), mapping) != null) {
+        throw new IllegalStateException("Duplicate mapping key " + mapping.key());
+      }
+    }
+    expect(token, JsonToken.END_ARRAY, parser);
+  }
+
+  private static Mapping readMapping(JsonParser parser, TermCodePool pool) throws IOException {
+    TermCode context = null;
+    TermCode key = null;
+    String resourceType = null;
+    String termCodeFhirPath = null;
+    String valueFhirPath = null;
+    String valueType = null;
+    List<Modifier> fixedCriteria = null;
+    List<AttributeMapping> attributeMappings = null;
+    String timeRestrictionPath = null;
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      var name = parser.getCurrentName();
+      var token = parser.nextToken();
+      if (token == JsonToken.VALUE_NULL) {
+        continue;
+      }
+      switch (name) {
+        case "context" -> context = readTermCode(parser, pool);
+        case "key" -> key = readTermCode(parser, pool);
+        case "resourceType" -> resourceType = pool.intern(parser.getText());
+        case "termCodeFhirPath" -> termCodeFhirPath = pool.intern(parser.getText());
+        case "valueFhirPath" -> valueFhirPath = pool.intern(parser.getText());
+        case "valueType" -> valueType = pool.intern(parser.getText());
+        case "fixedCriteria" -> fixedCriteria = readFixedCriteria(parser);
+        case "attributeFhirPaths" -> attributeMappings = readAttributeMappings(parser, pool);
+        case "timeRestrictionFhirPath" -> timeRestrictionPath = pool.intern(parser.getText());
+        default -> parser.skipChildren();
+      }
+    }
+    return Mapping.of(pool.intern(ContextualTermCode.of(context, key)),
+        requireNonNull(resourceType, "missing JSON property: resourceType"), termCodeFhirPath,
+        valueFhirPath, valueType, fixedCriteria, attributeMappings, timeRestrictionPath);
+  }
+
+  private static TermCodeNode readNode(JsonParser parser, TermCodePool pool) throws IOException {
+    TermCode context = null;
+    TermCode termCode = null;
+    var children = new ArrayList<TermCodeNode>();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      var name = parser.getCurrentName();
+      var token = parser.nextToken();
+      if (token == JsonToken.VALUE_NULL) {
+        continue;
+      }
+      switch (name) {
+        case "context" -> context = readTermCode(parser, pool);
+        case "termCode" -> termCode = readTermCode(parser, pool);
+        case "children" -> {
+          expect(token, JsonToken.START_ARRAY, parser);
+          while (parser.nextToken() == JsonToken.START_OBJECT) {
+            children.add(readNode(parser, pool));
+          }
+        }
+        default -> parser.skipChildren();
+      }
+    }
+    if (termCode == null) {
+      throw new IOException("Missing termCode of concept tree node at %s."
+          .formatted(parser.getCurrentLocation()));
+    }
+    return new TermCodeNode(pool.intern(ContextualTermCode.of(context, termCode)), children);
+  }
+
+  private static TermCode readTermCode(JsonParser parser, TermCodePool pool) throws IOException {
+    expect(parser.currentToken(), JsonToken.START_OBJECT, parser);
+    String system = null;
+    String code = null;
+    String display = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      var name = parser.getCurrentName();
+      parser.nextToken();
+      switch (name) {
+        case "system" -> system = parser.getValueAsString();
+        case "code" -> code = parser.getValueAsString();
+        case "display" -> display = parser.getValueAsString();
+        default -> parser.skipChildren();
+      }
+    }
+    return pool.intern(TermCode.of(system, code, display));
+  }
+
+  private static List<AttributeMapping> readAttributeMappings(JsonParser parser,
+      TermCodePool pool) throws IOException {
+    expect(parser.currentToken(), JsonToken.START_ARRAY, parser);
+    var attributeMappings = new ArrayList<AttributeMapping>();
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      String type = null;
+      TermCode key = null;
+      String path = null;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        var name = parser.getCurrentName();
+        parser.nextToken();
+        switch (name) {
+          case "attributeType" -> type = pool.intern(parser.getValueAsString());
+          case "attributeKey" -> key = readTermCode(parser, pool);
+          case "attributePath" -> path = pool.intern(parser.getValueAsString());
+          default -> parser.skipChildren();
+        }
+      }
+      attributeMappings.add(AttributeMapping.of(type, key, path));
+    }
+    return attributeMappings;
+  }
+
+  private static List<Modifier> readFixedCriteria(JsonParser parser) throws IOException {
+    expect(parser.currentToken(), JsonToken.START_ARRAY, parser);
+    var fixedCriteria = new ArrayList<Modifier>();
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      fixedCriteria.add(parser.readValueAs(Modifier.class));
+    }
+    return fixedCriteria;
+  }
+
+  private static void expect(JsonToken actual, JsonToken expected, JsonParser parser)
+      throws IOException {
+    if (actual != expected) {
+      throw new IOException("Expected %s but found %s at %s.".formatted(expected, actual,
+          parser.getCurrentLocation()));
+    }
+  }
+}
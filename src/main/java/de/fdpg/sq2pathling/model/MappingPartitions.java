@@ -0,0 +1,231 @@
+package de.fdpg.sq2pathling.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.fdpg.sq2pathling.model.common.TermCode;
+import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.ZipFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores a {@link MappingContext} partitioned by the context of its term codes, so that only the
+ * contexts actually used have to be loaded.
+ * <p>
+ * A partition directory contains one {@link MappingSnapshot} per context and a
+ * {@value #DIRECTORY_FILE} listing all contexts. The partition of a context holds all mappings with
+ * that context and the subtrees of the topmost concepts with that context. Because every concept
+ * lies in the subtree of its topmost ancestor with the same context, a partition expands concepts
+ * exactly like the whole tree does.
+ * <p>
+ * Only the directory file and the last bytes of each partition are read eagerly. The partition of
+ * a context is read the first time a term code or concept with that context is looked up.
+ */
+public final class MappingPartitions {
+
+  /**
+   * The name of the file listing the partitions of a partition directory.
+   */
+  public static final String DIRECTORY_FILE = "partitions.json";
+
+  /**
+   * The term code of the artificial root joining the trees of a context with several topmost nodes.
+   */
+  static final TermCode PARTITION_ROOT = TermCode.of("", "", "");
+
+  private static final Logger logger = LoggerFactory.getLogger(MappingPartitions.class);
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private MappingPartitions() {
+  }
+
+  /**
+   * Opens the partition directory {@code directory} if it was created from {@code zipFile}.
+   * Otherwise builds the mapping context from the JSON files of {@code zipFile} and (re-)writes
+   * the partition directory first.
+   * <p>
+   * A partition directory which can't be opened, because its directory file or one of its
+   * partitions is missing, truncated or corrupt, is treated like a stale one and rewritten as
+   * well.
+   *
+   * @param zipFile   the zip file containing the mappings and the concept tree
+   * @param directory the partition directory
+   * @return a mapping context loading partitions on first use
+   * @throws IOException if the zip file or the partition directory can't be read or written
+   */
+  public static MappingContext load(ZipFile zipFile, Path directory) throws IOException {
+    var fingerprint = MappingSnapshot.fingerprint(zipFile);
+    if (Files.exists(directory.resolve(DIRECTORY_FILE))) {
+      try {
+        return open(directory, fingerprint);
+      } catch (IOException | RuntimeException e) {
+        logger.info("Rebuild mapping partitions `{}`: {}", directory, e.getMessage());
+      }
+    }
+    write(MappingLoader.load(zipFile), fingerprint, directory);
+    return open(directory, fingerprint);
+  }
+
+  /**
+   * Opens the partition directory {@code directory}, reading only the list of partitions and
+   * checking that all partitions were written completely.
+   * <p>
+   * Partitions are read on first use. Failures to read them are thrown as
+   * {@link java.io.UncheckedIOException} from the methods of the returned mapping context.
+   *
+   * @param directory           the partition directory
+   * @param expectedFingerprint the fingerprint of the mappings the partitions have to be created
+   *                            from
+   * @return a mapping context loading partitions on first use
+   * @throws StaleSnapshotException if the partitions were created from other mappings
+   * @throws IOException            if the list of partitions can't be read or a partition is
+   *                                missing or truncated
+   */
+  public static MappingContext open(Path directory, long expectedFingerprint) throws IOException {
+    var partitionDirectory = MAPPER.readValue(directory.resolve(DIRECTORY_FILE).toFile(),
+        Directory.class);
+    if (partitionDirectory.fingerprint() != expectedFingerprint) {
+      throw new StaleSnapshotException("Fingerprint %016x differs from expected fingerprint %016x."
+          .formatted(partitionDirectory.fingerprint(), expectedFingerprint));
+    }
+    var files = partitionDirectory.partitions().stream()
+        .collect(Collectors.toMap(Partition::context, Partition::file, (a, b) -> b,
+            LinkedHashMap::new));
+    for (var file : files.values()) {
+      MappingSnapshot.checkComplete(directory.resolve(file));
+    }
+    return new PartitionedMappingContext(files.keySet(), context -> {
+      var start = System.nanoTime();
+      try (var in = Files.newInputStream(directory.resolve(files.get(context)))) {
+        var partition = MappingSnapshot.read(in, expectedFingerprint);
+        logger.info("Loaded mapping partition of context {} in {} ms", context.code(),
+            (System.nanoTime() - start) / 1_000_000);
+        return partition;
+      }
+    });
+  }
+
+  /**
+   * Writes {@code mappingContext} partitioned by context into {@code directory}.
+   * <p>
+   * The partitions are written first and the directory file last, replacing an existing directory
+   * file atomically.
+   *
+   * @param mappingContext    the mapping context to partition
+   * @param sourceFingerprint the fingerprint of the mappings the context was built from
+   * @param directory         the directory to write the partitions to
+   * @throws IOException if a partition can't be written
+   */
+  public static void write(MappingContext mappingContext, long sourceFingerprint, Path directory)
+      throws IOException {
+    Files.createDirectories(directory);
+    var mappings = mappingContext.mappings().mappings()
+        .collect(Collectors.groupingBy(mapping -> mapping.key().context(), LinkedHashMap::new,
+            Collectors.toMap(Mapping::key, mapping -> mapping)));
+    var forests = forests(mappingContext.conceptTree());
+
+    var contexts = new ArrayList<TermCode>(mappings.keySet());
+    forests.keySet().stream().filter(context -> !mappings.containsKey(context))
+        .forEach(contexts::add);
+    var partitions = new ArrayList<Partition>();
+    for (var context : contexts) {
+      var file = "%03d-%s.snapshot".formatted(partitions.size(),
+          context.code().replaceAll("[^A-Za-z0-9_-]", "_"));
+      var partition = MappingContext.ofOwned(mappings.getOrDefault(context, Map.of()),
+          conceptTree(context, forests.getOrDefault(context, List.of())));
+      try (var out = Files.newOutputStream(directory.resolve(file))) {
+        MappingSnapshot.write(partition, sourceFingerprint, out);
+      }
+      partitions.add(new Partition(context, file));
+    }
+
+    var tmp = Files.createTempFile(directory, "partitions", ".tmp");
+    try {
+      MAPPER.writeValue(tmp.toFile(), new Directory(sourceFingerprint, partitions));
+      Files.move(tmp, directory.resolve(DIRECTORY_FILE), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Returns the topmost nodes of each context, which are the nodes without an ancestor of the same
+   * context, in pre-order.
+   * <p>
+   * A node below an ancestor of its own context already lies in the subtree of that ancestor, even
+   * if a node of another context lies in between. Starting another tree there would duplicate it.
+   */
+  private static Map<TermCode, List<TermCodeNode>> forests(TermCodeNode root) {
+    var forests = new LinkedHashMap<TermCode, List<TermCodeNode>>();
+    if (root == null) {
+      return forests;
+    }
+    var visits = new ArrayDeque<Visit>();
+    visits.push(new Visit(root, null));
+    while (!visits.isEmpty()) {
+      var visit = visits.pop();
+      var context = visit.node.contextualTermCode().context();
+      var contexts = visit.ancestorContexts;
+      if (context != null && (contexts == null || !contexts.contains(context))) {
+        forests.computeIfAbsent(context, c -> new ArrayList<>()).add(visit.node);
+        contexts = new Contexts(context, contexts);
+      }
+      var children = visit.node.children();
+      for (int i = children.size() - 1; i >= 0; i--) {
+        visits.push(new Visit(children.get(i), contexts));
+      }
+    }
+    return forests;
+  }
+
+  private record Visit(TermCodeNode node, Contexts ancestorContexts) {
+  }
+
+  /**
+   * The distinct contexts of the ancestors of a node, innermost first.
+   */
+  private record Contexts(TermCode context, Contexts outer) {
+
+    private boolean contains(TermCode context) {
+      for (var contexts = this; contexts != null; contexts = contexts.outer) {
+        if (contexts.context.equals(context)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Returns the single topmost node of a context or joins several under an artificial root with
+   * an empty term code.
+   */
+  private static TermCodeNode conceptTree(TermCode context, List<TermCodeNode> forest) {
+    return switch (forest.size()) {
+      case 0 -> null;
+      case 1 -> forest.get(0);
+      default -> new TermCodeNode(ContextualTermCode.of(context, PARTITION_ROOT), forest);
+    };
+  }
+
+  record Directory(long fingerprint, List<Partition> partitions) {
+
+    Directory {
+      partitions = List.copyOf(partitions);
+    }
+  }
+
+  record Partition(TermCode context, String file) {
+  }
+}
@@ -0,0 +1,705 @@
+package de.fdpg.sq2pathling.model;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import de.fdpg.sq2pathling.model.common.Comparator;
+import de.fdpg.sq2pathling.model.common.TermCode;
+import de.fdpg.sq2pathling.model.common.TermCodePool;
+import de.fdpg.sq2pathling.model.structured_query.CodeModifier;
+import de.fdpg.sq2pathling.model.structured_query.CodingModifier;
+import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
+import de.fdpg.sq2pathling.model.structured_query.Modifier;
+import de.fdpg.sq2pathling.model.structured_query.NumericModifier;
+import de.fdpg.sq2pathling.model.structured_query.RangeModifier;
+import de.fdpg.sq2pathling.model.structured_query.TimeRestrictionModifier;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.ZipFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A compact binary snapshot of a fully built {@link MappingContext}.
+ * <p>
+ * A snapshot is written once from a {@code mapping.zip} and can be read back in a single
+ * sequential pass, which is much faster than parsing the JSON files of the zip. All numbers are
+ * written big-endian. The layout is:
+ * <pre>
+ * header:    magic (int), format version (int), source fingerprint (long)
+ * strings:   count (int), [length (int), UTF-8 bytes]*
+ * termCodes: count (int), [system, code, display (string ids)]*
+ * mappings:  count (int), [context, key (term code ids), resourceType, termCodePath,
+ *            valueFhirPath, valueType, timeRestrictionPath (string ids or -1),
+ *            fixedCriteria, attributeMappings]*
+ * tree:      node count (int), [context, termCode (term code ids), child count (int)]* in
+ *            pre-order
+ * modifier:  type (byte), path (string id), value count (int), [value]* with term code ids as
+ *            values of coding modifiers and string ids or -1 as values of all others
+ * index:     mapping count (int), capacity (int), [key hash (int), mapping offset (int)]*
+ * offsets:   [string offset (int)]*
+ * footer:    termCodes offset, tree offset, index offset, string offsets offset (int), magic
+ * </pre>
+ * The sequential reader stops after the tree. The remaining sections allow random access to single
+ * mappings, as done by the {@link MappedMappingStore}. The index is an open addressing hash table
+ * with linear probing and a load factor of at most one half. Empty slots have an offset of
+ * {@code -1}. All offsets are absolute file positions. A missing context is written as term code
+ * id {@code -1}.
+ * <p>
+ * The source fingerprint identifies the {@code mapping.zip} the snapshot was created from. A
+ * snapshot with another format version or fingerprint is rejected with a
+ * {@link StaleSnapshotException}.
+ */
+public final class MappingSnapshot {
+
+  /**
+   * The current format version. Has to be increased on every change of the layout.
+   */
+  public static final int FORMAT_VERSION = 3;
+
+  static final int MAGIC = 0x53513250; // SQ2P
+  static final int FOOTER_SIZE = 5 * Integer.BYTES;
+  static final int NULL = -1;
+  static final byte CODE_MODIFIER = 0;
+  static final byte CODING_MODIFIER = 1;
+  static final byte TIME_RESTRICTION_MODIFIER = 2;
+  static final byte RANGE_MODIFIER = 3;
+  static final byte NUMERIC_MODIFIER = 4;
+
+  private static final Logger logger = LoggerFactory.getLogger(MappingSnapshot.class);
+
+  private MappingSnapshot() {
+  }
+
+  /**
+   * Calculates the fingerprint of the mapping entries of {@code zipFile}.
+   * <p>
+   * Only the names, CRCs and sizes of the entries are used, so the entries don't need to be
+   * decompressed.
+   *
+   * @param zipFile the zip file containing the mappings and the concept tree
+   * @return the fingerprint
+   * @throws IOException if one of the entries is missing
+   */
+  public static long fingerprint(ZipFile zipFile) throws IOException {
+    var digest = sha256();
+    for (var name : List.of(MappingLoader.MAPPING_ENTRY, MappingLoader.CONCEPT_TREE_ENTRY)) {
+      var entry = MappingLoader.entry(zipFile, name);
+      digest.update("%s:%d:%d;".formatted(name, entry.getCrc(), entry.getSize()).getBytes(UTF_8));
+    }
+    return ByteBuffer.wrap(digest.digest()).getLong();
+  }
+
+  /**
+   * Reads the snapshot at {@code snapshot} if it was created from {@code zipFile}. Otherwise
+   * builds the mapping context from the JSON files of {@code zipFile} and (re-)writes the
+   * snapshot.
+   * <p>
+   * A snapshot which can't be read, because it is truncated or corrupt, is treated like a stale
+   * one and rewritten as well.
+   *
+   * @param zipFile  the zip file containing the mappings and the concept tree
+   * @param snapshot the path of the snapshot file
+   * @return the mapping context
+   * @throws IOException if the zip file can't be read or the snapshot can't be written
+   */
+  public static MappingContext load(ZipFile zipFile, Path snapshot) throws IOException {
+    var fingerprint = fingerprint(zipFile);
+    if (Files.exists(snapshot)) {
+      try {
+        return read(snapshot, fingerprint);
+      } catch (IOException | RuntimeException e) {
+        logger.info("Rebuild mapping snapshot `{}`: {}", snapshot, e.getMessage());
+      }
+    }
+    var mappingContext = MappingLoader.load(zipFile);
+    write(mappingContext, fingerprint, snapshot);
+    return mappingContext;
+  }
+
+  /**
+   * Returns a mapping context backed by a {@link MappedMappingStore memory-mapped} snapshot at
+   * {@code snapshot}. The snapshot is (re-)written first if it doesn't exist, wasn't created from
+   * {@code zipFile} or can't be read.
+   *
+   * @param zipFile  the zip file containing the mappings and the concept tree
+   * @param snapshot the path of the snapshot file
+   * @return the mapping context
+   * @throws IOException if the zip file can't be read or the snapshot can't be written
+   */
+  public static MappingContext map(ZipFile zipFile, Path snapshot) throws IOException {
+    var fingerprint = fingerprint(zipFile);
+    try {
+      return map(snapshot, fingerprint);
+    } catch (IOException | RuntimeException e) {
+      logger.info("Rebuild mapping snapshot `{}`: {}", snapshot, e.getMessage());
+    }
+    write(MappingLoader.load(zipFile), fingerprint, snapshot);
+    return map(snapshot, fingerprint);
+  }
+
+  private static MappingContext read(Path snapshot, long fingerprint) throws IOException {
+    try (var channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+      checkComplete(channel);
+      return read(Channels.newInputStream(channel.position(0)), fingerprint,
+          channel.size() / Integer.BYTES);
+    }
+  }
+
+  /**
+   * Checks that the snapshot at {@code snapshot} was written completely by reading only its last
+   * bytes.
+   *
+   * @param snapshot the path of the snapshot file
+   * @throws IOException if the snapshot is truncated or can't be read
+   */
+  static void checkComplete(Path snapshot) throws IOException {
+    try (var channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+      checkComplete(channel);
+    }
+  }
+
+  private static void checkComplete(FileChannel channel) throws IOException {
+    var magic = ByteBuffer.allocate(Integer.BYTES);
+    if (channel.size() < Integer.BYTES
+        || channel.read(magic, channel.size() - Integer.BYTES) != Integer.BYTES
+        || magic.getInt(0) != MAGIC) {
+      throw new IOException("Truncated mapping snapshot.");
+    }
+  }
+
+  private static MappingContext map(Path snapshot, long fingerprint) throws IOException {
+    var store = MappedMappingStore.open(snapshot, fingerprint);
+    return MappingContext.of(store, store.conceptTree());
+  }
+
+  private static void write(MappingContext mappingContext, long fingerprint, Path snapshot)
+      throws IOException {
+    var tmp = Files.createTempFile(snapshot.toAbsolutePath().getParent(), "snapshot", ".tmp");
+    try {
+      try (var out = Files.newOutputStream(tmp)) {
+        write(mappingContext, fingerprint, out);
+      }
+      Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Calculates a hash of {@code key} which is stable across JVMs, because it only depends on
+   * {@link String#hashCode()} of the systems and codes.
+   *
+   * @param key the key of a mapping
+   * @return the hash
+   */
+  static int keyHash(ContextualTermCode key) {
+    var context = key.context();
+    var h = context == null ? 0 : 31 * context.system().hashCode() + context.code().hashCode();
+    h = 31 * h + key.termCode().system().hashCode();
+    h = 31 * h + key.termCode().code().hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Converts the JSON files of {@code zipFile} into a snapshot written to {@code out}.
+   *
+   * @param zipFile the zip file containing the mappings and the concept tree
+   * @param out     the output stream to write the snapshot to
+   * @throws IOException if the zip file can't be read or the snapshot can't be written
+   */
+  public static void convert(ZipFile zipFile, OutputStream out) throws IOException {
+    write(MappingLoader.load(zipFile), fingerprint(zipFile), out);
+  }
+
+  /**
+   * Writes a snapshot of {@code mappingContext} to {@code out}.
+   *
+   * @param mappingContext    the mapping context to write
+   * @param sourceFingerprint the fingerprint of the mappings the context was built from
+   * @param out               the output stream to write the snapshot to
+   * @throws IOException              if the snapshot can't be written
+   * @throws IllegalArgumentException if a mapping contains a fixed criterion which isn't one of
+   *                                  the modifiers of this library
+   */
+  public static void write(MappingContext mappingContext, long sourceFingerprint,
+      OutputStream out) throws IOException {
+    var mappings = mappingContext.mappings().mappings().toList();
+    mappings.forEach(MappingSnapshot::checkSupported);
+    var preOrder = preOrder(mappingContext.conceptTree());
+
+    var tables = new Tables();
+    mappings.forEach(tables::add);
+    preOrder.forEach(node -> tables.add(node.contextualTermCode()));
+
+    var data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+    data.writeInt(MAGIC);
+    data.writeInt(FORMAT_VERSION);
+    data.writeLong(sourceFingerprint);
+
+    var stringOffsets = new int[tables.strings.size()];
+    data.writeInt(tables.strings.size());
+    for (int i = 0; i < stringOffsets.length; i++) {
+      stringOffsets[i] = data.size();
+      var bytes = tables.strings.get(i).getBytes(UTF_8);
+      data.writeInt(bytes.length);
+      data.write(bytes);
+    }
+
+    data.writeInt(tables.termCodes.size());
+    var termCodesOffset = data.size();
+    for (var termCode : tables.termCodes) {
+      data.writeInt(tables.stringIds.get(termCode.system()));
+      data.writeInt(tables.stringIds.get(termCode.code()));
+      data.writeInt(tables.stringIds.get(termCode.display()));
+    }
+
+    var index = new Index(mappings.size());
+    data.writeInt(mappings.size());
+    for (var mapping : mappings) {
+      index.add(keyHash(mapping.key()), data.size());
+      data.writeInt(tables.termCodeId(mapping.key().context()));
+      data.writeInt(tables.termCodeId(mapping.key().termCode()));
+      data.writeInt(tables.stringId(mapping.resourceType()));
+      data.writeInt(tables.stringId(mapping.termCodePath()));
+      data.writeInt(tables.stringId(mapping.valueFhirPath()));
+      data.writeInt(tables.stringId(mapping.valueType()));
+      data.writeInt(tables.stringId(mapping.timeRestrictionPath().orElse(null)));
+      data.writeInt(mapping.fixedCriteria().size());
+      for (var modifier : mapping.fixedCriteria()) {
+        writeModifier(data, tables, modifier);
+      }
+      data.writeInt(mapping.attributeMappings().size());
+      for (var attributeMapping : mapping.attributeMappings().values()) {
+        data.writeInt(tables.stringId(attributeMapping.type()));
+        data.writeInt(tables.termCodeId(attributeMapping.key()));
+        data.writeInt(tables.stringId(attributeMapping.path()));
+      }
+    }
+
+    var treeOffset = data.size();
+    data.writeInt(preOrder.size());
+    for (var node : preOrder) {
+      data.writeInt(tables.termCodeId(node.contextualTermCode().context()));
+      data.writeInt(tables.termCodeId(node.contextualTermCode().termCode()));
+      data.writeInt(node.children().size());
+    }
+
+    var indexOffset = data.size();
+    data.writeInt(mappings.size());
+    data.writeInt(index.slots.length / 2);
+    for (var slot : index.slots) {
+      data.writeInt(slot);
+    }
+
+    var stringOffsetsOffset = data.size();
+    for (var stringOffset : stringOffsets) {
+      data.writeInt(stringOffset);
+    }
+
+    data.writeInt(termCodesOffset);
+    data.writeInt(treeOffset);
+    data.writeInt(indexOffset);
+    data.writeInt(stringOffsetsOffset);
+    data.writeInt(MAGIC);
+    data.flush();
+  }
+
+  private static void checkSupported(Mapping mapping) {
+    for (var modifier : mapping.fixedCriteria()) {
+      if (!(modifier instanceof CodingModifier) && StringModifier.of(modifier) == null) {
+        throw new IllegalArgumentException("Unsupported fixed criterion of mapping %s: %s"
+            .formatted(mapping.key(), modifier));
+      }
+    }
+  }
+
+  private static void writeModifier(DataOutputStream data, Tables tables, Modifier modifier)
+      throws IOException {
+    if (modifier instanceof CodingModifier codingModifier) {
+      data.writeByte(CODING_MODIFIER);
+      data.writeInt(tables.stringId(codingModifier.path()));
+      data.writeInt(codingModifier.concepts().size());
+      for (var concept : codingModifier.concepts()) {
+        data.writeInt(tables.termCodeId(concept));
+      }
+    } else {
+      var stringModifier = StringModifier.of(modifier);
+      data.writeByte(stringModifier.type());
+      data.writeInt(tables.stringId(stringModifier.path()));
+      data.writeInt(stringModifier.values().size());
+      for (var value : stringModifier.values()) {
+        data.writeInt(tables.stringId(value));
+      }
+    }
+  }
+
+  /**
+   * Reads a snapshot from {@code in} in a single sequential pass.
+   * <p>
+   * All strings and term codes are interned in a {@link TermCodePool pool} of their own, which is
+   * handed over to the resulting mapping context.
+   *
+   * @param in                  the input stream to read the snapshot from
+   * @param expectedFingerprint the fingerprint of the mappings the snapshot has to be created
+   *                            from
+   * @return the mapping context of the snapshot
+   * @throws StaleSnapshotException if the snapshot has another format version or fingerprint
+   * @throws IOException            if the snapshot can't be read
+   */
+  public static MappingContext read(InputStream in, long expectedFingerprint) throws IOException {
+    return read(in, expectedFingerprint, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Reads a snapshot from {@code in}, rejecting tables with more than {@code maxCount} entries as
+   * corrupt.
+   */
+  private static MappingContext read(InputStream in, long expectedFingerprint, long maxCount)
+      throws IOException {
+    try {
+      return readTables(in, expectedFingerprint, maxCount);
+    } catch (IndexOutOfBoundsException | NoSuchElementException e) {
+      throw new IOException("Corrupt mapping snapshot.", e);
+    }
+  }
+
+  private static MappingContext readTables(InputStream in, long expectedFingerprint,
+      long maxCount) throws IOException {
+    var start = System.nanoTime();
+    var data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+    if (data.readInt() != MAGIC) {
+      throw new IOException("Not a mapping snapshot.");
+    }
+    var formatVersion = data.readInt();
+    if (formatVersion != FORMAT_VERSION) {
+      throw new StaleSnapshotException("Format version %d differs from current version %d."
+          .formatted(formatVersion, FORMAT_VERSION));
+    }
+    var fingerprint = data.readLong();
+    if (fingerprint != expectedFingerprint) {
+      throw new StaleSnapshotException("Fingerprint %016x differs from expected fingerprint %016x."
+          .formatted(fingerprint, expectedFingerprint));
+    }
+
+    var pool = TermCodePool.of();
+    var strings = new String[count(data, maxCount)];
+    for (int i = 0; i < strings.length; i++) {
+      var bytes = new byte[count(data, maxCount * Integer.BYTES)];
+      data.readFully(bytes);
+      strings[i] = pool.intern(new String(bytes, UTF_8));
+    }
+
+    var termCodes = new TermCode[count(data, maxCount)];
+    for (int i = 0; i < termCodes.length; i++) {
+      termCodes[i] = pool.intern(TermCode.of(strings[data.readInt()], strings[data.readInt()],
+          strings[data.readInt()]));
+    }
+
+    var mappingCount = count(data, maxCount);
+    var mappings = new HashMap<ContextualTermCode, Mapping>(mappingCount * 4 / 3 + 1);
+    for (int i = 0; i < mappingCount; i++) {
+      var key = pool.intern(ContextualTermCode.of(termCode(termCodes, data.readInt()),
+          termCodes[data.readInt()]));
+      var resourceType = strings[data.readInt()];
+      var termCodePath = string(strings, data.readInt());
+      var valueFhirPath = string(strings, data.readInt());
+      var valueType = string(strings, data.readInt());
+      var timeRestrictionPath = string(strings, data.readInt());
+      var fixedCriteria = new ArrayList<Modifier>();
+      for (int j = data.readInt(); j > 0; j--) {
+        fixedCriteria.add(readModifier(data, strings, termCodes));
+      }
+      var attributeMappings = new ArrayList<AttributeMapping>();
+      for (int j = data.readInt(); j > 0; j--) {
+        attributeMappings.add(AttributeMapping.of(strings[data.readInt()],
+            termCodes[data.readInt()], strings[data.readInt()]));
+      }
+      mappings.put(key, new Mapping(key, resourceType, termCodePath, valueFhirPath, valueType,
+          fixedCriteria, attributeMappings, timeRestrictionPath));
+    }
+
+    var nodeCount = count(data, maxCount);
+    var nodeTermCodes = new ContextualTermCode[nodeCount];
+    var childCounts = new int[nodeCount];
+    for (int i = 0; i < nodeCount; i++) {
+      nodeTermCodes[i] = pool.intern(ContextualTermCode.of(termCode(termCodes, data.readInt()),
+          termCodes[data.readInt()]));
+      childCounts[i] = data.readInt();
+    }
+
+    logger.info("Read mapping snapshot with {} mappings and {} concepts in {} ms", mappingCount,
+        nodeCount, (System.nanoTime() - start) / 1_000_000);
+    return MappingContext.ofOwned(Collections.unmodifiableMap(mappings),
+        conceptTree(nodeTermCodes, childCounts), pool);
+  }
+
+  private static Modifier readModifier(DataInputStream data, String[] strings,
+      TermCode[] termCodes) throws IOException {
+    var type = data.readByte();
+    var path = strings[data.readInt()];
+    var count = data.readInt();
+    if (type == CODING_MODIFIER) {
+      var concepts = new TermCode[count];
+      for (int i = 0; i < count; i++) {
+        concepts[i] = termCodes[data.readInt()];
+      }
+      return CodingModifier.of(path, concepts);
+    }
+    var values = new ArrayList<String>(count);
+    for (int i = 0; i < count; i++) {
+      values.add(string(strings, data.readInt()));
+    }
+    try {
+      return new StringModifier(type, path, values).toModifier();
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Corrupt mapping snapshot: " + e.getMessage(), e);
+    }
+  }
+
+  private static int count(DataInputStream data, long maxCount) throws IOException {
+    var count = data.readInt();
+    if (count < 0 || count > maxCount) {
+      throw new IOException("Corrupt mapping snapshot: invalid count %d.".formatted(count));
+    }
+    return count;
+  }
+
+  private static String string(String[] strings, int id) {
+    return id == NULL ? null : strings[id];
+  }
+
+  private static TermCode termCode(TermCode[] termCodes, int id) {
+    return id == NULL ? null : termCodes[id];
+  }
+
+  /**
+   * Rebuilds the tree from its pre-order. Going backwards, the children of each node are the
+   * topmost subtrees already built.
+   */
+  static TermCodeNode conceptTree(ContextualTermCode[] termCodes, int[] childCounts) {
+    if (termCodes.length == 0) {
+      return null;
+    }
+    var subtrees = new ArrayDeque<TermCodeNode>();
+    for (int i = termCodes.length - 1; i >= 0; i--) {
+      var children = new TermCodeNode[childCounts[i]];
+      for (int j = 0; j < children.length; j++) {
+        children[j] = subtrees.pop();
+      }
+      subtrees.push(TermCodeNode.of(termCodes[i], children));
+    }
+    return subtrees.pop();
+  }
+
+  private static List<TermCodeNode> preOrder(TermCodeNode root) {
+    var nodes = new ArrayList<TermCodeNode>();
+    if (root == null) {
+      return nodes;
+    }
+    var stack = new ArrayDeque<TermCodeNode>();
+    stack.push(root);
+    while (!stack.isEmpty()) {
+      var node = stack.pop();
+      nodes.add(node);
+      for (int i = node.children().size() - 1; i >= 0; i--) {
+        stack.push(node.children().get(i));
+      }
+    }
+    return nodes;
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * A modifier whose values are all strings, which is every modifier except the coding modifier.
+   * Values are {@code null} if the modifier has none.
+   *
+   * @param type   the type of the modifier in the snapshot
+   * @param path   the FHIRPath of the modifier
+   * @param values the values of the modifier in the order they are written
+   */
+  record StringModifier(byte type, String path, List<String> values) {
+
+    /**
+     * Returns the string values of {@code modifier} or {@code null} if {@code modifier} isn't a
+     * modifier of this library with string values.
+     */
+    static StringModifier of(Modifier modifier) {
+      if (modifier instanceof CodeModifier code) {
+        return new StringModifier(CODE_MODIFIER, code.path(), code.codes());
+      } else if (modifier instanceof TimeRestrictionModifier timeRestriction) {
+        return new StringModifier(TIME_RESTRICTION_MODIFIER, timeRestriction.path(),
+            Arrays.asList(timeRestriction.afterDate(), timeRestriction.beforeDate()));
+      } else if (modifier instanceof RangeModifier range) {
+        return new StringModifier(RANGE_MODIFIER, range.path(),
+            Arrays.asList(decimal(range.lowerBound()), decimal(range.upperBound()), range.unit()));
+      } else if (modifier instanceof NumericModifier numeric) {
+        return new StringModifier(NUMERIC_MODIFIER, numeric.path(),
+            Arrays.asList(numeric.comparator().name(), decimal(numeric.value()), numeric.unit()));
+      }
+      return null;
+    }
+
+    /**
+     * Converts the values back into a modifier.
+     *
+     * @throws IllegalArgumentException if the type is unknown or the values don't fit it
+     */
+    Modifier toModifier() {
+      return switch (type) {
+        case CODE_MODIFIER -> CodeModifier.of(path, values.toArray(String[]::new));
+        case TIME_RESTRICTION_MODIFIER -> TimeRestrictionModifier.of(path, value(0), value(1));
+        case RANGE_MODIFIER -> RangeModifier.of(path, decimal(value(0)), decimal(value(1)),
+            value(2));
+        case NUMERIC_MODIFIER -> NumericModifier.of(path, Comparator.valueOf(value(0)),
+            decimal(value(1)), value(2));
+        default -> throw new IllegalArgumentException("Unknown fixed criterion type: " + type);
+      };
+    }
+
+    private String value(int index) {
+      if (index >= values.size()) {
+        throw new IllegalArgumentException("Missing value %d of fixed criterion type %d."
+            .formatted(index, type));
+      }
+      return values.get(index);
+    }
+
+    private static String decimal(BigDecimal value) {
+      return value == null ? null : value.toString();
+    }
+
+    private static BigDecimal decimal(String value) {
+      return value == null ? null : new BigDecimal(value);
+    }
+  }
+
+  /**
+   * The hash index of a snapshot under construction. Each slot consists of the key hash and the
+   * offset of the mapping.
+   */
+  private static final class Index {
+
+    private final int[] slots;
+
+    private Index(int mappingCount) {
+      var capacity = Integer.highestOneBit(Math.max(1, mappingCount * 2 - 1)) << 1;
+      slots = new int[capacity * 2];
+      for (int i = 1; i < slots.length; i += 2) {
+        slots[i] = NULL;
+      }
+    }
+
+    private void add(int hash, int offset) {
+      var mask = slots.length / 2 - 1;
+      var slot = hash & mask;
+      while (slots[slot * 2 + 1] != NULL) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot * 2] = hash;
+      slots[slot * 2 + 1] = offset;
+    }
+  }
+
+  /**
+   * The string and term code tables of a snapshot under construction.
+   * <p>
+   * Term codes are keyed by all their components, because {@link TermCode#equals(Object)} ignores
+   * the display.
+   */
+  private static final class Tables {
+
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final List<TermCode> termCodes = new ArrayList<>();
+    private final Map<List<String>, Integer> termCodeIds = new HashMap<>();
+
+    private void add(Mapping mapping) {
+      add(mapping.key());
+      add(mapping.resourceType());
+      add(mapping.termCodePath());
+      add(mapping.valueFhirPath());
+      add(mapping.valueType());
+      add(mapping.timeRestrictionPath().orElse(null));
+      for (var modifier : mapping.fixedCriteria()) {
+        if (modifier instanceof CodingModifier codingModifier) {
+          add(codingModifier.path());
+          codingModifier.concepts().forEach(this::add);
+        } else {
+          var stringModifier = StringModifier.of(modifier);
+          add(stringModifier.path());
+          stringModifier.values().forEach(this::add);
+        }
+      }
+      for (var attributeMapping : mapping.attributeMappings().values()) {
+        add(attributeMapping.type());
+        add(attributeMapping.key());
+        add(attributeMapping.path());
+      }
+    }
+
+    private void add(ContextualTermCode contextualTermCode) {
+      add(contextualTermCode.context());
+      add(contextualTermCode.termCode());
+    }
+
+    private void add(TermCode termCode) {
+      if (termCode == null) {
+        return;
+      }
+      var key = List.of(termCode.system(), termCode.code(), termCode.display());
+      if (!termCodeIds.containsKey(key)) {
+        add(termCode.system());
+        add(termCode.code());
+        add(termCode.display());
+        termCodeIds.put(key, termCodes.size());
+        termCodes.add(termCode);
+      }
+    }
+
+    private void add(String string) {
+      if (string != null && !stringIds.containsKey(string)) {
+        stringIds.put(string, strings.size());
+        strings.add(string);
+      }
+    }
+
+    private int stringId(String string) {
+      return string == null ? NULL : stringIds.get(string);
+    }
+
+    private int termCodeId(TermCode termCode) {
+      return termCode == null ? NULL : termCodeIds.get(List.of(termCode.system(), termCode.code(), termCode.display()));
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package de.fdpg.sq2pathling.model;
+
+import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * The storage of the {@link Mapping mappings} of a {@link MappingContext}.
+ * <p>
+ * Implementations have to be thread-safe.
+ */
+public interface MappingStore {
+
+  /**
+   * Returns a store holding {@code mappings} on heap.
+   *
+   * @param mappings the mappings keyed by their term code
+   * @return the mapping store
+   */
+  static MappingStore of(Map<ContextualTermCode, Mapping> mappings) {
+    return new MapMappingStore(Map.copyOf(mappings));
+  }
+
+  /**
+   * Tries to find the {@link Mapping} with the given {@code key}.
+   *
+   * @param key the term code of the mapping
+   * @return either the mapping or {@code Optional#empty() nothing}
+   */
+  Optional<Mapping> find(ContextualTermCode key);
+
+  /**
+   * Tests whether there is a {@link Mapping} with the given {@code key}.
+   *
+   * @param key the term code of the mapping
+   * @return {@code true} if there is a mapping
+   */
+  boolean contains(ContextualTermCode key);
+
+  /**
+   * Returns the number of mappings.
+   *
+   * @return the number of mappings
+   */
+  int size();
+
+  /**
+   * Returns all mappings in no particular order.
+   *
+   * @return a stream of all mappings
+   */
+  Stream<Mapping> mappings();
+}
@@ -0,0 +1,198 @@
+package de.fdpg.sq2pathling.model;
+
+import static java.util.Objects.requireNonNull;
+
+import de.fdpg.sq2pathling.CacheStats;
+import de.fdpg.sq2pathling.model.common.TermCode;
+import de.fdpg.sq2pathling.model.structured_query.ContextualConcept;
+import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * A {@link MappingContext} loading the mappings and concepts of each context on first use.
+ * <p>
+ * Each context has its own {@link MappingContext partition}, so lookups are simply delegated to the
+ * partition of the context of the term code or concept.
+ * <p>
+ * The concept tree of a partition only contains the subtrees of the topmost nodes of its context.
+ * So ancestors are only known within the same context and term codes of different contexts have
+ * no common ancestor.
+ */
+final class PartitionedMappingContext extends MappingContext {
+
+  private static final MappingContext EMPTY = MappingContext.of();
+
+  private final Set<TermCode> contexts;
+  private final PartitionLoader loader;
+  private final Map<TermCode, MappingContext> partitions = new ConcurrentHashMap<>();
+
+  PartitionedMappingContext(Set<TermCode> contexts, PartitionLoader loader) {
+    super(new MapMappingStore(Map.of()), null);
+    this.contexts = Collections.unmodifiableSet(new LinkedHashSet<>(contexts));
+    this.loader = requireNonNull(loader);
+  }
+
+  @Override
+  public Optional<Mapping> findMapping(ContextualTermCode key) {
+    return partition(requireNonNull(key).context()).findMapping(key);
+  }
+
+  @Override
+  public Stream<ContextualTermCode> expandConcept(ContextualConcept concept) {
+    return partition(concept.context()).expandConcept(concept);
+  }
+
+  @Override
+  public boolean isDescendantOf(ContextualTermCode termCode, ContextualTermCode ancestor) {
+    return Objects.equals(termCode.context(), ancestor.context())
+        && partition(termCode.context()).isDescendantOf(termCode, ancestor);
+  }
+
+  @Override
+  public Optional<ContextualTermCode> lowestCommonAncestor(ContextualTermCode a,
+      ContextualTermCode b) {
+    if (!Objects.equals(a.context(), b.context())) {
+      return Optional.empty();
+    }
+    return partition(a.context()).lowestCommonAncestor(a, b)
+        .filter(ancestor -> !isPartitionRoot(ancestor));
+  }
+
+  @Override
+  public List<ContextualTermCode> ancestors(ContextualTermCode termCode) {
+    return partition(termCode.context()).ancestors(termCode).stream()
+        .filter(ancestor -> !isPartitionRoot(ancestor)).toList();
+  }
+
+  /**
+   * Returns the combined statistics of the expansion caches of all loaded partitions.
+   */
+  @Override
+  public CacheStats expansionCacheStats() {
+    return partitions.values().stream().map(MappingContext::expansionCacheStats)
+        .reduce(new CacheStats(0, 0, 0, 0, 0), (a, b) -> new CacheStats(a.hits() + b.hits(),
+            a.misses() + b.misses(), a.evictions() + b.evictions(), a.size() + b.size(),
+            a.weight() + b.weight()));
+  }
+
+  /**
+   * Returns the mappings of all contexts, loading all partitions not loaded yet.
+   */
+  @Override
+  MappingStore mappings() {
+    var stores = contexts.stream().map(context -> partition(context).mappings()).toList();
+    return new MappingStore() {
+      @Override
+      public Optional<Mapping> find(ContextualTermCode key) {
+        return findMapping(key);
+      }
+
+      @Override
+      public boolean contains(ContextualTermCode key) {
+        return findMapping(key).isPresent();
+      }
+
+      @Override
+      public int size() {
+        return stores.stream().mapToInt(MappingStore::size).sum();
+      }
+
+      @Override
+      public Stream<Mapping> mappings() {
+        return stores.stream().flatMap(MappingStore::mappings);
+      }
+    };
+  }
+
+  /**
+   * Returns the concept trees of all contexts joined into one, loading all partitions not loaded
+   * yet.
+   * <p>
+   * The tree is assembled on each call from the topmost nodes of all partitions that aren't nested
+   * in the tree of another partition. Several of them are joined under an artificial root without
+   * context. Nodes without context above the topmost nodes of the original tree aren't part of any
+   * partition and so are missing.
+   */
+  @Override
+  TermCodeNode conceptTree() {
+    var topmostNodes = new ArrayList<TermCodeNode>();
+    var nestedNodes = new HashSet<TermCodeNode>();
+    for (var context : contexts) {
+      var tree = partition(context).conceptTree();
+      if (tree == null) {
+        continue;
+      }
+      var forest = isPartitionRoot(tree.contextualTermCode()) ? tree.children() : List.of(tree);
+      for (var node : forest) {
+        topmostNodes.add(node);
+        collectNestedNodes(node, nestedNodes);
+      }
+    }
+    var roots = topmostNodes.stream().filter(node -> !nestedNodes.contains(node)).toList();
+    return switch (roots.size()) {
+      case 0 -> null;
+      case 1 -> roots.get(0);
+      default -> new TermCodeNode(ContextualTermCode.of(null, MappingPartitions.PARTITION_ROOT),
+          roots);
+    };
+  }
+
+  /**
+   * Collects the nodes below {@code node} whose context differs from that of their parent, which
+   * are the candidates for the topmost nodes of other partitions.
+   */
+  private static void collectNestedNodes(TermCodeNode node, Set<TermCodeNode> nestedNodes) {
+    var context = node.contextualTermCode().context();
+    for (var child : node.children()) {
+      if (!Objects.equals(context, child.contextualTermCode().context())) {
+        nestedNodes.add(child);
+      }
+      collectNestedNodes(child, nestedNodes);
+    }
+  }
+
+  /**
+   * Returns the contexts whose partitions are already loaded.
+   */
+  Set<TermCode> loadedContexts() {
+    return Set.copyOf(partitions.keySet());
+  }
+
+  private static boolean isPartitionRoot(ContextualTermCode termCode) {
+    return MappingPartitions.PARTITION_ROOT.equals(termCode.termCode());
+  }
+
+  private MappingContext partition(TermCode context) {
+    if (context == null || !contexts.contains(context)) {
+      return EMPTY;
+    }
+    return partitions.computeIfAbsent(context, c -> {
+      try {
+        return loader.load(c);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to load the mappings of context " + c + ".", e);
+      }
+    });
+  }
+
+  /**
+   * Loads the partition of a single context.
+   */
+  @FunctionalInterface
+  interface PartitionLoader {
+
+    MappingContext load(TermCode context) throws IOException;
+  }
+}
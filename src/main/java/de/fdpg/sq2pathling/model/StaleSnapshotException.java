@@ -0,0 +1,14 @@
+package de.fdpg.sq2pathling.model;
+
+import java.io.IOException;
+
+/**
+ * Signals that a {@link MappingSnapshot} was written by another format version or from other
+ * source mappings and has to be rebuilt.
+ */
+public class StaleSnapshotException extends IOException {
+
+  public StaleSnapshotException(String message) {
+    super(message);
+  }
+}
@@ -49,8 +49,13 @@ public record TermCode(String system, String code, String display) {
         return system.equals(termCode.system) && code.equals(termCode.code);
     }
 
+    /**
+     * Combines the hash codes of {@link #system() system} and {@link #code() code} directly instead of
+     * using {@link Objects#hash(Object...)}, because hash codes of strings are cached but the varargs
+     * array would be allocated on every call.
+     */
     @Override
     public int hashCode() {
-        return Objects.hash(system, code);
+        return 31 * system.hashCode() + code.hashCode();
     }
 }
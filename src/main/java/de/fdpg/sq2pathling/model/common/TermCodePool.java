@@ -0,0 +1,146 @@
+package de.fdpg.sq2pathling.model.common;
+
+import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * A pool of canonical {@link TermCode} and {@link ContextualTermCode} instances.
+ * <p>
+ * Mappings and concept trees repeat the same systems, codes and term codes many thousand times.
+ * Interning them at parse time keeps only one instance of each on heap. Term codes built from
+ * pooled strings are also cheap to compare, because {@link String#equals(Object)} returns early on
+ * identical instances. And lookups with a pooled key stop at the identity check of
+ * {@link java.util.HashMap} without calling {@code equals} at all.
+ * <p>
+ * Pooled instances are only returned for term codes equal in all components, including the
+ * display which {@link TermCode#equals(Object)} ignores. So canonicalization never changes what is
+ * displayed.
+ * <p>
+ * A pool only ever grows, so each load of mappings uses a pool of its own. Once loading is done,
+ * only its {@link #canonicalizer() canonicalizer} is kept and the pool itself is released.
+ * <p>
+ * Instances are thread-safe.
+ */
+public final class TermCodePool {
+
+    private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<TermCode, TermCode> termCodes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ContextualTermCode, ContextualTermCode> contextualTermCodes =
+        new ConcurrentHashMap<>();
+
+    private TermCodePool() {
+    }
+
+    /**
+     * Returns a new, empty pool.
+     *
+     * @return the pool
+     */
+    public static TermCodePool of() {
+        return new TermCodePool();
+    }
+
+    /**
+     * Returns the pooled instance of {@code string}, adding it if necessary.
+     *
+     * @param string the string to intern (can be null)
+     * @return the pooled string or {@code null} if {@code string} is null
+     */
+    public String intern(String string) {
+        if (string == null) {
+            return null;
+        }
+        var pooled = strings.putIfAbsent(string, string);
+        return pooled == null ? string : pooled;
+    }
+
+    /**
+     * Returns the pooled instance of {@code termCode}, adding it if necessary.
+     *
+     * @param termCode the term code to intern (can be null)
+     * @return the pooled term code or {@code null} if {@code termCode} is null
+     */
+    public TermCode intern(TermCode termCode) {
+        if (termCode == null) {
+            return null;
+        }
+        var pooled = termCodes.get(termCode);
+        if (pooled == null) {
+            pooled = TermCode.of(intern(termCode.system()), intern(termCode.code()),
+                intern(termCode.display()));
+            var existing = termCodes.putIfAbsent(pooled, pooled);
+            if (existing != null) {
+                pooled = existing;
+            }
+        }
+        return pooled.display().equals(termCode.display()) ? pooled
+            : TermCode.of(pooled.system(), pooled.code(), intern(termCode.display()));
+    }
+
+    /**
+     * Returns the pooled instance of {@code contextualTermCode}, adding it if necessary.
+     *
+     * @param contextualTermCode the contextual term code to intern
+     * @return the pooled contextual term code
+     */
+    public ContextualTermCode intern(ContextualTermCode contextualTermCode) {
+        var pooled = contextualTermCodes.get(contextualTermCode);
+        if (pooled == null) {
+            pooled = ContextualTermCode.of(intern(contextualTermCode.context()),
+                intern(contextualTermCode.termCode()));
+            var existing = contextualTermCodes.putIfAbsent(pooled, pooled);
+            if (existing != null) {
+                pooled = existing;
+            }
+        }
+        return sameDisplays(pooled, contextualTermCode) ? pooled
+            : ContextualTermCode.of(intern(contextualTermCode.context()),
+                intern(contextualTermCode.termCode()));
+    }
+
+    /**
+     * Returns the pooled instance of {@code contextualTermCode} without adding it.
+     * <p>
+     * Used for term codes of incoming queries, which shouldn't grow the pool.
+     *
+     * @param contextualTermCode the contextual term code to canonicalize
+     * @return the pooled contextual term code or {@code contextualTermCode} itself if there is none
+     */
+    public ContextualTermCode canonicalize(ContextualTermCode contextualTermCode) {
+        return canonicalize(contextualTermCodes, contextualTermCode);
+    }
+
+    /**
+     * Returns a function which {@link #canonicalize(ContextualTermCode) canonicalizes} contextual
+     * term codes against the ones pooled so far.
+     * <p>
+     * The function holds an immutable copy of the pooled contextual term codes only, not the pooled
+     * strings and term codes or the pool itself. Contextual term codes pooled later aren't seen by
+     * it.
+     *
+     * @return the canonicalizing function
+     */
+    public UnaryOperator<ContextualTermCode> canonicalizer() {
+        if (contextualTermCodes.isEmpty()) {
+            return UnaryOperator.identity();
+        }
+        var pooled = Map.copyOf(contextualTermCodes);
+        return contextualTermCode -> canonicalize(pooled, contextualTermCode);
+    }
+
+    private static ContextualTermCode canonicalize(
+        Map<ContextualTermCode, ContextualTermCode> pooledTermCodes,
+        ContextualTermCode contextualTermCode) {
+        var pooled = pooledTermCodes.get(contextualTermCode);
+        return pooled != null && sameDisplays(pooled, contextualTermCode) ? pooled
+            : contextualTermCode;
+    }
+
+    private static boolean sameDisplays(ContextualTermCode a, ContextualTermCode b) {
+        return (a.context() == null ? b.context() == null
+            : b.context() != null && a.context().display().equals(b.context().display()))
+            && a.termCode().display().equals(b.termCode().display());
+    }
+}
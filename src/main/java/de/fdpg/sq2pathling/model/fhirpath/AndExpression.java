@@ -5,6 +5,7 @@ import static java.util.stream.Collectors.joining;
 
 import de.fdpg.sq2pathling.PrintContext;
 import java.util.List;
+import java.util.stream.Collector;
 import java.util.stream.Stream;
 
 /**
@@ -33,6 +34,20 @@ public record AndExpression(List<BooleanExpression> expressions) implements Bool
     }
   }
 
+  /**
+   * Returns a collector building the conjunction of all collected expressions in a single pass.
+   * <p>
+   * Nested {@code AndExpressions} are flattened, {@link BooleanExpression#TRUE true} operands are
+   * dropped and a {@link BooleanExpression#FALSE false} operand makes the whole conjunction
+   * {@code false}. Without operands, the result is {@link BooleanExpression#TRUE true}.
+   *
+   * @return the collector
+   */
+  public static Collector<BooleanExpression, ?, BooleanExpression> collector() {
+    return BooleanOperands.collector(AndExpression.class, AndExpression::expressions,
+        BooleanExpression.TRUE, BooleanExpression.FALSE, AndExpression::new);
+  }
+
   @Override
   public String print(PrintContext printContext) {
     return printContext.parenthesize(PRECEDENCE, expressions.stream()
@@ -8,10 +8,10 @@ public interface BooleanExpression extends Expression {
     /**
      * An expression that always evaluates to {@code true}.
      */
-    BooleanExpression TRUE = printContext -> "true";
+    BooleanExpression TRUE = BooleanLiteralExpression.TRUE;
 
     /**
      * An expression that always evaluates to {@code false}.
      */
-    BooleanExpression FALSE = printContext -> "false";
+    BooleanExpression FALSE = BooleanLiteralExpression.FALSE;
 }
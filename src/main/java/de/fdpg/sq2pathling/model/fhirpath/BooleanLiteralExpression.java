@@ -0,0 +1,26 @@
+package de.fdpg.sq2pathling.model.fhirpath;
+
+import de.fdpg.sq2pathling.PrintContext;
+
+/**
+ * The boolean literals {@code true} and {@code false}.
+ * <p>
+ * Being an enum, both literals are singletons, so they can be compared by identity and are equal
+ * to themselves only, also as part of other expressions.
+ */
+public enum BooleanLiteralExpression implements BooleanExpression {
+
+  TRUE("true"),
+  FALSE("false");
+
+  private final String value;
+
+  BooleanLiteralExpression(String value) {
+    this.value = value;
+  }
+
+  @Override
+  public String print(PrintContext printContext) {
+    return value;
+  }
+}
@@ -0,0 +1,87 @@
+package de.fdpg.sq2pathling.model.fhirpath;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+/**
+ * Collects the operands of an n-ary boolean operator like {@link AndExpression} or
+ * {@link OrExpression} in a single pass.
+ * <p>
+ * Operands of the same operator are flattened into their parent, the identity element is dropped
+ * and the absorbing element discards all other operands. Flattening doesn't change the printed
+ * expression, because operands of the same precedence aren't parenthesized.
+ *
+ * @param <T> the type of the operator expression
+ */
+final class BooleanOperands<T extends BooleanExpression> {
+
+  private final Class<T> type;
+  private final Function<T, List<BooleanExpression>> operands;
+  private final BooleanExpression identity;
+  private final BooleanExpression absorbing;
+  private final List<BooleanExpression> expressions = new ArrayList<>();
+  private boolean absorbed;
+
+  private BooleanOperands(Class<T> type, Function<T, List<BooleanExpression>> operands,
+      BooleanExpression identity, BooleanExpression absorbing) {
+    this.type = type;
+    this.operands = operands;
+    this.identity = identity;
+    this.absorbing = absorbing;
+  }
+
+  /**
+   * Returns a collector building an operator expression from its operands.
+   * <p>
+   * The collector returns {@code identity} if there are no operands left and {@code absorbing} if
+   * one operand was {@code absorbing}. A single remaining operand is still wrapped in an operator
+   * expression, so it is parenthesized like before.
+   *
+   * @param type        the type of the operator expression
+   * @param operands    returns the operands of an operator expression
+   * @param identity    the operand not changing the result
+   * @param absorbing   the operand determining the result
+   * @param constructor creates the operator expression from its operands
+   * @param <T>         the type of the operator expression
+   * @return the collector
+   */
+  static <T extends BooleanExpression> Collector<BooleanExpression, ?, BooleanExpression> collector(
+      Class<T> type, Function<T, List<BooleanExpression>> operands, BooleanExpression identity,
+      BooleanExpression absorbing, Function<List<BooleanExpression>, T> constructor) {
+    return Collector.of(() -> new BooleanOperands<>(type, operands, identity, absorbing),
+        BooleanOperands::add, BooleanOperands::addAll, result -> {
+          if (result.absorbed) {
+            return absorbing;
+          }
+          return result.expressions.isEmpty() ? identity : constructor.apply(result.expressions);
+        });
+  }
+
+  private void add(BooleanExpression expression) {
+    if (absorbed || expression == identity) {
+      return;
+    }
+    if (expression == absorbing) {
+      absorbed = true;
+      expressions.clear();
+    } else if (type.isInstance(expression)) {
+      operands.apply(type.cast(expression)).forEach(this::add);
+    } else {
+      expressions.add(requireNonNull(expression));
+    }
+  }
+
+  private BooleanOperands<T> addAll(BooleanOperands<T> other) {
+    if (other.absorbed) {
+      absorbed = true;
+      expressions.clear();
+    } else if (!absorbed) {
+      expressions.addAll(other.expressions);
+    }
+    return this;
+  }
+}
@@ -0,0 +1,141 @@
+package de.fdpg.sq2pathling.model.fhirpath;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Eliminates common subexpressions by sharing a single instance of equal subtrees.
+ * <p>
+ * Expressions are values, so equal subtrees built for the same criterion appearing in several
+ * clauses, or in both the inclusion and the exclusion criteria, can be replaced by one instance.
+ * All expressions passed to the same {@code CommonSubexpressions} share their subtrees. The
+ * rewritten expressions print exactly like the original ones.
+ * <p>
+ * Instances are not thread-safe. Use one instance per translation.
+ */
+public final class CommonSubexpressions {
+
+  private final Map<Expression, Expression> subexpressions = new HashMap<>();
+  private int duplicates;
+
+  private CommonSubexpressions() {
+  }
+
+  /**
+   * Returns a new {@code CommonSubexpressions} without any known subexpressions.
+   *
+   * @return the new {@code CommonSubexpressions}
+   */
+  public static CommonSubexpressions of() {
+    return new CommonSubexpressions();
+  }
+
+  /**
+   * Returns {@code expression} with all subtrees equal to a subtree seen before replaced by that
+   * subtree.
+   *
+   * @param expression the expression to rewrite
+   * @return an equal expression sharing its subtrees with all expressions seen before
+   */
+  public BooleanExpression eliminate(BooleanExpression expression) {
+    return (BooleanExpression) intern(requireNonNull(expression));
+  }
+
+  /**
+   * Returns the number of repeated subtrees replaced so far.
+   * <p>
+   * Only the outermost repeated subtree is counted, not the subtrees contained in it. Literals,
+   * identifiers and function invocations without parameters aren't counted.
+   *
+   * @return the number of repeated subtrees
+   */
+  public int duplicates() {
+    return duplicates;
+  }
+
+  private Expression intern(Expression expression) {
+    var interned = subexpressions.get(expression);
+    if (interned != null) {
+      if (isComposite(interned)) {
+        duplicates++;
+      }
+      return interned;
+    }
+    interned = internOperands(expression);
+    subexpressions.put(interned, interned);
+    return interned;
+  }
+
+  /**
+   * Returns {@code expression} with all its operands interned, reusing {@code expression} if all
+   * operands are interned already.
+   */
+  private Expression internOperands(Expression expression) {
+    if (expression instanceof AndExpression and) {
+      var operands = internAll(and.expressions());
+      return operands == and.expressions() ? and : new AndExpression(operands);
+    } else if (expression instanceof OrExpression or) {
+      var operands = internAll(or.expressions());
+      return operands == or.expressions() ? or : new OrExpression(operands);
+    } else if (expression instanceof InvocationExpression invocation) {
+      var target = intern(invocation.expression());
+      var member = (Invocation) intern(invocation.invocation());
+      return target == invocation.expression() && member == invocation.invocation() ? invocation
+          : InvocationExpression.of(target, member);
+    } else if (expression instanceof FunctionInvocation function) {
+      var params = internAll(function.paramList());
+      return params == function.paramList() ? function
+          : FunctionInvocation.of(function.identifier(), params);
+    } else if (expression instanceof WhereFunction where) {
+      var criterion = intern(where.expression());
+      return criterion == where.expression() ? where : WhereFunction.of(criterion);
+    } else if (expression instanceof ReverseResolveFunctionExpression reverseResolve) {
+      var reference = intern(reverseResolve.expression());
+      return reference == reverseResolve.expression() ? reverseResolve
+          : ReverseResolveFunctionExpression.of(reference);
+    } else if (expression instanceof ComparatorExpression comparator) {
+      var a = intern(comparator.a());
+      var b = intern(comparator.b());
+      return a == comparator.a() && b == comparator.b() ? comparator
+          : ComparatorExpression.of(a, comparator.comparator(), b);
+    } else if (expression instanceof MembershipExpression membership) {
+      var a = intern(membership.a());
+      var b = intern(membership.b());
+      return a == membership.a() && b == membership.b() ? membership
+          : new MembershipExpression(a, membership.op(), b);
+    } else if (expression instanceof BetweenExpression between) {
+      var value = intern(between.expression());
+      return value == between.expression() ? between
+          : new BetweenExpression(value, between.lowerBound(), between.upperBound());
+    }
+    return expression;
+  }
+
+  /**
+   * Returns the interned {@code expressions} or {@code expressions} itself if all of them are
+   * interned already.
+   */
+  @SuppressWarnings("unchecked")
+  private <T extends Expression> List<T> internAll(List<T> expressions) {
+    var interned = expressions.stream().map(expression -> (T) intern(expression)).toList();
+    for (int i = 0; i < interned.size(); i++) {
+      if (interned.get(i) != expressions.get(i)) {
+        return interned;
+      }
+    }
+    return expressions;
+  }
+
+  private static boolean isComposite(Expression expression) {
+    return expression instanceof AndExpression || expression instanceof OrExpression
+        || expression instanceof InvocationExpression
+        || expression instanceof FunctionInvocation function && !function.paramList().isEmpty()
+        || expression instanceof WhereFunction
+        || expression instanceof ReverseResolveFunctionExpression
+        || expression instanceof ComparatorExpression || expression instanceof MembershipExpression
+        || expression instanceof BetweenExpression;
+  }
+}
@@ -1,11 +1,55 @@
 package de.fdpg.sq2pathling.model.fhirpath;
 
 import de.fdpg.sq2pathling.PrintContext;
+import java.util.List;
 
 /**
+ * An immutable FHIRPath expression.
+ * <p>
+ * Expressions are values: two expressions are equal and have the same hash code if they have the
+ * same structure.
+ *
  * @author Lorenz
  */
 public interface Expression {
 
     String print(PrintContext printContext);
+
+    /**
+     * Returns the number of nodes of {@code expression}, counting every node including
+     * {@code expression} itself.
+     *
+     * @param expression the expression to measure
+     * @return the number of nodes
+     */
+    static long size(Expression expression) {
+        if (expression instanceof AndExpression and) {
+            return 1 + size(and.expressions());
+        } else if (expression instanceof OrExpression or) {
+            return 1 + size(or.expressions());
+        } else if (expression instanceof InvocationExpression invocation) {
+            return 1 + size(invocation.expression()) + size(invocation.invocation());
+        } else if (expression instanceof FunctionInvocation function) {
+            return 1 + size(function.paramList());
+        } else if (expression instanceof WhereFunction where) {
+            return 1 + size(where.expression());
+        } else if (expression instanceof ReverseResolveFunctionExpression reverseResolve) {
+            return 1 + size(reverseResolve.expression());
+        } else if (expression instanceof ComparatorExpression comparator) {
+            return 1 + size(comparator.a()) + size(comparator.b());
+        } else if (expression instanceof MembershipExpression membership) {
+            return 1 + size(membership.a()) + size(membership.b());
+        } else if (expression instanceof BetweenExpression between) {
+            return 1 + size(between.expression());
+        }
+        return 1;
+    }
+
+    private static long size(List<? extends Expression> expressions) {
+        long size = 0;
+        for (var expression : expressions) {
+            size += size(expression);
+        }
+        return size;
+    }
 }
@@ -0,0 +1,107 @@
+package de.fdpg.sq2pathling.model.fhirpath;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+/**
+ * Simplifies boolean expressions without changing their result.
+ * <p>
+ * The following rewrites are applied bottom-up to all {@link AndExpression and} and
+ * {@link OrExpression or} expressions, also inside function parameters:
+ * <ul>
+ *   <li>constant folding: {@code true} operands of {@code and} and {@code false} operands of
+ *   {@code or} are dropped, {@code false and X} becomes {@code false} and {@code true or X} becomes
+ *   {@code true}</li>
+ *   <li>flattening: nested expressions of the same operator are merged into their parent and
+ *   single operands are unwrapped</li>
+ *   <li>duplicate removal: {@code A or A} becomes {@code A}</li>
+ *   <li>absorption: {@code A or (A and B)} becomes {@code A} and {@code A and (A or B)} becomes
+ *   {@code A}</li>
+ * </ul>
+ * Unwrapped operands are still parenthesized where necessary, because printing depends on the
+ * precedence of the operators only.
+ */
+public final class ExpressionOptimizer {
+
+  private static final Operator<AndExpression> AND = new Operator<>(AndExpression.class,
+      AndExpression::expressions, AndExpression.collector());
+  private static final Operator<OrExpression> OR = new Operator<>(OrExpression.class,
+      OrExpression::expressions, OrExpression.collector());
+
+  private ExpressionOptimizer() {
+  }
+
+  /**
+   * Returns the optimized form of {@code expression}.
+   *
+   * @param expression the expression to optimize
+   * @return an equivalent, possibly smaller expression
+   */
+  public static BooleanExpression optimize(BooleanExpression expression) {
+    return (BooleanExpression) rewrite(requireNonNull(expression));
+  }
+
+  private static Expression rewrite(Expression expression) {
+    if (expression instanceof AndExpression and) {
+      return rewrite(and.expressions(), AND, OR);
+    } else if (expression instanceof OrExpression or) {
+      return rewrite(or.expressions(), OR, AND);
+    } else if (expression instanceof InvocationExpression invocation) {
+      return InvocationExpression.of(rewrite(invocation.expression()),
+          (Invocation) rewrite(invocation.invocation()));
+    } else if (expression instanceof FunctionInvocation function) {
+      return function.paramList().isEmpty() ? function
+          : FunctionInvocation.of(function.identifier(),
+              function.paramList().stream().map(ExpressionOptimizer::rewrite).toList());
+    } else if (expression instanceof WhereFunction where) {
+      return WhereFunction.of(rewrite(where.expression()));
+    } else if (expression instanceof ReverseResolveFunctionExpression reverseResolve) {
+      return ReverseResolveFunctionExpression.of(rewrite(reverseResolve.expression()));
+    }
+    return expression;
+  }
+
+  /**
+   * Rewrites an {@code and} or {@code or} expression given by its operands.
+   *
+   * @param operands the operands of the expression
+   * @param operator the operator of the expression
+   * @param dual     the dual operator, {@code or} for {@code and} and vice versa
+   * @return the rewritten expression
+   */
+  private static BooleanExpression rewrite(List<BooleanExpression> operands,
+      Operator<?> operator, Operator<?> dual) {
+    var folded = operands.stream().map(operand -> (BooleanExpression) rewrite(operand))
+        .collect(operator.collector);
+    var foldedOperands = operator.operands(folded);
+    if (foldedOperands == null) {
+      return folded;
+    }
+
+    var unique = new LinkedHashSet<>(foldedOperands);
+    // an operand of the dual operator is absorbed if one of its own operands is a sibling
+    unique.removeIf(operand -> {
+      var nested = dual.operands(operand);
+      return nested != null && nested.stream().anyMatch(unique::contains);
+    });
+    return unique.size() == 1 ? unique.iterator().next()
+        : unique.stream().collect(operator.collector);
+  }
+
+  private record Operator<T extends BooleanExpression>(
+      Class<T> type,
+      Function<T, List<BooleanExpression>> operandsOf,
+      Collector<BooleanExpression, ?, BooleanExpression> collector) {
+
+    /**
+     * Returns the operands of {@code expression} or {@code null} if it isn't of this operator.
+     */
+    private List<BooleanExpression> operands(BooleanExpression expression) {
+      return type.isInstance(expression) ? operandsOf.apply(type.cast(expression)) : null;
+    }
+  }
+}
@@ -0,0 +1,553 @@
+package de.fdpg.sq2pathling.model.fhirpath;
+
+import static java.util.Objects.requireNonNull;
+
+import de.fdpg.sq2pathling.PrintContext;
+import de.fdpg.sq2pathling.model.common.Comparator;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Prints expressions into a single, reusable {@link StringBuilder}.
+ * <p>
+ * The output is the same as the one of {@link Expression#print(PrintContext)}, but the printer
+ * appends all parts of an expression directly instead of formatting and joining the strings of
+ * its subexpressions. Precedence and indentation are kept as primitive state instead of a new
+ * {@link PrintContext} per level. Expressions of unknown types are printed by their own
+ * {@code print} method.
+ * <p>
+ * The expression tree is traversed with an explicit stack, so that the printed text can also be
+ * {@link #reader(Expression) read} in chunks without ever holding all of it in memory.
+ * <p>
+ * A {@link #compact() compact} printer prints the same expression without line breaks and
+ * indentation, without spaces around comparators and after commas, and without the parentheses
+ * around {@code and} and {@code or} expressions of a single operand. Parentheses required by
+ * precedence are kept, so both forms denote the same expression. Unlike the default form, the
+ * compact form also parenthesizes operators in the target of an invocation, like in
+ * {@code (a or b).not()}.
+ * <p>
+ * A printer with a {@link PrintCache} looks up the {@link PrintCache#isCached(Expression) larger}
+ * subtrees in the cache before printing them, and caches the subtrees it prints. The hash of each
+ * subtree is computed once per print from the hashes of its children, so looking up all subtrees
+ * doesn't traverse them again and again.
+ * <p>
+ * Instances are not thread-safe. Reuse one instance per thread.
+ */
+public final class ExpressionPrinter {
+
+  /**
+   * The number of characters a {@link #reader(Expression) reader} prints ahead at most, apart
+   * from single literals longer than that.
+   */
+  static final int CHUNK_SIZE = 8192;
+
+  /**
+   * The precedence the target of an invocation is printed with in compact mode, higher than the one
+   * of all operators.
+   */
+  private static final int INVOCATION_TARGET_PRECEDENCE = BetweenExpression.PRECEDENCE + 1;
+
+  private static final Map<Comparator, String> COMPARATORS = new EnumMap<>(Comparator.class);
+  private static final Map<Comparator, String> COMPACT_COMPARATORS =
+      new EnumMap<>(Comparator.class);
+
+  static {
+    for (var comparator : Comparator.values()) {
+      COMPARATORS.put(comparator, " %s ".formatted(comparator));
+      COMPACT_COMPARATORS.put(comparator, comparator.toString());
+    }
+  }
+
+  private final StringBuilder out;
+  private final boolean compact;
+  private final PrintCache cache;
+  private final Traversal traversal;
+
+  private ExpressionPrinter(StringBuilder out, boolean compact, PrintCache cache) {
+    this.out = out;
+    this.compact = compact;
+    this.cache = cache;
+    traversal = new Traversal(compact, cache);
+  }
+
+  /**
+   * Returns a new {@code ExpressionPrinter} printing like {@link Expression#print(PrintContext)}.
+   *
+   * @return the new {@code ExpressionPrinter}
+   */
+  public static ExpressionPrinter of() {
+    return new ExpressionPrinter(new StringBuilder(), false, null);
+  }
+
+  /**
+   * Returns a new {@code ExpressionPrinter} printing like {@link Expression#print(PrintContext)}
+   * and memoizing printed subtrees in {@code cache}.
+   *
+   * @param cache the cache of printed subtrees, possibly shared with other printers
+   * @return the new {@code ExpressionPrinter}
+   */
+  public static ExpressionPrinter of(PrintCache cache) {
+    return new ExpressionPrinter(new StringBuilder(), false, requireNonNull(cache));
+  }
+
+  /**
+   * Returns a new {@code ExpressionPrinter} printing with minimal whitespace and parentheses.
+   *
+   * @return the new compact {@code ExpressionPrinter}
+   */
+  public static ExpressionPrinter compact() {
+    return new ExpressionPrinter(new StringBuilder(), true, null);
+  }
+
+  /**
+   * Returns a new {@code ExpressionPrinter} printing with minimal whitespace and parentheses and
+   * memoizing printed subtrees in {@code cache}.
+   *
+   * @param cache the cache of printed subtrees, possibly shared with other printers
+   * @return the new compact {@code ExpressionPrinter}
+   */
+  public static ExpressionPrinter compact(PrintCache cache) {
+    return new ExpressionPrinter(new StringBuilder(), true, requireNonNull(cache));
+  }
+
+  /**
+   * Prints {@code expression} like {@code expression.print(PrintContext.ZERO)}, or compact.
+   *
+   * @param expression the expression to print
+   * @return the printed expression
+   */
+  public String print(Expression expression) {
+    return print(expression, PrintContext.ZERO);
+  }
+
+  /**
+   * Prints {@code expression} like {@code expression.print(printContext)}, or compact ignoring the
+   * indentation of {@code printContext}.
+   *
+   * @param expression   the expression to print
+   * @param printContext the indentation and precedence to start with
+   * @return the printed expression
+   */
+  public String print(Expression expression, PrintContext printContext) {
+    out.setLength(0);
+    traversal.start(requireNonNull(expression), printContext);
+    while (traversal.hasNext()) {
+      traversal.appendNext(out, Integer.MAX_VALUE);
+    }
+    traversal.treeHashes.clear();
+    return out.toString();
+  }
+
+  /**
+   * Returns a reader of {@code expression} printed like {@link #print(Expression)}.
+   * <p>
+   * The expression is printed lazily while reading, at most {@value #CHUNK_SIZE} characters ahead.
+   * The reader is independent of this printer.
+   *
+   * @param expression the expression to print
+   * @return a reader of the printed expression
+   */
+  public Reader reader(Expression expression) {
+    var traversal = new Traversal(compact, cache);
+    traversal.start(requireNonNull(expression), PrintContext.ZERO);
+    return new ExpressionReader(traversal);
+  }
+
+  /**
+   * A depth-first traversal of an expression tree printing one part of an expression per step.
+   * <p>
+   * The stack holds the parts still to print: expressions, strings printed as they are, slices of
+   * cached text not printed yet, precedences to restore after the operands of an operator are
+   * printed and captures of subtrees to cache after they are printed.
+   */
+  private static final class Traversal {
+
+    private final ArrayDeque<Object> pending = new ArrayDeque<>();
+    /**
+     * The hashes of the cached subtrees of the expression being printed, by identity.
+     */
+    private final TreeHashes treeHashes = new TreeHashes();
+    private final boolean compact;
+    private final PrintCache cache;
+    private final Map<Comparator, String> comparators;
+    private final String paramSeparator;
+    private int indent;
+    private int precedence;
+    private String andSeparator;
+    private String orSeparator;
+    /**
+     * Counts the times the output was cleared, invalidating the start of all open captures.
+     */
+    private int generation;
+
+    private Traversal(boolean compact, PrintCache cache) {
+      this.compact = compact;
+      this.cache = cache;
+      comparators = compact ? COMPACT_COMPARATORS : COMPARATORS;
+      paramSeparator = compact ? "," : ", ";
+      if (compact) {
+        andSeparator = " and ";
+        orSeparator = " or ";
+      }
+    }
+
+    private void start(Expression expression, PrintContext printContext) {
+      pending.clear();
+      treeHashes.clear();
+      pending.push(expression);
+      if (!compact && (indent != printContext.indent() || andSeparator == null)) {
+        indent = printContext.indent();
+        andSeparator = " and\n" + printContext.getIndent();
+        orSeparator = " or\n" + printContext.getIndent();
+      }
+      precedence = printContext.precedence();
+    }
+
+    private boolean hasNext() {
+      return !pending.isEmpty();
+    }
+
+    /**
+     * Appends the next part to {@code out}. Cached text is appended at most {@code limit}
+     * characters at a time.
+     */
+    private void appendNext(StringBuilder out, int limit) {
+      var next = pending.pop();
+      if (next instanceof String text) {
+        out.append(text);
+      } else if (next instanceof Slice slice) {
+        var end = slice.start() + Math.min(limit, slice.text().length() - slice.start());
+        out.append(slice.text(), slice.start(), end);
+        if (end < slice.text().length()) {
+          pending.push(new Slice(slice.text(), end));
+        }
+      } else if (next instanceof Integer outerPrecedence) {
+        precedence = outerPrecedence;
+      } else if (next instanceof Capture capture) {
+        if (capture.generation() == generation) {
+          cache.put(capture.key(), out.substring(capture.start()));
+        }
+      } else {
+        append((Expression) next, out, limit);
+      }
+    }
+
+    /**
+     * Appends the leading text of {@code expression} to {@code out} and pushes the rest of it.
+     */
+    private void append(Expression expression, StringBuilder out, int limit) {
+      if (cache != null && PrintCache.isCached(expression)) {
+        var key = PrintCache.key(expression, treeHash(expression), indent, precedence, compact);
+        var printed = cache.get(key);
+        if (printed != null) {
+          if (printed.length() <= limit) {
+            out.append(printed);
+          } else {
+            pending.push(new Slice(printed, 0));
+          }
+          return;
+        }
+        pending.push(new Capture(key, out.length(), generation));
+      }
+      if (expression instanceof AndExpression and) {
+        pushOperands(and.expressions(), AndExpression.PRECEDENCE, andSeparator, out);
+      } else if (expression instanceof OrExpression or) {
+        pushOperands(or.expressions(), OrExpression.PRECEDENCE, orSeparator, out);
+      } else if (expression instanceof InvocationExpression invocation) {
+        pending.push(invocation.invocation());
+        pending.push(".");
+        if (compact) {
+          // the target of an invocation binds tighter than any operator
+          pending.push(precedence);
+          pending.push(invocation.expression());
+          precedence = INVOCATION_TARGET_PRECEDENCE;
+        } else {
+          pending.push(invocation.expression());
+        }
+      } else if (expression instanceof FunctionInvocation function) {
+        out.append(function.identifier()).append('(');
+        // like in FunctionInvocation#print, the parameters are printed with a reset precedence
+        pending.push(")");
+        pushOperands(function.paramList(), 0, paramSeparator);
+      } else if (expression instanceof WhereFunction where) {
+        out.append("where(");
+        pending.push(")");
+        pushArgument(where.expression());
+      } else if (expression instanceof ReverseResolveFunctionExpression reverseResolve) {
+        out.append("reverseResolve(");
+        pending.push(")");
+        pushArgument(reverseResolve.expression());
+      } else if (expression instanceof ComparatorExpression comparator) {
+        pushParenthesized(comparator.comparator().getPrecedence(), out, comparator.a(),
+            comparators.get(comparator.comparator()), comparator.b());
+      } else if (expression instanceof MembershipExpression membership) {
+        pushParenthesized(MembershipExpression.PRECEDENCE, out, membership.a(), " ",
+            membership.op(), " ", membership.b());
+      } else if (expression instanceof BetweenExpression between) {
+        pushParenthesized(BetweenExpression.PRECEDENCE, out, between.expression(), " between ",
+            between.lowerBound(), " and ", between.upperBound());
+      } else if (expression instanceof IdentifierExpression identifier) {
+        out.append(identifier.identifier());
+      } else if (expression instanceof MemberInvocation member) {
+        out.append(member.member());
+      } else if (expression instanceof StringLiteralExpression literal) {
+        out.append('\'').append(literal.value()).append('\'');
+      } else if (expression instanceof DateTimeLiteralExpression literal) {
+        out.append(literal.value());
+      } else if (expression instanceof QuantityExpression quantity) {
+        out.append(quantity.value());
+        if (quantity.unit() != null) {
+          out.append(" '").append(quantity.escapedUnit()).append('\'');
+        }
+      } else {
+        out.append(expression.print(new PrintContext(indent, precedence)));
+      }
+    }
+
+    /**
+     * Returns a hash of the subtree {@code expression}, equal for equal subtrees. The hashes of the
+     * cached subtrees are memoized, so each node is hashed only once per print.
+     */
+    private int treeHash(Expression expression) {
+      if (!PrintCache.isCached(expression)) {
+        return nodeHash(expression);
+      }
+      var hash = treeHashes.get(expression);
+      if (hash == TreeHashes.NONE) {
+        hash = nodeHash(expression);
+        treeHashes.put(expression, hash);
+      }
+      return hash;
+    }
+
+    private int nodeHash(Expression expression) {
+      var hash = expression.getClass().hashCode();
+      if (expression instanceof InvocationExpression invocation) {
+        return 31 * (31 * hash + treeHash(invocation.expression()))
+            + treeHash(invocation.invocation());
+      } else if (expression instanceof AndExpression and) {
+        return treeHash(hash, and.expressions());
+      } else if (expression instanceof OrExpression or) {
+        return treeHash(hash, or.expressions());
+      } else if (expression instanceof FunctionInvocation function) {
+        return treeHash(31 * hash + function.identifier().hashCode(), function.paramList());
+      } else if (expression instanceof WhereFunction where) {
+        return 31 * hash + treeHash(where.expression());
+      } else if (expression instanceof ReverseResolveFunctionExpression reverseResolve) {
+        return 31 * hash + treeHash(reverseResolve.expression());
+      } else if (expression instanceof ComparatorExpression comparator) {
+        return 31 * (31 * (31 * hash + comparator.comparator().hashCode())
+            + treeHash(comparator.a())) + treeHash(comparator.b());
+      } else if (expression instanceof MembershipExpression membership) {
+        return 31 * (31 * (31 * hash + Objects.hashCode(membership.op()))
+            + treeHash(membership.a())) + treeHash(membership.b());
+      } else if (expression instanceof BetweenExpression between) {
+        return 31 * (31 * (31 * hash + treeHash(between.expression()))
+            + between.lowerBound().hashCode()) + between.upperBound().hashCode();
+      }
+      // leaves are small, so their own hash code is cheap
+      return expression.hashCode();
+    }
+
+    private int treeHash(int hash, List<? extends Expression> children) {
+      for (var child : children) {
+        hash = 31 * hash + treeHash(child);
+      }
+      return hash;
+    }
+
+    /**
+     * Pushes the single argument of a function. Like in {@link Expression#print(PrintContext)}, the
+     * default form keeps the current precedence, while the compact form resets it, because the
+     * argument may be in the target of an invocation.
+     */
+    private void pushArgument(Expression argument) {
+      if (compact) {
+        pending.push(precedence);
+        precedence = 0;
+      }
+      pending.push(argument);
+    }
+
+    private void pushOperands(List<BooleanExpression> operands, int operatorPrecedence,
+        String separator, StringBuilder out) {
+      if (compact && operands.size() == 1) {
+        // a single operand needs parentheses only for its own operator
+        pending.push(operands.get(0));
+        return;
+      }
+      var parenthesize = operatorPrecedence < precedence;
+      if (parenthesize) {
+        out.append('(');
+        pending.push(")");
+      }
+      pushOperands(operands, operatorPrecedence, separator);
+    }
+
+    /**
+     * Pushes {@code operands} separated by {@code separator} to be printed with
+     * {@code operatorPrecedence}, restoring the current precedence afterwards.
+     */
+    private void pushOperands(List<? extends Expression> operands, int operatorPrecedence,
+        String separator) {
+      pending.push(precedence);
+      for (int i = operands.size() - 1; i >= 0; i--) {
+        pending.push(operands.get(i));
+        if (i > 0) {
+          pending.push(separator);
+        }
+      }
+      precedence = operatorPrecedence;
+    }
+
+    /**
+     * Pushes {@code parts}, expressions and strings, to be printed with
+     * {@code operatorPrecedence}, parenthesized if it's lower than the current precedence.
+     */
+    private void pushParenthesized(int operatorPrecedence, StringBuilder out, Object... parts) {
+      if (operatorPrecedence < precedence) {
+        out.append('(');
+        pending.push(")");
+      }
+      pending.push(precedence);
+      for (int i = parts.length - 1; i >= 0; i--) {
+        pending.push(parts[i]);
+      }
+      precedence = operatorPrecedence;
+    }
+  }
+
+  /**
+   * The start of the printed text of a subtree in the output of the given generation.
+   */
+  private record Capture(PrintCache.Key key, int start, int generation) {
+
+  }
+
+  /**
+   * The hashes of subtrees by the identity of their root, in an open-addressing table reused by
+   * all prints of a traversal.
+   */
+  private static final class TreeHashes {
+
+    /**
+     * Returned for unknown subtrees. A subtree actually hashing to it is just hashed again.
+     */
+    private static final int NONE = 0;
+
+    private Object[] keys = new Object[64];
+    private int[] hashes = new int[64];
+    private int size;
+
+    private int get(Expression expression) {
+      var mask = keys.length - 1;
+      for (int slot = System.identityHashCode(expression) & mask; keys[slot] != null;
+          slot = (slot + 1) & mask) {
+        if (keys[slot] == expression) {
+          return hashes[slot];
+        }
+      }
+      return NONE;
+    }
+
+    private void put(Expression expression, int hash) {
+      if (hash == NONE) {
+        return;
+      }
+      if (++size * 2 > keys.length) {
+        resize();
+      }
+      var mask = keys.length - 1;
+      var slot = System.identityHashCode(expression) & mask;
+      while (keys[slot] != null) {
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = expression;
+      hashes[slot] = hash;
+    }
+
+    private void resize() {
+      var oldKeys = keys;
+      var oldHashes = hashes;
+      keys = new Object[oldKeys.length * 2];
+      hashes = new int[oldKeys.length * 2];
+      var mask = keys.length - 1;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != null) {
+          var slot = System.identityHashCode(oldKeys[i]) & mask;
+          while (keys[slot] != null) {
+            slot = (slot + 1) & mask;
+          }
+          keys[slot] = oldKeys[i];
+          hashes[slot] = oldHashes[i];
+        }
+      }
+    }
+
+    /**
+     * Removes all hashes, keeping the table, so that no subtree stays reachable after a print.
+     */
+    private void clear() {
+      if (size > 0) {
+        Arrays.fill(keys, null);
+        size = 0;
+      }
+    }
+  }
+
+  /**
+   * The part of cached text starting at {@code start} which is still to print.
+   */
+  private record Slice(String text, int start) {
+
+  }
+
+  /**
+   * A reader printing the expression of a traversal chunk by chunk.
+   */
+  private static final class ExpressionReader extends Reader {
+
+    private final Traversal traversal;
+    private final StringBuilder chunk = new StringBuilder();
+    private int position;
+
+    private ExpressionReader(Traversal traversal) {
+      this.traversal = traversal;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (position == chunk.length()) {
+        chunk.setLength(0);
+        position = 0;
+        traversal.generation++;
+        while (chunk.length() < CHUNK_SIZE && traversal.hasNext()) {
+          traversal.appendNext(chunk, CHUNK_SIZE - chunk.length());
+        }
+        if (chunk.isEmpty()) {
+          return -1;
+        }
+      }
+      var count = Math.min(length, chunk.length() - position);
+      chunk.getChars(position, position + count, buffer, offset);
+      position += count;
+      return count;
+    }
+
+    @Override
+    public void close() {
+      traversal.pending.clear();
+      traversal.treeHashes.clear();
+      chunk.setLength(0);
+      position = 0;
+    }
+  }
+}
@@ -13,7 +13,7 @@ public record FunctionInvocation(String identifier, List<Expression> paramList)
 
   public FunctionInvocation {
     requireNonNull(identifier);
-    List.copyOf(paramList);
+    paramList = List.copyOf(paramList);
   }
 
   public static FunctionInvocation of(String identifier) {
@@ -81,8 +81,10 @@ public record FunctionInvocation(String identifier, List<Expression> paramList)
     if (paramList.isEmpty()) {
       return "%s()".formatted(identifier);
     }
+    // the parameters are delimited by the parentheses of the invocation already
+    var paramPrintContext = printContext.resetPrecedence();
     return "%s(%s)".formatted(identifier, String.join(", ",
-        paramList.stream().map(expression -> expression.print(printContext)).toList()));
+        paramList.stream().map(paramPrintContext::print).toList()));
   }
 
 }
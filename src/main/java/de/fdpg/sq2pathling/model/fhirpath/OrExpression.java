@@ -5,6 +5,7 @@ import static java.util.stream.Collectors.joining;
 
 import de.fdpg.sq2pathling.PrintContext;
 import java.util.List;
+import java.util.stream.Collector;
 
 /**
  * @author Lorenz
@@ -33,6 +34,20 @@ public record OrExpression(List<BooleanExpression> expressions) implements
     return new OrExpression(List.of(requireNonNull(e1), requireNonNull(e2)));
   }
 
+  /**
+   * Returns a collector building the disjunction of all collected expressions in a single pass.
+   * <p>
+   * Nested {@code OrExpressions} are flattened, {@link BooleanExpression#FALSE false} operands are
+   * dropped and a {@link BooleanExpression#TRUE true} operand makes the whole disjunction
+   * {@code true}. Without operands, the result is {@link BooleanExpression#FALSE false}.
+   *
+   * @return the collector
+   */
+  public static Collector<BooleanExpression, ?, BooleanExpression> collector() {
+    return BooleanOperands.collector(OrExpression.class, OrExpression::expressions,
+        BooleanExpression.FALSE, BooleanExpression.TRUE, OrExpression::new);
+  }
+
   @Override
   public String print(PrintContext printContext) {
     return printContext.parenthesize(PRECEDENCE, expressions.stream()
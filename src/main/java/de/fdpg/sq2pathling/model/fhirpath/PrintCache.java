@@ -0,0 +1,133 @@
+package de.fdpg.sq2pathling.model.fhirpath;
+
+import static java.util.Objects.requireNonNull;
+
+import de.fdpg.sq2pathling.CacheStats;
+import de.fdpg.sq2pathling.LruCache;
+import java.util.Objects;
+
+/**
+ * A bounded cache of printed subtrees for {@link ExpressionPrinter ExpressionPrinters}.
+ * <p>
+ * Expressions are values, so a subtree printed with the same indentation and precedence always
+ * results in the same text. Fragments like the fixed criteria of a mapping or a time restriction
+ * appear in many criteria and queries. With a cache they are printed only once. Only
+ * {@code and}, {@code or} and invocation expressions are cached. Smaller expressions are cheaper to
+ * print than to look up.
+ * <p>
+ * The cache holds at most {@link #capacity() capacity} characters of printed text and evicts the
+ * least recently used subtrees first. Subtrees printed to more than an eighth of the capacity
+ * aren't cached at all, so a single large filter can't evict all other subtrees.
+ * <p>
+ * Instances are thread-safe and can be shared by all printers of a translator.
+ */
+public final class PrintCache {
+
+  private final int capacity;
+  private final LruCache<Key, String> entries;
+
+  private PrintCache(int capacity) {
+    this.capacity = capacity;
+    entries = LruCache.of(capacity, String::length);
+  }
+
+  /**
+   * Returns a new, empty {@code PrintCache} holding at most {@code capacity} characters.
+   *
+   * @param capacity the maximum number of characters of printed text to hold
+   * @return the new {@code PrintCache}
+   * @throws IllegalArgumentException if {@code capacity} is negative
+   */
+  public static PrintCache of(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("negative capacity: " + capacity);
+    }
+    return new PrintCache(capacity);
+  }
+
+  static boolean isCached(Expression expression) {
+    return expression instanceof AndExpression || expression instanceof OrExpression
+        || expression instanceof InvocationExpression;
+  }
+
+  /**
+   * Returns the key of {@code expression} printed with {@code indent} and {@code precedence}.
+   *
+   * @param treeHash a hash of the subtree, equal for equal subtrees, which the printer computes
+   *                 once per node without traversing the subtree again
+   */
+  static Key key(Expression expression, int treeHash, int indent, int precedence,
+      boolean compact) {
+    return new Key(expression, treeHash, compact ? 0 : indent, precedence, compact);
+  }
+
+  String get(Key key) {
+    return entries.get(key);
+  }
+
+  void put(Key key, String printed) {
+    if (printed.length() <= capacity / 8) {
+      entries.put(key, printed);
+    }
+  }
+
+  /**
+   * Returns the maximum number of characters of printed text this cache holds.
+   *
+   * @return the capacity of this cache
+   */
+  public int capacity() {
+    return capacity;
+  }
+
+  /**
+   * Returns the statistics of this cache. The weight is the number of characters of printed text
+   * held.
+   *
+   * @return the statistics of this cache
+   */
+  public CacheStats stats() {
+    return entries.stats();
+  }
+
+  @Override
+  public String toString() {
+    return "PrintCache[capacity=%d, stats=%s]".formatted(capacity, stats());
+  }
+
+  /**
+   * A subtree together with the indentation and precedence it's printed with.
+   * <p>
+   * The hash of the subtree is given, because computing it from scratch traverses the whole
+   * subtree.
+   */
+  static final class Key {
+
+    private final Expression expression;
+    private final int indent;
+    private final int precedence;
+    private final boolean compact;
+    private final int hash;
+
+    private Key(Expression expression, int treeHash, int indent, int precedence,
+        boolean compact) {
+      this.expression = requireNonNull(expression);
+      this.indent = indent;
+      this.precedence = precedence;
+      this.compact = compact;
+      hash = Objects.hash(treeHash, indent, precedence, compact);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return this == o || o instanceof Key key && hash == key.hash && indent == key.indent
+          && precedence == key.precedence && compact == key.compact
+          && (expression == key.expression || expression.equals(key.expression));
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
@@ -21,6 +21,13 @@ public record QuantityExpression(BigDecimal value, String unit) implements Expre
 
     @Override
     public String print(PrintContext printContext) {
-        return unit == null ? value.toString() : "%s '%s'".formatted(value, unit);
+        return unit == null ? value.toString() : "%s '%s'".formatted(value, escapedUnit());
+    }
+
+    /**
+     * Returns the unit with single quotes escaped, as it's printed inside a string literal.
+     */
+    String escapedUnit() {
+        return unit.replace("'", "\\'");
     }
 }
@@ -0,0 +1,91 @@
+package de.fdpg.sq2pathling.model.fhirpath;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Merges ORed reverse joins of the same resource type into a single join.
+ * <p>
+ * Each expanded term code results in its own {@code reverseResolve(X.subject).exists(...)}, so
+ * Pathling would join the same resources once per term code. Because
+ * {@code c.exists(a) or c.exists(b)} is equivalent to {@code c.exists(a or b)}, all operands of an
+ * {@link OrExpression} joining the same resources are merged into one join at the position of the
+ * first of them. The criteria of the merged operands stay inside the join unchanged.
+ */
+public final class ReverseResolveMerger {
+
+  private static final String EXISTS = "exists";
+
+  private ReverseResolveMerger() {
+  }
+
+  /**
+   * Merges the reverse joins in all {@code or} expressions of {@code expression}.
+   *
+   * @param expression the expression to rewrite
+   * @return an equivalent expression with at most one join per resource type in each disjunction
+   */
+  public static BooleanExpression merge(BooleanExpression expression) {
+    if (requireNonNull(expression) instanceof AndExpression and) {
+      return new AndExpression(and.expressions().stream().map(ReverseResolveMerger::merge)
+          .toList());
+    } else if (expression instanceof OrExpression or) {
+      return new OrExpression(mergeOperands(or.expressions().stream()
+          .map(ReverseResolveMerger::merge).toList()));
+    }
+    return expression;
+  }
+
+  private static List<BooleanExpression> mergeOperands(List<BooleanExpression> operands) {
+    var criteria = new LinkedHashMap<ReverseResolveFunctionExpression, List<BooleanExpression>>();
+    for (var operand : operands) {
+      var join = join(operand);
+      if (join != null) {
+        criteria.computeIfAbsent(join, key -> new ArrayList<>()).add(criterion(operand));
+      }
+    }
+    if (criteria.values().stream().allMatch(joined -> joined.size() == 1)) {
+      return operands;
+    }
+
+    var merged = new ArrayList<BooleanExpression>(operands.size());
+    for (var operand : operands) {
+      var join = join(operand);
+      if (join == null) {
+        merged.add(operand);
+      } else {
+        // the first operand of each join takes all criteria, the others are dropped
+        var joined = criteria.remove(join);
+        if (joined != null) {
+          merged.add(joined.size() == 1 ? operand : InvocationExpression.of(join,
+              FunctionInvocation.of(EXISTS, List.of(joined.stream()
+                  .collect(OrExpression.collector())))));
+        }
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * Returns the join of {@code expression} if it has the form
+   * {@code reverseResolve(X.subject).exists(criterion)}.
+   */
+  private static ReverseResolveFunctionExpression join(BooleanExpression expression) {
+    if (expression instanceof InvocationExpression invocation
+        && invocation.expression() instanceof ReverseResolveFunctionExpression join
+        && invocation.invocation() instanceof FunctionInvocation function
+        && EXISTS.equals(function.identifier()) && function.paramList().size() == 1
+        && function.paramList().get(0) instanceof BooleanExpression) {
+      return join;
+    }
+    return null;
+  }
+
+  private static BooleanExpression criterion(BooleanExpression expression) {
+    var function = (FunctionInvocation) ((InvocationExpression) expression).invocation();
+    return (BooleanExpression) function.paramList().get(0);
+  }
+}
@@ -2,43 +2,46 @@ package de.fdpg.sq2pathling.model.structured_query;
 
 import static java.util.Objects.requireNonNull;
 
+import de.fdpg.sq2pathling.Cancellation;
 import de.fdpg.sq2pathling.Lists;
 import de.fdpg.sq2pathling.PrintContext;
 import de.fdpg.sq2pathling.model.AttributeMapping;
 import de.fdpg.sq2pathling.model.Mapping;
 import de.fdpg.sq2pathling.model.MappingContext;
-import de.fdpg.sq2pathling.model.common.Comparator;
 import de.fdpg.sq2pathling.model.common.TermCode;
 import de.fdpg.sq2pathling.model.fhirpath.AndExpression;
 import de.fdpg.sq2pathling.model.fhirpath.BooleanExpression;
-import de.fdpg.sq2pathling.model.fhirpath.ComparatorExpression;
 import de.fdpg.sq2pathling.model.fhirpath.FunctionInvocation;
 import de.fdpg.sq2pathling.model.fhirpath.IdentifierExpression;
 import de.fdpg.sq2pathling.model.fhirpath.InvocationExpression;
 import de.fdpg.sq2pathling.model.fhirpath.MemberInvocation;
 import de.fdpg.sq2pathling.model.fhirpath.OrExpression;
 import de.fdpg.sq2pathling.model.fhirpath.ReverseResolveFunctionExpression;
-import de.fdpg.sq2pathling.model.fhirpath.StringLiteralExpression;
-import de.fdpg.sq2pathling.model.fhirpath.WhereFunction;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Abstract criterion holding the concept, every non-static criterion has.
+ * <p>
+ * Criteria are immutable values. Two criteria are equal if they are of the same class and have
+ * equal concepts, attribute filters, time restrictions and values, so that their translations can
+ * be cached.
  */
 public abstract class AbstractCriterion implements Criterion {
 
   final ContextualConcept concept;
-  public List<AttributeFilter> attributeFilters;
+  final List<AttributeFilter> attributeFilters;
   final TimeRestriction timeRestriction;
 
   AbstractCriterion(ContextualConcept concept, List<AttributeFilter> attributeFilters,
       TimeRestriction timeRestriction) {
     this.concept = requireNonNull(concept);
-    this.attributeFilters = new ArrayList<>(attributeFilters);
+    this.attributeFilters = List.copyOf(attributeFilters);
     this.timeRestriction = timeRestriction;
   }
 
@@ -60,21 +63,8 @@ public abstract class AbstractCriterion implements Criterion {
     if (term_code_path == null) {
       return BooleanExpression.TRUE;
     }
-    var whereSystemFunction = WhereFunction.of(ComparatorExpression.of(
-        IdentifierExpression.of("system"),
-        Comparator.EQUAL,
-        StringLiteralExpression.of("%s".formatted(termCode.termCode().system()))));
-    var existsCodeInvocation = FunctionInvocation.of("exists", List.of(
-        ComparatorExpression.of(
-            IdentifierExpression.of("code"),
-            Comparator.EQUAL,
-            StringLiteralExpression.of("%s".formatted(termCode.termCode().code())))));
-    var systemAndCodeExpression = InvocationExpression.of(
-        whereSystemFunction,
-        existsCodeInvocation);
-    return InvocationExpression.of(
-        IdentifierExpression.of(term_code_path),
-        systemAndCodeExpression);
+    return Codings.exists(IdentifierExpression.of(term_code_path),
+        termCode.termCode().system(), List.of(termCode.termCode().code()));
   }
 
 
@@ -82,7 +72,7 @@ public abstract class AbstractCriterion implements Criterion {
       MappingContext mappingContext) {
     return modifiers.stream()
         .map(m -> m.expression(mappingContext))
-        .reduce(BooleanExpression.TRUE, AndExpression::of);
+        .collect(AndExpression.collector());
   }
 
   @Override
@@ -98,32 +88,24 @@ public abstract class AbstractCriterion implements Criterion {
   /**
    * Builds an OR-expression with an expression for each concept of the expansion of {@code
    * termCode}.
+   * <p>
+   * Term codes of the same system which select resources of the same type by the same value and
+   * modifiers share a single expression testing all of their codes at once.
    */
   private BooleanExpression fullExpr(MappingContext mappingContext) {
-    return mappingContext.expandConcept(concept)
-        .map(termCode -> expr(mappingContext, termCode))
-        .reduce(BooleanExpression.FALSE, OrExpression::of);
-  }
-
-  private BooleanExpression expr(MappingContext mappingContext, ContextualTermCode termCode) {
-    var mapping = mappingContext.findMapping(termCode)
-        .orElseThrow(() -> new MappingNotFoundException(termCode));
-    if ("Patient".equals(mapping.resourceType())) {
-      return valueAndModifierExpr(mappingContext, mapping);
-    } else {
-      var resourceType = mapping.resourceType();
-      var reverseResolveFunction = ReverseResolveFunctionExpression.of(
-          InvocationExpression.of(IdentifierExpression.of(resourceType),
-              MemberInvocation.of("subject")));
-      var identifier = identifyResourceByTermCode(mappingContext, termCode);
-      var value_and_modifiers = valueAndModifierExpr(mappingContext, mapping);
-      var existsInvocation = FunctionInvocation.of("exists", List.of(AndExpression.of(
-          identifier,
-          value_and_modifiers)));
-      return InvocationExpression.of(reverseResolveFunction, existsInvocation);
-
-
-    }
+    var selections = new LinkedHashMap<Object, Selection>();
+    mappingContext.expandConcept(concept).forEach(termCode -> {
+      Cancellation.checkpoint();
+      var mapping = mappingContext.findMapping(termCode)
+          .orElseThrow(() -> new MappingNotFoundException(termCode));
+      var valueAndModifiers = valueAndModifierExpr(mappingContext, mapping);
+      var selection = new Selection(mapping, valueAndModifiers, new ArrayList<>());
+      selections.computeIfAbsent(selection.key(termCode), key -> selection).termCodes()
+          .add(termCode.termCode());
+    });
+    return selections.values().stream()
+        .map(Selection::expression)
+        .collect(OrExpression.collector());
   }
 
   protected BooleanExpression valueAndModifierExpr(MappingContext mappingContext,
@@ -138,7 +120,8 @@ public abstract class AbstractCriterion implements Criterion {
       // TODO: is this correct position to handle this?
       return valueExpr == null ? BooleanExpression.TRUE : valueExpr;
     } else {
-      return AndExpression.of(valueExpr, modifiersExpr(modifiers, mappingContext));
+      return Stream.of(valueExpr, modifiersExpr(modifiers, mappingContext))
+          .collect(AndExpression.collector());
     }
   }
 
@@ -159,7 +142,61 @@ public abstract class AbstractCriterion implements Criterion {
     return timeRestriction;
   }
 
-  public void appendAttributeFilter(AttributeFilter attributeFilter) {
-    attributeFilters.add(attributeFilter);
+  public List<AttributeFilter> getAttributeFilters() {
+    return attributeFilters;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    var that = (AbstractCriterion) o;
+    return concept.equals(that.concept) && attributeFilters.equals(that.attributeFilters)
+        && Objects.equals(timeRestriction, that.timeRestriction);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(getClass(), concept, attributeFilters, timeRestriction);
+  }
+
+  /**
+   * The term codes selecting resources by the same mapping, value and modifier expression.
+   */
+  private record Selection(Mapping mapping, BooleanExpression valueAndModifiers,
+                           List<TermCode> termCodes) {
+
+    /**
+     * Returns the key of the selection {@code termCode} can be merged into.
+     * <p>
+     * Patients and resources without a term code path can't be selected by their codes, so each of
+     * their term codes stays on its own.
+     */
+    private Object key(ContextualTermCode termCode) {
+      if ("Patient".equals(mapping.resourceType()) || mapping.termCodePath() == null) {
+        return termCode;
+      }
+      return List.of(mapping.resourceType(), mapping.termCodePath(), termCode.termCode().system(),
+          valueAndModifiers);
+    }
+
+    private BooleanExpression expression() {
+      if ("Patient".equals(mapping.resourceType())) {
+        return valueAndModifiers;
+      }
+      var reverseResolveFunction = ReverseResolveFunctionExpression.of(
+          InvocationExpression.of(IdentifierExpression.of(mapping.resourceType()),
+              MemberInvocation.of("subject")));
+      var identifier = mapping.termCodePath() == null ? BooleanExpression.TRUE
+          : Codings.exists(IdentifierExpression.of(mapping.termCodePath()),
+              termCodes.get(0).system(), termCodes.stream().map(TermCode::code).toList());
+      var existsInvocation = FunctionInvocation.of("exists", List.of(
+          Stream.of(identifier, valueAndModifiers).collect(AndExpression.collector())));
+      return InvocationExpression.of(reverseResolveFunction, existsInvocation);
+    }
   }
 }
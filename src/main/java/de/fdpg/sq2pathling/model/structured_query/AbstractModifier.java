@@ -12,4 +12,8 @@ abstract class AbstractModifier implements Modifier {
     AbstractModifier(String path) {
         this.path = requireNonNull(path);
     }
+
+    public String path() {
+        return path;
+    }
 }
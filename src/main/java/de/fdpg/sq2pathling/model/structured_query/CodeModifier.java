@@ -25,6 +25,10 @@ public final class CodeModifier extends AbstractModifier {
     return new CodeModifier(path, codes == null ? List.of() : List.of(codes));
   }
 
+  public List<String> codes() {
+    return codes;
+  }
+
   public BooleanExpression expression(MappingContext mappingContext) {
 
     if (codes.size() == 1) {
@@ -35,8 +39,7 @@ public final class CodeModifier extends AbstractModifier {
       return codes.stream().map(c ->
               (BooleanExpression) ComparatorExpression.of(
                   IdentifierExpression.of(path), EQUAL, StringLiteralExpression.of("%s".formatted(c))))
-          .reduce(BooleanExpression.FALSE,
-              OrExpression::of);
+          .collect(OrExpression.collector());
     }
   }
 
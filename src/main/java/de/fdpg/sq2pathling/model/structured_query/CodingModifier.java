@@ -3,18 +3,13 @@ package de.fdpg.sq2pathling.model.structured_query;
 import static de.fdpg.sq2pathling.model.structured_query.AbstractCriterion.identifyResourceByTermCode;
 
 import de.fdpg.sq2pathling.model.MappingContext;
-import de.fdpg.sq2pathling.model.common.Comparator;
 import de.fdpg.sq2pathling.model.common.TermCode;
 import de.fdpg.sq2pathling.model.fhirpath.BooleanExpression;
-import de.fdpg.sq2pathling.model.fhirpath.ComparatorExpression;
-import de.fdpg.sq2pathling.model.fhirpath.FunctionInvocation;
 import de.fdpg.sq2pathling.model.fhirpath.IdentifierExpression;
 import de.fdpg.sq2pathling.model.fhirpath.InvocationExpression;
 import de.fdpg.sq2pathling.model.fhirpath.MemberInvocation;
 import de.fdpg.sq2pathling.model.fhirpath.MembershipExpression;
 import de.fdpg.sq2pathling.model.fhirpath.OrExpression;
-import de.fdpg.sq2pathling.model.fhirpath.StringLiteralExpression;
-import de.fdpg.sq2pathling.model.fhirpath.WhereFunction;
 import java.util.List;
 import java.util.Objects;
 
@@ -34,26 +29,14 @@ public final class CodingModifier extends AbstractModifier {
         return new CodingModifier(path, List.of(concepts));
     }
 
+    public List<TermCode> concepts() {
+        return concepts;
+    }
+
     public BooleanExpression expression(MappingContext mappingContext) {
-        return concepts.stream().map(termCode -> {
-            var whereSystemFunction = WhereFunction.of(ComparatorExpression.of(
-                IdentifierExpression.of("system"),
-                Comparator.EQUAL,
-                StringLiteralExpression.of("%s".formatted(termCode.system()))));
-            var existsCodeInvocation = FunctionInvocation.of("exists", List.of(
-                ComparatorExpression.of(
-                    IdentifierExpression.of("code"),
-                    Comparator.EQUAL,
-                    StringLiteralExpression.of("%s".formatted(termCode.code())))));
-            var systemAndCodeExpression = InvocationExpression.of(
-                whereSystemFunction,
-                existsCodeInvocation);
-            return (BooleanExpression) InvocationExpression.of(
-                InvocationExpression.of(
-                    IdentifierExpression.of(path),
-                    MemberInvocation.of("coding")),
-                systemAndCodeExpression);
-        }).reduce(BooleanExpression.FALSE, OrExpression::of);
+        return Codings.exists(InvocationExpression.of(IdentifierExpression.of(path),
+                MemberInvocation.of("coding")), concepts)
+            .collect(OrExpression.collector());
     }
 
     @Override
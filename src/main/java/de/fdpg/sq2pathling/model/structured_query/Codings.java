@@ -0,0 +1,76 @@
+package de.fdpg.sq2pathling.model.structured_query;
+
+import static java.util.Objects.requireNonNull;
+
+import de.fdpg.sq2pathling.model.common.Comparator;
+import de.fdpg.sq2pathling.model.common.TermCode;
+import de.fdpg.sq2pathling.model.fhirpath.BooleanExpression;
+import de.fdpg.sq2pathling.model.fhirpath.ComparatorExpression;
+import de.fdpg.sq2pathling.model.fhirpath.Expression;
+import de.fdpg.sq2pathling.model.fhirpath.FunctionInvocation;
+import de.fdpg.sq2pathling.model.fhirpath.IdentifierExpression;
+import de.fdpg.sq2pathling.model.fhirpath.InvocationExpression;
+import de.fdpg.sq2pathling.model.fhirpath.OrExpression;
+import de.fdpg.sq2pathling.model.fhirpath.StringLiteralExpression;
+import de.fdpg.sq2pathling.model.fhirpath.WhereFunction;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Builds expressions testing a collection of codings for term codes.
+ * <p>
+ * Term codes are grouped by system, so that the codings are filtered only once per system:
+ * {@code codings.where(system = 'S').exists(code = 'a' or code = 'b')} instead of one
+ * {@code codings.where(system = 'S').exists(code = 'a')} per code.
+ */
+final class Codings {
+
+  private Codings() {
+  }
+
+  /**
+   * Returns one expression per system of {@code termCodes} in the order of their first occurrence.
+   *
+   * @param codings   the collection of codings to test
+   * @param termCodes the term codes to test for
+   * @return a stream of expressions testing the existence of one of the codes of a system each
+   */
+  static Stream<BooleanExpression> exists(Expression codings, Collection<TermCode> termCodes) {
+    var codes = new LinkedHashMap<String, Collection<String>>();
+    for (var termCode : termCodes) {
+      codes.computeIfAbsent(termCode.system(), system -> new LinkedHashSet<>())
+          .add(termCode.code());
+    }
+    return codes.entrySet().stream()
+        .map(entry -> exists(codings, entry.getKey(), entry.getValue()));
+  }
+
+  /**
+   * Returns an expression testing {@code codings} for one of {@code codes} of {@code system}.
+   *
+   * @param codings the collection of codings to test
+   * @param system  the system of all codes
+   * @param codes   at least one code
+   * @return an expression testing the existence of one of the codes
+   */
+  static BooleanExpression exists(Expression codings, String system, Collection<String> codes) {
+    var whereSystemFunction = WhereFunction.of(ComparatorExpression.of(
+        IdentifierExpression.of("system"),
+        Comparator.EQUAL,
+        StringLiteralExpression.of("%s".formatted(requireNonNull(system)))));
+    var codeExpressions = codes.stream().map(code -> (BooleanExpression) ComparatorExpression.of(
+        IdentifierExpression.of("code"),
+        Comparator.EQUAL,
+        StringLiteralExpression.of("%s".formatted(code)))).toList();
+    var existsCodeInvocation = FunctionInvocation.of("exists", List.of(
+        codeExpressions.size() == 1 ? codeExpressions.get(0)
+            : codeExpressions.stream().collect(OrExpression.collector())));
+    var systemAndCodeExpression = InvocationExpression.of(
+        whereSystemFunction,
+        existsCodeInvocation);
+    return InvocationExpression.of(codings, systemAndCodeExpression);
+  }
+}
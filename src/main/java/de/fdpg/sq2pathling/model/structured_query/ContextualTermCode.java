@@ -2,10 +2,24 @@ package de.fdpg.sq2pathling.model.structured_query;
 
 
 import de.fdpg.sq2pathling.model.common.TermCode;
+import java.util.Objects;
 
 public record ContextualTermCode(TermCode context, TermCode termCode) {
 
   public static ContextualTermCode of(TermCode context, TermCode termCode) {
     return new ContextualTermCode(context, termCode);
   }
-}
\ No newline at end of file
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    ContextualTermCode that = (ContextualTermCode) o;
+    return Objects.equals(context, that.context) && Objects.equals(termCode, that.termCode);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Objects.hashCode(context) + Objects.hashCode(termCode);
+  }
+}
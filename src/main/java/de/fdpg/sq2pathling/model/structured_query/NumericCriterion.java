@@ -12,6 +12,7 @@ import de.fdpg.sq2pathling.model.fhirpath.MemberInvocation;
 import de.fdpg.sq2pathling.model.fhirpath.QuantityExpression;
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 /**
@@ -119,6 +120,17 @@ public final class NumericCriterion extends AbstractCriterion {
     return Optional.ofNullable(unit);
   }
 
+  @Override
+  public boolean equals(Object o) {
+    return super.equals(o) && o instanceof NumericCriterion that && comparator == that.comparator
+        && value.equals(that.value) && Objects.equals(unit, that.unit);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), comparator, value, unit);
+  }
+
   BooleanExpression valueExpr(MappingContext mappingContext, Mapping mapping) {
     if (mapping.key().termCode().equals(AgeUtils.AGE)) {
       return AgeUtils.translateAge(mapping.valueFhirPath(), comparator, value.intValue(), AgeUnit.valueOf(unit));
@@ -29,6 +29,18 @@ public class NumericModifier extends AbstractModifier {
         return new NumericModifier(path, comparator, value, unit);
     }
 
+    public Comparator comparator() {
+        return comparator;
+    }
+
+    public BigDecimal value() {
+        return value;
+    }
+
+    public String unit() {
+        return unit;
+    }
+
     @Override
     public BooleanExpression expression(MappingContext mappingContext) {
         var memberInvocation = MemberInvocation.of(path);
@@ -45,7 +57,7 @@ public class NumericModifier extends AbstractModifier {
         if (o == null || getClass() != o.getClass()) return false;
         NumericModifier that = (NumericModifier) o;
         return path.equals(that.path) && comparator.equals(that.comparator)
-                && value.equals(that.value) && unit.equals(that.unit);
+                && value.equals(that.value) && Objects.equals(unit, that.unit);
     }
 
     @Override
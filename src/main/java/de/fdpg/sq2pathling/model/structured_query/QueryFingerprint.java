@@ -0,0 +1,188 @@
+package de.fdpg.sq2pathling.model.structured_query;
+
+import de.fdpg.sq2pathling.model.common.TermCode;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Computes fingerprints of Structured Queries which are equal for queries with the same meaning.
+ * <p>
+ * The fingerprint is the SHA-256 hash of a canonical form of the query. In the canonical form, the
+ * criteria of each clause and the clauses themselves are sorted, and so are the term codes of
+ * concepts, selected concepts and attribute filters. Displays of term codes are left out. Values
+ * are kept exactly as given, so {@code 1.0} and {@code 1} result in different fingerprints.
+ * <p>
+ * Only the criteria and attribute filters parsed from Structured Query JSON are known. Queries
+ * with other criteria have no fingerprint.
+ */
+public final class QueryFingerprint {
+
+  private QueryFingerprint() {
+  }
+
+  /**
+   * Returns the fingerprint of {@code structuredQuery}.
+   *
+   * @param structuredQuery the Structured Query
+   * @return the fingerprint as hex string or {@link Optional#empty() nothing} if
+   * {@code structuredQuery} contains unknown criteria
+   */
+  public static Optional<String> of(StructuredQuery structuredQuery) {
+    return canonicalForm(structuredQuery).map(QueryFingerprint::sha256);
+  }
+
+  static Optional<String> canonicalForm(StructuredQuery structuredQuery) {
+    var inclusion = clauses(structuredQuery.inclusionCriteria());
+    var exclusion = clauses(structuredQuery.exclusionCriteria());
+    if (inclusion == null || exclusion == null) {
+      return Optional.empty();
+    }
+    // the translator leaves out the exclusion filter if the first exclusion clause is empty
+    var exclusionFilter = !structuredQuery.exclusionCriteria().isEmpty()
+        && !structuredQuery.exclusionCriteria().get(0).isEmpty();
+    return Optional.of("inclusion" + inclusion + "exclusion" + exclusionFilter + exclusion);
+  }
+
+  private static String clauses(List<List<Criterion>> clauses) {
+    var canonicalClauses = new ArrayList<String>(clauses.size());
+    for (var clause : clauses) {
+      var criteria = new ArrayList<String>(clause.size());
+      for (var criterion : clause) {
+        var canonicalCriterion = canonicalForm(criterion);
+        if (canonicalCriterion == null) {
+          return null;
+        }
+        criteria.add(canonicalCriterion);
+      }
+      canonicalClauses.add(sorted(criteria));
+    }
+    return sorted(canonicalClauses);
+  }
+
+  /**
+   * Returns the canonical form of {@code criterion} or {@code null} if {@code criterion} is
+   * unknown.
+   */
+  static String canonicalForm(Criterion criterion) {
+    if (criterion == Criterion.TRUE) {
+      return "true";
+    }
+    if (criterion == Criterion.FALSE) {
+      return "false";
+    }
+    if (!(criterion instanceof AbstractCriterion abstractCriterion)) {
+      return null;
+    }
+    var out = new StringBuilder();
+    if (criterion instanceof ConceptCriterion) {
+      out.append("concept");
+    } else if (criterion instanceof NumericCriterion numeric) {
+      out.append("numeric").append(numeric.getComparator());
+      value(out, numeric.getValue());
+      string(out, numeric.getUnit().orElse(null));
+    } else if (criterion instanceof RangeCriterion range) {
+      out.append("range");
+      value(out, range.getLowerBound());
+      value(out, range.getUpperBound());
+      string(out, range.getUnit().orElse(null));
+    } else if (criterion instanceof ValueSetCriterion valueSet) {
+      out.append("value-set").append(termCodes(valueSet.getSelectedConcepts()));
+    } else {
+      return null;
+    }
+    var concept = abstractCriterion.concept;
+    termCode(out, concept.context());
+    out.append(termCodes(concept.concept().termCodes()));
+    var timeRestriction = abstractCriterion.timeRestriction;
+    if (timeRestriction != null) {
+      out.append("time-restriction");
+      string(out, timeRestriction.afterDate());
+      string(out, timeRestriction.beforeDate());
+    }
+    var attributeFilters = new ArrayList<String>(abstractCriterion.attributeFilters.size());
+    for (var attributeFilter : abstractCriterion.attributeFilters) {
+      var canonicalAttributeFilter = attributeFilter(attributeFilter);
+      if (canonicalAttributeFilter == null) {
+        return null;
+      }
+      attributeFilters.add(canonicalAttributeFilter);
+    }
+    return out.append(sorted(attributeFilters)).toString();
+  }
+
+  private static String attributeFilter(AttributeFilter attributeFilter) {
+    var out = new StringBuilder();
+    if (attributeFilter instanceof NumericAttributeFilter numeric) {
+      out.append("numeric").append(numeric.comparator());
+      value(out, numeric.value());
+      string(out, numeric.unit());
+    } else if (attributeFilter instanceof RangeAttributeFilter range) {
+      out.append("range");
+      value(out, range.lowerBound());
+      value(out, range.upperBound());
+      string(out, range.unit());
+    } else if (attributeFilter instanceof ValueSetAttributeFilter valueSet) {
+      out.append("value-set").append(termCodes(valueSet.selectedConcepts()));
+    } else {
+      return null;
+    }
+    termCode(out, attributeFilter.attributeCode());
+    return out.toString();
+  }
+
+  private static String termCodes(Collection<TermCode> termCodes) {
+    var canonicalTermCodes = new ArrayList<String>(termCodes.size());
+    for (var termCode : termCodes) {
+      var out = new StringBuilder();
+      termCode(out, termCode);
+      canonicalTermCodes.add(out.toString());
+    }
+    return sorted(canonicalTermCodes);
+  }
+
+  private static void termCode(StringBuilder out, TermCode termCode) {
+    string(out, termCode.system());
+    string(out, termCode.code());
+  }
+
+  private static void value(StringBuilder out, BigDecimal value) {
+    string(out, value.toString());
+  }
+
+  /**
+   * Appends {@code s} prefixed by its length, so that no two sequences of strings result in the
+   * same text.
+   */
+  private static void string(StringBuilder out, String s) {
+    if (s == null) {
+      out.append('-');
+    } else {
+      out.append(s.length()).append(':').append(s);
+    }
+  }
+
+  private static String sorted(List<String> parts) {
+    parts.sort(null);
+    var out = new StringBuilder("[");
+    for (var part : parts) {
+      string(out, part);
+    }
+    return out.append(']').toString();
+  }
+
+  private static String sha256(String canonicalForm) {
+    try {
+      var digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(canonicalForm.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is required on every Java platform", e);
+    }
+  }
+}
@@ -10,6 +10,7 @@ import de.fdpg.sq2pathling.model.fhirpath.MemberInvocation;
 import de.fdpg.sq2pathling.model.fhirpath.QuantityExpression;
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 /**
@@ -76,6 +77,17 @@ public final class RangeCriterion extends AbstractCriterion {
     return Optional.ofNullable(unit);
   }
 
+  @Override
+  public boolean equals(Object o) {
+    return super.equals(o) && o instanceof RangeCriterion that && lowerBound.equals(that.lowerBound)
+        && upperBound.equals(that.upperBound) && Objects.equals(unit, that.unit);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), lowerBound, upperBound, unit);
+  }
+
   @Override
   BooleanExpression valueExpr(MappingContext mappingContext, Mapping mapping) {
     if (mapping.key().termCode().equals(AgeUtils.AGE)) {
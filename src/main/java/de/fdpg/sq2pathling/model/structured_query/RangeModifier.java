@@ -9,6 +9,7 @@ import de.fdpg.sq2pathling.model.fhirpath.InvocationExpression;
 import de.fdpg.sq2pathling.model.fhirpath.MemberInvocation;
 import de.fdpg.sq2pathling.model.fhirpath.QuantityExpression;
 import java.math.BigDecimal;
+import java.util.Objects;
 
 public class RangeModifier extends AbstractModifier {
 
@@ -28,6 +29,18 @@ public class RangeModifier extends AbstractModifier {
     return new RangeModifier(path, lowerBound, upperBound, unit);
   }
 
+  public BigDecimal lowerBound() {
+    return lowerBound;
+  }
+
+  public BigDecimal upperBound() {
+    return upperBound;
+  }
+
+  public String unit() {
+    return unit;
+  }
+
   @Override
   public BooleanExpression expression(MappingContext mappingContext) {
     var memberInvocation = MemberInvocation.of(path);
@@ -38,4 +51,22 @@ public class RangeModifier extends AbstractModifier {
   private QuantityExpression quantityExpression(BigDecimal value, String unit) {
     return unit == null ? QuantityExpression.of(value) : QuantityExpression.of(value, unit);
   }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    RangeModifier that = (RangeModifier) o;
+    return path.equals(that.path) && Objects.equals(lowerBound, that.lowerBound)
+        && Objects.equals(upperBound, that.upperBound) && Objects.equals(unit, that.unit);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(path, lowerBound, upperBound, unit);
+  }
 }
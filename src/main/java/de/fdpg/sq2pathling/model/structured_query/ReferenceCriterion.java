@@ -9,6 +9,7 @@ import de.fdpg.sq2pathling.model.fhirpath.IdentifierExpression;
 import de.fdpg.sq2pathling.model.fhirpath.InvocationExpression;
 import de.fdpg.sq2pathling.model.fhirpath.MembershipExpression;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * A {@code ReferenceCriterion} will select all patients that have at least one resource represented
@@ -31,6 +32,17 @@ public final class ReferenceCriterion extends AbstractCriterion {
         criterion.timeRestriction(), referencedTermCode);
   }
 
+  @Override
+  public boolean equals(Object o) {
+    return super.equals(o) && o instanceof ReferenceCriterion that
+        && Objects.equals(referencedTermCode, that.referencedTermCode);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), referencedTermCode);
+  }
+
   @Override
   BooleanExpression valueExpr(MappingContext mappingContext, Mapping mapping) {
 //    var retrieveExprContainer = identifyResourceByTermCode(mappingContext, referencedTermCode).map(
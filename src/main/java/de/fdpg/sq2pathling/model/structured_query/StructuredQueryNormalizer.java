@@ -0,0 +1,177 @@
+package de.fdpg.sq2pathling.model.structured_query;
+
+import static java.util.Objects.requireNonNull;
+
+import de.fdpg.sq2pathling.model.common.TermCode;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Rewrites Structured Queries into a canonical form without changing their result.
+ * <p>
+ * Queries differing only in the order of their criteria, in duplicate criteria or in redundant
+ * clauses are normalized into the same query, so that they are translated into the same filters.
+ * The following rewrites are applied:
+ * <ul>
+ *   <li>sorting: the criteria of each clause and the clauses themselves are sorted by their
+ *   {@link QueryFingerprint canonical form}, and so are the term codes of concept criteria</li>
+ *   <li>duplicate removal: duplicate criteria of a clause and duplicate clauses are removed</li>
+ *  *   <li>constant folding: inclusion clauses containing {@link Criterion#TRUE true} and exclusion
+ *   clauses containing {@link Criterion#FALSE false} are dropped, and so are {@code false}
+ *   criteria of inclusion clauses and {@code true} criteria of exclusion clauses</li>
+ * </ul>
+ * Displays of term codes aren't part of the canonical form. Of criteria differing only in their
+ * displays, the first one is kept.
+ * <p>
+ * Criteria of a clause are never merged into one criterion. A concept falls back to its own term
+ * codes only if none of them is part of the concept tree, so a merged criterion could drop term
+ * codes and hide criteria that fail to translate.
+ * <p>
+ * Queries with criteria other than the ones parsed from Structured Query JSON are returned
+ * unchanged.
+ */
+public final class StructuredQueryNormalizer {
+
+  private static final Comparator<List<String>> LEXICOGRAPHIC_ORDER = (list1, list2) -> {
+    for (int i = 0; i < Math.min(list1.size(), list2.size()); i++) {
+      int result = list1.get(i).compareTo(list2.get(i));
+      if (result != 0) {
+        return result;
+      }
+    }
+    return Integer.compare(list1.size(), list2.size());
+  };
+
+  private StructuredQueryNormalizer() {
+  }
+
+  /**
+   * Returns the normalized form of {@code structuredQuery}.
+   *
+   * @param structuredQuery the Structured Query to normalize
+   * @return an equivalent Structured Query in canonical form
+   */
+  public static StructuredQuery normalize(StructuredQuery structuredQuery) {
+    requireNonNull(structuredQuery);
+    var inclusionCriteria = inclusionCriteria(structuredQuery.inclusionCriteria());
+    var exclusionCriteria = exclusionCriteria(structuredQuery.exclusionCriteria());
+    if (inclusionCriteria == null || exclusionCriteria == null) {
+      return structuredQuery;
+    }
+    return new StructuredQuery(inclusionCriteria, exclusionCriteria);
+  }
+
+  /**
+   * Normalizes the conjunction of disjunctions {@code clauses} or returns {@code null} if they
+   * contain unknown criteria.
+   */
+  private static List<List<Criterion>> inclusionCriteria(List<List<Criterion>> clauses) {
+    var normalizedClauses = new TreeMap<List<String>, List<Criterion>>(LEXICOGRAPHIC_ORDER);
+    for (var clause : clauses) {
+      var criteria = criteria(clause, Criterion.TRUE, Criterion.FALSE);
+      if (criteria == null) {
+        return null;
+      }
+      if (criteria.isEmpty()) {
+        continue;
+      }
+      if (criteria.containsValue(Criterion.FALSE)) {
+        return List.of(List.of(Criterion.FALSE));
+      }
+      normalizedClauses.putIfAbsent(List.copyOf(criteria.keySet()), List.copyOf(criteria.values()));
+    }
+    return normalizedClauses.isEmpty()
+        ? List.of(List.of(Criterion.TRUE))
+        : List.copyOf(normalizedClauses.values());
+  }
+
+  /**
+   * Normalizes the disjunction of conjunctions {@code clauses} or returns {@code null} if they
+   * contain unknown criteria.
+   * <p>
+   * An empty first clause means that there are no exclusion criteria at all.
+   */
+  private static List<List<Criterion>> exclusionCriteria(List<List<Criterion>> clauses) {
+    if (clauses.isEmpty() || clauses.get(0).isEmpty()) {
+      return List.of(List.of());
+    }
+    var normalizedClauses = new TreeMap<List<String>, List<Criterion>>(LEXICOGRAPHIC_ORDER);
+    for (var clause : clauses) {
+      var criteria = criteria(clause, Criterion.FALSE, Criterion.TRUE);
+      if (criteria == null) {
+        return null;
+      }
+      if (criteria.isEmpty()) {
+        continue;
+      }
+      if (criteria.containsValue(Criterion.TRUE)) {
+        return List.of(List.of(Criterion.TRUE));
+      }
+      normalizedClauses.putIfAbsent(List.copyOf(criteria.keySet()), List.copyOf(criteria.values()));
+    }
+    return normalizedClauses.isEmpty()
+        ? List.of(List.of())
+        : List.copyOf(normalizedClauses.values());
+  }
+
+  /**
+   * Returns the distinct criteria of {@code clause} by their canonical form.
+   * <p>
+   * Returns an empty map if {@code clause} contains the {@code absorbing} criterion, which makes
+   * the whole clause a constant that can be dropped, and a map containing only the
+   * {@code neutral} criterion if {@code clause} contains nothing else, which makes the whole clause
+   * the opposite constant. Returns {@code null} if {@code clause} contains unknown criteria.
+   */
+  private static TreeMap<String, Criterion> criteria(List<Criterion> clause, Criterion absorbing,
+      Criterion neutral) {
+    var criteria = new TreeMap<String, Criterion>();
+    for (var criterion : clause) {
+      if (criterion == absorbing) {
+        return new TreeMap<>();
+      }
+      if (criterion == neutral) {
+        continue;
+      }
+      var canonicalCriterion = canonicalCriterion(criterion);
+      var key = QueryFingerprint.canonicalForm(canonicalCriterion);
+      if (key == null) {
+        return null;
+      }
+      criteria.putIfAbsent(key, canonicalCriterion);
+    }
+    if (criteria.isEmpty()) {
+      criteria.put(QueryFingerprint.canonicalForm(neutral), neutral);
+    }
+    return criteria;
+  }
+
+  /**
+   * Returns {@code criterion} with the term codes of its concept sorted and without duplicates, if
+   * it's a concept criterion.
+   */
+  private static Criterion canonicalCriterion(Criterion criterion) {
+    if (criterion instanceof ConceptCriterion conceptCriterion) {
+      return canonicalCriterion(conceptCriterion, conceptCriterion.concept.concept().termCodes());
+    }
+    return criterion;
+  }
+
+  /**
+   * Returns {@code criterion} with {@code termCodes}, sorted and without duplicates, as the term
+   * codes of its concept.
+   */
+  private static ConceptCriterion canonicalCriterion(ConceptCriterion criterion,
+      List<TermCode> termCodes) {
+    var distinctTermCodes = new TreeMap<List<String>, TermCode>(LEXICOGRAPHIC_ORDER);
+    termCodes.forEach(termCode -> distinctTermCodes.putIfAbsent(
+        List.of(termCode.system(), termCode.code()), termCode));
+    var sortedTermCodes = List.copyOf(distinctTermCodes.values());
+    if (sortedTermCodes.equals(criterion.concept.concept().termCodes())) {
+      return criterion;
+    }
+    var concept = ContextualConcept.of(criterion.concept.context(), Concept.of(sortedTermCodes));
+    return ConceptCriterion.of(concept, criterion.timeRestriction,
+        criterion.attributeFilters.toArray(AttributeFilter[]::new));
+  }
+}
@@ -12,6 +12,7 @@ import de.fdpg.sq2pathling.model.fhirpath.IdentifierExpression;
 import de.fdpg.sq2pathling.model.fhirpath.InvocationExpression;
 import de.fdpg.sq2pathling.model.fhirpath.MemberInvocation;
 import de.fdpg.sq2pathling.model.fhirpath.OrExpression;
+import java.util.Objects;
 
 
 public final class TimeRestrictionModifier extends AbstractModifier {
@@ -29,6 +30,14 @@ public final class TimeRestrictionModifier extends AbstractModifier {
     return new TimeRestrictionModifier(path, afterDate, beforeDate);
   }
 
+  public String afterDate() {
+    return afterDate;
+  }
+
+  public String beforeDate() {
+    return beforeDate;
+  }
+
   public BooleanExpression expression(MappingContext mappingContext) {
     if (beforeDate == null && afterDate == null) {
       return BooleanExpression.TRUE;
@@ -106,4 +115,22 @@ public final class TimeRestrictionModifier extends AbstractModifier {
         MemberInvocation.of("end")));
     return OrExpression.of(startInInterval, endInInterval);
   }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    TimeRestrictionModifier that = (TimeRestrictionModifier) o;
+    return path.equals(that.path) && Objects.equals(afterDate, that.afterDate)
+        && Objects.equals(beforeDate, that.beforeDate);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(path, afterDate, beforeDate);
+  }
 }
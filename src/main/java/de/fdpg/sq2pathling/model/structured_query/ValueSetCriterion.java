@@ -4,20 +4,18 @@ import static de.fdpg.sq2pathling.model.common.Comparator.EQUAL;
 
 import de.fdpg.sq2pathling.model.Mapping;
 import de.fdpg.sq2pathling.model.MappingContext;
-import de.fdpg.sq2pathling.model.common.Comparator;
 import de.fdpg.sq2pathling.model.common.TermCode;
 import de.fdpg.sq2pathling.model.fhirpath.BooleanExpression;
 import de.fdpg.sq2pathling.model.fhirpath.ComparatorExpression;
 import de.fdpg.sq2pathling.model.fhirpath.Expression;
-import de.fdpg.sq2pathling.model.fhirpath.FunctionInvocation;
 import de.fdpg.sq2pathling.model.fhirpath.IdentifierExpression;
 import de.fdpg.sq2pathling.model.fhirpath.InvocationExpression;
 import de.fdpg.sq2pathling.model.fhirpath.MemberInvocation;
 import de.fdpg.sq2pathling.model.fhirpath.MembershipExpression;
 import de.fdpg.sq2pathling.model.fhirpath.OrExpression;
 import de.fdpg.sq2pathling.model.fhirpath.StringLiteralExpression;
-import de.fdpg.sq2pathling.model.fhirpath.WhereFunction;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * A {@code ValueSetCriterion} will select all patients that have at least one resource represented
@@ -89,6 +87,17 @@ public final class ValueSetCriterion extends AbstractCriterion {
     return selectedConcepts;
   }
 
+  @Override
+  public boolean equals(Object o) {
+    return super.equals(o) && o instanceof ValueSetCriterion that
+        && selectedConcepts.equals(that.selectedConcepts);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), selectedConcepts);
+  }
+
   BooleanExpression valueExpr(MappingContext mappingContext, Mapping mapping) {
     var identifierExpression = IdentifierExpression.of(mapping.valueFhirPath());
     return valuePathExpr(identifierExpression, mapping);
@@ -97,44 +106,12 @@ public final class ValueSetCriterion extends AbstractCriterion {
   private BooleanExpression valuePathExpr(IdentifierExpression identifierExpression,
       Mapping mapping) {
     if ("Coding".equals(mapping.valueType())) {
-      var result = selectedConcepts.stream().map(termCode -> {
-        var whereSystemFunction = WhereFunction.of(ComparatorExpression.of(
-            IdentifierExpression.of("system"),
-            Comparator.EQUAL,
-            StringLiteralExpression.of("%s".formatted(termCode.system()))));
-        var existsCodeInvocation = FunctionInvocation.of("exists", List.of(
-            ComparatorExpression.of(
-                IdentifierExpression.of("code"),
-                Comparator.EQUAL,
-                StringLiteralExpression.of("%s".formatted(termCode.code())))));
-        var systemAndCodeExpression = InvocationExpression.of(
-            whereSystemFunction,
-            existsCodeInvocation);
-        return (BooleanExpression) InvocationExpression.of(
-            identifierExpression,
-            systemAndCodeExpression);
-      }).reduce(BooleanExpression.FALSE, OrExpression::of);
-      return result;
+      return Codings.exists(identifierExpression, selectedConcepts)
+          .collect(OrExpression.collector());
     } else if ("CodeableConcept".equals(mapping.valueType())) {
-      var result = selectedConcepts.stream().map(termCode -> {
-        var whereSystemFunction = WhereFunction.of(ComparatorExpression.of(
-            IdentifierExpression.of("system"),
-            Comparator.EQUAL,
-            StringLiteralExpression.of("%s".formatted(termCode.system()))));
-        var existsCodeInvocation = FunctionInvocation.of("exists", List.of(
-            ComparatorExpression.of(
-                IdentifierExpression.of("code"),
-                Comparator.EQUAL,
-                StringLiteralExpression.of("%s".formatted(termCode.code())))));
-        var systemAndCodeExpression = InvocationExpression.of(
-            whereSystemFunction,
-            existsCodeInvocation);
-        return (BooleanExpression) InvocationExpression.of(
-            InvocationExpression.of(
-                identifierExpression, MemberInvocation.of("coding")),
-            systemAndCodeExpression);
-      }).reduce(BooleanExpression.FALSE, OrExpression::of);
-      return result;
+      return Codings.exists(InvocationExpression.of(identifierExpression,
+              MemberInvocation.of("coding")), selectedConcepts)
+          .collect(OrExpression.collector());
     }
     var codes = selectedConcepts.stream().map(TermCode::code).toList();
     if (codes.size() == 1) {
@@ -145,8 +122,7 @@ public final class ValueSetCriterion extends AbstractCriterion {
       return codes.stream().map(c ->
               (BooleanExpression) ComparatorExpression.of(
                   identifierExpression, EQUAL, StringLiteralExpression.of("%s".formatted(c))))
-          .reduce(BooleanExpression.FALSE,
-              OrExpression::of);
+          .collect(OrExpression.collector());
     }
 
   }
@@ -4,24 +4,18 @@ import static org.junit.Assert.assertEquals;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import de.fdpg.sq2pathling.model.Mapping;
-import de.fdpg.sq2pathling.model.MappingContext;
-import de.fdpg.sq2pathling.model.TermCodeNode;
+import de.fdpg.sq2pathling.model.MappingLoader;
 import de.fdpg.sq2pathling.model.pathling.Parameter;
 import de.fdpg.sq2pathling.model.pathling.Parameters;
-import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
 import de.fdpg.sq2pathling.model.structured_query.StructuredQuery;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
 import java.util.zip.ZipFile;
 import org.junit.Assert;
 import org.junit.jupiter.api.BeforeAll;
@@ -37,7 +31,6 @@ import org.testcontainers.containers.output.Slf4jLogConsumer;
 import org.testcontainers.containers.wait.strategy.Wait;
 import org.testcontainers.images.PullPolicy;
 import org.testcontainers.junit.jupiter.Testcontainers;
-import com.google.common.base.Functions;
 import org.testcontainers.utility.DockerImageName;
 
 @Testcontainers
@@ -131,7 +124,17 @@ public class AcceptanceTest {
   @ParameterizedTest
   @MethodSource("de.fdpg.sq2pathling.AcceptanceTest#getTestQueriesReturningOnePatient")
   public void runTestCase(StructuredQuery structuredQuery) throws Exception {
-    var requestParameters = translator.toPathling(structuredQuery);
+    assertOnePatient(translator.toPathling(structuredQuery));
+  }
+
+  @ParameterizedTest
+  @MethodSource("de.fdpg.sq2pathling.AcceptanceTest#getTestQueriesReturningOnePatient")
+  public void runTestCase_MergedReverseResolves(StructuredQuery structuredQuery)
+      throws Exception {
+    assertOnePatient(translator.withMergedReverseResolves(true).toPathling(structuredQuery));
+  }
+
+  private void assertOnePatient(Parameters requestParameters) throws Exception {
     // Convert to JSON
     ObjectMapper mapper = new ObjectMapper();
     var jsonString = mapper.writeValueAsString(requestParameters);
@@ -161,28 +164,9 @@ public class AcceptanceTest {
   }
 
 
-  private static Map<ContextualTermCode, Mapping> readMappings(ZipFile zipFile) throws IOException {
-    try (var in = zipFile.getInputStream(zipFile.getEntry("mapping/mapping_pathling.json"))) {
-      var mapper = new ObjectMapper();
-      return Arrays.stream(mapper.readValue(in, Mapping[].class))
-          .collect(Collectors.toMap(Mapping::key, Functions.identity()));
-    }
-  }
-
-  private static TermCodeNode readConceptTree(ZipFile zipFile) throws IOException {
-    try (var in = zipFile.getInputStream(zipFile.getEntry("mapping/mapping_tree.json"))) {
-      var mapper = new ObjectMapper();
-      return mapper.readValue(in, TermCodeNode.class);
-    }
-  }
-
-
   static Translator createTranslator() throws Exception {
     try (ZipFile zipFile = new ZipFile(resourcePath("/mapping.zip").toString())) {
-      var mappings = readMappings(zipFile);
-      var conceptTree = readConceptTree(zipFile);
-      var mappingContext = MappingContext.of(mappings, conceptTree);
-      return Translator.of(mappingContext);
+      return Translator.of(MappingLoader.loadParallel(zipFile));
     }
   }
 }
@@ -0,0 +1,93 @@
+package de.fdpg.sq2pathling;
+
+import static de.fdpg.sq2pathling.TranslatorTest.C71;
+import static de.fdpg.sq2pathling.TranslatorTest.C71_0;
+import static de.fdpg.sq2pathling.TranslatorTest.C71_1;
+import static de.fdpg.sq2pathling.TranslatorTest.PLATELETS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import de.fdpg.sq2pathling.model.Mapping;
+import de.fdpg.sq2pathling.model.MappingContext;
+import de.fdpg.sq2pathling.model.TermCodeNode;
+import de.fdpg.sq2pathling.model.structured_query.ConceptCriterion;
+import de.fdpg.sq2pathling.model.structured_query.ContextualConcept;
+import de.fdpg.sq2pathling.model.structured_query.Criterion;
+import de.fdpg.sq2pathling.model.structured_query.StructuredQuery;
+import de.fdpg.sq2pathling.model.structured_query.TranslationException;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class CachingTranslatorTest {
+
+  static final Criterion C71_CRITERION = ConceptCriterion.of(ContextualConcept.of(C71));
+  static final Criterion C71_1_CRITERION = ConceptCriterion.of(ContextualConcept.of(C71_1));
+
+  static MappingContext mappingContext() {
+    return MappingContext.of(Map.of(
+            C71_0, Mapping.of(C71_0, "Condition", "code.coding"),
+            C71_1, Mapping.of(C71_1, "Condition", "code.coding")),
+        TermCodeNode.of(C71, TermCodeNode.of(C71_0), TermCodeNode.of(C71_1)));
+  }
+
+  @Test
+  void toPathling_ReorderedQuery() {
+    var translator = Translator.of(mappingContext());
+    var cachingTranslator = CachingTranslator.of(translator, 1 << 16);
+    var structuredQuery = StructuredQuery.of(List.of(List.of(C71_CRITERION, C71_1_CRITERION)));
+
+    var parameters = cachingTranslator.toPathling(structuredQuery);
+
+    assertEquals(translator.toPathling(structuredQuery), parameters);
+    assertSame(parameters, cachingTranslator.toPathling(
+        StructuredQuery.of(List.of(List.of(C71_1_CRITERION, C71_CRITERION)))));
+    assertEquals(new CacheStats(1, 1, 0, 1, cachingTranslator.stats().weight()),
+        cachingTranslator.stats());
+  }
+
+  @Test
+  void toPathling_OtherMappingsOrOptions() {
+    var cachingTranslator = CachingTranslator.of(Translator.of(mappingContext()), 1 << 16);
+    var structuredQuery = StructuredQuery.of(List.of(List.of(C71_CRITERION)));
+
+    cachingTranslator.toPathling(structuredQuery);
+    cachingTranslator.withTranslator(Translator.of(mappingContext())).toPathling(structuredQuery);
+    cachingTranslator.withTranslator(Translator.of(mappingContext()).withCompactOutput(true))
+        .toPathling(structuredQuery);
+
+    assertEquals(0, cachingTranslator.stats().hits());
+    assertEquals(3, cachingTranslator.stats().size());
+  }
+
+  @Test
+  void toPathling_FailureNotCached() {
+    var cachingTranslator = CachingTranslator.of(Translator.of(mappingContext()), 1 << 16);
+    var structuredQuery = StructuredQuery.of(List.of(List.of(
+        ConceptCriterion.of(ContextualConcept.of(PLATELETS)))));
+
+    assertThrows(TranslationException.class, () -> cachingTranslator.toPathling(structuredQuery));
+    assertThrows(TranslationException.class, () -> cachingTranslator.toPathling(structuredQuery));
+
+    assertEquals(0, cachingTranslator.stats().size());
+  }
+
+  @Test
+  void toPathling_Evicts() {
+    var translator = Translator.of(mappingContext());
+    var first = StructuredQuery.of(List.of(List.of(C71_CRITERION)));
+    var second = StructuredQuery.of(List.of(List.of(C71_1_CRITERION)));
+    var weight = 128 + translator.toPathling(first).parameter().stream()
+        .mapToLong(parameter -> parameter.name().length() + parameter.valueString().length())
+        .sum();
+    var cachingTranslator = CachingTranslator.of(translator, weight);
+
+    cachingTranslator.toPathling(first);
+    cachingTranslator.toPathling(second);
+    cachingTranslator.toPathling(first);
+
+    assertEquals(0, cachingTranslator.stats().hits());
+    assertEquals(2, cachingTranslator.stats().evictions());
+  }
+}
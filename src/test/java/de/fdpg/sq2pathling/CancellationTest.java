@@ -0,0 +1,56 @@
+package de.fdpg.sq2pathling;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+class CancellationTest {
+
+  @Test
+  void checkpoint_OutsideOfRun() {
+    assertDoesNotThrow(Cancellation::checkpoint);
+  }
+
+  @Test
+  void run_NotCancelled() {
+    assertEquals("result", Cancellation.run(() -> false, () -> {
+      Cancellation.checkpoint();
+      return "result";
+    }));
+  }
+
+  @Test
+  void run_CancelledWhileRunning() {
+    var cancelled = new AtomicBoolean();
+    var steps = new int[1];
+
+    assertThrows(CancellationException.class, () -> Cancellation.run(cancelled::get, () -> {
+      for (; ; steps[0]++) {
+        Cancellation.checkpoint();
+        if (steps[0] == 3) {
+          cancelled.set(true);
+        }
+      }
+    }));
+    assertEquals(4, steps[0]);
+    assertDoesNotThrow(Cancellation::checkpoint);
+  }
+
+  @Test
+  void run_Nested() {
+    var outerCancelled = new AtomicBoolean();
+
+    Cancellation.run(outerCancelled::get, () -> {
+      Cancellation.run(() -> false, () -> {
+        outerCancelled.set(true);
+        return assertThrows(CancellationException.class, Cancellation::checkpoint);
+      });
+      return assertThrows(CancellationException.class, Cancellation::checkpoint);
+    });
+    assertDoesNotThrow(Cancellation::checkpoint);
+  }
+}
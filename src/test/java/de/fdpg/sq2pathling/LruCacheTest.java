@@ -0,0 +1,123 @@
+package de.fdpg.sq2pathling;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class LruCacheTest {
+
+  @Test
+  void evictsLeastRecentlyUsed() {
+    var cache = LruCache.<String, String>of(2);
+    cache.put("a", "A");
+    cache.put("b", "B");
+    cache.get("a");
+
+    cache.put("c", "C");
+
+    assertEquals("A", cache.get("a"));
+    assertNull(cache.get("b"));
+    assertEquals("C", cache.get("c"));
+    assertEquals(new CacheStats(3, 1, 1, 2, 2), cache.stats());
+  }
+
+  @Test
+  void evictsByWeight() {
+    var cache = LruCache.<String, String>of(5, String::length);
+    cache.put("a", "AAA");
+    cache.put("b", "BB");
+
+    cache.put("c", "CC");
+
+    assertNull(cache.get("a"));
+    assertEquals(new CacheStats(0, 1, 1, 2, 4), cache.stats());
+  }
+
+  @Test
+  void doesNotCacheTooHeavyValues() {
+    var cache = LruCache.<String, String>of(2, String::length);
+
+    cache.put("a", "AAA");
+
+    assertEquals(new CacheStats(0, 0, 0, 0, 0), cache.stats());
+  }
+
+  @Test
+  void computeIfAbsent() {
+    var cache = LruCache.<String, String>of(2);
+
+    assertEquals("A", cache.computeIfAbsent("a", String::toUpperCase));
+    assertEquals("A", cache.computeIfAbsent("a", key -> "other"));
+    assertEquals(0.5, cache.stats().hitRate());
+  }
+
+  @Test
+  void concurrentLookups() throws Exception {
+    var cache = LruCache.<Integer, String>of(100);
+    for (int i = 0; i < 100; i++) {
+      cache.put(i, Integer.toString(i));
+    }
+    var tasks = new ArrayList<Callable<Void>>();
+    for (int thread = 0; thread < 8; thread++) {
+      tasks.add(() -> {
+        for (int i = 0; i < 10_000; i++) {
+          assertEquals(Integer.toString(i % 100), cache.get(i % 100));
+        }
+        return null;
+      });
+    }
+
+    runAll(tasks);
+
+    assertEquals(new CacheStats(80_000, 0, 0, 100, 100), cache.stats());
+  }
+
+  @Test
+  void concurrentWritesKeepWeightBound() throws Exception {
+    var cache = LruCache.<Integer, String>of(50, String::length);
+    var tasks = new ArrayList<Callable<Void>>();
+    for (int thread = 0; thread < 8; thread++) {
+      var offset = thread;
+      tasks.add(() -> {
+        for (int i = 0; i < 10_000; i++) {
+          var key = (i * 7 + offset) % 1000;
+          cache.computeIfAbsent(key, Object::toString);
+        }
+        return null;
+      });
+    }
+
+    runAll(tasks);
+
+    var stats = cache.stats();
+    assertEquals(80_000, stats.hits() + stats.misses());
+    assertTrue(stats.weight() <= 50);
+    var weight = 0;
+    for (int key = 0; key < 1000; key++) {
+      var value = cache.get(key);
+      if (value != null) {
+        weight += value.length();
+      }
+    }
+    assertEquals(stats.weight(), weight);
+  }
+
+  private static void runAll(List<Callable<Void>> tasks) throws Exception {
+    var executor = Executors.newFixedThreadPool(tasks.size());
+    try {
+      for (var future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+  }
+}
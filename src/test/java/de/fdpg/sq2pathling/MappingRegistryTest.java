@@ -0,0 +1,157 @@
+package de.fdpg.sq2pathling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import de.fdpg.sq2pathling.model.Mapping;
+import de.fdpg.sq2pathling.model.MappingContext;
+import de.fdpg.sq2pathling.model.common.TermCode;
+import de.fdpg.sq2pathling.model.structured_query.ConceptCriterion;
+import de.fdpg.sq2pathling.model.structured_query.ContextualConcept;
+import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
+import de.fdpg.sq2pathling.model.structured_query.StructuredQuery;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import org.junit.jupiter.api.Test;
+
+class MappingRegistryTest {
+
+  static final TermCode CONTEXT = TermCode.of("context", "context", "context");
+  static final ContextualTermCode C71 = ContextualTermCode.of(CONTEXT,
+      TermCode.of("http://fhir.de/CodeSystem/bfarm/icd-10-gm", "C71",
+          "Malignant neoplasm of brain"));
+  static final StructuredQuery QUERY = StructuredQuery.of(List.of(List.of(
+      ConceptCriterion.of(ContextualConcept.of(C71)))));
+
+  private final List<MappingContext> released = new ArrayList<>();
+
+  private static MappingContext mappingContext(String resourceType) {
+    return MappingContext.of(Map.of(C71, Mapping.of(C71, resourceType)), null);
+  }
+
+  private MappingRegistry registry(MappingContext initial) {
+    return MappingRegistry.of(initial, Runnable::run, released::add);
+  }
+
+  @Test
+  void translate() {
+    var mappingContext = mappingContext("Condition");
+
+    var result = registry(mappingContext).translate(QUERY);
+
+    assertEquals(mappingContext.version(), result.mappingVersion());
+    assertThat(result.parameters().parameter().get(1).valueString())
+        .contains("reverseResolve(Condition.subject)");
+  }
+
+  @Test
+  void translate_WithTranslatorOptions() {
+    var v1 = mappingContext("Condition");
+    var v2 = mappingContext("Observation");
+    var registry = MappingRegistry.of(v1, Runnable::run, released::add,
+        translator -> translator.withCompactOutput(true));
+
+    var result1 = registry.translate(QUERY);
+    registry.publish(v2);
+    var result2 = registry.translate(QUERY);
+
+    assertEquals(Translator.of(v1).withCompactOutput(true).toPathling(QUERY),
+        result1.parameters());
+    assertEquals(Translator.of(v2).withCompactOutput(true).toPathling(QUERY),
+        result2.parameters());
+    assertNotEquals(Translator.of(v2).toPathling(QUERY), result2.parameters());
+  }
+
+  @Test
+  void publish() {
+    var v1 = mappingContext("Condition");
+    var v2 = mappingContext("Observation");
+    var registry = registry(v1);
+
+    registry.publish(v2);
+
+    assertEquals(v2.version(), registry.currentVersion());
+    assertEquals(v2.version(), registry.translate(QUERY).mappingVersion());
+    assertEquals(List.of(v1), released);
+  }
+
+  @Test
+  void publish_PinnedVersionIsKeptUntilReleased() {
+    var v1 = mappingContext("Condition");
+    var registry = registry(v1);
+
+    try (var lease = registry.acquire()) {
+      registry.publish(mappingContext("Observation"));
+
+      assertSame(v1, lease.mappingContext());
+      assertThat(lease.translator().toPathling(QUERY).parameter().get(1).valueString())
+          .contains("reverseResolve(Condition.subject)");
+      assertThat(released).isEmpty();
+    }
+
+    assertEquals(List.of(v1), released);
+  }
+
+  @Test
+  void reload() {
+    var registry = registry(mappingContext("Condition"));
+    var v2 = mappingContext("Observation");
+
+    assertEquals(v2.version(), registry.reload(() -> v2).join());
+    assertEquals(v2.version(), registry.currentVersion());
+  }
+
+  @Test
+  void reload_Failure() {
+    var v1 = mappingContext("Condition");
+    var registry = registry(v1);
+
+    assertThatThrownBy(() -> registry.reload(() -> {
+      throw new IOException("broken");
+    }).join()).isInstanceOf(CompletionException.class).hasRootCauseMessage("broken");
+    assertEquals(v1.version(), registry.currentVersion());
+    assertThat(released).isEmpty();
+  }
+
+  @Test
+  void reload_OlderReloadFinishingLastIsDiscarded() {
+    var v1 = mappingContext("Condition");
+    var v2 = mappingContext("Observation");
+    var v3 = mappingContext("Procedure");
+    var tasks = new ArrayList<Runnable>();
+    var registry = MappingRegistry.of(v1, tasks::add, released::add);
+
+    var older = registry.reload(() -> v2);
+    var newer = registry.reload(() -> v3);
+    tasks.get(1).run();
+    tasks.get(0).run();
+
+    assertEquals(v3.version(), newer.join());
+    assertEquals(v3.version(), older.join());
+    assertEquals(v3.version(), registry.currentVersion());
+    assertEquals(List.of(v1, v2), released);
+  }
+
+  @Test
+  void publish_SupersedesRunningReload() {
+    var v1 = mappingContext("Condition");
+    var v2 = mappingContext("Observation");
+    var v3 = mappingContext("Procedure");
+    var tasks = new ArrayList<Runnable>();
+    var registry = MappingRegistry.of(v1, tasks::add, released::add);
+
+    var reload = registry.reload(() -> v2);
+    registry.publish(v3);
+    tasks.get(0).run();
+
+    assertEquals(v3.version(), reload.join());
+    assertEquals(v3.version(), registry.currentVersion());
+    assertEquals(List.of(v1, v2), released);
+  }
+}
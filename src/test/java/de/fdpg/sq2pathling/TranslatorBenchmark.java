@@ -0,0 +1,85 @@
+package de.fdpg.sq2pathling;
+
+import de.fdpg.sq2pathling.model.MappingLoader;
+import de.fdpg.sq2pathling.model.structured_query.StructuredQuery;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the time of a {@link Translator#toPathlingAll(java.util.Collection,
+ * java.util.concurrent.Executor) batch translation} of the acceptance test queries, repeated
+ * {@value #REPETITIONS} times, with thread pools of different sizes.
+ * <p>
+ * The time should drop with the number of threads up to the number of available cores.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=de.fdpg.sq2pathling.TranslatorBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class TranslatorBenchmark {
+
+  private static final int REPETITIONS = 10;
+
+  /**
+   * The number of threads translating the queries.
+   */
+  @Param({"1", "2", "4", "8"})
+  public int threads;
+
+  private Translator translator;
+  private List<StructuredQuery> structuredQueries;
+  private ExecutorService executor;
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(TranslatorBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+
+  @Setup
+  public void setUp() throws Exception {
+    try (var zipFile = new ZipFile(Objects.requireNonNull(
+        TranslatorBenchmark.class.getResource("/mapping.zip")).getPath())) {
+      translator = Translator.of(MappingLoader.loadParallel(zipFile));
+    }
+    var corpus = AcceptanceTest.getTestQueriesReturningOnePatient();
+    structuredQueries = Collections.nCopies(REPETITIONS, corpus).stream()
+        .flatMap(List::stream).toList();
+    executor = Executors.newFixedThreadPool(threads);
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Benchmark
+  public List<TranslationResult> toPathlingAll() {
+    return translator.toPathlingAll(structuredQueries, executor);
+  }
+}
@@ -1,9 +1,11 @@
 package de.fdpg.sq2pathling;
 
 import static de.fdpg.sq2pathling.model.common.Comparator.LESS_THAN;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -11,21 +13,41 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import de.fdpg.sq2pathling.model.AttributeMapping;
 import de.fdpg.sq2pathling.model.Mapping;
 import de.fdpg.sq2pathling.model.MappingContext;
+import de.fdpg.sq2pathling.model.MappingLoader;
 import de.fdpg.sq2pathling.model.TermCodeNode;
 import de.fdpg.sq2pathling.model.common.TermCode;
+import de.fdpg.sq2pathling.model.fhirpath.BooleanExpression;
+import de.fdpg.sq2pathling.model.fhirpath.PrintCache;
 import de.fdpg.sq2pathling.model.structured_query.CodingModifier;
 import de.fdpg.sq2pathling.model.structured_query.ConceptCriterion;
 import de.fdpg.sq2pathling.model.structured_query.ContextualConcept;
 import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
+import de.fdpg.sq2pathling.model.structured_query.Criterion;
 import de.fdpg.sq2pathling.model.structured_query.NumericCriterion;
 import de.fdpg.sq2pathling.model.structured_query.StructuredQuery;
 import de.fdpg.sq2pathling.model.structured_query.TimeRestriction;
 import de.fdpg.sq2pathling.model.structured_query.TranslationException;
 import de.fdpg.sq2pathling.model.structured_query.ValueSetAttributeFilter;
 import de.fdpg.sq2pathling.model.structured_query.ValueSetCriterion;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.zip.ZipFile;
 import org.json.JSONException;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -162,6 +184,225 @@ class TranslatorTest {
           JSONCompareMode.LENIENT);
     }
 
+    @Test
+    void withOptimization() throws JsonProcessingException, JSONException {
+      var mappings = Map.of(
+          C71_0, Mapping.of(C71_0, "Condition", "code.coding"),
+          C71_1, Mapping.of(C71_1, "Condition", "code.coding"));
+      var conceptTree = TermCodeNode.of(C71, TermCodeNode.of(C71_0), TermCodeNode.of(C71_1));
+      var translator = Translator.of(MappingContext.of(mappings, conceptTree));
+      var structuredQuery = StructuredQuery.of(List.of(
+          List.of(ConceptCriterion.of(ContextualConcept.of(C71)),
+              ConceptCriterion.of(ContextualConcept.of(C71_1))),
+          List.of(ConceptCriterion.of(ContextualConcept.of(C71_1)))));
+
+      var parameters = translator.toPathling(structuredQuery);
+      var optimized = translator.withOptimization(true).toPathling(structuredQuery);
+
+      JSONAssert.assertEquals("""
+              {
+                "parameter" : [ {
+                  "name" : "aggregation",
+                  "valueString" : "count()"
+                }, {
+                  "name" : "filter",
+                  "valueString" : "(reverseResolve(Condition.subject).exists(code.coding.where(system = 'http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code = 'C71.0' or\\ncode = 'C71.1')) or\\nreverseResolve(Condition.subject).exists(code.coding.where(system = 'http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code = 'C71.1'))) and\\n(reverseResolve(Condition.subject).exists(code.coding.where(system = 'http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code = 'C71.1')))"
+                } ]
+              }""", new ObjectMapper().writeValueAsString(parameters), JSONCompareMode.LENIENT);
+      JSONAssert.assertEquals("""
+              {
+                "parameter" : [ {
+                  "name" : "aggregation",
+                  "valueString" : "count()"
+                }, {
+                  "name" : "filter",
+                  "valueString" : "reverseResolve(Condition.subject).exists(code.coding.where(system = 'http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code = 'C71.1'))"
+                } ]
+              }""", new ObjectMapper().writeValueAsString(optimized), JSONCompareMode.LENIENT);
+    }
+
+    @Test
+    void withCompactOutput() throws JsonProcessingException, JSONException {
+      var mappings = Map.of(
+          C71_0, Mapping.of(C71_0, "Condition", "code.coding"),
+          C71_1, Mapping.of(C71_1, "Condition", "code.coding"));
+      var conceptTree = TermCodeNode.of(C71, TermCodeNode.of(C71_0), TermCodeNode.of(C71_1));
+      var structuredQuery = StructuredQuery.of(List.of(
+              List.of(ConceptCriterion.of(ContextualConcept.of(C71)),
+                  ConceptCriterion.of(ContextualConcept.of(C71_1))),
+              List.of(ConceptCriterion.of(ContextualConcept.of(C71_1)))),
+          List.of(List.of(ConceptCriterion.of(ContextualConcept.of(C71_0))),
+              List.of(ConceptCriterion.of(ContextualConcept.of(C71_1)))));
+
+      var parameters = Translator.of(MappingContext.of(mappings, conceptTree))
+          .withCompactOutput(true).toPathling(structuredQuery);
+
+      JSONAssert.assertEquals("""
+              {
+                "parameter" : [ {
+                  "name" : "aggregation",
+                  "valueString" : "count()"
+                }, {
+                  "name" : "filter",
+                  "valueString" : "(reverseResolve(Condition.subject).exists(code.coding.where(system='http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code='C71.0' or code='C71.1')) or reverseResolve(Condition.subject).exists(code.coding.where(system='http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code='C71.1'))) and reverseResolve(Condition.subject).exists(code.coding.where(system='http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code='C71.1'))"
+                }, {
+                  "name" : "filter",
+                  "valueString" : "(reverseResolve(Condition.subject).exists(code.coding.where(system='http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code='C71.0')) or reverseResolve(Condition.subject).exists(code.coding.where(system='http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code='C71.1'))).not()"
+                } ]
+              }""", new ObjectMapper().writeValueAsString(parameters), JSONCompareMode.LENIENT);
+    }
+
+    @Test
+    void withPrintCache() {
+      var mappings = Map.of(
+          C71_0, Mapping.of(C71_0, "Condition", "code.coding"),
+          C71_1, Mapping.of(C71_1, "Condition", "code.coding"));
+      var conceptTree = TermCodeNode.of(C71, TermCodeNode.of(C71_0), TermCodeNode.of(C71_1));
+      var translator = Translator.of(MappingContext.of(mappings, conceptTree));
+      var printCache = PrintCache.of(1 << 16);
+      var structuredQuery = StructuredQuery.of(List.of(
+              List.of(ConceptCriterion.of(ContextualConcept.of(C71)))),
+          List.of(List.of(ConceptCriterion.of(ContextualConcept.of(C71_1)))));
+
+      var parameters = translator.toPathling(structuredQuery);
+      var memoized = translator.withPrintCache(printCache);
+
+      assertEquals(parameters, memoized.toPathling(structuredQuery));
+      var misses = printCache.stats().misses();
+      assertEquals(parameters, memoized.toPathling(structuredQuery));
+      assertEquals(misses, printCache.stats().misses());
+      assertThat(printCache.stats().hits()).isPositive();
+    }
+
+    @Test
+    void withCriterionCache_EditedQuery() {
+      var mappings = Map.of(
+          C71_0, Mapping.of(C71_0, "Condition", "code.coding"),
+          C71_1, Mapping.of(C71_1, "Condition", "code.coding"));
+      var conceptTree = TermCodeNode.of(C71, TermCodeNode.of(C71_0), TermCodeNode.of(C71_1));
+      var mappingContext = MappingContext.of(mappings, conceptTree);
+      var translator = Translator.of(mappingContext).withCriterionCache(true);
+
+      translator.toPathling(StructuredQuery.of(List.of(
+          List.of(ConceptCriterion.of(ContextualConcept.of(C71))),
+          List.of(ConceptCriterion.of(ContextualConcept.of(C71_1))))));
+      translator.toPathling(StructuredQuery.of(List.of(
+          List.of(ConceptCriterion.of(ContextualConcept.of(C71))),
+          List.of(ConceptCriterion.of(ContextualConcept.of(C71_0))))));
+
+      // only the changed criterion is translated again
+      assertEquals(1, mappingContext.criterionCacheStats().hits());
+      assertEquals(3, mappingContext.criterionCacheStats().misses());
+    }
+
+    @Test
+    void criterionCacheOffByDefault() {
+      var mappings = Map.of(C71_0, Mapping.of(C71_0, "Condition", "code.coding"));
+      var mappingContext = MappingContext.of(mappings, null);
+      var structuredQuery = StructuredQuery.of(List.of(
+          List.of(ConceptCriterion.of(ContextualConcept.of(C71_0)))));
+
+      Translator.of(mappingContext).toPathling(structuredQuery);
+      Translator.of(mappingContext).toPathling(structuredQuery);
+
+      assertEquals(new CacheStats(0, 0, 0, 0, 0), mappingContext.criterionCacheStats());
+    }
+
+    @Test
+    void withCommonSubexpressionElimination() {
+      var mappings = Map.of(
+          C71_0, Mapping.of(C71_0, "Condition", "code.coding"),
+          C71_1, Mapping.of(C71_1, "Condition", "code.coding"));
+      var conceptTree = TermCodeNode.of(C71, TermCodeNode.of(C71_0), TermCodeNode.of(C71_1));
+      var translator = Translator.of(MappingContext.of(mappings, conceptTree));
+      var structuredQuery = StructuredQuery.of(List.of(
+          List.of(ConceptCriterion.of(ContextualConcept.of(C71)),
+              ConceptCriterion.of(ContextualConcept.of(C71_1))),
+          List.of(ConceptCriterion.of(ContextualConcept.of(C71_1)))),
+          List.of(List.of(ConceptCriterion.of(ContextualConcept.of(C71_0)))));
+
+      assertEquals(translator.toPathling(structuredQuery),
+          translator.withCommonSubexpressionElimination(true).toPathling(structuredQuery));
+    }
+
+    @Test
+    void withNormalization() throws JsonProcessingException, JSONException {
+      var mappings = Map.of(
+          C71_0, Mapping.of(C71_0, "Condition", "code.coding"),
+          C71_1, Mapping.of(C71_1, "Condition", "code.coding"));
+      var conceptTree = TermCodeNode.of(C71, TermCodeNode.of(C71_0), TermCodeNode.of(C71_1));
+      var translator = Translator.of(MappingContext.of(mappings, conceptTree))
+          .withCompactOutput(true).withNormalization(true);
+      var structuredQuery = StructuredQuery.of(List.of(List.of(
+          ConceptCriterion.of(ContextualConcept.of(C71_1)),
+          ConceptCriterion.of(ContextualConcept.of(C71_0)))));
+      var reorderedQuery = StructuredQuery.of(List.of(
+          List.of(ConceptCriterion.of(ContextualConcept.of(C71_0)),
+              ConceptCriterion.of(ContextualConcept.of(C71_1))),
+          List.of(ConceptCriterion.of(ContextualConcept.of(C71_0)), Criterion.TRUE)));
+
+      var parameters = translator.toPathling(structuredQuery);
+
+      assertEquals(parameters, translator.toPathling(reorderedQuery));
+      JSONAssert.assertEquals("""
+              {
+                "parameter" : [ {
+                  "name" : "aggregation",
+                  "valueString" : "count()"
+                }, {
+                  "name" : "filter",
+                  "valueString" : "reverseResolve(Condition.subject).exists(code.coding.where(system='http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code='C71.0')) or reverseResolve(Condition.subject).exists(code.coding.where(system='http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code='C71.1'))"
+                } ]
+              }""", new ObjectMapper().writeValueAsString(parameters), JSONCompareMode.LENIENT);
+    }
+
+    @Test
+    void withNormalization_KeepsTermCodesOutsideConceptTree() {
+      var mappings = Map.of(
+          C71_0, Mapping.of(C71_0, "Condition", "code.coding"),
+          C71_1, Mapping.of(C71_1, "Condition", "code.coding"));
+      var mappingContext = MappingContext.of(mappings, TermCodeNode.of(C71_0));
+      var structuredQuery = StructuredQuery.of(List.of(List.of(
+          ConceptCriterion.of(ContextualConcept.of(C71_1)),
+          ConceptCriterion.of(ContextualConcept.of(C71_0)))));
+
+      var parameters = Translator.of(mappingContext).withNormalization(true)
+          .toPathling(structuredQuery);
+
+      assertThat(parameters.toString()).contains("C71.0", "C71.1");
+    }
+
+    @Test
+    void withMergedReverseResolves() throws JsonProcessingException, JSONException {
+      var mappings = Map.of(
+          C71_0, Mapping.of(C71_0, "Condition", "code.coding"),
+          C71_1, Mapping.of(C71_1, "Condition", "code.coding", null, null, List.of(), List.of(),
+              "onset"),
+          PLATELETS, Mapping.of(PLATELETS, "Observation", "code.coding"));
+      var conceptTree = TermCodeNode.of(ROOT,
+          TermCodeNode.of(C71, TermCodeNode.of(C71_0), TermCodeNode.of(C71_1)),
+          TermCodeNode.of(PLATELETS));
+      var structuredQuery = StructuredQuery.of(List.of(List.of(
+          ConceptCriterion.of(ContextualConcept.of(C71)),
+          ConceptCriterion.of(ContextualConcept.of(PLATELETS)),
+          ConceptCriterion.of(ContextualConcept.of(C71_1),
+              TimeRestriction.of("2020-01-01T", "2020-01-02T")))));
+
+      var parameters = Translator.of(MappingContext.of(mappings, conceptTree))
+          .withMergedReverseResolves(true).toPathling(structuredQuery);
+
+      JSONAssert.assertEquals("""
+              {
+                "parameter" : [ {
+                  "name" : "aggregation",
+                  "valueString" : "count()"
+                }, {
+                  "name" : "filter",
+                  "valueString" : "(reverseResolve(Condition.subject).exists(code.coding.where(system = 'http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code = 'C71.0' or\\ncode = 'C71.1') or\\ncode.coding.where(system = 'http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code = 'C71.1') and\\n(onset.dateTime > @2020-01-01 and\\nonset.dateTime < @2020-01-02 or\\nonset.period.start > @2020-01-01 and\\nonset.period.start < @2020-01-02 or\\nonset.period.end > @2020-01-01 and\\nonset.period.end < @2020-01-02)) or\\nreverseResolve(Observation.subject).exists(code.coding.where(system = 'http://loinc.org').exists(code = '26515-7')))"
+                } ]
+              }""", new ObjectMapper().writeValueAsString(parameters), JSONCompareMode.LENIENT);
+    }
+
     @Test
     void timeRestriction() throws JsonProcessingException, JSONException {
       var c71_1 = ContextualTermCode.of(CONTEXT,
@@ -222,8 +463,8 @@ class TranslatorTest {
       var conceptTree = TermCodeNode.of(ROOT, TermCodeNode.of(TMZ),
           TermCodeNode.of(C71, TermCodeNode.of(C71_0), TermCodeNode.of(C71_1)));
       var mappingContext = MappingContext.of(mappings, conceptTree);
-      var concept = ConceptCriterion.of(ContextualConcept.of(C71));
-      concept.appendAttributeFilter(ValueSetAttributeFilter.of(VERIFICATION_STATUS, CONFIRMED));
+      var concept = ConceptCriterion.of(ContextualConcept.of(C71),
+          ValueSetAttributeFilter.of(VERIFICATION_STATUS, CONFIRMED));
       var structuredQuery = StructuredQuery.of(List.of(List.of(concept),
           List.of(
               NumericCriterion.of(ContextualConcept.of(PLATELETS), LESS_THAN,
@@ -242,7 +483,7 @@ class TranslatorTest {
               "valueString" : "count()"
             }, {
               "name" : "filter",
-              "valueString" : "(reverseResolve(Condition.subject).exists(code.coding.where(system = 'http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code = 'C71.0') and\\n(verificationStatus.coding.coding.where(system = 'http://terminology.hl7.org/CodeSystem/condition-ver-status').exists(code = 'confirmed'))) or\\nreverseResolve(Condition.subject).exists(code.coding.where(system = 'http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code = 'C71.1') and\\n(verificationStatus.coding.coding.where(system = 'http://terminology.hl7.org/CodeSystem/condition-ver-status').exists(code = 'confirmed')))) and\\n(reverseResolve(Observation.subject).exists(code.coding.where(system = 'http://loinc.org').exists(code = '26515-7') and\\nvalue < 50 'g/dl')) and\\n(reverseResolve(MedicationStatement.subject).exists(code.where(system = 'http://fhir.de/CodeSystem/dimdi/atc').exists(code = 'L01AX03')))"
+              "valueString" : "(reverseResolve(Condition.subject).exists(code.coding.where(system = 'http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code = 'C71.0' or\\ncode = 'C71.1') and\\n(verificationStatus.coding.coding.where(system = 'http://terminology.hl7.org/CodeSystem/condition-ver-status').exists(code = 'confirmed')))) and\\n(reverseResolve(Observation.subject).exists(code.coding.where(system = 'http://loinc.org').exists(code = '26515-7') and\\nvalue < 50 'g/dl')) and\\n(reverseResolve(MedicationStatement.subject).exists(code.where(system = 'http://fhir.de/CodeSystem/dimdi/atc').exists(code = 'L01AX03')))"
             } ],
             "resourceType" : "Parameters"
           }""", json, JSONCompareMode.LENIENT);
@@ -258,8 +499,8 @@ class TranslatorTest {
       var conceptTree = TermCodeNode.of(ROOT, TermCodeNode.of(HYPERTENSION), TermCodeNode.of(SERUM),
           TermCodeNode.of(LIPID));
       var mappingContext = MappingContext.of(mappings, conceptTree);
-      var concept = ConceptCriterion.of(ContextualConcept.of(HYPERTENSION));
-      concept.appendAttributeFilter(ValueSetAttributeFilter.of(VERIFICATION_STATUS, CONFIRMED));
+      var concept = ConceptCriterion.of(ContextualConcept.of(HYPERTENSION),
+          ValueSetAttributeFilter.of(VERIFICATION_STATUS, CONFIRMED));
       var structuredQuery = StructuredQuery.of(List.of(List.of(concept),
               List.of(ConceptCriterion.of(ContextualConcept.of(SERUM)))),
           List.of(List.of(ConceptCriterion.of(ContextualConcept.of(LIPID)))));
@@ -319,7 +560,7 @@ class TranslatorTest {
               "valueString" : "count()"
             }, {
               "name" : "filter",
-              "valueString" : "(reverseResolve(Observation.subject).exists(code.coding.where(system = 'http://snomed.info/sct').exists(code = '713636003') and\\n(value.where(system = 'https://www.netzwerk-universitaetsmedizin.de/fhir/CodeSystem/frailty-score').exists(code = '1') or\\nvalue.where(system = 'https://www.netzwerk-universitaetsmedizin.de/fhir/CodeSystem/frailty-score').exists(code = '2'))))"
+              "valueString" : "(reverseResolve(Observation.subject).exists(code.coding.where(system = 'http://snomed.info/sct').exists(code = '713636003') and\\n(value.where(system = 'https://www.netzwerk-universitaetsmedizin.de/fhir/CodeSystem/frailty-score').exists(code = '1' or\\ncode = '2'))))"
             }, {
               "name" : "filter",
               "valueString" : "(reverseResolve(Condition.subject).exists(code.coding.where(system = 'http://snomed.info/sct').exists(code = '13645005') and\\n(verificationStatus.coding.coding.where(system = 'http://terminology.hl7.org/CodeSystem/condition-ver-status').exists(code = 'confirmed')))) and\\n(reverseResolve(Condition.subject).exists(code.coding.where(system = 'http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code = 'G47.31') and\\n(verificationStatus.coding.coding.where(system = 'http://terminology.hl7.org/CodeSystem/condition-ver-status').exists(code = 'confirmed')))) or\\n(reverseResolve(Observation.subject).exists(code.coding.where(system = 'http://loinc.org').exists(code = '72166-2') and\\n(value.coding.where(system = 'http://loinc.org').exists(code = 'LA18976-3')))).not()"
@@ -819,4 +1060,219 @@ class TranslatorTest {
 
 
   }
+
+  @Test
+  void returningOnePatient_MergedReverseResolves() throws Exception {
+    Translator translator;
+    try (var zipFile = new ZipFile(Objects.requireNonNull(
+        TranslatorTest.class.getResource("/mapping.zip")).getPath())) {
+      translator = Translator.of(MappingLoader.loadParallel(zipFile));
+    }
+    var merging = translator.withMergedReverseResolves(true);
+
+    for (var structuredQuery : AcceptanceTest.getTestQueriesReturningOnePatient()) {
+      var filters = translator.toPathling(structuredQuery).parameter();
+      var mergedFilters = merging.toPathling(structuredQuery).parameter();
+
+      assertEquals(filters.size(), mergedFilters.size());
+      for (int i = 0; i < filters.size(); i++) {
+        assertThat(joins(mergedFilters.get(i).valueString()))
+            .isLessThanOrEqualTo(joins(filters.get(i).valueString()));
+      }
+    }
+  }
+
+  static int joins(String filter) {
+    return filter.split("reverseResolve\\(", -1).length - 1;
+  }
+
+  @Test
+  void writePathlingJson_SameAsToPathling() throws Exception {
+    Translator translator;
+    try (var zipFile = new ZipFile(Objects.requireNonNull(
+        TranslatorTest.class.getResource("/mapping.zip")).getPath())) {
+      translator = Translator.of(MappingLoader.loadParallel(zipFile));
+    }
+    var objectMapper = new ObjectMapper();
+
+    for (var structuredQuery : AcceptanceTest.getTestQueriesReturningOnePatient()) {
+      var expected = objectMapper.writeValueAsString(translator.toPathling(structuredQuery));
+      var out = new ByteArrayOutputStream();
+      var writer = new StringWriter();
+
+      translator.writePathlingJson(structuredQuery, out);
+      translator.writePathlingJson(structuredQuery, writer);
+
+      assertEquals(expected, out.toString(StandardCharsets.UTF_8));
+      assertEquals(expected, writer.toString());
+    }
+  }
+
+  @Test
+  void writePathlingJson_TranslationFails() {
+    var structuredQuery = StructuredQuery.of(List.of(List.of(ConceptCriterion.of(
+        ContextualConcept.of(C71)))));
+    var writer = new StringWriter();
+
+    assertThrows(TranslationException.class,
+        () -> Translator.of().writePathlingJson(structuredQuery, writer));
+    assertEquals("", writer.toString());
+  }
+
+  @Test
+  void toPathlingAll() {
+    var mappings = Map.of(C71_0, Mapping.of(C71_0, "Condition", "code.coding"));
+    var conceptTree = TermCodeNode.of(C71, TermCodeNode.of(C71_0));
+    var translator = Translator.of(MappingContext.of(mappings, conceptTree));
+    var valid = StructuredQuery.of(List.of(List.of(ConceptCriterion.of(
+        ContextualConcept.of(C71)))));
+    var invalid = StructuredQuery.of(List.of(List.of(ConceptCriterion.of(
+        ContextualConcept.of(PLATELETS)))));
+    var executor = Executors.newFixedThreadPool(4);
+
+    try {
+      var results = translator.toPathlingAll(List.of(invalid, valid, invalid), executor);
+
+      assertEquals(List.of(invalid, valid, invalid),
+          results.stream().map(TranslationResult::structuredQuery).toList());
+      assertEquals(List.of(false, true, false),
+          results.stream().map(TranslationResult::isSuccess).toList());
+      assertEquals(translator.toPathling(valid), results.get(1).orElseThrow());
+      assertThat(results.get(0).failure()).isInstanceOf(TranslationException.class);
+      assertThrows(TranslationException.class, () -> results.get(2).orElseThrow());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void toPathlingAll_SameAsToPathling() throws Exception {
+    Translator translator;
+    try (var zipFile = new ZipFile(Objects.requireNonNull(
+        TranslatorTest.class.getResource("/mapping.zip")).getPath())) {
+      translator = Translator.of(MappingLoader.loadParallel(zipFile));
+    }
+    var structuredQueries = AcceptanceTest.getTestQueriesReturningOnePatient();
+    var executor = Executors.newFixedThreadPool(4);
+
+    try {
+      var results = translator.toPathlingAll(structuredQueries, executor);
+
+      assertEquals(structuredQueries.size(), results.size());
+      for (int i = 0; i < results.size(); i++) {
+        assertEquals(translator.toPathling(structuredQueries.get(i)),
+            results.get(i).orElseThrow());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void toPathlingAll_Empty() {
+    assertEquals(List.of(), Translator.of().toPathlingAll(List.of(), Runnable::run));
+  }
+
+  @Test
+  void toPathlingAsync() throws Exception {
+    var mappings = Map.of(C71_0, Mapping.of(C71_0, "Condition", "code.coding"));
+    var conceptTree = TermCodeNode.of(C71, TermCodeNode.of(C71_0));
+    var translator = Translator.of(MappingContext.of(mappings, conceptTree));
+    var valid = StructuredQuery.of(List.of(List.of(ConceptCriterion.of(
+        ContextualConcept.of(C71)))));
+    var invalid = StructuredQuery.of(List.of(List.of(ConceptCriterion.of(
+        ContextualConcept.of(PLATELETS)))));
+
+    assertEquals(translator.toPathling(valid),
+        translator.toPathlingAsync(valid).get(10, TimeUnit.SECONDS));
+    var failure = assertThrows(ExecutionException.class,
+        () -> translator.toPathlingAsync(invalid).get(10, TimeUnit.SECONDS));
+    assertThat(failure.getCause()).isInstanceOf(TranslationException.class);
+  }
+
+  @Test
+  void toPathlingAsync_BoundedThreadsWithoutVirtualThreads() {
+    assumeTrue(Arrays.stream(Executors.class.getMethods())
+        .noneMatch(method -> method.getName().equals("newVirtualThreadPerTaskExecutor")));
+    var threads = ConcurrentHashMap.<Thread>newKeySet();
+    var criterion = new Criterion() {
+
+      @Override
+      public BooleanExpression toFhirPathFilter(MappingContext mappingContext) {
+        threads.add(Thread.currentThread());
+        return BooleanExpression.TRUE;
+      }
+
+      @Override
+      public TimeRestriction timeRestriction() {
+        return null;
+      }
+
+      @Override
+      public ContextualConcept getConcept() {
+        return null;
+      }
+    };
+    var structuredQuery = StructuredQuery.of(List.of(List.of(criterion)));
+    var translator = Translator.of();
+
+    CompletableFuture.allOf(IntStream.range(0, 200)
+        .mapToObj(i -> translator.toPathlingAsync(structuredQuery))
+        .toArray(CompletableFuture[]::new)).join();
+
+    assertThat(threads).hasSizeLessThanOrEqualTo(ForkJoinPool.getCommonPoolParallelism());
+  }
+
+  @Test
+  void toPathlingAsync_CancelledBeforeStart() {
+    var mappings = Map.of(C71_0, Mapping.of(C71_0, "Condition", "code.coding"));
+    var conceptTree = TermCodeNode.of(C71, TermCodeNode.of(C71_0));
+    var translator = Translator.of(MappingContext.of(mappings, conceptTree));
+    var structuredQuery = StructuredQuery.of(List.of(List.of(ConceptCriterion.of(
+        ContextualConcept.of(C71)))));
+    var tasks = new ArrayList<Runnable>();
+
+    var future = translator.toPathlingAsync(structuredQuery, tasks::add);
+    future.cancel(false);
+    tasks.forEach(Runnable::run);
+
+    assertThat(future).isCancelled();
+  }
+
+  @Test
+  void toPathlingAsync_Rejected() {
+    var future = Translator.of().toPathlingAsync(StructuredQuery.of(List.of(List.of(
+        ConceptCriterion.of(ContextualConcept.of(C71))))), runnable -> {
+      throw new RejectedExecutionException();
+    });
+
+    assertThat(future).isCompletedExceptionally();
+  }
+
+  @Test
+  void toPathling_Cancelled() {
+    var mappings = Map.of(C71_0, Mapping.of(C71_0, "Condition", "code.coding"));
+    var conceptTree = TermCodeNode.of(C71, TermCodeNode.of(C71_0));
+    var translator = Translator.of(MappingContext.of(mappings, conceptTree));
+    var structuredQuery = StructuredQuery.of(List.of(List.of(ConceptCriterion.of(
+        ContextualConcept.of(C71)))));
+
+    assertThrows(CancellationException.class,
+        () -> Cancellation.run(() -> true, () -> translator.toPathling(structuredQuery)));
+  }
+
+  @Test
+  void toFhirPathFilter_CancelledBetweenExpandedTermCodes() {
+    var mappings = Map.of(
+        C71_0, Mapping.of(C71_0, "Condition", "code.coding"),
+        C71_1, Mapping.of(C71_1, "Condition", "code.coding"));
+    var conceptTree = TermCodeNode.of(C71, TermCodeNode.of(C71_0), TermCodeNode.of(C71_1));
+    var mappingContext = MappingContext.of(mappings, conceptTree);
+    var criterion = ConceptCriterion.of(ContextualConcept.of(C71));
+    var checks = new int[1];
+
+    assertThrows(CancellationException.class, () -> Cancellation.run(() -> ++checks[0] > 1,
+        () -> criterion.toFhirPathFilter(mappingContext)));
+    assertEquals(2, checks[0]);
+  }
 }
@@ -0,0 +1,80 @@
+package de.fdpg.sq2pathling.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.fdpg.sq2pathling.model.common.TermCode;
+import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares expanding a concept by walking the {@link TermCodeNode tree} with expanding it through
+ * the {@link ConceptIndex}.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=de.fdpg.sq2pathling.model.ConceptIndexBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class ConceptIndexBenchmark {
+
+  private static final TermCode DIAGNOSE = TermCode.of("fdpg.mii.cds", "Diagnose", "Diagnose");
+  private static final String ICD10 = "http://fhir.de/CodeSystem/bfarm/icd-10-gm";
+
+  /**
+   * A leaf, a category with a few children and a chapter with hundreds of descendants.
+   */
+  @Param({"C71.1", "C71", "C00-C97"})
+  public String code;
+
+  private TermCodeNode conceptTree;
+  private ConceptIndex conceptIndex;
+  private ContextualTermCode termCode;
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(ConceptIndexBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+
+  @Setup
+  public void setUp() throws IOException {
+    try (var zipFile = new ZipFile(Objects.requireNonNull(
+        ConceptIndexBenchmark.class.getResource("/mapping.zip")).getPath());
+        var in = zipFile.getInputStream(zipFile.getEntry(MappingLoader.CONCEPT_TREE_ENTRY))) {
+      conceptTree = new ObjectMapper().readValue(in, TermCodeNode.class);
+    }
+    conceptIndex = ConceptIndex.of(conceptTree);
+    termCode = ContextualTermCode.of(DIAGNOSE, TermCode.of(ICD10, code, ""));
+  }
+
+  @Benchmark
+  public List<ContextualTermCode> tree() {
+    return conceptTree.expand(termCode).toList();
+  }
+
+  @Benchmark
+  public List<ContextualTermCode> index() {
+    return conceptIndex.expand(termCode).toList();
+  }
+}
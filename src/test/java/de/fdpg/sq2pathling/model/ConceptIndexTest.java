@@ -0,0 +1,217 @@
+package de.fdpg.sq2pathling.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.fdpg.sq2pathling.model.common.TermCode;
+import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.ZipFile;
+import org.junit.jupiter.api.Test;
+
+class ConceptIndexTest {
+
+  static final TermCode CONTEXT = TermCode.of("context", "context", "context");
+  static final ContextualTermCode ROOT = code("root");
+  static final ContextualTermCode A = code("a");
+  static final ContextualTermCode B = code("b");
+  static final ContextualTermCode C = code("c");
+  static final ContextualTermCode D = code("d");
+
+  static ContextualTermCode code(String code) {
+    return ContextualTermCode.of(CONTEXT, TermCode.of("system", code, code));
+  }
+
+  @Test
+  void expand() {
+    var index = ConceptIndex.of(TermCodeNode.of(ROOT,
+        TermCodeNode.of(A, TermCodeNode.of(B), TermCodeNode.of(C)),
+        TermCodeNode.of(D)));
+
+    assertThat(index.expand(ROOT)).containsExactly(ROOT, A, B, C, D);
+    assertThat(index.expand(A)).containsExactly(A, B, C);
+    assertThat(index.expand(C)).containsExactly(C);
+    assertThat(index.expand(code("unknown"))).isEmpty();
+    assertEquals(5, index.size());
+  }
+
+  @Test
+  void expand_SeveralPositions() {
+    var index = ConceptIndex.of(TermCodeNode.of(ROOT,
+        TermCodeNode.of(A, TermCodeNode.of(B, TermCodeNode.of(A, TermCodeNode.of(D)))),
+        TermCodeNode.of(C, TermCodeNode.of(A, TermCodeNode.of(C)))));
+
+    assertThat(index.expand(A)).containsExactly(A, B, A, D, A, C);
+    assertThat(index.expand(C)).containsExactly(C, A, C);
+  }
+
+  @Test
+  void toTree() {
+    var tree = TermCodeNode.of(ROOT,
+        TermCodeNode.of(A, TermCodeNode.of(B, TermCodeNode.of(A, TermCodeNode.of(D)))),
+        TermCodeNode.of(C), TermCodeNode.of(D, TermCodeNode.of(B), TermCodeNode.of(C)));
+
+    assertEquals(tree, ConceptIndex.of(tree).toTree());
+    assertEquals(TermCodeNode.of(A), ConceptIndex.of(TermCodeNode.of(A)).toTree());
+  }
+
+  @Test
+  void isDescendantOf() {
+    var index = ConceptIndex.of(TermCodeNode.of(ROOT,
+        TermCodeNode.of(A, TermCodeNode.of(B), TermCodeNode.of(C)),
+        TermCodeNode.of(D)));
+
+    assertTrue(index.isDescendantOf(B, A));
+    assertTrue(index.isDescendantOf(B, ROOT));
+    assertTrue(index.isDescendantOf(D, ROOT));
+    assertFalse(index.isDescendantOf(A, A));
+    assertFalse(index.isDescendantOf(A, B));
+    assertFalse(index.isDescendantOf(D, A));
+    assertFalse(index.isDescendantOf(code("unknown"), ROOT));
+    assertFalse(index.isDescendantOf(A, code("unknown")));
+  }
+
+  @Test
+  void isDescendantOf_SeveralPositions() {
+    var index = ConceptIndex.of(TermCodeNode.of(ROOT,
+        TermCodeNode.of(A, TermCodeNode.of(B, TermCodeNode.of(A, TermCodeNode.of(D)))),
+        TermCodeNode.of(C, TermCodeNode.of(D))));
+
+    assertTrue(index.isDescendantOf(A, B));
+    assertTrue(index.isDescendantOf(A, A));
+    assertTrue(index.isDescendantOf(D, C));
+    assertTrue(index.isDescendantOf(D, B));
+    assertFalse(index.isDescendantOf(C, A));
+    assertFalse(index.isDescendantOf(B, B));
+  }
+
+  @Test
+  void lowestCommonAncestor() {
+    var index = ConceptIndex.of(TermCodeNode.of(ROOT,
+        TermCodeNode.of(A, TermCodeNode.of(B), TermCodeNode.of(C)),
+        TermCodeNode.of(D)));
+
+    assertEquals(Optional.of(A), index.lowestCommonAncestor(B, C));
+    assertEquals(Optional.of(A), index.lowestCommonAncestor(A, C));
+    assertEquals(Optional.of(B), index.lowestCommonAncestor(B, B));
+    assertEquals(Optional.of(ROOT), index.lowestCommonAncestor(B, D));
+    assertEquals(Optional.empty(), index.lowestCommonAncestor(B, code("unknown")));
+  }
+
+  @Test
+  void lowestCommonAncestor_SeveralPositions() {
+    var index = ConceptIndex.of(TermCodeNode.of(ROOT,
+        TermCodeNode.of(A, TermCodeNode.of(D)),
+        TermCodeNode.of(B, TermCodeNode.of(C, TermCodeNode.of(D)))));
+
+    assertEquals(Optional.of(C), index.lowestCommonAncestor(C, D));
+    assertEquals(Optional.of(ROOT), index.lowestCommonAncestor(A, C));
+  }
+
+  @Test
+  void lowestCommonAncestor_NestedPositions() {
+    var otherContext = ContextualTermCode.of(TermCode.of("context", "other", "other"),
+        D.termCode());
+    var index = ConceptIndex.of(TermCodeNode.of(ROOT,
+        TermCodeNode.of(A, TermCodeNode.of(B, TermCodeNode.of(A, TermCodeNode.of(otherContext)))),
+        TermCodeNode.of(C, TermCodeNode.of(otherContext))));
+
+    assertEquals(Optional.of(A), index.lowestCommonAncestor(A, otherContext));
+    assertEquals(Optional.of(B), index.lowestCommonAncestor(B, otherContext));
+    assertEquals(Optional.of(C), index.lowestCommonAncestor(C, otherContext));
+    assertEquals(Optional.of(A), index.lowestCommonAncestor(A, A));
+  }
+
+  @Test
+  void lowestCommonAncestor_DeepTree() {
+    // a path of 100 nodes, each with a leaf
+    var node = TermCodeNode.of(code("node99"), TermCodeNode.of(code("leaf99")));
+    for (int i = 98; i >= 0; i--) {
+      node = TermCodeNode.of(code("node" + i), node, TermCodeNode.of(code("leaf" + i)));
+    }
+    var index = ConceptIndex.of(node);
+
+    for (int i = 0; i < 100; i += 7) {
+      for (int j = 0; j < 100; j += 3) {
+        assertEquals(Optional.of(code((i == j ? "leaf" : "node") + Math.min(i, j))),
+            index.lowestCommonAncestor(code("leaf" + i), code("leaf" + j)));
+        assertEquals(Optional.of(code("node" + Math.min(i, j))),
+            index.lowestCommonAncestor(code("node" + i), code("leaf" + j)));
+      }
+    }
+  }
+
+  @Test
+  void ancestors() {
+    var index = ConceptIndex.of(TermCodeNode.of(ROOT,
+        TermCodeNode.of(A, TermCodeNode.of(B, TermCodeNode.of(D))),
+        TermCodeNode.of(C, TermCodeNode.of(D))));
+
+    assertThat(index.ancestors(D)).containsExactly(B, A, ROOT, C);
+    assertThat(index.ancestors(A)).containsExactly(ROOT);
+    assertThat(index.ancestors(ROOT)).isEmpty();
+    assertThat(index.ancestors(code("unknown"))).isEmpty();
+  }
+
+  @Test
+  void expand_SameAsTermCodeNode() throws Exception {
+    var zipPath = Objects.requireNonNull(ConceptIndexTest.class.getResource("/mapping.zip"))
+        .getPath();
+    TermCodeNode conceptTree;
+    try (var zipFile = new ZipFile(zipPath);
+        var in = zipFile.getInputStream(zipFile.getEntry(MappingLoader.CONCEPT_TREE_ENTRY))) {
+      conceptTree = new ObjectMapper().readValue(in, TermCodeNode.class);
+    }
+    var index = ConceptIndex.of(conceptTree);
+
+    var termCodes = new HashSet<ContextualTermCode>();
+    index.expand(conceptTree.contextualTermCode()).forEach(termCodes::add);
+    // expanding every code with the tree is quadratic, so only a sample is compared
+    termCodes.stream().filter(termCode -> termCode.hashCode() % 1000 == 0).forEach(termCode ->
+        assertEquals(conceptTree.expand(termCode).toList(), index.expand(termCode).toList()));
+    assertEquals(conceptTree.expand(conceptTree.contextualTermCode()).toList(),
+        index.expand(conceptTree.contextualTermCode()).toList());
+  }
+
+  @Test
+  void ancestors_SameAsTreeWalk() throws Exception {
+    var zipPath = Objects.requireNonNull(ConceptIndexTest.class.getResource("/mapping.zip"))
+        .getPath();
+    TermCodeNode conceptTree;
+    try (var zipFile = new ZipFile(zipPath);
+        var in = zipFile.getInputStream(zipFile.getEntry(MappingLoader.CONCEPT_TREE_ENTRY))) {
+      conceptTree = new ObjectMapper().readValue(in, TermCodeNode.class);
+    }
+    var index = ConceptIndex.of(conceptTree);
+    var ancestors = new HashMap<ContextualTermCode, Set<ContextualTermCode>>();
+    collectAncestors(conceptTree, new ArrayDeque<>(), ancestors);
+
+    var sample = ancestors.keySet().stream().filter(termCode -> termCode.hashCode() % 100 == 0)
+        .toList();
+    for (var termCode : sample) {
+      assertEquals(ancestors.get(termCode), Set.copyOf(index.ancestors(termCode)));
+      for (var ancestor : sample) {
+        assertEquals(ancestors.get(termCode).contains(ancestor),
+            index.isDescendantOf(termCode, ancestor));
+      }
+    }
+  }
+
+  static void collectAncestors(TermCodeNode node, ArrayDeque<ContextualTermCode> path,
+      Map<ContextualTermCode, Set<ContextualTermCode>> ancestors) {
+    ancestors.computeIfAbsent(node.contextualTermCode(), termCode -> new HashSet<>())
+        .addAll(path);
+    path.push(node.contextualTermCode());
+    node.children().forEach(child -> collectAncestors(child, path, ancestors));
+    path.pop();
+  }
+}
@@ -0,0 +1,96 @@
+package de.fdpg.sq2pathling.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.fdpg.sq2pathling.model.common.TermCode;
+import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares testing subsumption by walking the {@link TermCodeNode tree} with the interval labels of
+ * the {@link ConceptIndex}.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=de.fdpg.sq2pathling.model.ConceptSubsumptionBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class ConceptSubsumptionBenchmark {
+
+  private static final TermCode DIAGNOSE = TermCode.of("fdpg.mii.cds", "Diagnose", "Diagnose");
+  private static final String ICD10 = "http://fhir.de/CodeSystem/bfarm/icd-10-gm";
+
+  /**
+   * The potential ancestor: a category with a few children and a chapter with hundreds of
+   * descendants.
+   */
+  @Param({"C71", "C00-C97"})
+  public String ancestorCode;
+
+  private TermCodeNode conceptTree;
+  private ConceptIndex conceptIndex;
+  private ContextualTermCode termCode;
+  private ContextualTermCode sibling;
+  private ContextualTermCode ancestor;
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(ConceptSubsumptionBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+
+  @Setup
+  public void setUp() throws IOException {
+    try (var zipFile = new ZipFile(Objects.requireNonNull(
+        ConceptSubsumptionBenchmark.class.getResource("/mapping.zip")).getPath());
+        var in = zipFile.getInputStream(zipFile.getEntry(MappingLoader.CONCEPT_TREE_ENTRY))) {
+      conceptTree = new ObjectMapper().readValue(in, TermCodeNode.class);
+    }
+    conceptIndex = ConceptIndex.of(conceptTree);
+    termCode = ContextualTermCode.of(DIAGNOSE, TermCode.of(ICD10, "C71.1", ""));
+    sibling = ContextualTermCode.of(DIAGNOSE, TermCode.of(ICD10, "C72.0", ""));
+    ancestor = ContextualTermCode.of(DIAGNOSE, TermCode.of(ICD10, ancestorCode, ""));
+  }
+
+  @Benchmark
+  public boolean isDescendantOfTree() {
+    return conceptTree.expand(ancestor).skip(1).anyMatch(termCode::equals);
+  }
+
+  @Benchmark
+  public boolean isDescendantOfIndex() {
+    return conceptIndex.isDescendantOf(termCode, ancestor);
+  }
+
+  @Benchmark
+  public Optional<ContextualTermCode> lowestCommonAncestor() {
+    return conceptIndex.lowestCommonAncestor(termCode, sibling);
+  }
+
+  @Benchmark
+  public List<ContextualTermCode> ancestors() {
+    return conceptIndex.ancestors(termCode);
+  }
+}
@@ -0,0 +1,166 @@
+package de.fdpg.sq2pathling.model;
+
+import static de.fdpg.sq2pathling.model.MappingSnapshotTest.ALL_MODIFIERS;
+import static de.fdpg.sq2pathling.model.MappingSnapshotTest.C71;
+import static de.fdpg.sq2pathling.model.MappingSnapshotTest.C71_0;
+import static de.fdpg.sq2pathling.model.MappingSnapshotTest.C71_1;
+import static de.fdpg.sq2pathling.model.MappingSnapshotTest.CONFIRMED;
+import static de.fdpg.sq2pathling.model.MappingSnapshotTest.FINGERPRINT;
+import static de.fdpg.sq2pathling.model.MappingSnapshotTest.ROOT;
+import static de.fdpg.sq2pathling.model.MappingSnapshotTest.VERIFICATION_STATUS;
+import static de.fdpg.sq2pathling.model.MappingSnapshotTest.WITHOUT_CONTEXT;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import de.fdpg.sq2pathling.model.common.TermCode;
+import de.fdpg.sq2pathling.model.structured_query.CodeModifier;
+import de.fdpg.sq2pathling.model.structured_query.CodingModifier;
+import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.ZipFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedMappingStoreTest {
+
+  static final ContextualTermCode UNKNOWN = ContextualTermCode.of(C71.context(),
+      TermCode.of("http://fhir.de/CodeSystem/bfarm/icd-10-gm", "C72", "unknown"));
+
+  private static Path write(Path dir, MappingContext mappingContext) throws Exception {
+    var snapshot = dir.resolve("mapping.snapshot");
+    try (var out = Files.newOutputStream(snapshot)) {
+      MappingSnapshot.write(mappingContext, FINGERPRINT, out);
+    }
+    return snapshot;
+  }
+
+  @Test
+  void find(@TempDir Path dir) throws Exception {
+    var mappings = Map.of(
+        C71_0, new Mapping(C71_0, "Condition", "code.coding", "value", null,
+            List.of(CodeModifier.of("status", "active"),
+                CodingModifier.of("verificationStatus", CONFIRMED)),
+            List.of(AttributeMapping.of("Coding", VERIFICATION_STATUS, "verificationStatus")),
+            "onset"),
+        C71_1, new Mapping(C71_1, "Condition", null, null, "Coding", List.of(), null, null));
+    var conceptTree = TermCodeNode.of(ROOT,
+        TermCodeNode.of(C71, TermCodeNode.of(C71_0), TermCodeNode.of(C71_1)));
+    var store = MappedMappingStore.open(write(dir, MappingContext.of(mappings, conceptTree)),
+        FINGERPRINT);
+
+    var c71_0 = store.find(C71_0).orElseThrow();
+    assertEquals("Malignant neoplasm of frontal lobe", c71_0.key().termCode().display());
+    assertEquals("code.coding", c71_0.termCodePath());
+    assertEquals("value", c71_0.valueFhirPath());
+    assertNull(c71_0.valueType());
+    assertEquals(List.of(CodeModifier.of("status", "active"),
+        CodingModifier.of("verificationStatus", CONFIRMED)), c71_0.fixedCriteria());
+    assertEquals(Map.of(VERIFICATION_STATUS,
+            AttributeMapping.of("Coding", VERIFICATION_STATUS, "verificationStatus")),
+        c71_0.attributeMappings());
+    assertEquals("onset", c71_0.timeRestrictionPath().orElseThrow());
+    assertSame(c71_0, store.find(C71_0).orElseThrow());
+    assertEquals("Coding", store.find(C71_1).orElseThrow().valueType());
+    assertThat(store.find(UNKNOWN)).isEmpty();
+    assertTrue(store.contains(C71_1));
+    assertFalse(store.contains(UNKNOWN));
+    assertEquals(2, store.size());
+    assertThat(store.mappings().map(Mapping::key)).containsExactlyInAnyOrder(C71_0, C71_1);
+    assertEquals(conceptTree, store.conceptTree());
+  }
+
+  @Test
+  void find_AllModifiers(@TempDir Path dir) throws Exception {
+    var mappings = Map.of(C71_0, new Mapping(C71_0, "Condition", null, null, null, ALL_MODIFIERS,
+        List.of(), null));
+    var store = MappedMappingStore.open(write(dir, MappingContext.of(mappings, null)),
+        FINGERPRINT);
+
+    assertEquals(ALL_MODIFIERS, store.find(C71_0).orElseThrow().fixedCriteria());
+  }
+
+  @Test
+  void find_WithoutContext(@TempDir Path dir) throws Exception {
+    var mappings = Map.of(WITHOUT_CONTEXT, new Mapping(WITHOUT_CONTEXT, "Condition", null, null,
+        null, List.of(), List.of(), null));
+    var conceptTree = TermCodeNode.of(ContextualTermCode.of(null, ROOT.termCode()),
+        TermCodeNode.of(WITHOUT_CONTEXT));
+    var store = MappedMappingStore.open(write(dir, MappingContext.of(mappings, conceptTree)),
+        FINGERPRINT);
+
+    assertNull(store.find(WITHOUT_CONTEXT).orElseThrow().key().context());
+    assertTrue(store.contains(WITHOUT_CONTEXT));
+    assertFalse(store.contains(C71_0));
+    assertEquals(conceptTree, store.conceptTree());
+  }
+
+  @Test
+  void find_NonAsciiAndCollidingKeys(@TempDir Path dir) throws Exception {
+    // "Aa" and "BB" have the same String hash code, so their keys share a slot hash
+    var aa = ContextualTermCode.of(C71.context(), TermCode.of("system-\u00e4", "Aa", "aa"));
+    var bb = ContextualTermCode.of(C71.context(), TermCode.of("system-\u00e4", "BB", "bb"));
+    var clef = ContextualTermCode.of(C71.context(),
+        TermCode.of("system-\u00e4", "\uD834\uDD1E\u20ac", ""));
+    var mappings = Map.of(aa, Mapping.of(aa, "Condition"), clef, Mapping.of(clef, "Observation"));
+    var store = MappedMappingStore.open(write(dir, MappingContext.of(mappings, null)),
+        FINGERPRINT);
+
+    assertTrue(store.contains(aa));
+    assertFalse(store.contains(bb));
+    assertEquals("Observation", store.find(clef).orElseThrow().resourceType());
+    assertFalse(store.contains(ContextualTermCode.of(C71.context(),
+        TermCode.of("system-a", "Aa", "aa"))));
+    assertFalse(store.contains(ContextualTermCode.of(C71.context(),
+        TermCode.of("system-\u00e4", "\uD834\uDD1E", ""))));
+  }
+
+  @Test
+  void find_Empty(@TempDir Path dir) throws Exception {
+    var store = MappedMappingStore.open(write(dir, MappingContext.of()), FINGERPRINT);
+
+    assertThat(store.find(C71_0)).isEmpty();
+    assertEquals(0, store.size());
+    assertNull(store.conceptTree());
+  }
+
+  @Test
+  void open_OtherFingerprint(@TempDir Path dir) throws Exception {
+    var snapshot = write(dir, MappingContext.of());
+
+    assertThatThrownBy(() -> MappedMappingStore.open(snapshot, 42))
+        .isInstanceOf(StaleSnapshotException.class);
+  }
+
+  @Test
+  void map_SameAsJson(@TempDir Path dir) throws Exception {
+    var zipPath = Objects.requireNonNull(MappedMappingStoreTest.class.getResource("/mapping.zip"))
+        .getPath();
+    try (var zipFile = new ZipFile(zipPath)) {
+      var fromJson = MappingLoader.load(zipFile);
+
+      var mapped = MappingSnapshot.map(zipFile, dir.resolve("mapping.snapshot"));
+
+      assertEquals(fromJson.mappings().size(), mapped.mappings().size());
+      fromJson.mappings().mappings().forEach(expected -> {
+        var mapping = mapped.findMapping(expected.key()).orElseThrow();
+        assertEquals(expected.resourceType(), mapping.resourceType());
+        assertEquals(expected.termCodePath(), mapping.termCodePath());
+        assertEquals(expected.valueFhirPath(), mapping.valueFhirPath());
+        assertEquals(expected.valueType(), mapping.valueType());
+        assertEquals(expected.fixedCriteria(), mapping.fixedCriteria());
+        assertEquals(expected.attributeMappings(), mapping.attributeMappings());
+        assertEquals(expected.timeRestrictionPath(), mapping.timeRestrictionPath());
+      });
+      assertEquals(fromJson.conceptTree(), mapped.conceptTree());
+    }
+  }
+}
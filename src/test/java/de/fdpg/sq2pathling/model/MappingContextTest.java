@@ -0,0 +1,118 @@
+package de.fdpg.sq2pathling.model;
+
+import static de.fdpg.sq2pathling.model.MappingPartitionsTest.C71;
+import static de.fdpg.sq2pathling.model.MappingPartitionsTest.C71_0;
+import static de.fdpg.sq2pathling.model.MappingPartitionsTest.C71_1;
+import static de.fdpg.sq2pathling.model.MappingPartitionsTest.C72;
+import static de.fdpg.sq2pathling.model.MappingPartitionsTest.ROOT;
+import static de.fdpg.sq2pathling.model.MappingPartitionsTest.concept;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import de.fdpg.sq2pathling.model.fhirpath.Expression;
+import de.fdpg.sq2pathling.model.structured_query.ConceptCriterion;
+import de.fdpg.sq2pathling.model.structured_query.TranslationException;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+class MappingContextTest {
+
+  static MappingContext context() {
+    var conceptTree = TermCodeNode.of(ROOT,
+        TermCodeNode.of(C71, TermCodeNode.of(C71_0), TermCodeNode.of(C71_1)),
+        TermCodeNode.of(C72));
+    return MappingContext.of(Map.of(
+        C71_0, Mapping.of(C71_0, "Condition"),
+        C71_1, Mapping.of(C71_1, "Condition")), conceptTree);
+  }
+
+  @Test
+  void expandConcept_Cached() {
+    var context = context();
+
+    assertThat(context.expandConcept(concept(C71))).containsExactly(C71_0, C71_1);
+    assertThat(context.expandConcept(concept(C71))).containsExactly(C71_0, C71_1);
+    assertThat(context.expandConcept(concept(C71_1))).containsExactly(C71_1);
+
+    var stats = context.expansionCacheStats();
+    assertEquals(1, stats.hits());
+    assertEquals(2, stats.misses());
+    assertEquals(2, stats.size());
+    assertEquals(5, stats.weight());
+  }
+
+  @Test
+  void expandConcept_FailureCached() {
+    var context = context();
+
+    assertThatThrownBy(() -> context.expandConcept(concept(C72)))
+        .isInstanceOf(TranslationException.class);
+    assertThatThrownBy(() -> context.expandConcept(concept(C72)))
+        .isInstanceOf(TranslationException.class);
+
+    assertEquals(1, context.expansionCacheStats().hits());
+  }
+
+  @Test
+  void ancestors() {
+    var context = context();
+
+    assertThat(context.ancestors(C71_0)).containsExactly(C71, ROOT);
+    assertTrue(context.isDescendantOf(C71_1, C71));
+    assertFalse(context.isDescendantOf(C72, C71));
+    assertEquals(Optional.of(ROOT), context.lowestCommonAncestor(C71_0, C72));
+  }
+
+  @Test
+  void ancestors_WithoutConceptTree() {
+    var context = MappingContext.of();
+
+    assertThat(context.ancestors(C71_0)).isEmpty();
+    assertFalse(context.isDescendantOf(C71_1, C71));
+    assertEquals(Optional.empty(), context.lowestCommonAncestor(C71_0, C72));
+  }
+
+  @Test
+  void expansionCacheStats_NewVersionStartsEmpty() {
+    var context = context();
+    context.expandConcept(concept(C71));
+
+    var next = context();
+
+    assertThat(next.version()).isGreaterThan(context.version());
+    assertEquals(0, next.expansionCacheStats().size());
+    assertEquals(0, next.expansionCacheStats().misses());
+  }
+
+  @Test
+  void translate_Cached() {
+    var context = context();
+
+    var expression = context.translate(ConceptCriterion.of(concept(C71)));
+
+    assertSame(expression, context.translate(ConceptCriterion.of(concept(C71))));
+    var stats = context.criterionCacheStats();
+    assertEquals(1, stats.hits());
+    assertEquals(1, stats.misses());
+    assertEquals(1, stats.size());
+    assertEquals(Expression.size(expression), stats.weight());
+  }
+
+  @Test
+  void translate_FailureNotCached() {
+    var context = context();
+
+    assertThatThrownBy(() -> context.translate(ConceptCriterion.of(concept(C72))))
+        .isInstanceOf(TranslationException.class);
+    assertThatThrownBy(() -> context.translate(ConceptCriterion.of(concept(C72))))
+        .isInstanceOf(TranslationException.class);
+
+    assertEquals(0, context.criterionCacheStats().hits());
+    assertEquals(0, context.criterionCacheStats().size());
+  }
+}
@@ -0,0 +1,267 @@
+package de.fdpg.sq2pathling.model;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.fdpg.sq2pathling.model.common.TermCode;
+import de.fdpg.sq2pathling.model.common.TermCodePool;
+import de.fdpg.sq2pathling.model.structured_query.CodingModifier;
+import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipFile;
+import org.junit.jupiter.api.Test;
+
+class MappingLoaderTest {
+
+  static final TermCode CONTEXT = TermCode.of("fdpg.mii.cds", "Diagnose", "Diagnose");
+  static final ContextualTermCode C71_1 = ContextualTermCode.of(CONTEXT,
+      TermCode.of("http://fhir.de/CodeSystem/bfarm/icd-10-gm", "C71.1", "Frontal lobe"));
+  static final TermCode CONFIRMED = TermCode.of(
+      "http://terminology.hl7.org/CodeSystem/condition-ver-status", "confirmed", "Confirmed");
+  static final TermCode VERIFICATION_STATUS = TermCode.of("hl7.org", "verificationStatus",
+      "verificationStatus");
+
+  private static InputStream stream(String s) {
+    return new ByteArrayInputStream(s.getBytes(UTF_8));
+  }
+
+  @Test
+  void readMappings() throws Exception {
+    var mappings = MappingLoader.readMappings(stream("""
+        [
+          {
+            "context": {
+              "code": "Diagnose",
+              "display": "Diagnose",
+              "system": "fdpg.mii.cds",
+              "version": "1.0.0"
+            },
+            "key": {
+              "code": "C71.1",
+              "display": "Frontal lobe",
+              "system": "http://fhir.de/CodeSystem/bfarm/icd-10-gm",
+              "version": "2023"
+            },
+            "name": "Diagnose",
+            "resourceType": "Condition",
+            "termCodeFhirPath": "code.coding",
+            "timeRestrictionFhirPath": "onset",
+            "fixedCriteria": [
+              {
+                "fhirPath": "verificationStatus",
+                "type": "coding",
+                "value": [
+                  {
+                    "code": "confirmed",
+                    "display": "Confirmed",
+                    "system": "http://terminology.hl7.org/CodeSystem/condition-ver-status"
+                  }
+                ]
+              }
+            ],
+            "attributeFhirPaths": [
+              {
+                "attributeKey": {
+                  "code": "verificationStatus",
+                  "display": "verificationStatus",
+                  "system": "hl7.org"
+                },
+                "attributePath": "verificationStatus.coding",
+                "attributeType": "Coding"
+              }
+            ]
+          }
+        ]
+        """));
+
+    var mapping = mappings.get(C71_1);
+    assertEquals(C71_1, mapping.key());
+    assertEquals("Condition", mapping.resourceType());
+    assertEquals("code.coding", mapping.termCodePath());
+    assertEquals("value", mapping.valueFhirPath());
+    assertEquals(null, mapping.valueType());
+    assertEquals("onset", mapping.timeRestrictionPath().orElseThrow());
+    assertThat(mapping.fixedCriteria()).containsExactly(
+        CodingModifier.of("verificationStatus", CONFIRMED));
+    assertEquals(
+        Map.of(VERIFICATION_STATUS,
+            AttributeMapping.of("Coding", VERIFICATION_STATUS, "verificationStatus.coding")),
+        mapping.attributeMappings());
+  }
+
+  @Test
+  void readMappings_Empty() throws Exception {
+    assertThat(MappingLoader.readMappings(stream("[]"))).isEmpty();
+  }
+
+  @Test
+  void readMappings_DuplicateKey() {
+    var mapping = """
+        {
+          "context": {"code": "Diagnose", "display": "Diagnose", "system": "fdpg.mii.cds"},
+          "key": {"code": "C71.1", "display": "Frontal lobe", "system": "http://fhir.de/CodeSystem/bfarm/icd-10-gm"},
+          "resourceType": "Condition"
+        }
+        """;
+
+    assertThatIllegalStateException()
+        .isThrownBy(() -> MappingLoader.readMappings(stream("[" + mapping + "," + mapping + "]")))
+        .withMessageStartingWith("Duplicate mapping key");
+  }
+
+  @Test
+  void readMappings_InternsTermCodes() throws Exception {
+    var mapping = """
+        {
+          "context": {"code": "Diagnose", "display": "Diagnose", "system": "fdpg.mii.cds"},
+          "key": {"code": "%s", "display": "%s", "system": "http://fhir.de/CodeSystem/bfarm/icd-10-gm"},
+          "resourceType": "Condition"
+        }
+        """;
+
+    var mappings = MappingLoader.readMappings(stream("[" + mapping.formatted("C71.0", "C71.0")
+        + "," + mapping.formatted("C71.1", "C71.1") + "]")).values().stream()
+        .map(Mapping::key).toList();
+
+    assertSame(mappings.get(0).context(), mappings.get(1).context());
+    assertSame(mappings.get(0).termCode().system(), mappings.get(1).termCode().system());
+  }
+
+  @Test
+  void readMappings_SeparatePoolPerLoad() throws Exception {
+    var mapping = """
+        [{
+          "context": {"code": "Diagnose", "display": "Diagnose", "system": "fdpg.mii.cds"},
+          "key": {"code": "C71.0", "display": "C71.0", "system": "http://fhir.de/CodeSystem/bfarm/icd-10-gm"},
+          "resourceType": "Condition"
+        }]
+        """;
+
+    var key1 = MappingLoader.readMappings(stream(mapping)).values().iterator().next().key();
+    var key2 = MappingLoader.readMappings(stream(mapping)).values().iterator().next().key();
+
+    assertEquals(key1, key2);
+    assertNotSame(key1, key2);
+    assertNotSame(key1.context(), key2.context());
+  }
+
+  @Test
+  void readMappings_InChunks() throws Exception {
+    var mapping = """
+        {
+          "context": {"code": "Diagnose", "display": "Diagnose", "system": "fdpg.mii.cds"},
+          "key": {"code": "%s", "display": "%s", "system": "http://fhir.de/CodeSystem/bfarm/icd-10-gm"},
+          "resourceType": "Condition",
+          "fixedCriteria": [],
+          "unknown": [{"a": null}, 1.5e3, true]
+        }
+        """;
+    var json = " [" + String.join(" ,\n", List.of(
+        mapping.formatted("C71.0", "{\\\"}]"),
+        mapping.formatted("C71.1", "[[{"),
+        mapping.formatted("C71.2", "\\\\"))) + "]\n";
+
+    var mappings = new ForkJoinPool(2).submit(() ->
+        MappingLoader.readMappings(json.getBytes(UTF_8), 3, TermCodePool.of())).get();
+
+    assertEquals(3, mappings.size());
+    assertEquals("{\\\"}]".translateEscapes(),
+        mappings.get(ContextualTermCode.of(CONTEXT, TermCode.of(
+            "http://fhir.de/CodeSystem/bfarm/icd-10-gm", "C71.0", ""))).key().termCode().display());
+  }
+
+  @Test
+  void readConceptTree() throws Exception {
+    var conceptTree = MappingLoader.readConceptTree(stream("""
+        {
+          "children": [
+            {
+              "context": {"code": "Diagnose", "display": "Diagnose", "system": "fdpg.mii.cds"},
+              "termCode": {"code": "C71.1", "display": "Frontal lobe", "system": "http://fhir.de/CodeSystem/bfarm/icd-10-gm"}
+            }
+          ],
+          "context": {"code": "", "display": "", "system": ""},
+          "termCode": {"code": "", "display": "", "system": ""}
+        }
+        """));
+
+    assertEquals(TermCodeNode.of(ContextualTermCode.of(TermCode.of("", "", ""),
+        TermCode.of("", "", "")), TermCodeNode.of(C71_1)), conceptTree);
+  }
+
+  @Test
+  void readConceptTree_SameAsDatabind() throws Exception {
+    var zipPath = Objects.requireNonNull(MappingLoaderTest.class.getResource("/mapping.zip"))
+        .getPath();
+    try (var zipFile = new ZipFile(zipPath)) {
+      var entry = zipFile.getEntry(MappingLoader.CONCEPT_TREE_ENTRY);
+      TermCodeNode conceptTree;
+      try (var in = zipFile.getInputStream(entry)) {
+        conceptTree = MappingLoader.readConceptTree(in);
+      }
+      TermCodeNode expected;
+      try (var in = zipFile.getInputStream(entry)) {
+        expected = new ObjectMapper().readValue(in, TermCodeNode.class);
+      }
+
+      assertEquals(expected, conceptTree);
+    }
+  }
+
+  @Test
+  void loadParallel_SameAsLoad() throws Exception {
+    var zipPath = Objects.requireNonNull(MappingLoaderTest.class.getResource("/mapping.zip"))
+        .getPath();
+    try (var zipFile = new ZipFile(zipPath)) {
+      var expected = MappingLoader.load(zipFile);
+
+      var mappingContext = MappingLoader.loadParallel(zipFile, new ForkJoinPool(4));
+
+      assertEquals(expected.mappings().size(), mappingContext.mappings().size());
+      expected.mappings().mappings().forEach(mapping -> assertEquals(mapping.resourceType(),
+          mappingContext.findMapping(mapping.key()).orElseThrow().resourceType()));
+      assertEquals(expected.conceptTree(), mappingContext.conceptTree());
+    }
+  }
+
+  @Test
+  void readMappings_SameAsDatabind() throws Exception {
+    var zipPath = Objects.requireNonNull(MappingLoaderTest.class.getResource("/mapping.zip"))
+        .getPath();
+    try (var zipFile = new ZipFile(zipPath)) {
+      var entry = zipFile.getEntry("mapping/mapping_pathling.json");
+      Map<ContextualTermCode, Mapping> mappings;
+      try (var in = zipFile.getInputStream(entry)) {
+        mappings = MappingLoader.readMappings(in);
+      }
+      Mapping[] expected;
+      try (var in = zipFile.getInputStream(entry)) {
+        expected = new ObjectMapper().readValue(in, Mapping[].class);
+      }
+
+      assertEquals(expected.length, mappings.size());
+      for (var expectedMapping : expected) {
+        var mapping = mappings.get(expectedMapping.key());
+        assertEquals(expectedMapping.key().context().display(), mapping.key().context().display());
+        assertEquals(expectedMapping.key().termCode().display(), mapping.key().termCode().display());
+        assertEquals(expectedMapping.resourceType(), mapping.resourceType());
+        assertEquals(expectedMapping.termCodePath(), mapping.termCodePath());
+        assertEquals(expectedMapping.valueFhirPath(), mapping.valueFhirPath());
+        assertEquals(expectedMapping.valueType(), mapping.valueType());
+        assertEquals(expectedMapping.fixedCriteria(), mapping.fixedCriteria());
+        assertEquals(expectedMapping.attributeMappings(), mapping.attributeMappings());
+        assertEquals(expectedMapping.timeRestrictionPath(), mapping.timeRestrictionPath());
+      }
+    }
+  }
+}
@@ -0,0 +1,234 @@
+package de.fdpg.sq2pathling.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import de.fdpg.sq2pathling.model.common.TermCode;
+import de.fdpg.sq2pathling.model.structured_query.Concept;
+import de.fdpg.sq2pathling.model.structured_query.ContextualConcept;
+import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
+import de.fdpg.sq2pathling.model.structured_query.TranslationException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.ZipFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappingPartitionsTest {
+
+  static final TermCode ROOT_CONTEXT = TermCode.of("", "", "");
+  static final TermCode DIAGNOSE = TermCode.of("fdpg.mii.cds", "Diagnose", "Diagnose");
+  static final TermCode PROCEDURE = TermCode.of("fdpg.mii.cds", "Procedure", "Procedure");
+  static final ContextualTermCode ROOT = ContextualTermCode.of(ROOT_CONTEXT, ROOT_CONTEXT);
+  static final ContextualTermCode C71 = diagnose("C71");
+  static final ContextualTermCode C71_0 = diagnose("C71.0");
+  static final ContextualTermCode C71_1 = diagnose("C71.1");
+  static final ContextualTermCode C72 = diagnose("C72");
+  static final ContextualTermCode SURGERY = ContextualTermCode.of(PROCEDURE,
+      TermCode.of("http://fhir.de/CodeSystem/bfarm/ops", "5", "Operationen"));
+  static final ContextualTermCode SURGERY_C71 = ContextualTermCode.of(PROCEDURE,
+      TermCode.of("http://fhir.de/CodeSystem/bfarm/ops", "5-01", "Inzision"));
+  static final long FINGERPRINT = 42;
+
+  static ContextualTermCode diagnose(String code) {
+    return ContextualTermCode.of(DIAGNOSE,
+        TermCode.of("http://fhir.de/CodeSystem/bfarm/icd-10-gm", code, code));
+  }
+
+  static ContextualConcept concept(ContextualTermCode termCode) {
+    return ContextualConcept.of(termCode.context(), Concept.of(termCode.termCode()));
+  }
+
+  @Test
+  void open(@TempDir Path dir) throws Exception {
+    var conceptTree = TermCodeNode.of(ROOT,
+        TermCodeNode.of(C71, TermCodeNode.of(C71_0, TermCodeNode.of(SURGERY_C71)),
+            TermCodeNode.of(C71_1)),
+        TermCodeNode.of(SURGERY),
+        TermCodeNode.of(C72, TermCodeNode.of(C71_0)));
+    var mappings = Map.of(
+        C71_0, Mapping.of(C71_0, "Condition"),
+        C71_1, Mapping.of(C71_1, "Condition"),
+        SURGERY_C71, Mapping.of(SURGERY_C71, "Procedure"));
+    var full = MappingContext.of(mappings, conceptTree);
+    MappingPartitions.write(full, FINGERPRINT, dir);
+
+    var partitioned = (PartitionedMappingContext) MappingPartitions.open(dir, FINGERPRINT);
+
+    assertThat(partitioned.loadedContexts()).isEmpty();
+    assertEquals("Condition", partitioned.findMapping(C71_0).orElseThrow().resourceType());
+    assertEquals(Set.of(DIAGNOSE), partitioned.loadedContexts());
+    assertThat(partitioned.expandConcept(concept(C71))).containsExactly(C71_0, C71_1);
+    assertThat(partitioned.expandConcept(concept(C71_0))).containsExactly(C71_0, C71_0);
+    assertThat(partitioned.expandConcept(concept(SURGERY_C71))).containsExactly(SURGERY_C71);
+    assertEquals(Set.of(DIAGNOSE, PROCEDURE), partitioned.loadedContexts());
+    assertThat(partitioned.findMapping(ContextualTermCode.of(TermCode.of("a", "b", "c"),
+        C71.termCode()))).isEmpty();
+    assertEquals(3, partitioned.mappings().size());
+  }
+
+  @Test
+  void open_Ancestors(@TempDir Path dir) throws Exception {
+    var conceptTree = TermCodeNode.of(ROOT,
+        TermCodeNode.of(C71, TermCodeNode.of(C71_0, TermCodeNode.of(SURGERY_C71)),
+            TermCodeNode.of(C71_1)),
+        TermCodeNode.of(SURGERY),
+        TermCodeNode.of(C72, TermCodeNode.of(C71_0)));
+    MappingPartitions.write(MappingContext.of(Map.of(), conceptTree), FINGERPRINT, dir);
+
+    var partitioned = MappingPartitions.open(dir, FINGERPRINT);
+
+    assertThat(partitioned.ancestors(C71_0)).containsExactly(C71, C72);
+    assertThat(partitioned.ancestors(SURGERY_C71)).isEmpty();
+    assertTrue(partitioned.isDescendantOf(C71_0, C72));
+    assertFalse(partitioned.isDescendantOf(SURGERY_C71, C71));
+    assertEquals(Optional.of(C71), partitioned.lowestCommonAncestor(C71_0, C71_1));
+    assertEquals(Optional.empty(), partitioned.lowestCommonAncestor(C71_1, C72));
+    assertEquals(Optional.empty(), partitioned.lowestCommonAncestor(C71_0, SURGERY_C71));
+  }
+
+  @Test
+  void open_InterleavedContexts(@TempDir Path dir) throws Exception {
+    var conceptTree = TermCodeNode.of(ROOT,
+        TermCodeNode.of(C71, TermCodeNode.of(SURGERY_C71, TermCodeNode.of(C71_0)),
+            TermCodeNode.of(C71_1)));
+    var mappings = Map.of(
+        C71_0, Mapping.of(C71_0, "Condition"),
+        C71_1, Mapping.of(C71_1, "Condition"));
+    var full = MappingContext.of(mappings, conceptTree);
+    MappingPartitions.write(full, FINGERPRINT, dir);
+
+    var partitioned = MappingPartitions.open(dir, FINGERPRINT);
+
+    assertEquals(expand(full, concept(C71)), expand(partitioned, concept(C71)));
+    assertEquals(expand(full, concept(C71_0)), expand(partitioned, concept(C71_0)));
+    assertThat(partitioned.ancestors(C71_0)).containsExactly(SURGERY_C71, C71);
+  }
+
+  @Test
+  void open_ConceptTree(@TempDir Path dir) throws Exception {
+    var top = TermCode.of("fdpg.mii.cds", "Top", "Top");
+    var conceptTree = TermCodeNode.of(ContextualTermCode.of(top, top),
+        TermCodeNode.of(C71, TermCodeNode.of(C71_0, TermCodeNode.of(SURGERY_C71)),
+            TermCodeNode.of(C71_1)),
+        TermCodeNode.of(SURGERY),
+        TermCodeNode.of(C72, TermCodeNode.of(C71_0)));
+    MappingPartitions.write(MappingContext.of(Map.of(), conceptTree), FINGERPRINT, dir);
+
+    var partitioned = MappingPartitions.open(dir, FINGERPRINT);
+
+    assertEquals(conceptTree, partitioned.conceptTree());
+  }
+
+  @Test
+  void open_ConceptTreeWithoutRootContext(@TempDir Path dir) throws Exception {
+    var c71 = TermCodeNode.of(C71, TermCodeNode.of(C71_0, TermCodeNode.of(SURGERY_C71)));
+    var surgery = TermCodeNode.of(SURGERY);
+    var conceptTree = new TermCodeNode(ContextualTermCode.of(null, ROOT_CONTEXT),
+        List.of(c71, surgery));
+    MappingPartitions.write(MappingContext.of(Map.of(), conceptTree), FINGERPRINT, dir);
+
+    var conceptTreeOfPartitions = MappingPartitions.open(dir, FINGERPRINT).conceptTree();
+
+    assertThat(conceptTreeOfPartitions.children()).containsExactlyInAnyOrder(c71, surgery);
+  }
+
+  @Test
+  void open_OtherFingerprint(@TempDir Path dir) throws Exception {
+    MappingPartitions.write(MappingContext.of(), FINGERPRINT, dir);
+
+    assertThatThrownBy(() -> MappingPartitions.open(dir, 43))
+        .isInstanceOf(StaleSnapshotException.class);
+  }
+
+  @Test
+  void open_TruncatedPartition(@TempDir Path dir) throws Exception {
+    MappingPartitions.write(MappingContext.of(Map.of(), TermCodeNode.of(C71)), FINGERPRINT, dir);
+    truncateFirstPartition(dir);
+
+    assertThatThrownBy(() -> MappingPartitions.open(dir, FINGERPRINT))
+        .isInstanceOf(IOException.class);
+  }
+
+  @Test
+  void load_RebuildsTruncatedPartition(@TempDir Path dir) throws Exception {
+    try (var zipFile = new ZipFile(mappingZip())) {
+      var full = MappingLoader.load(zipFile);
+      MappingPartitions.load(zipFile, dir);
+      truncateFirstPartition(dir);
+
+      var rebuilt = MappingPartitions.load(zipFile, dir);
+
+      assertEquals(full.mappings().size(), rebuilt.mappings().size());
+    }
+  }
+
+  @Test
+  void load_RebuildsCorruptDirectoryFile(@TempDir Path dir) throws Exception {
+    try (var zipFile = new ZipFile(mappingZip())) {
+      var full = MappingLoader.load(zipFile);
+      MappingPartitions.load(zipFile, dir);
+      var directoryFile = dir.resolve(MappingPartitions.DIRECTORY_FILE);
+      var bytes = Files.readAllBytes(directoryFile);
+      Files.write(directoryFile, Arrays.copyOf(bytes, bytes.length / 2));
+
+      var rebuilt = MappingPartitions.load(zipFile, dir);
+
+      assertEquals(full.mappings().size(), rebuilt.mappings().size());
+    }
+  }
+
+  @Test
+  void load_SameAsFullContext(@TempDir Path dir) throws Exception {
+    try (var zipFile = new ZipFile(mappingZip())) {
+      var full = MappingLoader.load(zipFile);
+
+      var partitioned = MappingPartitions.load(zipFile, dir);
+
+      full.mappings().mappings().map(Mapping::key)
+          .filter(key -> key.hashCode() % 100 == 0)
+          .forEach(key -> {
+            assertEquals(full.findMapping(key).orElseThrow().resourceType(),
+                partitioned.findMapping(key).orElseThrow().resourceType());
+            assertEquals(expand(full, concept(key)), expand(partitioned, concept(key)));
+          });
+      assertEquals(full.mappings().size(), partitioned.mappings().size());
+    }
+  }
+
+  static String mappingZip() {
+    return Objects.requireNonNull(MappingPartitionsTest.class.getResource("/mapping.zip"))
+        .getPath();
+  }
+
+  static void truncateFirstPartition(Path dir) throws IOException {
+    try (var files = Files.list(dir)) {
+      var partition = files
+          .filter(file -> !file.endsWith(MappingPartitions.DIRECTORY_FILE))
+          .sorted()
+          .findFirst()
+          .orElseThrow();
+      var bytes = Files.readAllBytes(partition);
+      Files.write(partition, Arrays.copyOf(bytes, bytes.length / 2));
+    }
+  }
+
+  static Object expand(MappingContext mappingContext, ContextualConcept concept) {
+    try {
+      return mappingContext.expandConcept(concept).toList();
+    } catch (TranslationException e) {
+      return e.getMessage();
+    }
+  }
+}
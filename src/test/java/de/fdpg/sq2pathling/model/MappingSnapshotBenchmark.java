@@ -0,0 +1,82 @@
+package de.fdpg.sq2pathling.model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares building a {@link MappingContext} from the JSON files of {@code mapping.zip}, either
+ * sequentially or in parallel, with reading it from a {@link MappingSnapshot}.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=de.fdpg.sq2pathling.model.MappingSnapshotBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class MappingSnapshotBenchmark {
+
+  private ZipFile zipFile;
+  private long fingerprint;
+  private Path snapshot;
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(MappingSnapshotBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+
+  @Setup
+  public void setUp() throws IOException {
+    zipFile = new ZipFile(Objects.requireNonNull(
+        MappingSnapshotBenchmark.class.getResource("/mapping.zip")).getPath());
+    fingerprint = MappingSnapshot.fingerprint(zipFile);
+    snapshot = Files.createTempFile("mapping", ".snapshot");
+    try (var out = Files.newOutputStream(snapshot)) {
+      MappingSnapshot.convert(zipFile, out);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    zipFile.close();
+    Files.deleteIfExists(snapshot);
+  }
+
+  @Benchmark
+  public MappingContext json() throws IOException {
+    return MappingLoader.load(zipFile);
+  }
+
+  @Benchmark
+  public MappingContext jsonParallel() throws IOException {
+    return MappingLoader.loadParallel(zipFile);
+  }
+
+  @Benchmark
+  public MappingContext snapshot() throws IOException {
+    try (var in = Files.newInputStream(snapshot)) {
+      return MappingSnapshot.read(in, fingerprint);
+    }
+  }
+}
@@ -0,0 +1,237 @@
+package de.fdpg.sq2pathling.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import de.fdpg.sq2pathling.model.common.Comparator;
+import de.fdpg.sq2pathling.model.common.TermCode;
+import de.fdpg.sq2pathling.model.fhirpath.BooleanExpression;
+import de.fdpg.sq2pathling.model.structured_query.CodeModifier;
+import de.fdpg.sq2pathling.model.structured_query.CodingModifier;
+import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
+import de.fdpg.sq2pathling.model.structured_query.Modifier;
+import de.fdpg.sq2pathling.model.structured_query.NumericModifier;
+import de.fdpg.sq2pathling.model.structured_query.RangeModifier;
+import de.fdpg.sq2pathling.model.structured_query.TimeRestrictionModifier;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.ZipFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappingSnapshotTest {
+
+  static final TermCode CONTEXT = TermCode.of("fdpg.mii.cds", "Diagnose", "Diagnose");
+  static final ContextualTermCode ROOT = ContextualTermCode.of(CONTEXT, TermCode.of("", "", ""));
+  static final ContextualTermCode C71 = ContextualTermCode.of(CONTEXT,
+      TermCode.of("http://fhir.de/CodeSystem/bfarm/icd-10-gm", "C71",
+          "Malignant neoplasm of brain"));
+  static final ContextualTermCode C71_0 = ContextualTermCode.of(CONTEXT,
+      TermCode.of("http://fhir.de/CodeSystem/bfarm/icd-10-gm", "C71.0",
+          "Malignant neoplasm of frontal lobe"));
+  static final ContextualTermCode C71_1 = ContextualTermCode.of(CONTEXT,
+      TermCode.of("http://fhir.de/CodeSystem/bfarm/icd-10-gm", "C71.1",
+          "Malignant neoplasm of temporal lobe"));
+  static final TermCode CONFIRMED = TermCode.of(
+      "http://terminology.hl7.org/CodeSystem/condition-ver-status", "confirmed", "Confirmed");
+  static final TermCode VERIFICATION_STATUS = TermCode.of("hl7.org", "verificationStatus",
+      "verificationStatus");
+  static final long FINGERPRINT = 0x1234_5678_9abc_def0L;
+  static final ContextualTermCode WITHOUT_CONTEXT = ContextualTermCode.of(null, C71_0.termCode());
+  static final List<Modifier> ALL_MODIFIERS = List.of(
+      CodeModifier.of("status", "active"),
+      CodingModifier.of("verificationStatus", CONFIRMED),
+      TimeRestrictionModifier.of("onset", "2020-01-01", null),
+      RangeModifier.of("value", new BigDecimal("1.50"), new BigDecimal("3"), "mg"),
+      NumericModifier.of("value", Comparator.LESS_THAN, new BigDecimal("2.5E+3"), null));
+
+  private static byte[] write(MappingContext mappingContext) throws Exception {
+    var out = new ByteArrayOutputStream();
+    MappingSnapshot.write(mappingContext, FINGERPRINT, out);
+    return out.toByteArray();
+  }
+
+  private static Path mappingZip() {
+    return Path.of(Objects.requireNonNull(MappingSnapshotTest.class.getResource("/mapping.zip"))
+        .getPath());
+  }
+
+  static Set<ContextualTermCode> keys(MappingContext mappingContext) {
+    return mappingContext.mappings().mappings().map(Mapping::key).collect(Collectors.toSet());
+  }
+
+  @Test
+  void roundTrip() throws Exception {
+    var mappings = Map.of(
+        C71_0, new Mapping(C71_0, "Condition", "code.coding", "value", null,
+            List.of(CodeModifier.of("status", "active"),
+                CodingModifier.of("verificationStatus", CONFIRMED)),
+            List.of(AttributeMapping.of("Coding", VERIFICATION_STATUS, "verificationStatus")),
+            "onset"),
+        C71_1, new Mapping(C71_1, "Condition", null, null, "Coding", List.of(), null, null));
+    var conceptTree = TermCodeNode.of(ROOT,
+        TermCodeNode.of(C71, TermCodeNode.of(C71_0), TermCodeNode.of(C71_1)));
+
+    var mappingContext = MappingSnapshot.read(
+        new ByteArrayInputStream(write(MappingContext.of(mappings, conceptTree))), FINGERPRINT);
+
+    var c71_0 = mappingContext.findMapping(C71_0).orElseThrow();
+    assertEquals("Malignant neoplasm of frontal lobe", c71_0.key().termCode().display());
+    assertEquals("Condition", c71_0.resourceType());
+    assertEquals("code.coding", c71_0.termCodePath());
+    assertEquals("value", c71_0.valueFhirPath());
+    assertNull(c71_0.valueType());
+    assertEquals(List.of(CodeModifier.of("status", "active"),
+        CodingModifier.of("verificationStatus", CONFIRMED)), c71_0.fixedCriteria());
+    assertEquals(Map.of(VERIFICATION_STATUS,
+            AttributeMapping.of("Coding", VERIFICATION_STATUS, "verificationStatus")),
+        c71_0.attributeMappings());
+    assertEquals("onset", c71_0.timeRestrictionPath().orElseThrow());
+    var c71_1 = mappingContext.findMapping(C71_1).orElseThrow();
+    assertNull(c71_1.termCodePath());
+    assertNull(c71_1.valueFhirPath());
+    assertEquals("Coding", c71_1.valueType());
+    assertThat(c71_1.timeRestrictionPath()).isEmpty();
+    assertEquals(conceptTree, mappingContext.conceptTree());
+  }
+
+  @Test
+  void roundTrip_WithoutConceptTree() throws Exception {
+    var mappingContext = MappingSnapshot.read(
+        new ByteArrayInputStream(write(MappingContext.of())), FINGERPRINT);
+
+    assertThat(mappingContext.mappings().size()).isZero();
+    assertNull(mappingContext.conceptTree());
+  }
+
+  @Test
+  void roundTrip_AllModifiers() throws Exception {
+    var mappings = Map.of(C71_0, new Mapping(C71_0, "Condition", null, null, null, ALL_MODIFIERS,
+        List.of(), null));
+
+    var mappingContext = MappingSnapshot.read(
+        new ByteArrayInputStream(write(MappingContext.of(mappings, null))), FINGERPRINT);
+
+    assertEquals(ALL_MODIFIERS, mappingContext.findMapping(C71_0).orElseThrow().fixedCriteria());
+  }
+
+  @Test
+  void roundTrip_WithoutContext() throws Exception {
+    var mappings = Map.of(
+        WITHOUT_CONTEXT, new Mapping(WITHOUT_CONTEXT, "Condition", null, null, null, List.of(),
+            List.of(), null),
+        C71_0, new Mapping(C71_0, "Observation", null, null, null, List.of(), List.of(), null));
+    var conceptTree = TermCodeNode.of(ContextualTermCode.of(null, ROOT.termCode()),
+        TermCodeNode.of(WITHOUT_CONTEXT), TermCodeNode.of(C71_0));
+
+    var mappingContext = MappingSnapshot.read(
+        new ByteArrayInputStream(write(MappingContext.of(mappings, conceptTree))), FINGERPRINT);
+
+    assertEquals("Condition",
+        mappingContext.findMapping(WITHOUT_CONTEXT).orElseThrow().resourceType());
+    assertNull(mappingContext.findMapping(WITHOUT_CONTEXT).orElseThrow().key().context());
+    assertEquals("Observation", mappingContext.findMapping(C71_0).orElseThrow().resourceType());
+    assertEquals(conceptTree, mappingContext.conceptTree());
+  }
+
+  @Test
+  void write_ForeignModifier() {
+    Modifier modifier = mappingContext -> BooleanExpression.TRUE;
+    var mappings = Map.of(C71_0, new Mapping(C71_0, "Condition", null, null, null,
+        List.of(modifier), List.of(), null));
+
+    assertThatThrownBy(() -> write(MappingContext.of(mappings, null)))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageStartingWith("Unsupported fixed criterion of mapping");
+  }
+
+  @Test
+  void read_OtherFingerprint() throws Exception {
+    var snapshot = write(MappingContext.of());
+
+    assertThatThrownBy(() -> MappingSnapshot.read(new ByteArrayInputStream(snapshot), 42))
+        .isInstanceOf(StaleSnapshotException.class)
+        .hasMessage("Fingerprint 123456789abcdef0 differs from expected fingerprint 000000000000002a.");
+  }
+
+  @Test
+  void read_OtherFormatVersion() throws Exception {
+    var snapshot = write(MappingContext.of());
+    snapshot[7]++;
+
+    assertThatThrownBy(() -> MappingSnapshot.read(new ByteArrayInputStream(snapshot), FINGERPRINT))
+        .isInstanceOf(StaleSnapshotException.class)
+        .hasMessageStartingWith("Format version");
+  }
+
+  @Test
+  void load_WritesAndReusesSnapshot(@TempDir Path dir) throws Exception {
+    var snapshot = dir.resolve("mapping.snapshot");
+    try (var zipFile = new ZipFile(mappingZip().toFile())) {
+      var fromJson = MappingSnapshot.load(zipFile, snapshot);
+      var modified = Files.getLastModifiedTime(snapshot);
+
+      var fromSnapshot = MappingSnapshot.load(zipFile, snapshot);
+
+      assertEquals(modified, Files.getLastModifiedTime(snapshot));
+      assertEquals(keys(fromJson), keys(fromSnapshot));
+      assertEquals(fromJson.conceptTree(), fromSnapshot.conceptTree());
+    }
+  }
+
+  @Test
+  void read_Truncated() throws Exception {
+    var snapshot = write(MappingContext.of(Map.of(C71_0, Mapping.of(C71_0, "Condition")),
+        null));
+    var truncated = Arrays.copyOf(snapshot, 30);
+
+    assertThatThrownBy(() -> MappingSnapshot.read(new ByteArrayInputStream(truncated),
+        FINGERPRINT)).isInstanceOf(IOException.class);
+  }
+
+  @Test
+  void load_RebuildsCorruptSnapshot(@TempDir Path dir) throws Exception {
+    var snapshot = dir.resolve("mapping.snapshot");
+    try (var zipFile = new ZipFile(mappingZip().toFile())) {
+      var fromJson = MappingSnapshot.load(zipFile, snapshot);
+      var size = Files.size(snapshot);
+      var bytes = Files.readAllBytes(snapshot);
+      Files.write(snapshot, Arrays.copyOf(bytes, bytes.length / 2));
+
+      var rebuilt = MappingSnapshot.load(zipFile, snapshot);
+
+      assertEquals(size, Files.size(snapshot));
+      assertEquals(keys(fromJson), keys(rebuilt));
+      assertEquals(keys(fromJson), keys(MappingSnapshot.load(zipFile, snapshot)));
+    }
+  }
+
+  @Test
+  void map_RebuildsCorruptSnapshot(@TempDir Path dir) throws Exception {
+    var snapshot = dir.resolve("mapping.snapshot");
+    try (var zipFile = new ZipFile(mappingZip().toFile())) {
+      var fromJson = MappingSnapshot.load(zipFile, snapshot);
+      var bytes = Files.readAllBytes(snapshot);
+      // keep the header and footer, but overwrite the offsets of the footer
+      Arrays.fill(bytes, bytes.length - MappingSnapshot.FOOTER_SIZE,
+          bytes.length - Integer.BYTES, (byte) 0x7f);
+      Files.write(snapshot, bytes);
+
+      var rebuilt = MappingSnapshot.map(zipFile, snapshot);
+
+      assertEquals(keys(fromJson), keys(rebuilt));
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package de.fdpg.sq2pathling.model.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import de.fdpg.sq2pathling.model.structured_query.ContextualTermCode;
+import org.junit.jupiter.api.Test;
+
+class TermCodePoolTest {
+
+    static final TermCode CONTEXT = TermCode.of("fdpg.mii.cds", "Diagnose", "Diagnose");
+
+    static ContextualTermCode c71(String display) {
+        return ContextualTermCode.of(TermCode.of("fdpg.mii.cds", "Diagnose", "Diagnose"),
+            TermCode.of(new String("http://fhir.de/CodeSystem/bfarm/icd-10-gm"), "C71", display));
+    }
+
+    @Test
+    void intern() {
+        var pool = TermCodePool.of();
+
+        var pooled = pool.intern(c71("Malignant neoplasm of brain"));
+
+        assertSame(pooled, pool.intern(c71("Malignant neoplasm of brain")));
+        assertSame(pooled.context(), pool.intern(CONTEXT));
+        assertSame(pooled.termCode().system(), pool.intern(c71("other").termCode()).system());
+    }
+
+    @Test
+    void intern_OtherDisplay() {
+        var pool = TermCodePool.of();
+        var pooled = pool.intern(c71("Malignant neoplasm of brain"));
+
+        var other = pool.intern(c71("other"));
+
+        assertNotSame(pooled, other);
+        assertEquals(pooled, other);
+        assertEquals("other", other.termCode().display());
+        assertSame(pooled.termCode().system(), other.termCode().system());
+    }
+
+    @Test
+    void canonicalize() {
+        var pool = TermCodePool.of();
+        var pooled = pool.intern(c71("Malignant neoplasm of brain"));
+        var unknown = ContextualTermCode.of(CONTEXT, TermCode.of("system", "code", "display"));
+        var otherDisplay = c71("other");
+
+        assertSame(pooled, pool.canonicalize(c71("Malignant neoplasm of brain")));
+        assertSame(unknown, pool.canonicalize(unknown));
+        assertSame(otherDisplay, pool.canonicalize(otherDisplay));
+    }
+
+    @Test
+    void canonicalizer() {
+        var pool = TermCodePool.of();
+        var pooled = pool.intern(c71("Malignant neoplasm of brain"));
+        var canonicalizer = pool.canonicalizer();
+        var later = pool.intern(ContextualTermCode.of(CONTEXT, TermCode.of("system", "code", "d")));
+
+        assertSame(pooled, canonicalizer.apply(c71("Malignant neoplasm of brain")));
+        var otherDisplay = c71("other");
+        assertSame(otherDisplay, canonicalizer.apply(otherDisplay));
+        var laterCopy = ContextualTermCode.of(CONTEXT, TermCode.of("system", "code", "d"));
+        assertSame(laterCopy, canonicalizer.apply(laterCopy));
+        assertNotSame(later, canonicalizer.apply(laterCopy));
+    }
+}
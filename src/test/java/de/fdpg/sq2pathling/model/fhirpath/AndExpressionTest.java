@@ -0,0 +1,66 @@
+package de.fdpg.sq2pathling.model.fhirpath;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import de.fdpg.sq2pathling.PrintContext;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class AndExpressionTest {
+
+  static final BooleanExpression A = printContext -> "a";
+  static final BooleanExpression B = printContext -> "b";
+  static final BooleanExpression C = printContext -> "c";
+
+  @Test
+  void collector() {
+    var expression = Stream.of(A, B, C).collect(AndExpression.collector());
+
+    assertEquals(new AndExpression(List.of(A, B, C)), expression);
+    assertEquals("a and\nb and\nc", PrintContext.ZERO.print(expression));
+  }
+
+  @Test
+  void collector_FlattensNestedConjunctions() {
+    var expression = Stream.of(new AndExpression(List.of(A, B)), C)
+        .collect(AndExpression.collector());
+
+    assertEquals(new AndExpression(List.of(A, B, C)), expression);
+  }
+
+  @Test
+  void collector_KeepsSingleOperand() {
+    var expression = Stream.of(BooleanExpression.TRUE, A).collect(AndExpression.collector());
+
+    assertEquals(new AndExpression(List.of(A)), expression);
+  }
+
+  @Test
+  void collector_DropsTrue() {
+    var expression = Stream.of(A, BooleanExpression.TRUE, B).collect(AndExpression.collector());
+
+    assertEquals(new AndExpression(List.of(A, B)), expression);
+  }
+
+  @Test
+  void collector_FalseAbsorbs() {
+    var expression = Stream.of(A, BooleanExpression.FALSE, B).collect(AndExpression.collector());
+
+    assertSame(BooleanExpression.FALSE, expression);
+  }
+
+  @Test
+  void collector_Empty() {
+    assertSame(BooleanExpression.TRUE, Stream.<BooleanExpression>of()
+        .collect(AndExpression.collector()));
+  }
+
+  @Test
+  void collector_Parallel() {
+    var expression = Stream.of(A, B, C, A, B, C).parallel().collect(AndExpression.collector());
+
+    assertEquals(new AndExpression(List.of(A, B, C, A, B, C)), expression);
+  }
+}
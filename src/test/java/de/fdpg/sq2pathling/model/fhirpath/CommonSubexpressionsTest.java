@@ -0,0 +1,81 @@
+package de.fdpg.sq2pathling.model.fhirpath;
+
+import static de.fdpg.sq2pathling.model.fhirpath.ExpressionOptimizerTest.and;
+import static de.fdpg.sq2pathling.model.fhirpath.ExpressionOptimizerTest.or;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import de.fdpg.sq2pathling.PrintContext;
+import de.fdpg.sq2pathling.model.common.Comparator;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class CommonSubexpressionsTest {
+
+  static BooleanExpression condition(String code) {
+    return InvocationExpression.of(
+        ReverseResolveFunctionExpression.of(InvocationExpression.of(
+            IdentifierExpression.of("Condition"), MemberInvocation.of("subject"))),
+        FunctionInvocation.of("exists", List.of(ComparatorExpression.of(
+            IdentifierExpression.of("code"), Comparator.EQUAL, StringLiteralExpression.of(code)))));
+  }
+
+  @Test
+  void equalExpressions() {
+    assertEquals(condition("C71"), condition("C71"));
+    assertEquals(condition("C71").hashCode(), condition("C71").hashCode());
+    assertEquals(and(BooleanExpression.TRUE, condition("C71")),
+        and(BooleanLiteralExpression.TRUE, condition("C71")));
+  }
+
+  @Test
+  void eliminate_SharesEqualSubtrees() {
+    var subexpressions = CommonSubexpressions.of();
+    var first = condition("C71");
+    var second = condition("C71");
+
+    var expression = (AndExpression) subexpressions.eliminate(and(or(first, condition("C72")),
+        or(second)));
+
+    assertSame(first, ((OrExpression) expression.expressions().get(0)).expressions().get(0));
+    assertSame(first, ((OrExpression) expression.expressions().get(1)).expressions().get(0));
+    // the second C71 criterion and the reverse join of the C72 criterion
+    assertEquals(2, subexpressions.duplicates());
+  }
+
+  @Test
+  void eliminate_AcrossExpressions() {
+    var subexpressions = CommonSubexpressions.of();
+
+    var inclusion = subexpressions.eliminate(or(condition("C71"), condition("C72")));
+    var exclusion = subexpressions.eliminate(condition("C72"));
+
+    assertSame(((OrExpression) inclusion).expressions().get(1), exclusion);
+    assertEquals(2, subexpressions.duplicates());
+  }
+
+  @Test
+  void eliminate_SharesInnerSubtrees() {
+    var subexpressions = CommonSubexpressions.of();
+
+    var c71 = (InvocationExpression) subexpressions.eliminate(condition("C71"));
+    var c72 = (InvocationExpression) subexpressions.eliminate(condition("C72"));
+
+    assertNotSame(c71, c72);
+    assertSame(c71.expression(), c72.expression());
+    // the reverse join is the only repeated subtree counted
+    assertEquals(1, subexpressions.duplicates());
+  }
+
+  @Test
+  void eliminate_PrintsLikeOriginal() {
+    var expression = and(or(condition("C71"), condition("C72")), or(condition("C71")),
+        BooleanExpression.TRUE);
+
+    var eliminated = CommonSubexpressions.of().eliminate(expression);
+
+    assertEquals(expression, eliminated);
+    assertEquals(PrintContext.ZERO.print(expression), PrintContext.ZERO.print(eliminated));
+  }
+}
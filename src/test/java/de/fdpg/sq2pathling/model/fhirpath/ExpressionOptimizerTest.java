@@ -0,0 +1,69 @@
+package de.fdpg.sq2pathling.model.fhirpath;
+
+import static de.fdpg.sq2pathling.model.fhirpath.AndExpressionTest.A;
+import static de.fdpg.sq2pathling.model.fhirpath.AndExpressionTest.B;
+import static de.fdpg.sq2pathling.model.fhirpath.AndExpressionTest.C;
+import static de.fdpg.sq2pathling.model.fhirpath.ExpressionOptimizer.optimize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import de.fdpg.sq2pathling.PrintContext;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ExpressionOptimizerTest {
+
+  static AndExpression and(BooleanExpression... expressions) {
+    return new AndExpression(List.of(expressions));
+  }
+
+  static OrExpression or(BooleanExpression... expressions) {
+    return new OrExpression(List.of(expressions));
+  }
+
+  @Test
+  void optimize_ConstantFolding() {
+    assertSame(A, optimize(and(BooleanExpression.TRUE, A)));
+    assertSame(A, optimize(or(BooleanExpression.FALSE, A)));
+    assertSame(BooleanExpression.FALSE, optimize(and(A, BooleanExpression.FALSE)));
+    assertSame(BooleanExpression.TRUE, optimize(or(A, BooleanExpression.TRUE)));
+    assertSame(BooleanExpression.TRUE, optimize(and(BooleanExpression.TRUE)));
+  }
+
+  @Test
+  void optimize_Flattening() {
+    assertEquals(or(A, B, C), optimize(or(or(A), or(B, or(C)))));
+    assertEquals(and(A, B), optimize(and(and(A), or(and(B)))));
+  }
+
+  @Test
+  void optimize_Duplicates() {
+    assertEquals(or(A, B), optimize(or(A, B, A, B)));
+    assertSame(A, optimize(and(A, A)));
+  }
+
+  @Test
+  void optimize_Absorption() {
+    assertSame(A, optimize(or(A, and(A, B))));
+    assertSame(A, optimize(and(A, or(A, B))));
+    assertEquals(or(A, C), optimize(or(and(B, A), A, C)));
+    assertEquals(or(and(A, B), C), optimize(or(and(A, B), C)));
+  }
+
+  @Test
+  void optimize_InsideFunctionParameters() {
+    var expression = InvocationExpression.of(
+        ReverseResolveFunctionExpression.of(IdentifierExpression.of("Condition")),
+        FunctionInvocation.of("exists", List.of(and(BooleanExpression.TRUE, A, A))));
+
+    assertEquals("reverseResolve(Condition).exists(a)",
+        PrintContext.ZERO.print(optimize(expression)));
+  }
+
+  @Test
+  void optimize_KeepsParentheses() {
+    var expression = and(or(A, B), or(C));
+
+    assertEquals("(a or\nb) and\nc", PrintContext.ZERO.print(optimize(expression)));
+  }
+}
@@ -0,0 +1,116 @@
+package de.fdpg.sq2pathling.model.fhirpath;
+
+import de.fdpg.sq2pathling.AcceptanceTest;
+import de.fdpg.sq2pathling.PrintContext;
+import de.fdpg.sq2pathling.model.MappingContext;
+import de.fdpg.sq2pathling.model.MappingLoader;
+import de.fdpg.sq2pathling.model.common.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.zip.ZipFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares printing with {@link Expression#print(PrintContext)} with the
+ * {@link ExpressionPrinter}, with and without a {@link PrintCache}.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=de.fdpg.sq2pathling.model.fhirpath.ExpressionPrinterBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class ExpressionPrinterBenchmark {
+
+  /**
+   * The expressions to print: the inclusion expressions of all acceptance test queries or a single
+   * disjunction of 10,000 criteria.
+   */
+  @Param({"corpus", "large"})
+  public String expressions;
+
+  private List<BooleanExpression> corpus;
+  private ExpressionPrinter printer;
+  private ExpressionPrinter memoizingPrinter;
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(ExpressionPrinterBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+
+  @Setup
+  public void setUp() throws Exception {
+    corpus = "corpus".equals(expressions) ? acceptanceTestCorpus() : List.of(large());
+    printer = ExpressionPrinter.of();
+    memoizingPrinter = ExpressionPrinter.of(PrintCache.of(1 << 22));
+  }
+
+  private static List<BooleanExpression> acceptanceTestCorpus() throws Exception {
+    MappingContext mappingContext;
+    try (var zipFile = new ZipFile(Objects.requireNonNull(
+        ExpressionPrinterBenchmark.class.getResource("/mapping.zip")).getPath())) {
+      mappingContext = MappingLoader.loadParallel(zipFile);
+    }
+    return AcceptanceTest.getTestQueriesReturningOnePatient().stream()
+        .map(structuredQuery -> structuredQuery.inclusionCriteria().stream()
+            .map(clause -> clause.stream()
+                .map(criterion -> criterion.toFhirPathFilter(mappingContext))
+                .collect(OrExpression.collector()))
+            .collect(AndExpression.collector()))
+        .toList();
+  }
+
+  private static BooleanExpression large() {
+    return IntStream.range(0, 10_000)
+        .mapToObj(i -> (BooleanExpression) InvocationExpression.of(
+            ReverseResolveFunctionExpression.of(InvocationExpression.of(
+                IdentifierExpression.of("Condition"), MemberInvocation.of("subject"))),
+            FunctionInvocation.of("exists", List.of(new AndExpression(List.of(
+                ComparatorExpression.of(IdentifierExpression.of("code"), Comparator.EQUAL,
+                    StringLiteralExpression.of("C71." + i)),
+                new OrExpression(List.of(ComparatorExpression.of(IdentifierExpression.of("value"),
+                    Comparator.LESS_THAN, StringLiteralExpression.of("x"))))))))))
+        .collect(OrExpression.collector());
+  }
+
+  @Benchmark
+  public void printContext(Blackhole blackhole) {
+    for (var expression : corpus) {
+      blackhole.consume(PrintContext.ZERO.print(expression));
+    }
+  }
+
+  @Benchmark
+  public void expressionPrinter(Blackhole blackhole) {
+    for (var expression : corpus) {
+      blackhole.consume(printer.print(expression));
+    }
+  }
+
+  @Benchmark
+  public void memoizingExpressionPrinter(Blackhole blackhole) {
+    for (var expression : corpus) {
+      blackhole.consume(memoizingPrinter.print(expression));
+    }
+  }
+}
@@ -0,0 +1,193 @@
+package de.fdpg.sq2pathling.model.fhirpath;
+
+import static de.fdpg.sq2pathling.model.fhirpath.AndExpressionTest.A;
+import static de.fdpg.sq2pathling.model.fhirpath.CommonSubexpressionsTest.condition;
+import static de.fdpg.sq2pathling.model.fhirpath.ExpressionOptimizerTest.and;
+import static de.fdpg.sq2pathling.model.fhirpath.ExpressionOptimizerTest.or;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import de.fdpg.sq2pathling.AcceptanceTest;
+import de.fdpg.sq2pathling.PrintContext;
+import de.fdpg.sq2pathling.model.MappingContext;
+import de.fdpg.sq2pathling.model.MappingLoader;
+import de.fdpg.sq2pathling.model.common.Comparator;
+import de.fdpg.sq2pathling.model.structured_query.Criterion;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.IntStream;
+import java.util.zip.ZipFile;
+import org.junit.jupiter.api.Test;
+
+class ExpressionPrinterTest {
+
+  static final List<PrintContext> PRINT_CONTEXTS = List.of(PrintContext.ZERO,
+      new PrintContext(0, OrExpression.PRECEDENCE), new PrintContext(0, AndExpression.PRECEDENCE),
+      new PrintContext(2, 0), new PrintContext(4, 10));
+
+  static void assertPrintsLikeExpression(Expression expression) {
+    var printer = ExpressionPrinter.of();
+    for (var printContext : PRINT_CONTEXTS) {
+      assertEquals(expression.print(printContext), printer.print(expression, printContext));
+    }
+  }
+
+  @Test
+  void print_Operators() {
+    assertPrintsLikeExpression(and(or(condition("C71"), condition("C72")), or(condition("C73")),
+        BooleanExpression.TRUE));
+    assertPrintsLikeExpression(or(and(condition("C71"), BooleanExpression.FALSE), and()));
+  }
+
+  @Test
+  void print_Literals() {
+    var value = IdentifierExpression.of("value");
+
+    assertPrintsLikeExpression(and(
+        ComparatorExpression.of(value, Comparator.LESS_THAN,
+            QuantityExpression.of(new BigDecimal("50.0"), "g/dl")),
+        ComparatorExpression.of(value, Comparator.GREATER_EQUAL,
+            QuantityExpression.of(BigDecimal.ONE)),
+        ComparatorExpression.of(IdentifierExpression.of("birthDate"), Comparator.GREATER_THAN,
+            DateTimeLiteralExpression.of("2020-01-01")),
+        MembershipExpression.in(StringLiteralExpression.of("a"), value),
+        new BetweenExpression(value, QuantityExpression.of(BigDecimal.ONE),
+            QuantityExpression.of(BigDecimal.TEN))));
+  }
+
+  @Test
+  void print_QuantityUnitWithQuote() {
+    var quantity = QuantityExpression.of(BigDecimal.TEN, "[arb'U]/mL");
+
+    assertEquals("[arb'U]/mL", quantity.unit());
+    assertEquals(quantity, QuantityExpression.of(quantity.value(), quantity.unit()));
+    assertEquals("10 '[arb\\'U]/mL'", quantity.print(PrintContext.ZERO));
+    assertEquals("10 '[arb\\'U]/mL'", ExpressionPrinter.of().print(quantity));
+  }
+
+  @Test
+  void print_Functions() {
+    assertPrintsLikeExpression(InvocationExpression.of(
+        or(condition("C71"), and(condition("C72"), A)), FunctionInvocation.not()));
+    assertPrintsLikeExpression(and(FunctionInvocation.of("iif",
+        List.of(or(condition("C71"), A), StringLiteralExpression.of("a"),
+            StringLiteralExpression.of("b"))), A));
+  }
+
+  @Test
+  void print_Reused() {
+    var printer = ExpressionPrinter.of();
+
+    assertEquals("a", printer.print(A));
+    assertEquals("'b'", printer.print(StringLiteralExpression.of("b")));
+  }
+
+  @Test
+  void reader() throws Exception {
+    var expression = IntStream.range(0, 1000).mapToObj(i -> condition("C71." + i))
+        .collect(OrExpression.collector());
+    var expected = PrintContext.ZERO.print(expression);
+    assertThat(expected.length()).isGreaterThan(ExpressionPrinter.CHUNK_SIZE * 4);
+
+    var printed = new StringWriter();
+    try (var reader = ExpressionPrinter.of().reader(expression)) {
+      var buffer = new char[1000];
+      for (int n = reader.read(buffer); n != -1; n = reader.read(buffer)) {
+        printed.write(buffer, 0, n);
+      }
+    }
+
+    assertEquals(expected, printed.toString());
+  }
+
+  @Test
+  void print_Compact() {
+    var printer = ExpressionPrinter.compact();
+    var value = IdentifierExpression.of("value");
+
+    assertEquals("reverseResolve(Condition.subject).exists(code='C71') and "
+            + "(reverseResolve(Condition.subject).exists(code='C72') or a)",
+        printer.print(and(or(condition("C71")), or(condition("C72"), A))));
+    assertEquals("(a or value<50.0 'g/dl').not()", printer.print(InvocationExpression.of(
+        or(A, and(ComparatorExpression.of(value, Comparator.LESS_THAN,
+            QuantityExpression.of(new BigDecimal("50.0"), "g/dl")))), FunctionInvocation.not())));
+    assertEquals("value>=1 '[arb\\'U]/mL'", printer.print(ComparatorExpression.of(value,
+        Comparator.GREATER_EQUAL, QuantityExpression.of(BigDecimal.ONE, "[arb'U]/mL"))));
+    assertEquals("iif(a or true,'a','b')", printer.print(FunctionInvocation.of("iif",
+        List.of(or(A, BooleanExpression.TRUE), StringLiteralExpression.of("a"),
+            StringLiteralExpression.of("b")))));
+  }
+
+  @Test
+  void print_CompactSameExpressionAsPretty() {
+    var expression = and(or(condition("C71"), and(condition("C72"), or(A))), or(condition("C73")),
+        InvocationExpression.of(or(and(A), BooleanExpression.FALSE), FunctionInvocation.not()));
+
+    var pretty = ExpressionPrinter.of().print(expression);
+    var compact = ExpressionPrinter.compact().print(expression);
+
+    assertEquals(FhirPathParser.parse(pretty), FhirPathParser.parse(compact));
+    assertThat(compact).doesNotContain("\n").hasSizeLessThan(pretty.length());
+  }
+
+  @Test
+  void print_AcceptanceTestCorpus() throws Exception {
+    for (var expression : acceptanceTestCorpus()) {
+      assertPrintsLikeExpression(expression);
+    }
+  }
+
+  /**
+   * Both modes print the same expressions, the compact one about 4% smaller. Most of the size of
+   * the filters are paths and literals, which are the same in both modes.
+   */
+  @Test
+  void print_CompactAcceptanceTestCorpus() throws Exception {
+    var pretty = ExpressionPrinter.of();
+    var compact = ExpressionPrinter.compact();
+    long prettySize = 0;
+    long compactSize = 0;
+
+    for (var expression : acceptanceTestCorpus()) {
+      var prettyFilter = pretty.print(expression);
+      var compactFilter = compact.print(expression);
+
+      assertEquals(FhirPathParser.parse(prettyFilter), FhirPathParser.parse(compactFilter));
+      assertThat(compactFilter).doesNotContain("\n");
+      prettySize += prettyFilter.length();
+      compactSize += compactFilter.length();
+    }
+
+    // 140,394 vs. 135,168 characters
+    assertThat(compactSize).isLessThan(prettySize * 97 / 100);
+  }
+
+  static List<BooleanExpression> acceptanceTestCorpus() throws Exception {
+    MappingContext mappingContext;
+    try (var zipFile = new ZipFile(Objects.requireNonNull(
+        ExpressionPrinterTest.class.getResource("/mapping.zip")).getPath())) {
+      mappingContext = MappingLoader.loadParallel(zipFile);
+    }
+
+    var corpus = new ArrayList<BooleanExpression>();
+    for (var structuredQuery : AcceptanceTest.getTestQueriesReturningOnePatient()) {
+      corpus.add(structuredQuery.inclusionCriteria().stream()
+          .map(clause -> clause.stream().map(criterion -> translate(criterion, mappingContext))
+              .collect(OrExpression.collector()))
+          .collect(AndExpression.collector()));
+      var exclusion = structuredQuery.exclusionCriteria().stream()
+          .map(clause -> clause.stream().map(criterion -> translate(criterion, mappingContext))
+              .collect(AndExpression.collector()))
+          .collect(OrExpression.collector());
+      corpus.add(InvocationExpression.of(exclusion, FunctionInvocation.not()));
+    }
+    return corpus;
+  }
+
+  private static BooleanExpression translate(Criterion criterion, MappingContext mappingContext) {
+    return criterion.toFhirPathFilter(mappingContext);
+  }
+}
@@ -0,0 +1,229 @@
+package de.fdpg.sq2pathling.model.fhirpath;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Parses the subset of FHIRPath printed by the translator into a canonical prefix notation.
+ * <p>
+ * Whitespace and redundant parentheses don't show up in the result, and {@code and} and
+ * {@code or} chains are flattened, so two printed filters denote the same expression if and only
+ * if their results are equal. For example, {@code a.where(b = 'c') and (d or e)} results in
+ * {@code (and (. a (where (= b 'c'))) (or d e))}.
+ */
+final class FhirPathParser {
+
+  private static final Set<String> COMPARATORS = Set.of("<", "<=", ">", ">=");
+  private static final Set<String> EQUALITY = Set.of("=", "!=");
+  private static final Set<String> MEMBERSHIP = Set.of("in", "contains");
+
+  private final List<String> tokens;
+  private int position;
+
+  private FhirPathParser(List<String> tokens) {
+    this.tokens = tokens;
+  }
+
+  /**
+   * Parses {@code expression} into its canonical form.
+   *
+   * @param expression the FHIRPath expression
+   * @return the canonical form of {@code expression}
+   * @throws IllegalArgumentException if {@code expression} isn't valid
+   */
+  static String parse(String expression) {
+    var parser = new FhirPathParser(tokenize(expression));
+    var result = parser.or();
+    if (parser.position != parser.tokens.size()) {
+      throw new IllegalArgumentException("unexpected token `%s` in: %s"
+          .formatted(parser.tokens.get(parser.position), expression));
+    }
+    return result;
+  }
+
+  private String or() {
+    return chain("or", this::and);
+  }
+
+  private String and() {
+    return chain("and", this::membership);
+  }
+
+  /**
+   * Parses an associative chain of {@code operator} into a single flattened operation.
+   */
+  private String chain(String operator, Supplier<String> operand) {
+    var operands = new ArrayList<String>();
+    add(operands, operand.get(), operator);
+    while (accept(operator)) {
+      add(operands, operand.get(), operator);
+    }
+    return operands.size() == 1 ? operands.get(0)
+        : "(%s %s)".formatted(operator, String.join(" ", operands));
+  }
+
+  private static void add(List<String> operands, String operand, String operator) {
+    var prefix = "(%s ".formatted(operator);
+    if (operand.startsWith(prefix) && enclosed(operand)) {
+      operands.add(operand.substring(prefix.length(), operand.length() - 1));
+    } else {
+      operands.add(operand);
+    }
+  }
+
+  /**
+   * Returns {@code true} if the opening parenthesis of {@code form} is closed at its very end.
+   */
+  private static boolean enclosed(String form) {
+    int depth = 0;
+    boolean quoted = false;
+    for (int i = 0; i < form.length(); i++) {
+      var c = form.charAt(i);
+      if (c == '\\' && quoted) {
+        i++;
+      } else if (c == '\'') {
+        quoted = !quoted;
+      } else if (!quoted && c == '(') {
+        depth++;
+      } else if (!quoted && c == ')' && --depth == 0) {
+        return i == form.length() - 1;
+      }
+    }
+    return false;
+  }
+
+  private String membership() {
+    return binary(MEMBERSHIP, this::equality);
+  }
+
+  private String equality() {
+    return binary(EQUALITY, this::comparison);
+  }
+
+  private String comparison() {
+    return binary(COMPARATORS, this::term);
+  }
+
+  private String binary(Set<String> operators, Supplier<String> operand) {
+    var left = operand.get();
+    while (position < tokens.size() && operators.contains(tokens.get(position))) {
+      var operator = tokens.get(position++);
+      left = "(%s %s %s)".formatted(operator, left, operand.get());
+    }
+    return left;
+  }
+
+  private String term() {
+    var term = primary();
+    while (accept(".")) {
+      term = "(. %s %s)".formatted(term, invocation());
+    }
+    return term;
+  }
+
+  private String primary() {
+    if (accept("(")) {
+      var expression = or();
+      expect(")");
+      return expression;
+    }
+    var token = next();
+    if (token.startsWith("'") || token.startsWith("@")) {
+      return token;
+    }
+    if (Character.isDigit(token.charAt(0))) {
+      return position < tokens.size() && tokens.get(position).startsWith("'")
+          ? "(quantity %s %s)".formatted(token, next()) : token;
+    }
+    position--;
+    return invocation();
+  }
+
+  private String invocation() {
+    var identifier = next();
+    if (!Character.isLetter(identifier.charAt(0)) && identifier.charAt(0) != '`') {
+      throw new IllegalArgumentException("expected identifier but was `%s`".formatted(identifier));
+    }
+    if (!accept("(")) {
+      return identifier;
+    }
+    var params = new ArrayList<String>();
+    if (!accept(")")) {
+      do {
+        params.add(or());
+      } while (accept(","));
+      expect(")");
+    }
+    return params.isEmpty() ? "(%s)".formatted(identifier)
+        : "(%s %s)".formatted(identifier, String.join(" ", params));
+  }
+
+  private boolean accept(String token) {
+    if (position < tokens.size() && tokens.get(position).equals(token)) {
+      position++;
+      return true;
+    }
+    return false;
+  }
+
+  private void expect(String token) {
+    if (!accept(token)) {
+      throw new IllegalArgumentException("expected `%s` at token %d".formatted(token, position));
+    }
+  }
+
+  private String next() {
+    if (position == tokens.size()) {
+      throw new IllegalArgumentException("unexpected end of expression");
+    }
+    return tokens.get(position++);
+  }
+
+  private static List<String> tokenize(String expression) {
+    var tokens = new ArrayList<String>();
+    int i = 0;
+    while (i < expression.length()) {
+      var c = expression.charAt(i);
+      int start = i;
+      if (Character.isWhitespace(c)) {
+        i++;
+        continue;
+      } else if (c == '\'' || c == '`') {
+        i++;
+        while (expression.charAt(i) != c) {
+          i += expression.charAt(i) == '\\' ? 2 : 1;
+        }
+        i++;
+      } else if (c == '@') {
+        i++;
+        while (i < expression.length() && "0123456789-:.TZ+".indexOf(expression.charAt(i)) >= 0) {
+          i++;
+        }
+      } else if (Character.isDigit(c)) {
+        while (i < expression.length() && (Character.isDigit(expression.charAt(i))
+            || expression.charAt(i) == '.' && i + 1 < expression.length()
+            && Character.isDigit(expression.charAt(i + 1)))) {
+          i++;
+        }
+      } else if (Character.isLetter(c) || c == '_' || c == '%') {
+        i++;
+        while (i < expression.length() && (Character.isLetterOrDigit(expression.charAt(i))
+            || expression.charAt(i) == '_')) {
+          i++;
+        }
+      } else if ((c == '<' || c == '>' || c == '!') && i + 1 < expression.length()
+          && expression.charAt(i + 1) == '=') {
+        i += 2;
+      } else if ("()<>=,.".indexOf(c) >= 0) {
+        i++;
+      } else {
+        throw new IllegalArgumentException("unexpected character `%s` at %d in: %s"
+            .formatted(c, i, expression));
+      }
+      tokens.add(expression.substring(start, i));
+    }
+    return tokens;
+  }
+}
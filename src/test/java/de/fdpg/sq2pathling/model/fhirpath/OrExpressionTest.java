@@ -0,0 +1,70 @@
+package de.fdpg.sq2pathling.model.fhirpath;
+
+import static de.fdpg.sq2pathling.model.fhirpath.AndExpressionTest.A;
+import static de.fdpg.sq2pathling.model.fhirpath.AndExpressionTest.B;
+import static de.fdpg.sq2pathling.model.fhirpath.AndExpressionTest.C;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import de.fdpg.sq2pathling.PrintContext;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class OrExpressionTest {
+
+  @Test
+  void collector() {
+    var expression = Stream.of(A, B, C).collect(OrExpression.collector());
+
+    assertEquals(new OrExpression(List.of(A, B, C)), expression);
+    assertEquals("a or\nb or\nc", PrintContext.ZERO.print(expression));
+  }
+
+  @Test
+  void collector_FlattensNestedDisjunctions() {
+    var expression = Stream.of(A, OrExpression.of(B, C)).collect(OrExpression.collector());
+
+    assertEquals(new OrExpression(List.of(A, B, C)), expression);
+  }
+
+  @Test
+  void collector_KeepsNestedConjunctions() {
+    var and = new AndExpression(List.of(A, B));
+
+    var expression = Stream.of(and, C).collect(OrExpression.collector());
+
+    assertEquals(new OrExpression(List.of(and, C)), expression);
+  }
+
+  @Test
+  void collector_KeepsSingleOperand() {
+    var expression = Stream.of(BooleanExpression.FALSE, A).collect(OrExpression.collector());
+
+    assertEquals(new OrExpression(List.of(A)), expression);
+    assertEquals("(a)", PrintContext.ZERO.withPrecedence(AndExpression.PRECEDENCE)
+        .print(expression));
+  }
+
+  @Test
+  void collector_TrueAbsorbs() {
+    var expression = Stream.of(A, BooleanExpression.TRUE, B).collect(OrExpression.collector());
+
+    assertSame(BooleanExpression.TRUE, expression);
+  }
+
+  @Test
+  void collector_Empty() {
+    assertSame(BooleanExpression.FALSE, Stream.<BooleanExpression>of()
+        .collect(OrExpression.collector()));
+  }
+
+  @Test
+  void collector_SameAsReduce() {
+    var operands = List.of(A, B, C, A, B);
+
+    assertEquals(PrintContext.ZERO.print(operands.stream()
+            .reduce(BooleanExpression.FALSE, OrExpression::of)),
+        PrintContext.ZERO.print(operands.stream().collect(OrExpression.collector())));
+  }
+}
@@ -0,0 +1,143 @@
+package de.fdpg.sq2pathling.model.fhirpath;
+
+import static de.fdpg.sq2pathling.model.fhirpath.AndExpressionTest.A;
+import static de.fdpg.sq2pathling.model.fhirpath.CommonSubexpressionsTest.condition;
+import static de.fdpg.sq2pathling.model.fhirpath.ExpressionOptimizerTest.and;
+import static de.fdpg.sq2pathling.model.fhirpath.ExpressionOptimizerTest.or;
+import static de.fdpg.sq2pathling.model.fhirpath.ExpressionPrinterTest.PRINT_CONTEXTS;
+import static de.fdpg.sq2pathling.model.fhirpath.ExpressionPrinterTest.acceptanceTestCorpus;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import de.fdpg.sq2pathling.PrintContext;
+import de.fdpg.sq2pathling.model.common.Comparator;
+import java.io.StringWriter;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class PrintCacheTest {
+
+  private static BooleanExpression code(String code) {
+    return ComparatorExpression.of(IdentifierExpression.of("code"), Comparator.EQUAL,
+        StringLiteralExpression.of(code));
+  }
+
+  @Test
+  void of_NegativeCapacity() {
+    assertThrows(IllegalArgumentException.class, () -> PrintCache.of(-1));
+  }
+
+  @Test
+  void print_RepeatedSubtree() {
+    var cache = PrintCache.of(1 << 16);
+    var printer = ExpressionPrinter.of(cache);
+    var expression = and(or(condition("C71"), A), or(condition("C71"), condition("C72")));
+
+    assertEquals(PrintContext.ZERO.print(expression), printer.print(expression));
+    // the second condition C71 and the Condition.subject path of the condition C72
+    assertEquals(2, cache.stats().hits());
+    assertEquals(PrintContext.ZERO.print(expression), printer.print(expression));
+    assertEquals(3, cache.stats().hits());
+    assertThat(cache.stats().hitRate()).isGreaterThan(0).isLessThan(1);
+  }
+
+  @Test
+  void print_PrintContextsAndModesCachedSeparately() {
+    var cache = PrintCache.of(1 << 16);
+    var expression = and(or(condition("C71"), A), or(condition("C72")));
+    var compact = ExpressionPrinter.compact().print(expression);
+
+    for (int i = 0; i < 2; i++) {
+      var printer = ExpressionPrinter.of(cache);
+      for (var printContext : PRINT_CONTEXTS) {
+        assertEquals(expression.print(printContext), printer.print(expression, printContext));
+      }
+      assertEquals(compact, ExpressionPrinter.compact(cache).print(expression));
+    }
+  }
+
+  @Test
+  void print_AcceptanceTestCorpus() throws Exception {
+    var cache = PrintCache.of(1 << 20);
+    var corpus = acceptanceTestCorpus();
+
+    for (int i = 0; i < 2; i++) {
+      var printer = ExpressionPrinter.of(cache);
+      var compactPrinter = ExpressionPrinter.compact(cache);
+      for (var expression : corpus) {
+        assertEquals(PrintContext.ZERO.print(expression), printer.print(expression));
+        assertEquals(ExpressionPrinter.compact().print(expression),
+            compactPrinter.print(expression));
+      }
+    }
+
+    assertThat(cache.stats().hits()).isPositive();
+    assertThat(cache.stats().weight()).isLessThanOrEqualTo(cache.capacity());
+  }
+
+  @Test
+  void put_EvictsLeastRecentlyUsed() {
+    var cache = PrintCache.of(1000);
+    var printer = ExpressionPrinter.of(cache);
+
+    IntStream.range(0, 100).forEach(i -> printer.print(or(code("C71." + i), A)));
+
+    assertThat(cache.stats().weight()).isPositive().isLessThanOrEqualTo(1000);
+    printer.print(or(code("C71.99"), A));
+    assertEquals(1, cache.stats().hits());
+    printer.print(or(code("C71.0"), A));
+    assertEquals(1, cache.stats().hits());
+  }
+
+  @Test
+  void put_LargeSubtreeNotCached() {
+    var cache = PrintCache.of(100);
+    var expression = or(code("C71.0"), code("C71.1"), code("C71.2"), code("C71.3"));
+
+    ExpressionPrinter.of(cache).print(expression);
+    ExpressionPrinter.of(cache).print(expression);
+
+    assertEquals(0, cache.stats().hits());
+    assertEquals(0, cache.stats().weight());
+  }
+
+  @Test
+  void reader() throws Exception {
+    var cache = PrintCache.of(1 << 20);
+    var expression = IntStream.range(0, 1000).mapToObj(i -> or(condition("C71." + i % 100), A))
+        .collect(AndExpression.collector());
+
+    for (int i = 0; i < 2; i++) {
+      var printed = new StringWriter();
+      try (var reader = ExpressionPrinter.of(cache).reader(expression)) {
+        reader.transferTo(printed);
+      }
+      assertEquals(PrintContext.ZERO.print(expression), printed.toString());
+    }
+    assertThat(cache.stats().hits()).isGreaterThanOrEqualTo(900);
+  }
+
+  @Test
+  void reader_CachedSubtreeSplitIntoChunks() throws Exception {
+    var cache = PrintCache.of(1 << 20);
+    var expression = IntStream.range(0, 1000).mapToObj(i -> condition("C71." + i))
+        .collect(OrExpression.collector());
+    var expected = ExpressionPrinter.of(cache).print(expression);
+    assertThat(expected.length()).isGreaterThan(ExpressionPrinter.CHUNK_SIZE * 4);
+    var hits = cache.stats().hits();
+
+    var printed = new StringWriter();
+    try (var reader = ExpressionPrinter.of(cache).reader(expression)) {
+      var buffer = new char[ExpressionPrinter.CHUNK_SIZE * 2];
+      for (int n = reader.read(buffer); n != -1; n = reader.read(buffer)) {
+        assertThat(n).isLessThanOrEqualTo(ExpressionPrinter.CHUNK_SIZE);
+        printed.write(buffer, 0, n);
+      }
+    }
+
+    assertEquals(expected, printed.toString());
+    // the whole expression is a single hit
+    assertEquals(hits + 1, cache.stats().hits());
+  }
+}
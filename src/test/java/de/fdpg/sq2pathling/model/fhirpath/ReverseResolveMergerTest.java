@@ -0,0 +1,63 @@
+package de.fdpg.sq2pathling.model.fhirpath;
+
+import static de.fdpg.sq2pathling.model.fhirpath.AndExpressionTest.A;
+import static de.fdpg.sq2pathling.model.fhirpath.AndExpressionTest.B;
+import static de.fdpg.sq2pathling.model.fhirpath.AndExpressionTest.C;
+import static de.fdpg.sq2pathling.model.fhirpath.ExpressionOptimizerTest.and;
+import static de.fdpg.sq2pathling.model.fhirpath.ExpressionOptimizerTest.or;
+import static de.fdpg.sq2pathling.model.fhirpath.ReverseResolveMerger.merge;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import de.fdpg.sq2pathling.PrintContext;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ReverseResolveMergerTest {
+
+  static BooleanExpression join(String resourceType, BooleanExpression criterion) {
+    return InvocationExpression.of(ReverseResolveFunctionExpression.of(InvocationExpression.of(
+            IdentifierExpression.of(resourceType), MemberInvocation.of("subject"))),
+        FunctionInvocation.of("exists", List.of(criterion)));
+  }
+
+  @Test
+  void merge_SameResourceType() {
+    var expression = or(join("Condition", A), join("Observation", B), join("Condition", C));
+
+    assertEquals(or(join("Condition", or(A, C)), join("Observation", B)), merge(expression));
+    assertEquals("""
+        reverseResolve(Condition.subject).exists(a or
+        c) or
+        reverseResolve(Observation.subject).exists(b)""", PrintContext.ZERO.print(merge(expression)));
+  }
+
+  @Test
+  void merge_KeepsOtherOperands() {
+    var expression = or(A, join("Condition", B), join("Condition", C));
+
+    assertEquals(or(A, join("Condition", or(B, C))), merge(expression));
+  }
+
+  @Test
+  void merge_InsideConjunction() {
+    var expression = and(or(join("Condition", A), join("Condition", B)), or(join("Condition", C)));
+
+    assertEquals(and(or(join("Condition", or(A, B))), or(join("Condition", C))),
+        merge(expression));
+  }
+
+  @Test
+  void merge_NotInsideConjunctionOperands() {
+    var expression = and(join("Condition", A), join("Condition", B));
+
+    assertEquals(expression, merge(expression));
+  }
+
+  @Test
+  void merge_NothingToMerge() {
+    assertSame(A, merge(A));
+    assertEquals(or(join("Condition", A), join("Observation", B)),
+        merge(or(join("Condition", A), join("Observation", B))));
+  }
+}
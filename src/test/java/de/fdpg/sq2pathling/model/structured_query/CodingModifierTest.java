@@ -14,6 +14,14 @@ class CodingModifierTest {
   static final TermCode CONFIRMED = TermCode.of("http://terminology.hl7.org/CodeSystem/condition-ver-status",
       "confirmed", "Conformed");
 
+  static final TermCode UNCONFIRMED = TermCode.of(
+      "http://terminology.hl7.org/CodeSystem/condition-ver-status", "unconfirmed", "Unconfirmed");
+
+  static final TermCode PROVISIONAL = TermCode.of(
+      "http://terminology.hl7.org/CodeSystem/condition-ver-status", "provisional", "Provisional");
+
+  static final TermCode REFUTED = TermCode.of("http://snomed.info/sct", "410594000", "Refuted");
+
   static final Map<String, String> CODE_SYSTEM_ALIASES = Map.of(
       "http://terminology.hl7.org/CodeSystem/condition-ver-status", "ver_status");
 
@@ -28,4 +36,17 @@ class CodingModifierTest {
     assertEquals("verificationStatus.coding.where(system = 'http://terminology.hl7.org/CodeSystem/condition-ver-status').exists(code = 'confirmed')",
         expression.print(PrintContext.ZERO));
   }
-}
\ No newline at end of file
+
+  @Test
+  void expression_CodesGroupedBySystem() {
+    var modifier = CodingModifier.of("verificationStatus", UNCONFIRMED, REFUTED, PROVISIONAL);
+
+    var expression = modifier.expression(MAPPING_CONTEXT);
+
+    assertEquals("""
+            verificationStatus.coding.where(system = 'http://terminology.hl7.org/CodeSystem/condition-ver-status').exists(code = 'unconfirmed' or
+            code = 'provisional') or
+            verificationStatus.coding.where(system = 'http://snomed.info/sct').exists(code = '410594000')""",
+        expression.print(PrintContext.ZERO));
+  }
+}
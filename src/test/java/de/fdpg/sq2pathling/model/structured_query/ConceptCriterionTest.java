@@ -3,6 +3,8 @@ package de.fdpg.sq2pathling.model.structured_query;
 import static de.fdpg.sq2pathling.model.common.Comparator.LESS_THAN;
 import static java.lang.String.format;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.fdpg.sq2pathling.PrintContext;
@@ -22,8 +24,11 @@ import de.fdpg.sq2pathling.model.structured_query.NumericAttributeFilter;
 import de.fdpg.sq2pathling.model.structured_query.RangeAttributeFilter;
 import de.fdpg.sq2pathling.model.structured_query.ValueSetAttributeFilter;
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 import org.junit.jupiter.api.Test;
 
 class ConceptCriterionTest {
@@ -230,15 +235,15 @@ class ConceptCriterionTest {
     var expression = criterion.toFhirPathFilter(mappingContext);
 
     assertEquals("""
-            reverseResolve(Condition.subject).exists(code.coding.where(system = 'http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code = 'C71.1')) or
-            reverseResolve(Condition.subject).exists(code.coding.where(system = 'http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code = 'C71.2'))""",
+            reverseResolve(Condition.subject).exists(code.coding.where(system = 'http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code = 'C71.1' or
+            code = 'C71.2'))""",
         PrintContext.ZERO.print(expression));
   }
 
   @Test
   void toPathling_WithAttributeFilter() {
-    var criterion = ConceptCriterion.of(ContextualConcept.of(C71));
-    criterion.appendAttributeFilter(ValueSetAttributeFilter.of(VERIFICATION_STATUS, CONFIRMED));
+    var criterion = ConceptCriterion.of(ContextualConcept.of(C71),
+        ValueSetAttributeFilter.of(VERIFICATION_STATUS, CONFIRMED));
     var mapping = Mapping.of(C71, "Condition", "code.coding", null, null, List.of(),
         List.of(AttributeMapping.of("Coding", VERIFICATION_STATUS, "verificationStatus")));
     var mappingContext = MappingContext.of(Map.of(C71, mapping), TermCodeNode.of(C71));
@@ -253,8 +258,8 @@ class ConceptCriterionTest {
 
   @Test
   void toPathling_Expanded_WithAttributeFilter() {
-    var criterion = ConceptCriterion.of(ContextualConcept.of(C71));
-    criterion.appendAttributeFilter(ValueSetAttributeFilter.of(VERIFICATION_STATUS, CONFIRMED));
+    var criterion = ConceptCriterion.of(ContextualConcept.of(C71),
+        ValueSetAttributeFilter.of(VERIFICATION_STATUS, CONFIRMED));
     var mapping1 = Mapping.of(C71_1, "Condition", "code.coding", null, null, List.of(),
         List.of(AttributeMapping.of("Coding", VERIFICATION_STATUS, "verificationStatus")));
     var mapping2 = Mapping.of(C71_2, "Condition", "code.coding", null, null, List.of(),
@@ -265,17 +270,15 @@ class ConceptCriterionTest {
     var expression = criterion.toFhirPathFilter(mappingContext);
 
     assertEquals("""
-            reverseResolve(Condition.subject).exists(code.coding.where(system = 'http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code = 'C71.1') and
-            (verificationStatus.coding.where(system = 'http://terminology.hl7.org/CodeSystem/condition-ver-status').exists(code = 'confirmed'))) or
-            reverseResolve(Condition.subject).exists(code.coding.where(system = 'http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code = 'C71.2') and
+            reverseResolve(Condition.subject).exists(code.coding.where(system = 'http://fhir.de/CodeSystem/bfarm/icd-10-gm').exists(code = 'C71.1' or
+            code = 'C71.2') and
             (verificationStatus.coding.where(system = 'http://terminology.hl7.org/CodeSystem/condition-ver-status').exists(code = 'confirmed')))""",
         PrintContext.ZERO.print(expression));
   }
 
   @Test
   void toPathling_WithDiastolicBloodPressureAttributeFilter() {
-    var criterion = ConceptCriterion.of(ContextualConcept.of(BLOOD_PRESSURE));
-    criterion.appendAttributeFilter(
+    var criterion = ConceptCriterion.of(ContextualConcept.of(BLOOD_PRESSURE),
         NumericAttributeFilter.of(DIASTOLIC_BLOOD_PRESSURE, LESS_THAN, BigDecimal.valueOf(80),
             "mm[Hg]"));
     var mappingContext = MappingContext.of(Map.of(BLOOD_PRESSURE,
@@ -323,4 +326,26 @@ class ConceptCriterionTest {
             (verificationStatus.coding.where(system = 'http://terminology.hl7.org/CodeSystem/condition-ver-status').exists(code = 'confirmed')))""",
         PrintContext.ZERO.print(expression));
   }
-}
\ No newline at end of file
+
+  @Test
+  void toPathling_LargeExpansion() {
+    var children = IntStream.range(0, 50_000)
+        .mapToObj(i -> ContextualTermCode.of(CONTEXT,
+            TermCode.of("http://fhir.de/CodeSystem/bfarm/icd-10-gm", "C71." + i, "C71." + i)))
+        .toList();
+    var mappings = new HashMap<ContextualTermCode, Mapping>();
+    children.forEach(child -> mappings.put(child, Mapping.of(child, "Condition", "code.coding")));
+    var criterion = ConceptCriterion.of(ContextualConcept.of(C71));
+    var mappingContext = MappingContext.of(mappings,
+        TermCodeNode.of(C71, children.stream().map(TermCodeNode::of).toArray(TermCodeNode[]::new)));
+
+    var expression = assertTimeout(Duration.ofSeconds(10),
+        () -> criterion.toFhirPathFilter(mappingContext));
+    var printed = assertTimeout(Duration.ofSeconds(10),
+        () -> PrintContext.ZERO.print(expression));
+
+    assertEquals(1, printed.split("reverseResolve", -1).length - 1);
+    assertEquals(50_000, printed.lines().count());
+    assertTrue(printed.endsWith("code = 'C71.49999'))"));
+  }
+}
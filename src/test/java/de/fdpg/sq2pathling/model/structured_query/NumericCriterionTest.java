@@ -1,7 +1,9 @@
 package de.fdpg.sq2pathling.model.structured_query;
 
 import static de.fdpg.sq2pathling.model.common.Comparator.GREATER_THAN;
+import static de.fdpg.sq2pathling.model.common.Comparator.LESS_THAN;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -98,4 +100,22 @@ public class NumericCriterionTest {
     System.out.println(pathling.print(PrintContext.ZERO));
   }
 
+  @Test
+  void equals() {
+    var concept = ContextualConcept.of(BODY_WEIGHT);
+    var criterion = NumericCriterion.of(concept, GREATER_THAN, new BigDecimal("50"), "kg");
+    var withOtherDisplay = NumericCriterion.of(ContextualConcept.of(ContextualTermCode.of(CONTEXT,
+        TermCode.of("http://loinc.org", "29463-7", "other"))), GREATER_THAN, new BigDecimal("50"),
+        "kg");
+
+    assertEquals(criterion, withOtherDisplay);
+    assertEquals(criterion.hashCode(), withOtherDisplay.hashCode());
+    assertNotEquals(criterion, NumericCriterion.of(concept, LESS_THAN, new BigDecimal("50"), "kg"));
+    assertNotEquals(criterion, NumericCriterion.of(concept, GREATER_THAN, new BigDecimal("50.0"),
+        "kg"));
+    assertNotEquals(criterion, NumericCriterion.of(concept, GREATER_THAN, new BigDecimal("50")));
+    assertNotEquals(criterion, NumericCriterion.of(concept, GREATER_THAN, new BigDecimal("50"),
+        "kg", TimeRestriction.of("2020-01-01", null)));
+    assertNotEquals(criterion, ConceptCriterion.of(concept));
+  }
 }
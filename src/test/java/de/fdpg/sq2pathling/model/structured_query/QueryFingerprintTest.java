@@ -0,0 +1,137 @@
+package de.fdpg.sq2pathling.model.structured_query;
+
+import static de.fdpg.sq2pathling.model.common.Comparator.GREATER_THAN;
+import static de.fdpg.sq2pathling.model.common.Comparator.LESS_THAN;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import de.fdpg.sq2pathling.AcceptanceTest;
+import de.fdpg.sq2pathling.model.MappingContext;
+import de.fdpg.sq2pathling.model.common.TermCode;
+import de.fdpg.sq2pathling.model.fhirpath.BooleanExpression;
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+class QueryFingerprintTest {
+
+  static final TermCode CONTEXT = TermCode.of("context", "context", "context");
+  static final TermCode C71 = TermCode.of("icd-10-gm", "C71", "Malignant neoplasm of brain");
+  static final TermCode C72 = TermCode.of("icd-10-gm", "C72", "Malignant neoplasm of spinal cord");
+  static final TermCode PLATELETS = TermCode.of("http://loinc.org", "26515-7", "Platelets");
+  static final TermCode CONFIRMED = TermCode.of("ver-status", "confirmed", "Confirmed");
+  static final TermCode PROVISIONAL = TermCode.of("ver-status", "provisional", "Provisional");
+  static final TermCode VERIFICATION_STATUS = TermCode.of("hl7.org", "verificationStatus",
+      "verificationStatus");
+
+  static Criterion concept(TermCode... termCodes) {
+    return ConceptCriterion.of(ContextualConcept.of(CONTEXT, Concept.of(termCodes)));
+  }
+
+  static Criterion platelets(String value) {
+    return NumericCriterion.of(ContextualConcept.of(CONTEXT, Concept.of(PLATELETS)), LESS_THAN,
+        new BigDecimal(value), "g/dl");
+  }
+
+  static String fingerprint(List<List<Criterion>> inclusionCriteria,
+      List<List<Criterion>> exclusionCriteria) {
+    return QueryFingerprint.of(StructuredQuery.of(inclusionCriteria, exclusionCriteria))
+        .orElseThrow();
+  }
+
+  static String fingerprint(List<List<Criterion>> inclusionCriteria) {
+    return QueryFingerprint.of(StructuredQuery.of(inclusionCriteria)).orElseThrow();
+  }
+
+  @Test
+  void of_ReorderedCriteriaAndClauses() {
+    assertEquals(
+        fingerprint(List.of(List.of(concept(C71), platelets("50")), List.of(concept(C72)))),
+        fingerprint(List.of(List.of(concept(C72)), List.of(platelets("50"), concept(C71)))));
+    assertEquals(
+        fingerprint(List.of(List.of(concept(C71))), List.of(List.of(concept(C71), concept(C72)))),
+        fingerprint(List.of(List.of(concept(C71))), List.of(List.of(concept(C72), concept(C71)))));
+  }
+
+  @Test
+  void of_ReorderedTermCodesAndAttributeFilters() {
+    var concept = ContextualConcept.of(CONTEXT, Concept.of(C71, C72));
+    var reorderedConcept = ContextualConcept.of(CONTEXT, Concept.of(C72, C71));
+    var status = ValueSetAttributeFilter.of(VERIFICATION_STATUS, CONFIRMED, PROVISIONAL);
+    var reorderedStatus = ValueSetAttributeFilter.of(VERIFICATION_STATUS, PROVISIONAL, CONFIRMED);
+    var count = NumericAttributeFilter.of(PLATELETS, GREATER_THAN, BigDecimal.TEN);
+
+    assertEquals(fingerprint(List.of(List.of(ConceptCriterion.of(concept, status, count)))),
+        fingerprint(List.of(List.of(ConceptCriterion.of(reorderedConcept, count, reorderedStatus)))));
+  }
+
+  @Test
+  void of_DisplaysIgnored() {
+    assertEquals(fingerprint(List.of(List.of(concept(C71)))),
+        fingerprint(List.of(List.of(concept(TermCode.of(C71.system(), C71.code(), "other"))))));
+  }
+
+  @Test
+  void of_DifferentQueries() {
+    var fingerprints = List.of(
+        fingerprint(List.of(List.of(concept(C71)))),
+        fingerprint(List.of(List.of(concept(C72)))),
+        fingerprint(List.of(List.of(concept(C71), concept(C72)))),
+        fingerprint(List.of(List.of(concept(C71)), List.of(concept(C72)))),
+        fingerprint(List.of(List.of(concept(C71))), List.of(List.of(concept(C72)))),
+        fingerprint(List.of(List.of(platelets("50")))),
+        fingerprint(List.of(List.of(platelets("50.0")))),
+        fingerprint(List.of(List.of(ConceptCriterion.of(
+            ContextualConcept.of(CONTEXT, Concept.of(C71)), TimeRestriction.of("2020", null))))),
+        fingerprint(List.of(List.of(ValueSetCriterion.of(
+            ContextualConcept.of(CONTEXT, Concept.of(C71)), CONFIRMED)))));
+
+    assertEquals(fingerprints.size(), new HashSet<>(fingerprints).size());
+  }
+
+  @Test
+  void of_EmptyFirstExclusionClause() {
+    // the translator only translates the exclusion criteria if the first clause isn't empty
+    assertNotEquals(
+        fingerprint(List.of(List.of(concept(C71))), List.of(List.of(), List.of(concept(C72)))),
+        fingerprint(List.of(List.of(concept(C71))), List.of(List.of(concept(C72)), List.of())));
+  }
+
+  @Test
+  void of_UnknownCriterion() {
+    var unknown = new Criterion() {
+
+      @Override
+      public BooleanExpression toFhirPathFilter(MappingContext mappingContext) {
+        return BooleanExpression.TRUE;
+      }
+
+      @Override
+      public TimeRestriction timeRestriction() {
+        return null;
+      }
+
+      @Override
+      public ContextualConcept getConcept() {
+        return null;
+      }
+    };
+
+    assertEquals(Optional.empty(),
+        QueryFingerprint.of(StructuredQuery.of(List.of(List.of(concept(C71), unknown)))));
+  }
+
+  @Test
+  void of_AcceptanceTestCorpus() throws Exception {
+    var structuredQueries = AcceptanceTest.getTestQueriesReturningOnePatient();
+
+    var fingerprints = structuredQueries.stream()
+        .map(structuredQuery -> QueryFingerprint.of(structuredQuery).orElseThrow())
+        .toList();
+
+    assertThat(fingerprints).allMatch(fingerprint -> fingerprint.length() == 64);
+  }
+}
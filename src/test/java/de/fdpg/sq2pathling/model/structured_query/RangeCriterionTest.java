@@ -134,8 +134,7 @@ class RangeCriterionTest {
   void toCql_WithAttributeFilter() {
     var criterion = RangeCriterion.of(ContextualConcept.of(PLATELETS), BigDecimal.valueOf(20),
         BigDecimal.valueOf(30),
-        "g/dl");
-    criterion.appendAttributeFilter(ValueSetAttributeFilter.of(STATUS, FINAL));
+        "g/dl", ValueSetAttributeFilter.of(STATUS, FINAL));
 
     var expression = criterion.toFhirPathFilter(MAPPING_CONTEXT);
 
@@ -0,0 +1,167 @@
+package de.fdpg.sq2pathling.model.structured_query;
+
+import static de.fdpg.sq2pathling.model.structured_query.QueryFingerprintTest.C71;
+import static de.fdpg.sq2pathling.model.structured_query.QueryFingerprintTest.C72;
+import static de.fdpg.sq2pathling.model.structured_query.QueryFingerprintTest.CONTEXT;
+import static de.fdpg.sq2pathling.model.structured_query.QueryFingerprintTest.concept;
+import static de.fdpg.sq2pathling.model.structured_query.QueryFingerprintTest.platelets;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import de.fdpg.sq2pathling.AcceptanceTest;
+import de.fdpg.sq2pathling.model.MappingContext;
+import de.fdpg.sq2pathling.model.common.TermCode;
+import de.fdpg.sq2pathling.model.fhirpath.BooleanExpression;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class StructuredQueryNormalizerTest {
+
+  static final TimeRestriction TIME_RESTRICTION = TimeRestriction.of("2020-01-01", null);
+
+  static Criterion restrictedConcept(TimeRestriction timeRestriction, TermCode... termCodes) {
+    return ConceptCriterion.of(ContextualConcept.of(CONTEXT, Concept.of(termCodes)),
+        timeRestriction);
+  }
+
+  /**
+   * Returns the canonical forms of the criteria of {@code clauses} in their order.
+   */
+  static List<List<String>> canonicalForms(List<List<Criterion>> clauses) {
+    return clauses.stream()
+        .map(clause -> clause.stream().map(QueryFingerprint::canonicalForm).toList())
+        .toList();
+  }
+
+  static List<List<List<String>>> canonicalForms(StructuredQuery structuredQuery) {
+    return List.of(canonicalForms(structuredQuery.inclusionCriteria()),
+        canonicalForms(structuredQuery.exclusionCriteria()));
+  }
+
+  static List<List<String>> normalizedInclusion(List<List<Criterion>> inclusionCriteria) {
+    return canonicalForms(StructuredQueryNormalizer.normalize(StructuredQuery.of(inclusionCriteria))
+        .inclusionCriteria());
+  }
+
+  static List<List<String>> normalizedExclusion(List<List<Criterion>> exclusionCriteria) {
+    return canonicalForms(StructuredQueryNormalizer.normalize(
+        StructuredQuery.of(List.of(List.of(concept(C71))), exclusionCriteria)).exclusionCriteria());
+  }
+
+  static StructuredQuery reversed(StructuredQuery structuredQuery) {
+    return new StructuredQuery(reversed(structuredQuery.inclusionCriteria()),
+        structuredQuery.exclusionCriteria().get(0).isEmpty()
+            ? structuredQuery.exclusionCriteria()
+            : reversed(structuredQuery.exclusionCriteria()));
+  }
+
+  static List<List<Criterion>> reversed(List<List<Criterion>> clauses) {
+    var reversedClauses = new ArrayList<List<Criterion>>();
+    for (var clause : clauses) {
+      var reversedClause = new ArrayList<>(clause);
+      Collections.reverse(reversedClause);
+      reversedClauses.add(0, reversedClause);
+    }
+    return reversedClauses;
+  }
+
+  @Test
+  void normalize_ReorderedCriteriaAndClauses() {
+    assertEquals(
+        normalizedInclusion(List.of(List.of(platelets("50"), concept(C71)), List.of(concept(C72)))),
+        normalizedInclusion(List.of(List.of(concept(C72)), List.of(concept(C71), platelets("50")))));
+    assertEquals(
+        normalizedExclusion(List.of(List.of(concept(C72), concept(C71)), List.of(concept(C71)))),
+        normalizedExclusion(List.of(List.of(concept(C71)), List.of(concept(C71), concept(C72)))));
+  }
+
+  @Test
+  void normalize_Duplicates() {
+    assertEquals(canonicalForms(List.of(List.of(concept(C71)))),
+        normalizedInclusion(List.of(List.of(concept(C71), concept(C71)), List.of(concept(C71)))));
+    assertEquals(canonicalForms(List.of(List.of(concept(C71, C72)))),
+        normalizedInclusion(List.of(List.of(concept(C72, C71, C72)))));
+  }
+
+  @Test
+  void normalize_DoesNotMergeConceptCriteria() {
+    assertEquals(canonicalForms(List.of(List.of(restrictedConcept(TIME_RESTRICTION, C71),
+            restrictedConcept(TIME_RESTRICTION, C72)))),
+        normalizedInclusion(List.of(List.of(restrictedConcept(TIME_RESTRICTION, C72),
+            restrictedConcept(TIME_RESTRICTION, C71)))));
+  }
+
+  @Test
+  void normalize_DoesNotMergeExclusionCriteria() {
+    var criteria = List.of(concept(C71), concept(C72));
+
+    assertEquals(canonicalForms(List.of(criteria)), normalizedExclusion(List.of(criteria)));
+  }
+
+  @Test
+  void normalize_ConstantInclusionClauses() {
+    assertEquals(canonicalForms(List.of(List.of(concept(C72)))),
+        normalizedInclusion(List.of(List.of(concept(C71), Criterion.TRUE),
+            List.of(concept(C72), Criterion.FALSE))));
+    assertEquals(canonicalForms(List.of(List.of(Criterion.TRUE))),
+        normalizedInclusion(List.of(List.of(Criterion.TRUE, concept(C71)))));
+    assertEquals(canonicalForms(List.of(List.of(Criterion.FALSE))),
+        normalizedInclusion(List.of(List.of(concept(C71)), List.of(Criterion.FALSE))));
+  }
+
+  @Test
+  void normalize_ConstantExclusionClauses() {
+    assertEquals(canonicalForms(List.of(List.of(concept(C72)))),
+        normalizedExclusion(List.of(List.of(concept(C71), Criterion.FALSE),
+            List.of(concept(C72), Criterion.TRUE))));
+    assertEquals(canonicalForms(List.of(List.of())),
+        normalizedExclusion(List.of(List.of(concept(C71), Criterion.FALSE))));
+    assertEquals(canonicalForms(List.of(List.of(Criterion.TRUE))),
+        normalizedExclusion(List.of(List.of(concept(C71)), List.of(Criterion.TRUE))));
+  }
+
+  @Test
+  void normalize_EmptyFirstExclusionClause() {
+    // the translator only translates the exclusion criteria if the first clause isn't empty
+    assertEquals(canonicalForms(List.of(List.of())),
+        normalizedExclusion(List.of(List.of(), List.of(concept(C72)))));
+  }
+
+  @Test
+  void normalize_UnknownCriterion() {
+    var unknown = new Criterion() {
+
+      @Override
+      public BooleanExpression toFhirPathFilter(MappingContext mappingContext) {
+        return BooleanExpression.TRUE;
+      }
+
+      @Override
+      public TimeRestriction timeRestriction() {
+        return null;
+      }
+
+      @Override
+      public ContextualConcept getConcept() {
+        return null;
+      }
+    };
+    var structuredQuery = StructuredQuery.of(List.of(List.of(concept(C71), unknown)));
+
+    assertSame(structuredQuery, StructuredQueryNormalizer.normalize(structuredQuery));
+  }
+
+  @Test
+  void normalize_AcceptanceTestCorpus() throws Exception {
+    for (var structuredQuery : AcceptanceTest.getTestQueriesReturningOnePatient()) {
+      var normalized = canonicalForms(StructuredQueryNormalizer.normalize(structuredQuery));
+
+      assertEquals(normalized,
+          canonicalForms(StructuredQueryNormalizer.normalize(reversed(structuredQuery))));
+      assertEquals(normalized, canonicalForms(StructuredQueryNormalizer.normalize(
+          StructuredQueryNormalizer.normalize(structuredQuery))));
+    }
+  }
+}
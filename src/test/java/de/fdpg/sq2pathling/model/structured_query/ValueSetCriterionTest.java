@@ -328,9 +328,8 @@ class ValueSetCriterionTest {
     var container = criterion.toFhirPathFilter(MAPPING_CONTEXT);
 
     assertEquals("""
-            reverseResolve(Observation.subject).exists(code.coding.where(system = 'http://loinc.org').exists(code = '21908-9') and
-            value = 'LA3649-6') or
-            reverseResolve(Observation.subject).exists(code.coding.where(system = 'http://loinc.org').exists(code = '21902-2') and
+            reverseResolve(Observation.subject).exists(code.coding.where(system = 'http://loinc.org').exists(code = '21908-9' or
+            code = '21902-2') and
             value = 'LA3649-6')""",
         PrintContext.ZERO.print(container));
   }
@@ -343,8 +342,8 @@ class ValueSetCriterionTest {
 
     assertEquals("""
             reverseResolve(Observation.subject).exists(code.coding.where(system = 'http://loinc.org').exists(code = '76689-9') and
-            (value.coding.where(system = 'http://hl7.org/fhir/administrative-gender').exists(code = 'male') or
-            value.coding.where(system = 'http://hl7.org/fhir/administrative-gender').exists(code = 'female')))""",
+            (value.coding.where(system = 'http://hl7.org/fhir/administrative-gender').exists(code = 'male' or
+            code = 'female')))""",
         PrintContext.ZERO.print(container));
   }
 
@@ -362,8 +361,8 @@ class ValueSetCriterionTest {
 
   @Test
   void toPathling_WithAttributeFilter() {
-    var criterion = ValueSetCriterion.of(ContextualConcept.of(COVID), POSITIVE);
-    criterion.appendAttributeFilter(ValueSetAttributeFilter.of(STATUS, FINAL));
+    var criterion = ValueSetCriterion.of(ContextualConcept.of(COVID), List.of(POSITIVE),
+        ValueSetAttributeFilter.of(STATUS, FINAL));
 
     var container = criterion.toFhirPathFilter(MAPPING_CONTEXT);
 